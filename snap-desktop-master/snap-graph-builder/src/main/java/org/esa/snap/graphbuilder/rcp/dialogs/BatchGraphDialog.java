@@ -19,6 +19,7 @@ import com.bc.ceres.core.ProgressMonitor;
 import com.bc.ceres.core.SubProgressMonitor;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.gpf.graph.GraphException;
+import org.esa.snap.core.util.SystemUtils;
 import org.esa.snap.core.util.io.FileUtils;
 import org.esa.snap.engine_utilities.db.CommonReaders;
 import org.esa.snap.engine_utilities.db.ProductEntry;
@@ -55,8 +56,11 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 
 /**
  * Provides the dialog for executing a graph on a list of products
@@ -81,6 +85,7 @@ public class BatchGraphDialog extends ModelessDialog implements GraphDialog {
     private final List<BatchProcessListener> listenerList = new ArrayList<>(1);
     private final boolean closeOnDone;
     private boolean skipExistingTargetFiles = false;
+    private int maxConcurrentGraphs = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
 
     private boolean isProcessing = false;
     protected File graphFile;
@@ -180,6 +185,23 @@ public class BatchGraphDialog extends ModelessDialog implements GraphDialog {
         return isProcessing;
     }
 
+    public int getMaxConcurrentGraphs() {
+        return maxConcurrentGraphs;
+    }
+
+    /**
+     * Sets the maximum number of graphs which are processed concurrently. Fewer graphs are processed if their
+     * estimated memory doesn't fit into the heap besides the JAI tile cache.
+     *
+     * @param maxConcurrentGraphs the maximum number of graphs, at least one
+     */
+    public void setMaxConcurrentGraphs(final int maxConcurrentGraphs) {
+        if (maxConcurrentGraphs < 1) {
+            throw new IllegalArgumentException("maxConcurrentGraphs must be at least 1");
+        }
+        this.maxConcurrentGraphs = maxConcurrentGraphs;
+    }
+
     public void addListener(final BatchProcessListener listener) {
         if (!listenerList.contains(listener)) {
             listenerList.add(listener);
@@ -530,18 +552,8 @@ public class BatchGraphDialog extends ModelessDialog implements GraphDialog {
 
         final File[] fileList = productSetPanel.getFileList();
         for (int graphIndex = 1; graphIndex < fileList.length; ++graphIndex) {
-
-            final GraphExecuter cloneGraphEx = new GraphExecuter();
-            LoadGraph(cloneGraphEx, graphFile, false);
-            graphExecutorList.add(cloneGraphEx);
-
-            // copy UI parameter to clone
-            final List<GraphNode> cloneGraphNodes = cloneGraphEx.GetGraphNodes();
-            for (GraphNode cloneNode : cloneGraphNodes) {
-                final GraphNode node = graphEx.getGraphNodeList().findGraphNode(cloneNode.getID());
-                if (node != null)
-                     cloneNode.setOperatorUI(node.GetOperatorUI());
-            }
+            // the clones share the operator UIs of the first graph
+            graphExecutorList.add(graphEx.copyGraph());
         }
     }
 
@@ -559,12 +571,20 @@ public class BatchGraphDialog extends ModelessDialog implements GraphDialog {
 
     /////
 
+    /**
+     * Processes the graphs of the batch. The graphs are initialised one after the other, since they share the
+     * operator UIs, and are then executed concurrently as far as the {@link BatchScheduler} admits them. The
+     * state of every graph is recorded in a {@link BatchJournal}, so that an interrupted batch resumes with the
+     * graphs which have not completed.
+     */
     private class ProcessThread extends SwingWorker<Boolean, Object> {
 
         private final ProgressMonitor pm;
         private ProcessTimeMonitor timeMonitor = new ProcessTimeMonitor();
         private boolean errorOccured = false;
-        final List<String> errMsgs = new ArrayList<>();
+        final List<String> errMsgs = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger graphsCompleted = new AtomicInteger();
+        private final AtomicInteger graphsSkipped = new AtomicInteger();
 
         public ProcessThread(final ProgressMonitor pm) {
             this.pm = pm;
@@ -573,54 +593,61 @@ public class BatchGraphDialog extends ModelessDialog implements GraphDialog {
         @Override
         protected Boolean doInBackground() throws Exception {
 
-            pm.beginTask("Processing Graph...", 100 * graphExecutorList.size());
+            final int numGraphs = graphExecutorList.size();
+            pm.beginTask("Processing Graph...", 100 * numGraphs);
+            final BatchScheduler scheduler = new BatchScheduler(maxConcurrentGraphs,
+                                                                BatchScheduler.getDefaultMemoryBudget());
+            BatchJournal journal = null;
             try {
                 timeMonitor.start();
                 isProcessing = true;
 
                 final File[] existingFiles = productSetPanel.getTargetFolder().listFiles();
+                journal = openJournal();
+                if (journal != null && journal.getResumedCount() > 0) {
+                    notifyMSG(BatchProcessListener.BatchMSG.UPDATE,
+                              "Resuming batch, " + journal.getResumedCount() + " products already processed");
+                }
 
                 final File[] fileList = productSetPanel.getFileList();
-                int graphIndex = 0;
-                for (GraphExecuter graphEx : graphExecutorList) {
+                for (int graphIndex = 0; graphIndex < numGraphs; ++graphIndex) {
                     if (pm.isCanceled()) break;
 
-                    if(shouldSkip(graphEx, existingFiles)) {
+                    final GraphExecuter graphEx = graphExecutorList.get(graphIndex);
+                    final File file = fileList[graphIndex];
+                    if (shouldSkip(graphEx, existingFiles) || (journal != null && journal.isDone(file))) {
+                        graphsSkipped.incrementAndGet();
+                        synchronized (pm) {
+                            pm.worked(100);
+                        }
                         continue;
                     }
 
                     try {
-                        final String nOfm = String.valueOf(graphIndex + 1) + " of " + graphExecutorList.size() + ' ';
-                        final String statusText = "Processing " + nOfm + fileList[graphIndex].getName();
+                        final String nOfm = String.valueOf(graphIndex + 1) + " of " + numGraphs + ' ';
+                        final String statusText = "Processing " + nOfm + file.getName() +
+                                " (" + scheduler.getRunningJobCount() + " running)";
                         statusLabel.setText(statusText);
                         notifyMSG(BatchProcessListener.BatchMSG.UPDATE, statusText);
 
-                        MemUtils.freeAllMemory();
-
                         graphEx.InitGraph();
 
-                        graphEx.executeGraph(new SubProgressMonitor(pm, 100));
-
-                        graphEx.disposeGraphContext();
+                        final BatchJournal graphJournal = journal;
+                        scheduler.submit(() -> executeGraph(graphEx, file, graphJournal), graphEx.estimateMemory());
+                    } catch (InterruptedException e) {
+                        throw e;
                     } catch (Exception e) {
                         System.out.print(e.getMessage());
-                        String filename = fileList[graphIndex].getName();
-                        errMsgs.add(filename + " -> " + e.getMessage());
+                        errMsgs.add(file.getName() + " -> " + e.getMessage());
+                        if (journal != null) {
+                            journal.failed(file);
+                        }
                     }
+                }
+                scheduler.awaitCompletion();
 
-                    graphEx = null;
-                    ++graphIndex;
-
-                    // calculate time remaining
-                    final long duration = timeMonitor.getCurrentDuration();
-                    final double timePerGraph = duration / (double) graphIndex;
-                    final long timeLeft = (long) (timePerGraph * (graphExecutorList.size() - graphIndex));
-                    if (timeLeft > 0) {
-                        String remainingStr = "Estimated " + ProcessTimeMonitor.formatDuration(timeLeft) + " remaining";
-                        if (!errMsgs.isEmpty())
-                            remainingStr += " (Errors occurred)";
-                        bottomStatusLabel.setText(remainingStr);
-                    }
+                if (journal != null && !pm.isCanceled() && errMsgs.isEmpty()) {
+                    journal.delete();
                 }
 
                 MemUtils.freeAllMemory();
@@ -633,12 +660,60 @@ public class BatchGraphDialog extends ModelessDialog implements GraphDialog {
                     statusLabel.setText(e.toString());
                 errorOccured = true;
             } finally {
+                scheduler.shutdown();
+                if (journal != null) {
+                    journal.close();
+                }
                 isProcessing = false;
                 pm.done();
             }
             return true;
         }
 
+        private BatchJournal openJournal() {
+            try {
+                return BatchJournal.open(productSetPanel.getTargetFolder(), graphExecutorList.get(0).getGraphAsString());
+            } catch (Exception e) {
+                SystemUtils.LOG.log(Level.WARNING, "Unable to open batch journal", e);
+                return null;
+            }
+        }
+
+        private void executeGraph(final GraphExecuter graphEx, final File file, final BatchJournal journal) {
+            try {
+                if (journal != null) {
+                    journal.started(file);
+                }
+
+                graphEx.executeGraph(new GraphProgressMonitor(pm, 100));
+
+                if (journal != null && !pm.isCanceled()) {
+                    journal.done(file);
+                }
+            } catch (Throwable e) {
+                SystemUtils.LOG.log(Level.WARNING, "Unable to process " + file.getAbsolutePath(), e);
+                errMsgs.add(file.getName() + " -> " + e.getMessage());
+                if (journal != null) {
+                    journal.failed(file);
+                }
+            } finally {
+                graphEx.disposeGraphContext();
+            }
+
+            // calculate time remaining from the throughput so far
+            final int completed = graphsCompleted.incrementAndGet();
+            final long duration = timeMonitor.getCurrentDuration();
+            final double timePerGraph = duration / (double) completed;
+            final int remaining = graphExecutorList.size() - graphsSkipped.get() - completed;
+            final long timeLeft = (long) (timePerGraph * remaining);
+            if (timeLeft > 0) {
+                String remainingStr = "Estimated " + ProcessTimeMonitor.formatDuration(timeLeft) + " remaining";
+                if (!errMsgs.isEmpty())
+                    remainingStr += " (Errors occurred)";
+                bottomStatusLabel.setText(remainingStr);
+            }
+        }
+
         @Override
         public void done() {
             if (!errorOccured) {
@@ -690,6 +765,57 @@ public class BatchGraphDialog extends ModelessDialog implements GraphDialog {
         }
     }
 
+    /**
+     * Reports the progress of one of the concurrently executed graphs to the progress monitor of the batch.
+     */
+    private static class GraphProgressMonitor extends SubProgressMonitor {
+
+        private final ProgressMonitor batchMonitor;
+
+        GraphProgressMonitor(final ProgressMonitor batchMonitor, final int ticks) {
+            super(batchMonitor, ticks);
+            this.batchMonitor = batchMonitor;
+        }
+
+        @Override
+        public void beginTask(final String name, final int totalWork) {
+            synchronized (batchMonitor) {
+                super.beginTask(name, totalWork);
+            }
+        }
+
+        @Override
+        public void done() {
+            synchronized (batchMonitor) {
+                super.done();
+            }
+        }
+
+        @Override
+        public void internalWorked(final double work) {
+            synchronized (batchMonitor) {
+                super.internalWorked(work);
+            }
+        }
+
+        @Override
+        public void worked(final int work) {
+            synchronized (batchMonitor) {
+                super.worked(work);
+            }
+        }
+
+        @Override
+        public void setTaskName(final String name) {
+            // the status of the batch is shown instead
+        }
+
+        @Override
+        public void setSubTaskName(final String name) {
+            // the status of the batch is shown instead
+        }
+    }
+
     public interface BatchProcessListener {
 
         public enum BatchMSG {DONE, UPDATE, CLOSE}
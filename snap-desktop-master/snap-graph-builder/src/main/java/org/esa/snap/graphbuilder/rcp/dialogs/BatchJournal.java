@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 by Array Systems Computing Inc. http://www.array.ca
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.graphbuilder.rcp.dialogs;
+
+import org.esa.snap.core.util.SystemUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+
+/**
+ * Records the state of every job of a batch in a journal file in the target folder, so that an interrupted
+ * batch can be resumed. A journal is only resumed by a batch with the same graph; jobs which have completed are
+ * then skipped. The journal is deleted when all jobs of the batch have completed.
+ */
+class BatchJournal implements Closeable {
+
+    static final String FILE_NAME = "batch_processing.journal";
+
+    private static final String GRAPH = "GRAPH";
+    private static final String STARTED = "STARTED";
+    private static final String DONE = "DONE";
+    private static final String FAILED = "FAILED";
+
+    private final Path file;
+    private final Set<String> doneFiles;
+    private final BufferedWriter writer;
+
+    private BatchJournal(final Path file, final Set<String> doneFiles, final BufferedWriter writer) {
+        this.file = file;
+        this.doneFiles = doneFiles;
+        this.writer = writer;
+    }
+
+    /**
+     * Opens the journal of the target folder. A journal of a different graph is replaced by a new journal.
+     *
+     * @param targetFolder the target folder of the batch
+     * @param graphXml     the graph of the batch
+     */
+    static BatchJournal open(final File targetFolder, final String graphXml) throws IOException {
+        final Path file = targetFolder.toPath().resolve(FILE_NAME);
+        final String graphId = Integer.toHexString(graphXml.hashCode());
+        final Set<String> doneFiles = new HashSet<>();
+        boolean resume = false;
+        if (Files.isRegularFile(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                resume = (GRAPH + '\t' + graphId).equals(reader.readLine());
+                String line;
+                while (resume && (line = reader.readLine()) != null) {
+                    final int tab = line.indexOf('\t');
+                    if (tab > 0 && DONE.equals(line.substring(0, tab))) {
+                        doneFiles.add(line.substring(tab + 1));
+                    }
+                }
+            }
+        }
+        final BufferedWriter writer;
+        if (resume) {
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        } else {
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+            writer.write(GRAPH + '\t' + graphId);
+            writer.newLine();
+            writer.flush();
+        }
+        return new BatchJournal(file, doneFiles, writer);
+    }
+
+    /**
+     * @return the number of jobs which have completed before the journal was opened
+     */
+    int getResumedCount() {
+        return doneFiles.size();
+    }
+
+    /**
+     * @return whether the job of the input file has completed before the journal was opened
+     */
+    boolean isDone(final File inputFile) {
+        return doneFiles.contains(inputFile.getAbsolutePath());
+    }
+
+    void started(final File inputFile) {
+        write(STARTED, inputFile);
+    }
+
+    void done(final File inputFile) {
+        write(DONE, inputFile);
+    }
+
+    void failed(final File inputFile) {
+        write(FAILED, inputFile);
+    }
+
+    /**
+     * Closes and deletes the journal once the whole batch has completed.
+     */
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    // flushed after every record, so that the journal survives a crash of the application
+    private synchronized void write(final String state, final File inputFile) {
+        try {
+            writer.write(state + '\t' + inputFile.getAbsolutePath());
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            SystemUtils.LOG.log(Level.WARNING, "Unable to write batch journal " + file, e);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015 by Array Systems Computing Inc. http://www.array.ca
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.graphbuilder.rcp.dialogs;
+
+import javax.media.jai.JAI;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the jobs of a batch concurrently. A job is only admitted if fewer than the maximum number of jobs are
+ * running and if its estimated memory footprint fits into the memory budget together with the footprints of the
+ * running jobs. A job which doesn't fit into the budget on its own is run when no other job is running.
+ */
+class BatchScheduler {
+
+    private final int maxConcurrentJobs;
+    private final long memoryBudget;
+    private final ExecutorService executor;
+    private int runningJobs;
+    private long reservedMemory;
+
+    BatchScheduler(final int maxConcurrentJobs, final long memoryBudget) {
+        if (maxConcurrentJobs < 1) {
+            throw new IllegalArgumentException("maxConcurrentJobs must be at least 1");
+        }
+        this.maxConcurrentJobs = maxConcurrentJobs;
+        this.memoryBudget = memoryBudget;
+        executor = Executors.newFixedThreadPool(maxConcurrentJobs, runnable -> {
+            final Thread thread = new Thread(runnable, "Batch processing");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * The heap available to jobs: the maximum heap less the memory currently in use and the capacity of the JAI
+     * tile cache, which is shared by all jobs.
+     */
+    static long getDefaultMemoryBudget() {
+        final Runtime runtime = Runtime.getRuntime();
+        final long usedMemory = runtime.totalMemory() - runtime.freeMemory();
+        final long tileCacheCapacity = JAI.getDefaultInstance().getTileCache().getMemoryCapacity();
+        return Math.max(0, runtime.maxMemory() - usedMemory - tileCacheCapacity);
+    }
+
+    /**
+     * Waits until the job is admitted and starts it.
+     *
+     * @param job             the job
+     * @param memoryFootprint the estimated memory footprint of the job in bytes
+     */
+    void submit(final Runnable job, final long memoryFootprint) throws InterruptedException {
+        synchronized (this) {
+            while (runningJobs > 0 &&
+                    (runningJobs >= maxConcurrentJobs || reservedMemory + memoryFootprint > memoryBudget)) {
+                wait();
+            }
+            runningJobs++;
+            reservedMemory += memoryFootprint;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    job.run();
+                } finally {
+                    release(memoryFootprint);
+                }
+            });
+        } catch (RuntimeException e) {
+            release(memoryFootprint);
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until all started jobs have finished.
+     */
+    synchronized void awaitCompletion() throws InterruptedException {
+        while (runningJobs > 0) {
+            wait();
+        }
+    }
+
+    synchronized int getRunningJobCount() {
+        return runningJobs;
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private synchronized void release(final long memoryFootprint) {
+        runningJobs--;
+        reservedMemory -= memoryFootprint;
+        notifyAll();
+    }
+}
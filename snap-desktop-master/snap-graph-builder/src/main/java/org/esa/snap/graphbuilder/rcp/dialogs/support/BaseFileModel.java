@@ -26,7 +26,11 @@ import javax.swing.table.TableColumnModel;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public abstract class BaseFileModel extends AbstractTableModel implements FileTableModel {
 
@@ -34,10 +38,19 @@ public abstract class BaseFileModel extends AbstractTableModel implements FileTa
     protected Class types[] = null;
     protected int widths[] = null;
 
+    private static final int ROW_UPDATE_DELAY = 100;
+
     protected final List<File> fileList = new ArrayList<>(10);
     protected final List<TableData> dataList = new ArrayList<>(10);
 
+    // rows whose header has been read are updated together
+    private final Set<TableData> updatedRows = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final AtomicBoolean rowUpdateScheduled = new AtomicBoolean();
+    private final Timer rowUpdateTimer;
+
     public BaseFileModel() {
+        rowUpdateTimer = new Timer(ROW_UPDATE_DELAY, e -> fireRowsUpdated());
+        rowUpdateTimer.setRepeats(false);
         setColumnData();
         addBlankFile();
     }
@@ -178,6 +191,47 @@ public abstract class BaseFileModel extends AbstractTableModel implements FileTa
         return files.toArray(new File[files.size()]);
     }
 
+    private void rowUpdated(final TableData row) {
+        synchronized (updatedRows) {
+            updatedRows.add(row);
+        }
+        if (rowUpdateScheduled.compareAndSet(false, true)) {
+            rowUpdateTimer.start();
+        }
+    }
+
+    private void fireRowsUpdated() {
+        rowUpdateScheduled.set(false);
+        final Set<TableData> rows;
+        synchronized (updatedRows) {
+            rows = Collections.newSetFromMap(new IdentityHashMap<>());
+            rows.addAll(updatedRows);
+            updatedRows.clear();
+        }
+        // one event per run of consecutive updated rows
+        for (int[] range : getUpdatedRanges(dataList, rows)) {
+            fireTableRowsUpdated(range[0], range[1]);
+        }
+    }
+
+    /**
+     * @return the first and last index of every run of consecutive rows which are contained in the updated rows
+     */
+    static List<int[]> getUpdatedRanges(final List<?> rows, final Set<?> updatedRows) {
+        final List<int[]> ranges = new ArrayList<>();
+        int firstRow = -1;
+        for (int r = 0; r <= rows.size(); ++r) {
+            final boolean updated = r < rows.size() && updatedRows.contains(rows.get(r));
+            if (updated && firstRow < 0) {
+                firstRow = r;
+            } else if (!updated && firstRow >= 0) {
+                ranges.add(new int[]{firstRow, r - 1});
+                firstRow = -1;
+            }
+        }
+        return ranges;
+    }
+
     public void setColumnWidths(final TableColumnModel columnModel) {
         for (int i = 0; i < widths.length; ++i) {
             columnModel.getColumn(i).setMinWidth(widths[i]);
@@ -214,28 +268,10 @@ public abstract class BaseFileModel extends AbstractTableModel implements FileTa
         }
 
         private void readProduct(final File file) {
-
-            final SwingWorker worker = new SwingWorker() {
-                @Override
-                protected Object doInBackground() throws Exception {
-                    try {
-                        if (!file.getName().isEmpty()) {
-                            try {
-                                updateData(file);
-                            } catch (Exception ex) {
-                                data[0] = file.getName();
-                                for (int i = 1; i < data.length; ++i) {
-                                    data[i] = "";
-                                }
-                            }
-                        }
-                    } finally {
-                        fireTableDataChanged();
-                    }
-                    return null;
-                }
-            };
-            worker.execute();
+            if (!file.getName().isEmpty()) {
+                ProductHeaderScanner.scan(getClass().getName(), file, data, this::updateData,
+                                          () -> rowUpdated(this));
+            }
         }
     }
 
@@ -63,16 +63,24 @@ public class FileModel extends BaseFileModel implements FileTableModel {
         protected synchronized void updateData(final File file) throws IOException {
             data[0] = file.getName();
             Product product = getProductFromProductManager(file);
+            final boolean isOpen = product != null;
             if(product == null) {
                 product = CommonReaders.readProduct(file);
             }
-            final MetadataElement absRoot = AbstractMetadata.getAbstractedMetadata(product);
-
-            data[0] = product.getName();
-            data[1] = product.getProductType();
-            data[2] = OperatorUtils.getAcquisitionDate(absRoot);
-            data[3] = String.valueOf(absRoot.getAttributeInt(AbstractMetadata.REL_ORBIT, 0));
-            data[4] = String.valueOf(absRoot.getAttributeInt(AbstractMetadata.ABS_ORBIT, 0));
+            try {
+                final MetadataElement absRoot = AbstractMetadata.getAbstractedMetadata(product);
+
+                data[0] = product.getName();
+                data[1] = product.getProductType();
+                data[2] = OperatorUtils.getAcquisitionDate(absRoot);
+                data[3] = String.valueOf(absRoot.getAttributeInt(AbstractMetadata.REL_ORBIT, 0));
+                data[4] = String.valueOf(absRoot.getAttributeInt(AbstractMetadata.ABS_ORBIT, 0));
+            } finally {
+                // only the header is needed, so the reader is closed again
+                if (!isOpen && product != null) {
+                    product.dispose();
+                }
+            }
         }
 
         protected void updateData(final ProductEntry entry) {
@@ -20,6 +20,9 @@ import com.bc.ceres.binding.dom.XppDomElement;
 import com.bc.ceres.core.ProgressMonitor;
 import com.thoughtworks.xstream.io.xml.xppdom.XppDom;
 import org.apache.commons.math3.util.FastMath;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
 import org.esa.snap.core.gpf.GPF;
 import org.esa.snap.core.gpf.OperatorSpi;
 import org.esa.snap.core.gpf.OperatorSpiRegistry;
@@ -31,6 +34,7 @@ import org.esa.snap.core.gpf.graph.GraphException;
 import org.esa.snap.core.gpf.graph.GraphIO;
 import org.esa.snap.core.gpf.graph.GraphProcessor;
 import org.esa.snap.core.gpf.graph.Node;
+import org.esa.snap.core.gpf.graph.NodeContext;
 import org.esa.snap.core.util.io.FileUtils;
 import org.esa.snap.core.util.io.SnapFileFilter;
 import org.esa.snap.engine_utilities.gpf.ReaderUtils;
@@ -39,22 +43,28 @@ import org.esa.snap.graphbuilder.gpf.ui.OperatorUIRegistry;
 import org.esa.snap.rcp.SnapDialogs;
 import org.esa.snap.rcp.actions.file.SaveProductAsAction;
 
+import java.awt.Dimension;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Observable;
 import java.util.Set;
 
 public class GraphExecuter extends Observable {
 
+    private static final int DEFAULT_TILE_SIZE = 512;
+
     private final GPF gpf;
     private Graph graph;
     private GraphContext graphContext = null;
@@ -285,6 +295,34 @@ public class GraphExecuter extends Observable {
         processor.executeGraph(graphContext, pm);
     }
 
+    /**
+     * Estimates the memory needed to process the initialised graph besides the JAI tile cache, which is a row of
+     * tiles of all bands of every product in the graph.
+     *
+     * @return the estimated memory in bytes
+     */
+    public long estimateMemory() {
+        final Set<Product> products = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (graphContext != null) {
+            for (GraphNode n : graphNodeList.getGraphNodes()) {
+                final NodeContext context = graphContext.getNodeContext(n.getNode());
+                if (context != null && context.getOperator() != null) {
+                    products.addAll(Arrays.asList(context.getSourceProducts()));
+                }
+            }
+        }
+        long memory = 0;
+        for (Product product : products) {
+            final Dimension tileSize = product.getPreferredTileSize();
+            final int tileHeight = tileSize != null ? tileSize.height : DEFAULT_TILE_SIZE;
+            for (Band band : product.getBands()) {
+                memory += (long) band.getRasterWidth() * Math.min(tileHeight, band.getRasterHeight()) *
+                        ProductData.getElemSize(band.getDataType());
+            }
+        }
+        return memory;
+    }
+
     public File[] getPotentialOutputFiles() {
         final List<File> fileList = new ArrayList<>();
         final Node[] nodes = graph.getNodes();
@@ -346,6 +384,34 @@ public class GraphExecuter extends Observable {
         return stringWriter.toString();
     }
 
+    /**
+     * Creates a copy of this graph in memory, without reading the graph file again. The graph is copied through its
+     * XML representation, including its header and all its application data. The nodes of the copy share the
+     * operator UIs of this graph.
+     *
+     * @return the copy
+     */
+    public GraphExecuter copyGraph() throws GraphException {
+        final Graph graphCopy;
+        try {
+            final StringWriter stringWriter = new StringWriter();
+            GraphIO.write(graph, stringWriter);
+            graphCopy = GraphIO.read(new StringReader(stringWriter.toString()));
+        } catch (Exception e) {
+            throw new GraphException("Unable to copy graph" + '\n' + e.getMessage());
+        }
+
+        final GraphExecuter copy = new GraphExecuter();
+        copy.setGraph(graphCopy, false);
+        copy.graphDescription = graphDescription;
+        for (GraphNode copyNode : copy.GetGraphNodes()) {
+            final GraphNode node = graphNodeList.findGraphNode(copyNode.getID());
+            if (node != null)
+                copyNode.setOperatorUI(node.GetOperatorUI());
+        }
+        return copy;
+    }
+
     public void loadGraph(final File filePath, final boolean addUI) throws GraphException {
 
         try {
@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2015 by Array Systems Computing Inc. http://www.array.ca
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.graphbuilder.rcp.dialogs.support;
+
+import org.esa.snap.core.util.SystemUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reads the header fields shown in the product tables on a dedicated, bounded thread pool. The fields of every
+ * scanned file are kept in a persistent cache, keyed by the path, size and modification time of the file, so
+ * that unchanged products don't need to be read again. There is one cache per kind of fields, e.g. per table
+ * data class, stored in the auxdata folder.
+ */
+class ProductHeaderScanner {
+
+    /**
+     * Reads the header fields of a file into the fields given to {@link #scan}.
+     */
+    interface FieldReader {
+        void read(File file) throws Exception;
+    }
+
+    private static final int SCANNER_THREAD_COUNT = 4;
+    private static final int MAX_CACHED_FILES = 20000;
+
+    private static final ExecutorService SCANNER = Executors.newFixedThreadPool(SCANNER_THREAD_COUNT, runnable -> {
+        final Thread thread = new Thread(runnable, "Product header scanner");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Map<String, HeaderCache> CACHES = new HashMap<>();
+
+    private ProductHeaderScanner() {
+    }
+
+    /**
+     * Fills the fields of the file from the cache if the file is unchanged, or otherwise reads them on the
+     * scanner pool.
+     *
+     * @param kind   identifies the kind of fields
+     * @param file   the product file
+     * @param fields the fields to be filled
+     * @param reader reads the fields from the product header into {@code fields}, or fails
+     * @param onRead called on the scanner thread after the fields have been read, or failed to be read
+     *
+     * @return {@code true} if the fields have been filled from the cache, {@code false} if they are being read
+     */
+    static boolean scan(final String kind, final File file, final String[] fields,
+                        final FieldReader reader, final Runnable onRead) {
+        final HeaderCache cache = getCache(kind);
+        if (cache.get(file, fields)) {
+            return true;
+        }
+        cache.scanStarted();
+        SCANNER.execute(() -> {
+            try {
+                // files of an earlier session are found once the cache has been loaded
+                cache.awaitLoaded();
+                if (!cache.get(file, fields)) {
+                    reader.read(file);
+                    cache.put(file, fields);
+                }
+            } catch (Throwable e) {
+                fields[0] = file.getName();
+                for (int i = 1; i < fields.length; ++i) {
+                    fields[i] = "";
+                }
+            } finally {
+                cache.scanFinished();
+                onRead.run();
+            }
+        });
+        return false;
+    }
+
+    private static synchronized HeaderCache getCache(final String kind) {
+        HeaderCache cache = CACHES.get(kind);
+        if (cache == null) {
+            cache = new HeaderCache(SystemUtils.getAuxDataPath().resolve("product_headers").resolve(kind + ".txt"),
+                                    MAX_CACHED_FILES);
+            CACHES.put(kind, cache);
+            // loaded ahead of the scans of this kind, so the stored headers are never read on the EDT
+            SCANNER.execute(cache::load);
+        }
+        return cache;
+    }
+
+    /**
+     * The header fields of scanned files, bounded by LRU and stored in a file. Lookups never access the store
+     * file; it is read by {@link #load()} and written when all pending scans have finished.
+     */
+    static final class HeaderCache {
+
+        private final Path storeFile;
+        private final Map<String, Entry> entries;
+        private final CountDownLatch loaded = new CountDownLatch(1);
+        private final Object saveLock = new Object();
+        private boolean modified;
+        private int pendingScans;
+        private long version;
+        private long savedVersion;
+
+        HeaderCache(final Path storeFile, final int maxEntries) {
+            this.storeFile = storeFile;
+            entries = new LinkedHashMap<String, Entry>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+        }
+
+        /**
+         * @return {@code true} if the fields of the unchanged file have been copied into {@code fields}
+         */
+        synchronized boolean get(final File file, final String[] fields) {
+            final Entry entry = entries.get(file.getAbsolutePath());
+            if (entry == null || entry.fields.length != fields.length ||
+                    entry.size != file.length() || entry.lastModified != file.lastModified()) {
+                return false;
+            }
+            System.arraycopy(entry.fields, 0, fields, 0, fields.length);
+            return true;
+        }
+
+        synchronized void put(final File file, final String[] fields) {
+            entries.put(file.getAbsolutePath(), new Entry(file.length(), file.lastModified(), fields.clone()));
+            modified = true;
+            version++;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        synchronized void scanStarted() {
+            pendingScans++;
+        }
+
+        // the cache is stored whenever all scans have finished, e.g. after a set of files has been added
+        void scanFinished() {
+            final Map<String, Entry> snapshot;
+            final long snapshotVersion;
+            synchronized (this) {
+                pendingScans--;
+                if (pendingScans > 0 || !modified) {
+                    return;
+                }
+                modified = false;
+                snapshot = new LinkedHashMap<>(entries);
+                snapshotVersion = version;
+            }
+            save(snapshot, snapshotVersion);
+        }
+
+        void awaitLoaded() throws InterruptedException {
+            loaded.await();
+        }
+
+        /**
+         * Reads the store file. Entries put before are kept, they are newer than the stored ones.
+         */
+        void load() {
+            final Map<String, Entry> stored = new LinkedHashMap<>();
+            try {
+                if (Files.isRegularFile(storeFile)) {
+                    read(stored);
+                }
+            } catch (IOException e) {
+                SystemUtils.LOG.warning("Unable to read product header cache " + storeFile + ": " + e.getMessage());
+            } finally {
+                synchronized (this) {
+                    final Map<String, Entry> scanned = new LinkedHashMap<>(entries);
+                    entries.clear();
+                    entries.putAll(stored);
+                    entries.putAll(scanned);
+                }
+                loaded.countDown();
+            }
+        }
+
+        private void read(final Map<String, Entry> stored) throws IOException {
+            try (BufferedReader reader = Files.newBufferedReader(storeFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final String[] values = line.split("\t", -1);
+                    if (values.length < 3) {
+                        continue;
+                    }
+                    try {
+                        final String[] fields = new String[values.length - 3];
+                        for (int i = 0; i < fields.length; i++) {
+                            fields[i] = unescape(values[i + 3]);
+                        }
+                        stored.put(unescape(values[2]),
+                                   new Entry(Long.parseLong(values[0]), Long.parseLong(values[1]), fields));
+                    } catch (NumberFormatException e) {
+                        // skip corrupt line
+                    }
+                }
+            }
+        }
+
+        private void save(final Map<String, Entry> snapshot, final long snapshotVersion) {
+            synchronized (saveLock) {
+                // a newer snapshot may have been written by another scanner thread meanwhile
+                if (snapshotVersion <= savedVersion) {
+                    return;
+                }
+                try {
+                    Files.createDirectories(storeFile.getParent());
+                    final Path tmpFile = storeFile.resolveSibling(storeFile.getFileName() + ".tmp");
+                    try (BufferedWriter writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+                        for (Map.Entry<String, Entry> mapEntry : snapshot.entrySet()) {
+                            final Entry entry = mapEntry.getValue();
+                            writer.write(entry.size + "\t" + entry.lastModified + '\t' + escape(mapEntry.getKey()));
+                            for (String field : entry.fields) {
+                                writer.write('\t');
+                                writer.write(escape(field));
+                            }
+                            writer.newLine();
+                        }
+                    }
+                    Files.move(tmpFile, storeFile, StandardCopyOption.REPLACE_EXISTING);
+                    savedVersion = snapshotVersion;
+                } catch (IOException e) {
+                    SystemUtils.LOG.warning("Unable to write product header cache " + storeFile + ": " +
+                                            e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        private final long size;
+        private final long lastModified;
+        private final String[] fields;
+
+        private Entry(final long size, final long lastModified, final String[] fields) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fields = fields;
+        }
+    }
+
+    static String escape(final String value) {
+        if (value == null) {
+            return "\\0";
+        }
+        final StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    static String unescape(final String value) {
+        if (value.equals("\\0")) {
+            return null;
+        }
+        final StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                final char next = value.charAt(++i);
+                sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 by Array Systems Computing Inc. http://www.array.ca
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.graphbuilder.rcp.dialogs;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the BatchJournal
+ */
+public class BatchJournalTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testResumeSameGraph() throws Exception {
+        final File targetFolder = tempFolder.getRoot();
+        final File file1 = new File("input1.dim");
+        final File file2 = new File("input2.dim");
+
+        try (BatchJournal journal = BatchJournal.open(targetFolder, "<graph/>")) {
+            assertEquals(0, journal.getResumedCount());
+            journal.started(file1);
+            journal.done(file1);
+            journal.started(file2);
+        }
+
+        try (BatchJournal journal = BatchJournal.open(targetFolder, "<graph/>")) {
+            assertEquals(1, journal.getResumedCount());
+            assertTrue(journal.isDone(file1));
+            assertFalse(journal.isDone(file2));
+            journal.done(file2);
+        }
+
+        try (BatchJournal journal = BatchJournal.open(targetFolder, "<graph/>")) {
+            assertTrue(journal.isDone(file1));
+            assertTrue(journal.isDone(file2));
+            journal.delete();
+        }
+        assertFalse(new File(targetFolder, BatchJournal.FILE_NAME).exists());
+    }
+
+    @Test
+    public void testOtherGraphStartsNewJournal() throws Exception {
+        final File targetFolder = tempFolder.getRoot();
+        final File file = new File("input.dim");
+
+        try (BatchJournal journal = BatchJournal.open(targetFolder, "<graph/>")) {
+            journal.done(file);
+        }
+
+        try (BatchJournal journal = BatchJournal.open(targetFolder, "<graph id=\"other\"/>")) {
+            assertEquals(0, journal.getResumedCount());
+            assertFalse(journal.isDone(file));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2015 by Array Systems Computing Inc. http://www.array.ca
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.graphbuilder.rcp.dialogs;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the BatchScheduler
+ */
+public class BatchSchedulerTest {
+
+    @Test
+    public void testMaxConcurrentJobs() throws Exception {
+        final BatchScheduler scheduler = new BatchScheduler(3, Long.MAX_VALUE);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        try {
+            for (int i = 0; i < 20; i++) {
+                scheduler.submit(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    sleep(5);
+                    running.decrementAndGet();
+                }, 0);
+            }
+            scheduler.awaitCompletion();
+        } finally {
+            scheduler.shutdown();
+        }
+        assertEquals(0, scheduler.getRunningJobCount());
+        assertTrue(maxRunning.get() <= 3);
+        assertTrue(maxRunning.get() > 1);
+    }
+
+    @Test
+    public void testJobsAreAdmittedByMemory() throws Exception {
+        final BatchScheduler scheduler = new BatchScheduler(4, 100);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            scheduler.submit(() -> await(release), 60);
+            assertEquals(1, scheduler.getRunningJobCount());
+
+            final Thread submitter = new Thread(() -> {
+                try {
+                    scheduler.submit(() -> {}, 60);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            submitter.start();
+            submitter.join(200);
+            // the second job doesn't fit into the budget besides the first one
+            assertTrue(submitter.isAlive());
+
+            release.countDown();
+            submitter.join(5000);
+            assertFalse(submitter.isAlive());
+            scheduler.awaitCompletion();
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testJobExceedingBudgetRunsAlone() throws Exception {
+        final BatchScheduler scheduler = new BatchScheduler(2, 100);
+        final AtomicInteger completed = new AtomicInteger();
+        try {
+            scheduler.submit(completed::incrementAndGet, 1000);
+            scheduler.submit(completed::incrementAndGet, 1000);
+            scheduler.awaitCompletion();
+        } finally {
+            scheduler.shutdown();
+        }
+        assertEquals(2, completed.get());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2015 by Array Systems Computing Inc. http://www.array.ca
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.graphbuilder.rcp.dialogs.support;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the coalescing of row updates in the BaseFileModel
+ */
+public class BaseFileModelTest {
+
+    @Test
+    public void testUpdatedRowsAreCoalescedIntoRanges() {
+        final List<Object> rows = createRows(10);
+        final Set<Object> updated = createSet(rows, 0, 1, 2, 5, 7, 8, 9);
+
+        final List<int[]> ranges = BaseFileModel.getUpdatedRanges(rows, updated);
+
+        assertEquals(3, ranges.size());
+        assertArrayEquals(new int[]{0, 2}, ranges.get(0));
+        assertArrayEquals(new int[]{5, 5}, ranges.get(1));
+        assertArrayEquals(new int[]{7, 9}, ranges.get(2));
+    }
+
+    @Test
+    public void testRowsRemovedMeanwhileAreIgnored() {
+        final List<Object> rows = createRows(4);
+        final Set<Object> updated = createSet(rows, 1, 2);
+        updated.add(new Object());
+
+        final List<int[]> ranges = BaseFileModel.getUpdatedRanges(rows, updated);
+
+        assertEquals(1, ranges.size());
+        assertArrayEquals(new int[]{1, 2}, ranges.get(0));
+        assertTrue(BaseFileModel.getUpdatedRanges(rows, createSet(rows)).isEmpty());
+        assertTrue(BaseFileModel.getUpdatedRanges(new ArrayList<>(), updated).isEmpty());
+    }
+
+    @Test
+    public void testAllRowsUpdated() {
+        final List<Object> rows = createRows(3);
+
+        final List<int[]> ranges = BaseFileModel.getUpdatedRanges(rows, createSet(rows, 0, 1, 2));
+
+        assertEquals(1, ranges.size());
+        assertArrayEquals(new int[]{0, 2}, ranges.get(0));
+    }
+
+    private static List<Object> createRows(int count) {
+        final List<Object> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rows.add(new Object());
+        }
+        return rows;
+    }
+
+    private static Set<Object> createSet(List<Object> rows, int... indices) {
+        final Set<Object> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int index : indices) {
+            set.add(rows.get(index));
+        }
+        return set;
+    }
+}
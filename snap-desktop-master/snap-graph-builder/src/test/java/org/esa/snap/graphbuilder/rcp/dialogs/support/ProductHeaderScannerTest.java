@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 by Array Systems Computing Inc. http://www.array.ca
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.graphbuilder.rcp.dialogs.support;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the ProductHeaderScanner
+ */
+public class ProductHeaderScannerTest {
+
+    private Path tmpDir;
+    private Path storeFile;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("ProductHeaderScannerTest");
+        storeFile = tmpDir.resolve("cache").resolve("headers.txt");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(tmpDir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void testCacheHitAndMiss() throws Exception {
+        final File file = createFile("a.dim", "header");
+        final ProductHeaderScanner.HeaderCache cache = new ProductHeaderScanner.HeaderCache(storeFile, 10);
+        cache.load();
+
+        final String[] fields = new String[2];
+        assertFalse(cache.get(file, fields));
+        cache.put(file, new String[]{"a", "S1A"});
+        assertTrue(cache.get(file, fields));
+        assertArrayEquals(new String[]{"a", "S1A"}, fields);
+
+        // another number of fields, or a changed file, is a miss
+        assertFalse(cache.get(file, new String[3]));
+        Files.write(file.toPath(), "changed header".getBytes(StandardCharsets.UTF_8));
+        assertFalse(cache.get(file, fields));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws Exception {
+        final File file1 = createFile("1.dim", "1");
+        final File file2 = createFile("2.dim", "2");
+        final File file3 = createFile("3.dim", "3");
+        final ProductHeaderScanner.HeaderCache cache = new ProductHeaderScanner.HeaderCache(storeFile, 2);
+        cache.load();
+
+        cache.put(file1, new String[]{"1"});
+        cache.put(file2, new String[]{"2"});
+        assertTrue(cache.get(file1, new String[1]));
+        cache.put(file3, new String[]{"3"});
+
+        assertEquals(2, cache.size());
+        assertTrue(cache.get(file1, new String[1]));
+        assertFalse(cache.get(file2, new String[1]));
+        assertTrue(cache.get(file3, new String[1]));
+    }
+
+    @Test
+    public void testCacheIsStoredWhenScansHaveFinished() throws Exception {
+        final File file1 = createFile("1.dim", "1");
+        final File file2 = createFile("2.dim", "2");
+        final ProductHeaderScanner.HeaderCache cache = new ProductHeaderScanner.HeaderCache(storeFile, 10);
+        cache.load();
+        cache.scanStarted();
+        cache.scanStarted();
+        cache.put(file1, new String[]{"1", "a\tb"});
+        cache.scanFinished();
+        assertFalse(Files.exists(storeFile));
+        cache.put(file2, new String[]{"2", null});
+        cache.scanFinished();
+        assertTrue(Files.exists(storeFile));
+
+        final ProductHeaderScanner.HeaderCache nextSession = new ProductHeaderScanner.HeaderCache(storeFile, 10);
+        // entries scanned before the store has been loaded take precedence
+        nextSession.put(file2, new String[]{"2", "rescanned"});
+        nextSession.load();
+        nextSession.awaitLoaded();
+
+        final String[] fields = new String[2];
+        assertTrue(nextSession.get(file1, fields));
+        assertArrayEquals(new String[]{"1", "a\tb"}, fields);
+        assertTrue(nextSession.get(file2, fields));
+        assertArrayEquals(new String[]{"2", "rescanned"}, fields);
+    }
+
+    @Test
+    public void testEscapeRoundTrip() {
+        final String[] values = {"", "S1A_IW_GRDH", "a\tb", "line1\nline2\r", "C:\\data\\0", "\\0"};
+        for (String value : values) {
+            final String escaped = ProductHeaderScanner.escape(value);
+            assertFalse(escaped.contains("\t"));
+            assertFalse(escaped.contains("\n"));
+            assertEquals(value, ProductHeaderScanner.unescape(escaped));
+        }
+        assertNull(ProductHeaderScanner.unescape(ProductHeaderScanner.escape(null)));
+    }
+
+    private File createFile(String name, String content) throws IOException {
+        return Files.write(tmpDir.resolve(name), content.getBytes(StandardCharsets.UTF_8)).toFile();
+    }
+}
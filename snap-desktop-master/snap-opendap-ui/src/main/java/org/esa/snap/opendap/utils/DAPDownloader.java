@@ -1,6 +1,5 @@
 package org.esa.snap.opendap.utils;
 
-import com.bc.io.FileDownloader;
 import org.esa.snap.opendap.ui.DownloadProgressBarPM;
 import org.esa.snap.util.StringUtils;
 import ucar.ma2.Array;
@@ -16,24 +15,43 @@ import ucar.nc2.util.EscapeStrings;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.text.MessageFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class DAPDownloader {
 
+    public static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 4;
+    public static final long DEFAULT_CHUNK_MEMORY_BUDGET = 48L * 1024 * 1024;
+
     private static final int MAX_FILENAME_DISPLAY_LENGTH = 15;
+    private static final long PROGRESS_UPDATE_INTERVAL_MILLIS = 200L;
+    private static final int CHUNK_READ_AHEAD = 2;
 
     final Map<String, Boolean> dapUris;
     final List<String> fileURIs;
     private final DownloadContext downloadContext;
     private final DownloadProgressBarPM pm;
+    private final Object contextLock = new Object();
+    private int maxConcurrentDownloads = DEFAULT_MAX_CONCURRENT_DOWNLOADS;
+    private long chunkMemoryBudget = DEFAULT_CHUNK_MEMORY_BUDGET;
+    private volatile DownloadManager downloadManager;
+    private long transferredBytes;
+    private long reportedKilobytes;
+    private long lastProgressUpdate;
 
     public DAPDownloader(Map<String, Boolean> dapUris, List<String> fileURIs, DownloadContext downloadContext,
                          DownloadProgressBarPM pm) {
@@ -43,21 +61,62 @@ public class DAPDownloader {
         this.pm = pm;
     }
 
+    /**
+     * Sets the number of files which are downloaded at the same time. Downloading several files concurrently
+     * hides the latency of the servers, which dominates the download of many small granules.
+     */
+    public void setMaxConcurrentDownloads(int maxConcurrentDownloads) {
+        if (maxConcurrentDownloads < 1) {
+            throw new IllegalArgumentException("maxConcurrentDownloads must be at least 1");
+        }
+        this.maxConcurrentDownloads = maxConcurrentDownloads;
+    }
+
+    public int getMaxConcurrentDownloads() {
+        return maxConcurrentDownloads;
+    }
+
+    /**
+     * Sets the memory which may be used by the transfer of a constrained variable. The variable is transferred in
+     * chunks along its slowest dimension, so that the chunk being written and the chunks being read ahead fit into
+     * the budget.
+     */
+    public void setChunkMemoryBudget(long chunkMemoryBudget) {
+        if (chunkMemoryBudget < 1) {
+            throw new IllegalArgumentException("chunkMemoryBudget must be positive");
+        }
+        this.chunkMemoryBudget = chunkMemoryBudget;
+    }
+
+    public long getChunkMemoryBudget() {
+        return chunkMemoryBudget;
+    }
+
     public void saveProducts(File targetDir) throws IOException {
         if (targetDir != null && targetDir.isDirectory()) {
+            synchronized (this) {
+                downloadManager = new DownloadManager(maxConcurrentDownloads);
+            }
             downloadFilesWithDapAccess(targetDir);
             downloadFilesWithFileAccess(targetDir);
+            try {
+                downloadManager.awaitCompletion(pm);
+            } catch (InterruptedException e) {
+                // the download has been cancelled
+                Thread.currentThread().interrupt();
+            }
         } else {
             throw new IOException("No target directory specified.");
         }
     }
 
-    private void downloadFilesWithDapAccess(File targetDir) throws IOException {
-        for (Map.Entry<String, Boolean> entry : dapUris.entrySet()) {
-            if (pm.isCanceled()) {
-                break;
-            }
-            downloadDapFile(targetDir, entry.getKey(), entry.getValue());
+    private void downloadFilesWithDapAccess(File targetDir) {
+        for (final Map.Entry<String, Boolean> entry : dapUris.entrySet()) {
+            downloadManager.submit(() -> {
+                if (!isCanceled()) {
+                    downloadDapFile(targetDir, entry.getKey(), entry.getValue());
+                }
+            });
         }
     }
 
@@ -76,50 +135,35 @@ public class DAPDownloader {
     void writeNetcdfFile(File targetDir, String fileName, String constraintExpression, final DODSNetcdfFile sourceNetcdfFile, final boolean isLargeFile) throws IOException {
         final File file = new File(targetDir, fileName);
 
-        if (file.exists() && !downloadContext.mayOverwrite(fileName)) {
-            downloadContext.notifyFileDownloaded(file);
+        if (file.exists() && !mayOverwrite(fileName)) {
+            notifyFileDownloaded(file);
             updateProgressBar(fileName, (int) (file.length() / 1024));
             return;
         }
 
         if (StringUtils.isNullOrEmpty(constraintExpression)) {
-            try {
-                Thread thread = new Thread(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            FileWriter2 fileWriter = new FileWriter2(sourceNetcdfFile, file.getAbsolutePath(), NetcdfFileWriter.Version.netcdf3, null);
-                            fileWriter.write();
-                        } catch (IOException e) {
-                            throw new RuntimeException(e);
-                        }
-                    }
-                });
-                thread.start();
-                int downloadedBefore = 0;
-                while (thread.isAlive()) {
-                    try {
-                        Thread.sleep(1000L);
-                    } catch (InterruptedException ignore) {
-                        // ignore
-                    }
-                    int downloaded = (int) (file.length() / 1024);
-                    int delta = downloaded - downloadedBefore;
-                    if (delta > 0) {
-                        updateProgressBar(fileName, delta);
-                        downloadedBefore = downloaded;
+            FileWriter2 fileWriter = new FileWriter2(sourceNetcdfFile, file.getAbsolutePath(),
+                                                     NetcdfFileWriter.Version.netcdf3, null);
+            fileWriter.addProgressListener(new FileWriter2.FileWriterProgressListener() {
+                private long bytesWrittenBefore;
+
+                @Override
+                public void writeProgress(FileWriter2.FileWriterProgressEvent event) {
+                    final long bytesWritten = event.getBytesWritten();
+                    if (bytesWritten > bytesWrittenBefore) {
+                        transferred(fileName, bytesWritten - bytesWrittenBefore);
+                        bytesWrittenBefore = bytesWritten;
                     }
                 }
-            } catch (RuntimeException e) {
-                if (e.getCause() instanceof IOException) {
-                    throw (IOException) e.getCause();
-                } else {
-                    throw e;
+
+                @Override
+                public void writeStatus(String message) {
                 }
-            }
+            });
+            fileWriter.write();
 
-            if (!pm.isCanceled()) {
-                downloadContext.notifyFileDownloaded(file);
+            if (!isCanceled()) {
+                notifyFileDownloaded(file);
             }
             return;
         }
@@ -132,8 +176,9 @@ public class DAPDownloader {
          *   - create();
          *   - for all variables in new file:
          *      - get corresponding CE
-         *      - array = sourceNetcdfFile.readWithCE();
-         *      - variable.setData(array)
+         *      - split the CE along the slowest dimension into chunks fitting into the memory budget
+         *      - for all chunks: array = sourceNetcdfFile.readWithCE(), read ahead on the chunk reader
+         *      - write array at the origin of the chunk
          *   - close();
          */
 
@@ -165,25 +210,127 @@ public class DAPDownloader {
         }
         targetNetCDF.create();
 
-        for (String filteredVariable : filteredVariables) {
-            String varName = EscapeStrings.backslashEscape(filteredVariable, NetcdfFile.reservedSectionSpec);
-            final Variable sourceVariable = sourceNetcdfFile.findVariable(varName);
-            String ceForVariable = getConstraintExpression(filteredVariable, constraintExpression);
+        final ExecutorService chunkReader = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "OPeNDAP chunk reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (String filteredVariable : filteredVariables) {
+                if (isCanceled()) {
+                    break;
+                }
+                String varName = EscapeStrings.backslashEscape(filteredVariable, NetcdfFile.reservedSectionSpec);
+                final Variable sourceVariable = sourceNetcdfFile.findVariable(varName);
+                String ceForVariable = getConstraintExpression(filteredVariable, constraintExpression);
+                final int[] origin = getOrigin(filteredVariable, constraintExpression,
+                                               sourceVariable.getDimensions().size());
+                try {
+                    writeVariable(fileName, sourceNetcdfFile, sourceVariable, ceForVariable, origin, targetNetCDF,
+                                  chunkReader);
+                } catch (InvalidRangeException e) {
+                    throw new IOException(MessageFormat.format("Unable to download variable ''{0}'' into file ''{1}''.",
+                                                               filteredVariable, fileName), e);
+                }
+            }
+        } finally {
+            chunkReader.shutdownNow();
+            targetNetCDF.close();
+        }
+        if (!isCanceled()) {
+            notifyFileDownloaded(file);
+        }
+    }
+
+    /**
+     * Transfers the constrained variable in chunks along its slowest dimension. The chunks are read ahead on the
+     * chunk reader while the previous chunk is written, and are written at their origin in the target file.
+     */
+    private void writeVariable(String fileName, final DODSNetcdfFile sourceNetcdfFile, final Variable sourceVariable,
+                               String ceForVariable, int[] origin, NetcdfFileWriter targetNetCDF,
+                               ExecutorService chunkReader) throws IOException, InvalidRangeException {
+        final int[][] ranges = getRanges(ceForVariable, sourceVariable.getShape());
+        if (ranges.length == 0) {
             final Array values = sourceNetcdfFile.readWithCE(sourceVariable, ceForVariable);
-            final int[] origin = getOrigin(filteredVariable, constraintExpression,
-                                           sourceVariable.getDimensions().size());
+            targetNetCDF.write(sourceVariable, origin, values);
+            transferred(fileName, values.getSizeBytes());
+            return;
+        }
+        final String variablePrefix = ceForVariable.substring(0, ceForVariable.indexOf('['));
+        final int rowCount = getCount(ranges[0]);
+        final int chunkRowCount = getChunkRowCount(ranges, Math.max(1, sourceVariable.getElementSize()),
+                                                   chunkMemoryBudget / (CHUNK_READ_AHEAD + 1));
+        final Deque<Future<Array>> chunks = new ArrayDeque<>();
+        int nextRow = 0;
+        int writtenRows = 0;
+        while (writtenRows < rowCount) {
+            while (chunks.size() <= CHUNK_READ_AHEAD && nextRow < rowCount) {
+                final int chunkRows = Math.min(chunkRowCount, rowCount - nextRow);
+                final String chunkExpression = variablePrefix + getChunkConstraint(ranges, nextRow, chunkRows);
+                chunks.add(chunkReader.submit(() -> sourceNetcdfFile.readWithCE(sourceVariable, chunkExpression)));
+                nextRow += chunkRowCount;
+            }
+            final Array values;
             try {
-                targetNetCDF.write(sourceVariable, origin, values);
-            } catch (InvalidRangeException e) {
-                throw new IOException(MessageFormat.format("Unable to download variable ''{0}'' into file ''{1}''.",
-                                                           filteredVariable, fileName), e);
+                values = chunks.poll().get();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Download of '" + fileName + "' has been cancelled.");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
             }
+            final int[] chunkOrigin = origin.clone();
+            chunkOrigin[0] += writtenRows;
+            targetNetCDF.write(sourceVariable, chunkOrigin, values);
+            writtenRows += values.getShape()[0];
+            transferred(fileName, values.getSizeBytes());
+            if (isCanceled()) {
+                return;
+            }
+        }
+    }
+
+    private boolean isCanceled() {
+        return pm.isCanceled() || downloadManager != null && downloadManager.isCanceled();
+    }
+
+    private boolean mayOverwrite(String fileName) {
+        // the user is asked by one transfer at a time
+        synchronized (contextLock) {
+            return downloadContext.mayOverwrite(fileName);
+        }
+    }
+
+    private void notifyFileDownloaded(File file) {
+        flushProgress(file.getName());
+        synchronized (contextLock) {
+            downloadContext.notifyFileDownloaded(file);
         }
-        targetNetCDF.close();
-        downloadContext.notifyFileDownloaded(file);
     }
 
-    private void updateProgressBar(String fileName, int work) {
+    /**
+     * Receives the progress of all transfers. The progress bar is updated with whole kilobytes, at most every
+     * {@link #PROGRESS_UPDATE_INTERVAL_MILLIS} milliseconds.
+     */
+    private synchronized void transferred(String fileName, long byteCount) {
+        transferredBytes += byteCount;
+        if (System.currentTimeMillis() - lastProgressUpdate >= PROGRESS_UPDATE_INTERVAL_MILLIS) {
+            flushProgress(fileName);
+        }
+    }
+
+    private synchronized void flushProgress(String fileName) {
+        final int work = (int) (transferredBytes / 1024 - reportedKilobytes);
+        if (work > 0) {
+            reportedKilobytes += work;
+            lastProgressUpdate = System.currentTimeMillis();
+            updateProgressBar(fileName, work);
+        }
+    }
+
+    private synchronized void updateProgressBar(String fileName, int work) {
         pm.worked(work);
         StringBuilder preMessageBuilder = new StringBuilder(fileName);
         int currentWork = pm.getCurrentWork();
@@ -259,6 +406,70 @@ public class DAPDownloader {
         return origin;
     }
 
+    /**
+     * Returns the ranges of the variable constraint as {start, stride, stop} for every dimension of the variable.
+     * Dimensions which are not constrained cover the whole dimension.
+     *
+     * @return the ranges, or an empty array if the variable is a scalar
+     */
+    static int[][] getRanges(String variableConstraint, int[] shape) {
+        final int[][] ranges = new int[shape.length][];
+        final int bracketIndex = variableConstraint.indexOf('[');
+        final String[] rangeConstraints = bracketIndex < 0 ? new String[0] :
+                                          variableConstraint.substring(bracketIndex + 1).replace("]", "").split("\\[");
+        if (rangeConstraints.length > shape.length) {
+            throw new IllegalArgumentException(
+                    MessageFormat.format("Illegal expression ''{0}'' for a variable with {1} dimensions.",
+                                         variableConstraint, shape.length));
+        }
+        for (int i = 0; i < shape.length; i++) {
+            if (i < rangeConstraints.length) {
+                final String[] rangeComponents = rangeConstraints[i].split(":");
+                final int start = Integer.parseInt(rangeComponents[0].trim());
+                final int stride = rangeComponents.length == 3 ? Integer.parseInt(rangeComponents[1].trim()) : 1;
+                final int stop = Integer.parseInt(rangeComponents[rangeComponents.length - 1].trim());
+                ranges[i] = new int[]{start, stride, stop};
+            } else {
+                ranges[i] = new int[]{0, 1, shape[i] - 1};
+            }
+        }
+        return ranges;
+    }
+
+    static int getCount(int[] range) {
+        return (range[2] - range[0]) / range[1] + 1;
+    }
+
+    /**
+     * @return the number of elements along the slowest dimension which fit into a chunk of the given size, at
+     * least one
+     */
+    static int getChunkRowCount(int[][] ranges, int elementSize, long chunkBytes) {
+        long rowBytes = elementSize;
+        for (int i = 1; i < ranges.length; i++) {
+            rowBytes *= getCount(ranges[i]);
+        }
+        return (int) Math.max(1, Math.min(getCount(ranges[0]), chunkBytes / Math.max(1, rowBytes)));
+    }
+
+    /**
+     * @return the constraint of the chunk of {@code rowCount} elements along the slowest dimension, starting at the
+     * element {@code firstRow} of the constrained range
+     */
+    static String getChunkConstraint(int[][] ranges, int firstRow, int rowCount) {
+        final StringBuilder constraint = new StringBuilder();
+        for (int i = 0; i < ranges.length; i++) {
+            int start = ranges[i][0];
+            int stop = ranges[i][2];
+            if (i == 0) {
+                start += firstRow * ranges[i][1];
+                stop = start + (rowCount - 1) * ranges[i][1];
+            }
+            constraint.append('[').append(start).append(':').append(ranges[i][1]).append(':').append(stop).append(']');
+        }
+        return constraint.toString();
+    }
+
     static List<String> filterVariables(List<String> variableNames, String constraintExpression) {
         final List<String> filteredVariables = new ArrayList<String>();
         final List<String> constrainedVariableNames = getVariableNames(constraintExpression);
@@ -307,24 +518,35 @@ public class DAPDownloader {
         return variableNames;
     }
 
-    private void downloadFilesWithFileAccess(File targetDir) throws IOException {
-        for (String fileURI : fileURIs) {
-            if (pm.isCanceled()) {
-                break;
-            }
-            try {
-                downloadFile(targetDir, fileURI);
-            } catch (Exception e) {
-                throw new IOException("Unable to download file '" + fileURI + "'.", e);
-            }
+    private void downloadFilesWithFileAccess(File targetDir) {
+        for (final String fileURI : fileURIs) {
+            downloadManager.submit(() -> {
+                if (isCanceled()) {
+                    return;
+                }
+                try {
+                    downloadFile(targetDir, fileURI);
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException("Unable to download file '" + fileURI + "'.", e);
+                }
+            });
         }
     }
 
-    void downloadFile(File targetDir, String fileURI) throws URISyntaxException, IOException {
+    void downloadFile(File targetDir, String fileURI) throws URISyntaxException, IOException, InterruptedException {
         final URL fileUrl = new URI(fileURI).toURL();
         updateProgressBar(fileUrl.getFile(), 0);
-        final File file = FileDownloader.downloadFile(fileUrl, targetDir, null);
-        downloadContext.notifyFileDownloaded(file);
+        final File file = getDownloadManager().download(fileUrl, targetDir, this::transferred);
+        notifyFileDownloaded(file);
+    }
+
+    private synchronized DownloadManager getDownloadManager() {
+        if (downloadManager == null) {
+            downloadManager = new DownloadManager(maxConcurrentDownloads);
+        }
+        return downloadManager;
     }
 
     public interface DownloadContext {
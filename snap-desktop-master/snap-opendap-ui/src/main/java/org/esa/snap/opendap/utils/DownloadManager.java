@@ -0,0 +1,324 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.opendap.utils;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.util.SystemUtils;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs a number of transfers concurrently. Files accessed by plain URLs are downloaded into a partial file next
+ * to the target file. If a transfer fails, it is retried with an exponential backoff, and HTTP transfers are
+ * resumed from the end of the partial file by a byte-range request. Progress is reported to a listener as the
+ * bytes arrive.
+ */
+class DownloadManager {
+
+    static final int DEFAULT_MAX_RETRIES = 4;
+    static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 1000L;
+
+    static final String PART_FILE_EXTENSION = ".part";
+
+    private static final long MAX_BACKOFF_MILLIS = 30000L;
+    private static final int CONNECT_TIMEOUT_MILLIS = 30000;
+    private static final int READ_TIMEOUT_MILLIS = 60000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * A transfer of a single file.
+     */
+    interface Transfer {
+        void run() throws Exception;
+    }
+
+    /**
+     * Receives the number of bytes which have been transferred since the last call.
+     */
+    interface ProgressListener {
+        void transferred(String fileName, long byteCount);
+    }
+
+    private final ExecutorService executor;
+    private final List<Future<?>> futures = new ArrayList<>();
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+    private long initialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+    private volatile boolean canceled;
+
+    DownloadManager(int maxConcurrentTransfers) {
+        if (maxConcurrentTransfers < 1) {
+            throw new IllegalArgumentException("maxConcurrentTransfers must be at least 1");
+        }
+        executor = Executors.newFixedThreadPool(maxConcurrentTransfers, runnable -> {
+            final Thread thread = new Thread(runnable, "OPeNDAP download");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param maxRetries           the number of times a failed transfer is retried
+     * @param initialBackoffMillis the delay before the first retry, doubled for every further retry
+     */
+    void setRetryPolicy(int maxRetries, long initialBackoffMillis) {
+        this.maxRetries = maxRetries;
+        this.initialBackoffMillis = initialBackoffMillis;
+    }
+
+    synchronized void submit(final Transfer transfer) {
+        futures.add(executor.submit(() -> {
+            transfer.run();
+            return null;
+        }));
+    }
+
+    /**
+     * Waits until all submitted transfers have finished and shuts the manager down. If a transfer fails, the
+     * remaining transfers are cancelled.
+     *
+     * @throws IOException if a transfer has failed
+     */
+    void awaitCompletion() throws IOException, InterruptedException {
+        awaitCompletion(ProgressMonitor.NULL);
+    }
+
+    /**
+     * Waits until all submitted transfers have finished and shuts the manager down. If a transfer fails or the
+     * progress monitor is cancelled, the remaining transfers are cancelled.
+     *
+     * @throws IOException if a transfer has failed
+     */
+    void awaitCompletion(ProgressMonitor pm) throws IOException, InterruptedException {
+        final List<Future<?>> submitted;
+        synchronized (this) {
+            submitted = new ArrayList<>(futures);
+        }
+        try {
+            for (Future<?> future : submitted) {
+                while (true) {
+                    if (pm.isCanceled() && !canceled) {
+                        cancel();
+                    }
+                    try {
+                        future.get(100, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException e) {
+                        // check for cancellation again
+                    } catch (CancellationException ignore) {
+                        // cancelled by the user
+                        break;
+                    } catch (ExecutionException e) {
+                        cancel();
+                        final Throwable cause = e.getCause();
+                        if (cause instanceof IOException) {
+                            throw (IOException) cause;
+                        }
+                        throw new IOException(cause.getMessage(), cause);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            cancel();
+            throw e;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Cancels all transfers which are still running or waiting.
+     */
+    synchronized void cancel() {
+        canceled = true;
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+        executor.shutdownNow();
+    }
+
+    boolean isCanceled() {
+        return canceled;
+    }
+
+    /**
+     * Downloads the file of the given URL into the target directory, retrying failed attempts.
+     *
+     * @return the downloaded file
+     */
+    File download(URL url, File targetDir, ProgressListener listener) throws IOException, InterruptedException {
+        final String fileName = getFileName(url);
+        final File targetFile = new File(targetDir, fileName);
+        final File partFile = new File(targetDir, fileName + PART_FILE_EXTENSION);
+        final TransferProgress progress = new TransferProgress(fileName, listener);
+        for (int attempt = 0; ; attempt++) {
+            try {
+                transfer(url, partFile, progress);
+                Files.move(partFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                return targetFile;
+            } catch (IOException e) {
+                // read timeouts are interrupted I/O as well, but are retried
+                if (canceled || e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException)) {
+                    throw new InterruptedException("Download of '" + url + "' has been cancelled.");
+                }
+                if (attempt >= maxRetries || !isRetryable(e)) {
+                    throw e;
+                }
+                final long backoff = Math.min(MAX_BACKOFF_MILLIS, initialBackoffMillis << Math.min(attempt, 16));
+                SystemUtils.LOG.warning("Download of '" + url + "' failed, retrying in " + backoff + " ms: " +
+                                        e.getMessage());
+                Thread.sleep(backoff);
+                if (canceled) {
+                    throw new InterruptedException("Download of '" + url + "' has been cancelled.");
+                }
+            }
+        }
+    }
+
+    private void transfer(URL url, File partFile, TransferProgress progress) throws IOException {
+        long offset = partFile.length();
+        final URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        if (connection instanceof HttpURLConnection) {
+            final HttpURLConnection httpConnection = (HttpURLConnection) connection;
+            if (offset > 0) {
+                httpConnection.setRequestProperty("Range", "bytes=" + offset + "-");
+            }
+            final int responseCode = httpConnection.getResponseCode();
+            if (responseCode == 416 && offset > 0) {
+                // the partial file is complete if its length equals the length given in 'bytes */<length>'
+                final String contentRange = httpConnection.getHeaderField("Content-Range");
+                httpConnection.disconnect();
+                if (contentRange != null && contentRange.endsWith("/" + offset)) {
+                    return;
+                }
+                Files.deleteIfExists(partFile.toPath());
+                throw new IOException("Unable to resume download of '" + url + "'.");
+            }
+            if (responseCode >= 400) {
+                httpConnection.disconnect();
+                final String message = "Unable to download '" + url + "': HTTP " + responseCode;
+                if (responseCode >= 500 || responseCode == 408 || responseCode == 429) {
+                    throw new IOException(message);
+                }
+                throw new PermanentFailureException(message);
+            }
+            if (responseCode != HttpURLConnection.HTTP_PARTIAL) {
+                // the server has ignored the range, the file is sent from the beginning
+                offset = 0;
+            }
+        } else {
+            offset = 0;
+        }
+
+        progress.start(offset);
+        final long contentLength = connection.getContentLengthLong();
+        long received = 0;
+        try (InputStream in = connection.getInputStream();
+             OutputStream out = new FileOutputStream(partFile, offset > 0)) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                if (canceled || Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException();
+                }
+                out.write(buffer, 0, count);
+                received += count;
+                progress.transferred(offset + received);
+            }
+        }
+        if (contentLength >= 0 && received < contentLength) {
+            throw new IOException("Download of '" + url + "' is incomplete: received " + received +
+                                         " of " + contentLength + " bytes.");
+        }
+    }
+
+    private static boolean isRetryable(IOException e) {
+        // everything but missing files and requests rejected by the server is retried, e.g. connection resets,
+        // timeouts and transfers which ended prematurely
+        return !(e instanceof FileNotFoundException || e instanceof PermanentFailureException);
+    }
+
+    static String getFileName(URL url) {
+        final String path = url.getPath();
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Reports the bytes of a file to the listener only once, also if a retry has to transfer them again because
+     * the server does not resume the download.
+     */
+    private static class TransferProgress {
+
+        private final String fileName;
+        private final ProgressListener listener;
+        private long reportedEnd = -1;
+
+        private TransferProgress(String fileName, ProgressListener listener) {
+            this.fileName = fileName;
+            this.listener = listener;
+        }
+
+        /**
+         * @param offset the position in the file at which the transfer starts
+         */
+        void start(long offset) {
+            if (reportedEnd < 0) {
+                // the content of a partial file left by an earlier download has not been reported
+                reportedEnd = offset;
+            }
+        }
+
+        /**
+         * @param position the position in the file up to which the content has been transferred
+         */
+        void transferred(long position) {
+            if (position > reportedEnd) {
+                listener.transferred(fileName, position - reportedEnd);
+                reportedEnd = position;
+            }
+        }
+    }
+
+    private static class PermanentFailureException extends IOException {
+
+        private PermanentFailureException(String message) {
+            super(message);
+        }
+    }
+}
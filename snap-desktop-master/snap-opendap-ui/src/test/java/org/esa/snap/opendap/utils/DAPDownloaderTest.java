@@ -195,6 +195,45 @@ public class DAPDownloaderTest {
                                                                           "flag_sst[0:1:10][0:1:10],wind[0:1:10][0:1:10],sst[0:1:10]"));
     }
 
+    @Test
+    public void testGetRanges() throws Exception {
+        int[][] ranges = DAPDownloader.getRanges("sst[0:1:10][5:2:9]", new int[]{20, 30});
+        assertArrayEquals(new int[]{0, 1, 10}, ranges[0]);
+        assertArrayEquals(new int[]{5, 2, 9}, ranges[1]);
+
+        ranges = DAPDownloader.getRanges("sst[3:7][4]", new int[]{20, 30, 40});
+        assertArrayEquals(new int[]{3, 1, 7}, ranges[0]);
+        assertArrayEquals(new int[]{4, 1, 4}, ranges[1]);
+        assertArrayEquals(new int[]{0, 1, 39}, ranges[2]);
+
+        assertEquals(0, DAPDownloader.getRanges("time", new int[0]).length);
+
+        try {
+            DAPDownloader.getRanges("sst[0:1:10][0:1:10]", new int[]{20});
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("Illegal expression"));
+        }
+    }
+
+    @Test
+    public void testGetChunkRowCount() throws Exception {
+        final int[][] ranges = {{0, 1, 99}, {0, 2, 19}, {0, 1, 9}};
+        assertEquals(10, DAPDownloader.getCount(ranges[1]));
+        // a row of 10 x 10 floats takes 400 bytes
+        assertEquals(25, DAPDownloader.getChunkRowCount(ranges, 4, 10000));
+        assertEquals(100, DAPDownloader.getChunkRowCount(ranges, 4, 1000000));
+        assertEquals(1, DAPDownloader.getChunkRowCount(ranges, 4, 100));
+    }
+
+    @Test
+    public void testGetChunkConstraint() throws Exception {
+        final int[][] ranges = {{10, 3, 40}, {0, 1, 5}};
+        assertEquals("[10:3:19][0:1:5]", DAPDownloader.getChunkConstraint(ranges, 0, 4));
+        assertEquals("[22:3:31][0:1:5]", DAPDownloader.getChunkConstraint(ranges, 4, 4));
+        assertEquals("[34:3:40][0:1:5]", DAPDownloader.getChunkConstraint(ranges, 8, 3));
+    }
+
     @Test
     public void testGetDownloadSpeed() {
         assertEquals(1024.0 / 60.0, DAPDownloader.getDownloadSpeed(60 * 1000, 1024), 1E-4);
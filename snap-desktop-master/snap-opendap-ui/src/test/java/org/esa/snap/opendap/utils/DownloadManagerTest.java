@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.opendap.utils;
+
+import com.bc.ceres.core.NullProgressMonitor;
+import com.bc.ceres.core.ProgressMonitor;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.esa.snap.util.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the download manager against a local stand-in for an HTTP file server.
+ */
+public class DownloadManagerTest {
+
+    private static final File TESTDATA_DIR = new File("target/download_manager_test");
+    private static final byte[] CONTENT = createContent(200000);
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private final List<String> rangeHeaders = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() throws Exception {
+        TESTDATA_DIR.mkdirs();
+        if (!TESTDATA_DIR.isDirectory()) {
+            fail("Can't create test I/O directory: " + TESTDATA_DIR);
+        }
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        if (!FileUtils.deleteTree(TESTDATA_DIR)) {
+            System.out.println("Warning: failed to completely delete test I/O directory:" + TESTDATA_DIR);
+        }
+    }
+
+    @Test
+    public void testDownload() throws Exception {
+        server.createContext("/data/complete.nc", exchange -> sendContent(exchange, CONTENT.length));
+        final AtomicLong transferred = new AtomicLong();
+
+        final DownloadManager downloadManager = new DownloadManager(1);
+        final File file = downloadManager.download(getUrl("/data/complete.nc"), TESTDATA_DIR,
+                                                   (fileName, byteCount) -> transferred.addAndGet(byteCount));
+
+        assertEquals("complete.nc", file.getName());
+        assertArrayEquals(CONTENT, Files.readAllBytes(file.toPath()));
+        assertEquals(CONTENT.length, transferred.get());
+        assertFalse(new File(TESTDATA_DIR, "complete.nc" + DownloadManager.PART_FILE_EXTENSION).exists());
+    }
+
+    @Test
+    public void testInterruptedDownloadIsResumed() throws Exception {
+        final AtomicBoolean failed = new AtomicBoolean();
+        server.createContext("/data/flaky.nc", exchange -> {
+            // the first transfer breaks off after half of the content
+            sendContent(exchange, failed.getAndSet(true) ? CONTENT.length : CONTENT.length / 2);
+        });
+        final AtomicLong transferred = new AtomicLong();
+
+        final DownloadManager downloadManager = new DownloadManager(1);
+        downloadManager.setRetryPolicy(2, 10);
+        final File file = downloadManager.download(getUrl("/data/flaky.nc"), TESTDATA_DIR,
+                                                   (fileName, byteCount) -> transferred.addAndGet(byteCount));
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(file.toPath()));
+        assertEquals(2, rangeHeaders.size());
+        assertNull(rangeHeaders.get(0));
+        assertEquals("bytes=" + CONTENT.length / 2 + "-", rangeHeaders.get(1));
+        assertEquals(CONTENT.length, transferred.get());
+    }
+
+    @Test
+    public void testRestartedDownloadIsReportedOnce() throws Exception {
+        final AtomicBoolean failed = new AtomicBoolean();
+        server.createContext("/data/unresumable.nc", exchange -> {
+            // the server ignores the range of the retry and sends the content from the beginning
+            final boolean retry = failed.getAndSet(true);
+            exchange.sendResponseHeaders(200, CONTENT.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(CONTENT, 0, retry ? CONTENT.length : CONTENT.length / 2);
+            }
+        });
+        final AtomicLong transferred = new AtomicLong();
+
+        final DownloadManager downloadManager = new DownloadManager(1);
+        downloadManager.setRetryPolicy(2, 10);
+        final File file = downloadManager.download(getUrl("/data/unresumable.nc"), TESTDATA_DIR,
+                                                   (fileName, byteCount) -> transferred.addAndGet(byteCount));
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(file.toPath()));
+        assertEquals(CONTENT.length, transferred.get());
+    }
+
+    @Test
+    public void testCancellationStopsTransfersInProgress() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        server.createContext("/data/stalling.nc", exchange -> {
+            // sends half of the content and then stalls
+            exchange.sendResponseHeaders(200, CONTENT.length);
+            final OutputStream out = exchange.getResponseBody();
+            out.write(CONTENT, 0, CONTENT.length / 2);
+            out.flush();
+            try {
+                release.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        final CountDownLatch transferStarted = new CountDownLatch(1);
+
+        final DownloadManager downloadManager = new DownloadManager(1);
+        downloadManager.submit(() -> downloadManager.download(getUrl("/data/stalling.nc"), TESTDATA_DIR,
+                                                              (fileName, byteCount) -> transferStarted.countDown()));
+        assertTrue(transferStarted.await(10, TimeUnit.SECONDS));
+        final ProgressMonitor pm = new NullProgressMonitor();
+        pm.setCanceled(true);
+        try {
+            final long start = System.currentTimeMillis();
+            downloadManager.awaitCompletion(pm);
+            assertTrue(System.currentTimeMillis() - start < 5000);
+            assertTrue(downloadManager.isCanceled());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testMissingFileIsNotRetried() throws Exception {
+        final AtomicInteger requestCount = new AtomicInteger();
+        server.createContext("/data/missing.nc", exchange -> {
+            requestCount.incrementAndGet();
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+
+        final DownloadManager downloadManager = new DownloadManager(1);
+        downloadManager.setRetryPolicy(3, 10);
+        try {
+            downloadManager.download(getUrl("/data/missing.nc"), TESTDATA_DIR, (fileName, byteCount) -> {
+            });
+            fail();
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("404"));
+        }
+        assertEquals(1, requestCount.get());
+    }
+
+    @Test
+    public void testServerErrorIsRetriedUntilGivingUp() throws Exception {
+        final AtomicInteger requestCount = new AtomicInteger();
+        server.createContext("/data/unavailable.nc", exchange -> {
+            requestCount.incrementAndGet();
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+
+        final DownloadManager downloadManager = new DownloadManager(1);
+        downloadManager.setRetryPolicy(2, 10);
+        try {
+            downloadManager.download(getUrl("/data/unavailable.nc"), TESTDATA_DIR, (fileName, byteCount) -> {
+            });
+            fail();
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("503"));
+        }
+        assertEquals(3, requestCount.get());
+    }
+
+    @Test
+    public void testTransfersRunConcurrently() throws Exception {
+        // every request waits until all requests have arrived, which only happens if they are served concurrently
+        final int fileCount = 3;
+        final CountDownLatch allRequestsArrived = new CountDownLatch(fileCount);
+        server.createContext("/data/", exchange -> {
+            allRequestsArrived.countDown();
+            try {
+                allRequestsArrived.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sendContent(exchange, CONTENT.length);
+        });
+
+        final DownloadManager downloadManager = new DownloadManager(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            final URL url = getUrl("/data/granule_" + i + ".nc");
+            downloadManager.submit(() -> downloadManager.download(url, TESTDATA_DIR, (fileName, byteCount) -> {
+            }));
+        }
+        downloadManager.awaitCompletion();
+
+        assertEquals(0, allRequestsArrived.getCount());
+        for (int i = 0; i < fileCount; i++) {
+            assertArrayEquals(CONTENT, Files.readAllBytes(new File(TESTDATA_DIR, "granule_" + i + ".nc").toPath()));
+        }
+    }
+
+    @Test
+    public void testFailedTransferFailsCompletion() throws Exception {
+        final DownloadManager downloadManager = new DownloadManager(2);
+        downloadManager.submit(() -> {
+            throw new FileNotFoundException("missing.nc");
+        });
+        try {
+            downloadManager.awaitCompletion();
+            fail();
+        } catch (FileNotFoundException expected) {
+            assertTrue(downloadManager.isCanceled());
+        }
+    }
+
+    private URL getUrl(String path) throws IOException {
+        return new URL("http://localhost:" + server.getAddress().getPort() + path);
+    }
+
+    // serves the content from the requested offset, but breaks off the transfer after the given number of bytes
+    private void sendContent(HttpExchange exchange, int sentLength) throws IOException {
+        final String range = exchange.getRequestHeaders().getFirst("Range");
+        rangeHeaders.add(range);
+        int offset = 0;
+        if (range != null) {
+            offset = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+            exchange.getResponseHeaders().add("Content-Range",
+                                              "bytes " + offset + "-" + (CONTENT.length - 1) + "/" + CONTENT.length);
+            exchange.sendResponseHeaders(206, CONTENT.length - offset);
+        } else {
+            exchange.sendResponseHeaders(200, CONTENT.length);
+        }
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(CONTENT, offset, Math.min(sentLength, CONTENT.length) - offset);
+        }
+    }
+
+    private static byte[] createContent(int length) {
+        final byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) (i * 31 + i / 256);
+        }
+        return content;
+    }
+}
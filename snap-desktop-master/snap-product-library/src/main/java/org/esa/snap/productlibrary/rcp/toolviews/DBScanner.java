@@ -16,25 +16,51 @@
 package org.esa.snap.productlibrary.rcp.toolviews;
 
 import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.util.SystemUtils;
 import org.esa.snap.engine_utilities.db.CommonReaders;
 import org.esa.snap.engine_utilities.db.ProductDB;
 import org.esa.snap.engine_utilities.db.ProductEntry;
 import org.esa.snap.engine_utilities.db.QuickLookGenerator;
-import org.esa.snap.engine_utilities.gpf.ThreadManager;
 import org.esa.snap.engine_utilities.util.ProductFunctions;
 
 import javax.swing.SwingWorker;
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 
 /**
- * Scans folders for products to add or update into the database
+ * Scans folders for products to add or update into the database.
+ * <p>
+ * The scan is a pipeline of stages connected by bounded queues: a single thread discovers the files of the
+ * folders, several threads read the product headers, and the products are saved into the database in batches by
+ * the scanner thread. Files which have not changed since the last scan are not read again. Quicklooks are
+ * generated by a separate stage with a fixed number of threads.
  */
 public final class DBScanner extends SwingWorker {
+
+    private static final File END_OF_FILES = new File("");
+    private static final int FILE_QUEUE_CAPACITY = 1000;
+    private static final int SAVE_BATCH_SIZE = 50;
+    private static final int QUICKLOOK_THREAD_COUNT = 2;
+    private static final int PROGRESS_STEPS = 1000;
+    private static final long POLL_MILLIS = 200;
+    private static final long NOTIFY_MILLIS = 2000;
+
     private final ProductDB db;
 
     private final File baseDir;
@@ -42,7 +68,9 @@ public final class DBScanner extends SwingWorker {
     private final boolean generateQuicklooks;
     private final com.bc.ceres.core.ProgressMonitor pm;
     private final List<DBScannerListener> listenerList = new ArrayList<>(1);
-    private final List<ErrorFile> errorList = new ArrayList<>();
+    private final List<ErrorFile> errorList = Collections.synchronizedList(new ArrayList<>());
+    // reading product headers is mostly waiting for I/O
+    private int readerThreadCount = 4;
 
     public DBScanner(final ProductDB database, final File baseDir, final boolean doRecursive,
                      final boolean doQuicklooks, final com.bc.ceres.core.ProgressMonitor pm) {
@@ -53,6 +81,22 @@ public final class DBScanner extends SwingWorker {
         this.generateQuicklooks = doQuicklooks;
     }
 
+    public int getReaderThreadCount() {
+        return readerThreadCount;
+    }
+
+    /**
+     * Sets the number of threads which read products concurrently. Must be called before the scanner is executed.
+     *
+     * @param readerThreadCount the number of reader threads, at least one
+     */
+    public void setReaderThreadCount(final int readerThreadCount) {
+        if (readerThreadCount < 1) {
+            throw new IllegalArgumentException("readerThreadCount must be at least 1");
+        }
+        this.readerThreadCount = readerThreadCount;
+    }
+
     public void addListener(final DBScannerListener listener) {
         if (!listenerList.contains(listener)) {
             listenerList.add(listener);
@@ -73,153 +117,367 @@ public final class DBScanner extends SwingWorker {
     protected Boolean doInBackground() throws Exception {
         errorList.clear();
 
-        final List<File> dirList = new ArrayList<>(20);
-        dirList.add(baseDir);
-        if (doRecursive) {
-            final File[] subDirs = collectAllSubDirs(baseDir, 0, pm);
-            dirList.addAll(Arrays.asList(subDirs));
+        final ProductEntry[] entriesInPath = db.getProductEntryInPath(baseDir);
+        final Map<File, ProductEntry> fileMap = new HashMap<>(entriesInPath.length);
+        for (ProductEntry entry : entriesInPath) {
+            fileMap.put(entry.getFile(), entry);
         }
+        final ScanFingerprints fingerprints = ScanFingerprints.load(baseDir);
+
+        final Scan scan = new Scan(fileMap, fingerprints);
+        try {
+            final boolean complete = scan.indexProducts();
+            fingerprints.save(complete);
 
-        final ProductFunctions.ValidProductFileFilter fileFilter = new ProductFunctions.ValidProductFileFilter(false);
-        final List<File> fileList = new ArrayList<>(dirList.size());
-        for (File file : dirList) {
-            final File[] files = file.listFiles(fileFilter);
-            if(files != null) {
-                fileList.addAll(Arrays.asList(files));
+            db.cleanUpRemovedProducts(pm);
+
+            notifyMSG(DBScannerListener.MSG.FOLDERS_SCANNED);
+
+            if (generateQuicklooks && !pm.isCanceled()) {
+                scan.awaitQuicklooks();
             }
-            pm.setTaskName("Collecting "+fileList.size()+" files...");
+            pm.setTaskName("");
+
+        } catch (Throwable e) {
+            SystemUtils.LOG.log(Level.WARNING, "Scanning failed", e);
+        } finally {
+            scan.shutdown();
+            pm.done();
         }
+        return true;
+    }
 
-        final List<File> qlProductFiles = new ArrayList<>(fileList.size());
-        final List<Integer> qlIDs = new ArrayList<>(fileList.size());
+    @Override
+    public void done() {
+        notifyMSG(DBScannerListener.MSG.DONE);
+    }
 
-        final ProductEntry[] entriesInPath = db.getProductEntryInPath(baseDir);
-        final Map<File, ProductEntry> fileMap = new ConcurrentHashMap<>(entriesInPath.length);
-        for (ProductEntry entry : entriesInPath) {
-            fileMap.put(entry.getFile(), entry);
+    public List<ErrorFile> getErrorList() {
+        return errorList;
+    }
+
+    /**
+     * The stages of a single scan. The progress monitor and the database are only used by the scanner thread.
+     */
+    private final class Scan {
+
+        private final Map<File, ProductEntry> fileMap;
+        // the entries of changed products, which are replaced when the products are saved again
+        private final Map<File, ProductEntry> staleEntries = new ConcurrentHashMap<>();
+        private final ScanFingerprints fingerprints;
+        private final BlockingQueue<File> fileQueue = new ArrayBlockingQueue<>(FILE_QUEUE_CAPACITY);
+        private final BlockingQueue<ReadProduct> productQueue = new ArrayBlockingQueue<>(2 * SAVE_BATCH_SIZE);
+        private final ExecutorService stages;
+        private final ExecutorService quicklookGenerators;
+        private final CountDownLatch readersDone;
+        private final AtomicInteger filesFound = new AtomicInteger();
+        private final AtomicInteger filesScanned = new AtomicInteger();
+        private final AtomicInteger quicklooksQueued = new AtomicInteger();
+        private final AtomicInteger quicklooksGenerated = new AtomicInteger();
+        private volatile boolean discoveryDone;
+        private volatile boolean discoveryComplete;
+        private volatile boolean cancelled;
+        private int prodCount;
+        private int progress;
+        private int notifiedQuicklooks;
+        private long lastNotifyTime;
+
+        Scan(final Map<File, ProductEntry> fileMap, final ScanFingerprints fingerprints) {
+            this.fileMap = fileMap;
+            this.fingerprints = fingerprints;
+            stages = Executors.newFixedThreadPool(1 + readerThreadCount,
+                                                  createThreadFactory("Product Library scanner", Thread.NORM_PRIORITY));
+            quicklookGenerators = generateQuicklooks ?
+                    Executors.newFixedThreadPool(QUICKLOOK_THREAD_COUNT,
+                                                 createThreadFactory("Product Library quicklook generator",
+                                                                     Thread.MIN_PRIORITY)) : null;
+            readersDone = new CountDownLatch(readerThreadCount);
         }
 
-        final int total = fileList.size();
-        pm.beginTask("Scanning Files...", total);
-        int i = 0;
-        int prodCount = 0;
-        try {
-            for (File file : fileList) {
-                ++i;
-                String taskMsg = "Scanning " + i + " of " + total + " files ";
-                if (prodCount > 0)
-                    taskMsg += "(" + prodCount + " new products)";
-                pm.setTaskName(taskMsg);
-                pm.worked(1);
-
-                // check if already exists in db
-                //final ProductEntry existingEntry = db.getProductEntry(file);
-                final ProductEntry existingEntry = fileMap.get(file);
-
-                if (existingEntry != null) {
+        /**
+         * Discovers and reads the products and saves them into the database.
+         *
+         * @return whether all files of the folders have been scanned
+         */
+        boolean indexProducts() throws InterruptedException {
+            pm.beginTask("Scanning Files...", PROGRESS_STEPS);
+            stages.execute(this::discoverFiles);
+            for (int i = 0; i < readerThreadCount; i++) {
+                stages.execute(this::readProducts);
+            }
+
+            final List<ReadProduct> batch = new ArrayList<>(SAVE_BATCH_SIZE);
+            while (readersDone.getCount() > 0 || !productQueue.isEmpty()) {
+                if (pm.isCanceled()) {
+                    stopStages();
+                    return false;
+                }
+                final ReadProduct first = productQueue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    productQueue.drainTo(batch, SAVE_BATCH_SIZE - 1);
+                    saveProducts(batch);
+                    batch.clear();
+                }
+                updateScanProgress();
+                notifyQuicklooks(false);
+            }
+            return discoveryComplete;
+        }
+
+        /**
+         * Waits for the queued quicklooks to be generated.
+         */
+        void awaitQuicklooks() throws InterruptedException {
+            final int total = quicklooksQueued.get();
+            pm.beginTask("Generating Quicklooks...", total);
+            quicklookGenerators.shutdown();
+            int generated = 0;
+            while (!quicklookGenerators.awaitTermination(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (pm.isCanceled()) {
+                    return;
+                }
+                final int count = quicklooksGenerated.get();
+                pm.setTaskName("Generating Quicklook... " + count + " of " + total);
+                pm.worked(count - generated);
+                generated = count;
+                notifyQuicklooks(false);
+            }
+            notifyQuicklooks(true);
+        }
+
+        void shutdown() {
+            stopStages();
+            if (quicklookGenerators != null) {
+                quicklookGenerators.shutdownNow();
+            }
+            // the entries of products which could not be read again are kept
+            for (ProductEntry staleEntry : staleEntries.values()) {
+                staleEntry.dispose();
+            }
+            staleEntries.clear();
+        }
+
+        private void stopStages() {
+            cancelled = true;
+            stages.shutdownNow();
+            try {
+                stages.awaitTermination(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ReadProduct read;
+            while ((read = productQueue.poll()) != null) {
+                read.product.dispose();
+            }
+        }
+
+        private void discoverFiles() {
+            try {
+                try {
+                    final ProductFunctions.ValidProductFileFilter fileFilter = new ProductFunctions.ValidProductFileFilter(false);
+                    final ProductFunctions.DirectoryFileFilter dirFilter = new ProductFunctions.DirectoryFileFilter();
+                    final Deque<File> dirStack = new ArrayDeque<>();
+                    dirStack.push(baseDir);
+                    while (!dirStack.isEmpty()) {
+                        final File dir = dirStack.pop();
+                        if (doRecursive) {
+                            final File[] subDirs = dir.listFiles(dirFilter);
+                            if (subDirs != null) {
+                                for (int i = subDirs.length - 1; i >= 0; i--) {
+                                    dirStack.push(subDirs[i]);
+                                }
+                            }
+                        }
+                        final File[] files = dir.listFiles(fileFilter);
+                        if (files == null) {
+                            continue;
+                        }
+                        for (File file : files) {
+                            filesFound.incrementAndGet();
+                            if (needsReading(file)) {
+                                fileQueue.put(file);
+                            } else {
+                                filesScanned.incrementAndGet();
+                            }
+                        }
+                    }
+                    discoveryComplete = true;
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Throwable e) {
+                    SystemUtils.LOG.log(Level.WARNING, "Unable to list files of " + baseDir.getAbsolutePath(), e);
+                }
+                for (int i = 0; i < readerThreadCount; i++) {
+                    fileQueue.put(END_OF_FILES);
+                }
+            } catch (InterruptedException e) {
+                // scan cancelled
+            } finally {
+                discoveryDone = true;
+            }
+        }
+
+        private boolean needsReading(final File file) {
+            final ScanFingerprints.Outcome outcome = fingerprints.getUnchangedOutcome(file);
+            final ProductEntry existingEntry = fileMap.get(file);
+            if (existingEntry != null) {
+                // changed products are read again, entries scanned before fingerprints were recorded are not
+                if (outcome == null && fingerprints.isKnown(file)) {
+                    staleEntries.put(file, existingEntry);
+                    return true;
+                }
+                try {
+                    fingerprints.put(file, ScanFingerprints.Outcome.PRODUCT);
                     // check for missing quicklook
                     if (generateQuicklooks && !existingEntry.quickLookExists()) {
-                        qlProductFiles.add(file);
-                        qlIDs.add(existingEntry.getId());
+                        queueQuicklook(existingEntry.getId(), file);
                     }
+                    return false;
+                } finally {
                     existingEntry.dispose();
-                    continue;
                 }
+            }
+            if (outcome == ScanFingerprints.Outcome.UNREADABLE) {
+                errorList.add(new ErrorFile(file, ErrorFile.UNREADABLE));
+                return false;
+            }
+            // a product which has been removed from the database is read again
+            return outcome != ScanFingerprints.Outcome.NO_READER;
+        }
 
-                if (pm.isCanceled())
-                    break;
+        private void readProducts() {
+            try {
+                File file;
+                while ((file = fileQueue.take()) != END_OF_FILES && !cancelled) {
+                    Product sourceProduct = null;
+                    try {
+                        // quick test for common readers
+                        sourceProduct = CommonReaders.readProduct(file);
+                        if (sourceProduct == null) {
+                            fingerprints.put(file, ScanFingerprints.Outcome.NO_READER);
+                            if (!file.isDirectory()) {
+                                SystemUtils.LOG.info("No reader for " + file.getAbsolutePath());
+                            }
+                            filesScanned.incrementAndGet();
+                        }
+                    } catch (Throwable e) {
+                        if (cancelled) {
+                            return;
+                        }
+                        errorList.add(new ErrorFile(file, ErrorFile.UNREADABLE));
+                        fingerprints.put(file, ScanFingerprints.Outcome.UNREADABLE);
+                        SystemUtils.LOG.log(Level.WARNING, "Unable to read " + file.getAbsolutePath(), e);
+                        filesScanned.incrementAndGet();
+                    }
+                    if (sourceProduct != null) {
+                        try {
+                            productQueue.put(new ReadProduct(file, sourceProduct));
+                        } catch (InterruptedException e) {
+                            sourceProduct.dispose();
+                            throw e;
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                // scan cancelled
+            } finally {
+                readersDone.countDown();
+            }
+        }
 
+        private void saveProducts(final List<ReadProduct> batch) {
+            for (ReadProduct read : batch) {
                 try {
-                    // quick test for common readers
-                    final Product sourceProduct = CommonReaders.readProduct(file);
-                    if (sourceProduct != null) {
-                        final ProductEntry entry = db.saveProduct(sourceProduct);
-                        ++prodCount;
-                        if (!entry.quickLookExists()) {
-                            qlProductFiles.add(file);
-                            qlIDs.add(entry.getId());
+                    final ProductEntry staleEntry = staleEntries.remove(read.file);
+                    if (staleEntry != null) {
+                        // saving doesn't update an existing entry, so it is removed first to avoid a duplicate
+                        try {
+                            db.deleteProductEntry(staleEntry);
+                        } finally {
+                            staleEntry.dispose();
                         }
-                        sourceProduct.dispose();
-                        entry.dispose();
-                    } else if (!file.isDirectory()) {
-                        System.out.println("No reader for " + file.getAbsolutePath());
                     }
+                    final ProductEntry entry = db.saveProduct(read.product);
+                    ++prodCount;
+                    fingerprints.put(read.file, ScanFingerprints.Outcome.PRODUCT);
+                    if (generateQuicklooks && !entry.quickLookExists()) {
+                        queueQuicklook(entry.getId(), read.file);
+                    }
+                    entry.dispose();
                 } catch (Throwable e) {
-                    errorList.add(new ErrorFile(file, ErrorFile.UNREADABLE));
-                    System.out.println("Unable to read " + file.getAbsolutePath() + '\n' + e.getMessage());
+                    // not fingerprinted, so that the product is saved again by the next scan
+                    errorList.add(new ErrorFile(read.file, ErrorFile.UNREADABLE));
+                    SystemUtils.LOG.log(Level.WARNING, "Unable to save " + read.file.getAbsolutePath(), e);
+                } finally {
+                    read.product.dispose();
+                    filesScanned.incrementAndGet();
                 }
             }
+        }
 
-            db.cleanUpRemovedProducts(pm);
-
-            notifyMSG(DBScannerListener.MSG.FOLDERS_SCANNED);
-
-            if (generateQuicklooks) {
-                final int numQL = qlProductFiles.size();
-                pm.beginTask("Generating Quicklooks...", numQL);
-                final ThreadManager threadManager = new ThreadManager();
-
-                for (int j = 0; j < numQL; ++j) {
-                    pm.setTaskName("Generating Quicklook... " + (j + 1) + " of " + numQL);
-                    pm.worked(1);
-                    if (pm.isCanceled())
-                        break;
-
-                    final File file = qlProductFiles.get(j);
-                    final int qlID = qlIDs.get(j);
-
-                    final Thread worker = new Thread() {
-
-                        @Override
-                        public void run() {
-                            try {
-                                QuickLookGenerator.createQuickLook(qlID, file);
-                            } catch (Throwable e) {
-                                System.out.println("QL Unable to read " + file.getAbsolutePath() + '\n' + e.getMessage());
-                            }
-                        }
-                    };
-                    threadManager.add(worker);
+        private void queueQuicklook(final int qlID, final File file) {
+            quicklooksQueued.incrementAndGet();
+            quicklookGenerators.execute(() -> {
+                if (cancelled) {
+                    return;
+                }
+                try {
+                    QuickLookGenerator.createQuickLook(qlID, file);
+                } catch (Throwable e) {
+                    SystemUtils.LOG.log(Level.WARNING, "Unable to create quicklook of " + file.getAbsolutePath(), e);
+                }
+                quicklooksGenerated.incrementAndGet();
+            });
+        }
 
-                    notifyMSG(DBScannerListener.MSG.QUICK_LOOK_GENERATED);
+        private void updateScanProgress() {
+            final int found = filesFound.get();
+            final int scanned = filesScanned.get();
+            String taskMsg = "Scanning " + scanned + " of " + found + (discoveryDone ? " files " : " files found so far ");
+            if (prodCount > 0)
+                taskMsg += "(" + prodCount + " new products)";
+            pm.setTaskName(taskMsg);
+            if (found > 0) {
+                // the number of files is only known once all folders have been listed, so progress never goes back
+                final int steps = (int) ((long) PROGRESS_STEPS * scanned / found);
+                if (steps > progress) {
+                    pm.worked(steps - progress);
+                    progress = steps;
                 }
-                threadManager.finish();
             }
-            pm.setTaskName("");
+        }
 
-        } catch (Throwable e) {
-            System.out.println("Scanning Exception\n" + e.getMessage());
-        } finally {
-            pm.done();
+        // notifying the listeners causes the library to be queried again, so this is done only every few seconds
+        private void notifyQuicklooks(final boolean force) {
+            final int generated = quicklooksGenerated.get();
+            final long now = System.currentTimeMillis();
+            if (generated > notifiedQuicklooks && (force || now - lastNotifyTime >= NOTIFY_MILLIS)) {
+                notifiedQuicklooks = generated;
+                lastNotifyTime = now;
+                notifyMSG(DBScannerListener.MSG.QUICK_LOOK_GENERATED);
+            }
         }
-        return true;
     }
 
-    @Override
-    public void done() {
-        notifyMSG(DBScannerListener.MSG.DONE);
+    private static ThreadFactory createThreadFactory(final String name, final int priority) {
+        return runnable -> {
+            final Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+            return thread;
+        };
     }
 
-    private static File[] collectAllSubDirs(final File dir, int count, final com.bc.ceres.core.ProgressMonitor pm) {
-        final List<File> dirList = new ArrayList<>(20);
-        final ProductFunctions.DirectoryFileFilter dirFilter = new ProductFunctions.DirectoryFileFilter();
+    private static final class ReadProduct {
 
-        final File[] subDirs = dir.listFiles(dirFilter);
-        if(subDirs != null) {
-            count += subDirs.length;
-            pm.setTaskName("Collecting " + count + " folders...");
+        private final File file;
+        private final Product product;
 
-            for (final File subDir : subDirs) {
-                dirList.add(subDir);
-                final File[] dirs = collectAllSubDirs(subDir, count, pm);
-                dirList.addAll(Arrays.asList(dirs));
-            }
+        private ReadProduct(final File file, final Product product) {
+            this.file = file;
+            this.product = product;
         }
-        return dirList.toArray(new File[dirList.size()]);
-    }
-
-    public List<ErrorFile> getErrorList() {
-        return errorList;
     }
 
     public static class ErrorFile {
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2015 by Array Systems Computing Inc. http://www.array.ca
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.productlibrary.rcp.toolviews;
+
+import org.esa.snap.core.util.SystemUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * Remembers the size and modification time of the files found by a scan of a base folder, together with the
+ * outcome of the scan, so that files which have not changed since the last scan don't need to be read again.
+ * Products which are directories, e.g. SAFE folders, are fingerprinted by the files directly in them, which
+ * include their manifest or header files. The fingerprints of each base folder are stored in a text file in the
+ * auxdata folder.
+ */
+class ScanFingerprints {
+
+    enum Outcome {PRODUCT, NO_READER, UNREADABLE}
+
+    private final File baseDir;
+    private final Path storeFile;
+    private final Map<String, Fingerprint> previous;
+    private final Map<String, Fingerprint> current = new ConcurrentHashMap<>();
+
+    private ScanFingerprints(final File baseDir, final Path storeFile, final Map<String, Fingerprint> previous) {
+        this.baseDir = baseDir;
+        this.storeFile = storeFile;
+        this.previous = previous;
+    }
+
+    /**
+     * Loads the fingerprints of the last scan of the given base folder. A missing or unreadable store is treated
+     * as if the folder has never been scanned.
+     */
+    static ScanFingerprints load(final File baseDir) {
+        return load(baseDir, SystemUtils.getAuxDataPath().resolve("product_library"));
+    }
+
+    static ScanFingerprints load(final File baseDir, final Path storeDir) {
+        final String basePath = baseDir.getAbsolutePath();
+        final Path storeFile = storeDir.resolve("scan_" + Integer.toHexString(basePath.hashCode()) + ".txt");
+        final Map<String, Fingerprint> previous = new HashMap<>();
+        if (Files.isRegularFile(storeFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(storeFile, StandardCharsets.UTF_8)) {
+                if (basePath.equals(reader.readLine())) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        // size, modification time and outcome followed by the path, which may contain tabs
+                        final String[] fields = line.split("\t", 4);
+                        if (fields.length == 4) {
+                            try {
+                                previous.put(fields[3], new Fingerprint(Long.parseLong(fields[0]),
+                                                                        Long.parseLong(fields[1]),
+                                                                        Outcome.valueOf(fields[2])));
+                            } catch (IllegalArgumentException e) {
+                                // skip corrupt line
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                SystemUtils.LOG.log(Level.WARNING, "Unable to read scan fingerprints " + storeFile, e);
+                previous.clear();
+            }
+        }
+        return new ScanFingerprints(baseDir, storeFile, previous);
+    }
+
+    /**
+     * @return whether the file has been found by the last scan
+     */
+    boolean isKnown(final File file) {
+        return previous.containsKey(file.getAbsolutePath());
+    }
+
+    /**
+     * Returns the outcome of the last scan of the file if the file has not changed since. The fingerprint is then
+     * kept for the next scan.
+     *
+     * @return the outcome, or {@code null} if the file is new or has changed
+     */
+    Outcome getUnchangedOutcome(final File file) {
+        final String path = file.getAbsolutePath();
+        final Fingerprint fingerprint = previous.get(path);
+        if (fingerprint == null || !fingerprint.matches(Fingerprint.create(file, fingerprint.outcome))) {
+            return null;
+        }
+        current.put(path, fingerprint);
+        return fingerprint.outcome;
+    }
+
+    /**
+     * Records the outcome of the scan of the file together with its current size and modification time.
+     */
+    void put(final File file, final Outcome outcome) {
+        current.put(file.getAbsolutePath(), Fingerprint.create(file, outcome));
+    }
+
+    /**
+     * Stores the fingerprints recorded by this scan.
+     *
+     * @param complete whether all files of the base folder have been scanned; if not, the fingerprints of the
+     *                 last scan are kept for the files which have not been scanned again
+     */
+    void save(final boolean complete) {
+        final Map<String, Fingerprint> fingerprints = complete ? current : new HashMap<>(previous);
+        if (!complete) {
+            fingerprints.putAll(current);
+        }
+        try {
+            Files.createDirectories(storeFile.getParent());
+            final Path tmpFile = storeFile.resolveSibling(storeFile.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+                writer.write(baseDir.getAbsolutePath());
+                writer.newLine();
+                for (Map.Entry<String, Fingerprint> entry : fingerprints.entrySet()) {
+                    final Fingerprint fingerprint = entry.getValue();
+                    writer.write(fingerprint.size + "\t" + fingerprint.lastModified + '\t' + fingerprint.outcome +
+                                 '\t' + entry.getKey());
+                    writer.newLine();
+                }
+            }
+            Files.move(tmpFile, storeFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            SystemUtils.LOG.log(Level.WARNING, "Unable to write scan fingerprints " + storeFile, e);
+        }
+    }
+
+    private static final class Fingerprint {
+
+        private final long size;
+        private final long lastModified;
+        private final Outcome outcome;
+
+        private Fingerprint(final long size, final long lastModified, final Outcome outcome) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.outcome = outcome;
+        }
+
+        // the size and modification time of a directory don't change when the files in it are rewritten
+        private static Fingerprint create(final File file, final Outcome outcome) {
+            if (!file.isDirectory()) {
+                return new Fingerprint(file.length(), file.lastModified(), outcome);
+            }
+            long size = 0;
+            long lastModified = file.lastModified();
+            final File[] files = file.listFiles();
+            if (files != null) {
+                for (File child : files) {
+                    if (child.isFile()) {
+                        size += child.length();
+                        lastModified = Math.max(lastModified, child.lastModified());
+                    }
+                }
+            }
+            return new Fingerprint(size, lastModified, outcome);
+        }
+
+        private boolean matches(final Fingerprint other) {
+            return size == other.size && lastModified == other.lastModified;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2015 by Array Systems Computing Inc. http://www.array.ca
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.productlibrary.rcp.toolviews.model.dataprovider;
+
+import org.esa.snap.core.util.SystemUtils;
+import org.esa.snap.engine_utilities.db.ProductEntry;
+
+import javax.swing.SwingUtilities;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Provides downsized quick look images for table cells. The quick looks are decoded and scaled on background
+ * threads into a LRU cache of ready-to-paint thumbnails, bounded by the memory of the thumbnails and keyed by the
+ * product entry id and the cell size. Requests are never blocking: a thumbnail which is not ready yet is loaded in
+ * the background, most recent requests first, and the caller is notified on the EDT when it is ready.
+ */
+class QuickLookThumbnails {
+
+    /**
+     * Marks product entries without a quick look.
+     */
+    static final BufferedImage NOT_AVAILABLE = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+
+    private static final long MAX_CACHE_BYTES = 64L * 1024 * 1024;
+    private static final int LOADER_THREAD_COUNT = 2;
+
+    private final Map<Long, BufferedImage> thumbnails;
+    private final Map<ProductEntry, Boolean> unavailable;
+    private final Set<Long> pending;
+    private final ThreadPoolExecutor loader;
+    private final long maxCacheBytes;
+    private long cacheBytes;
+
+    QuickLookThumbnails() {
+        this(MAX_CACHE_BYTES);
+    }
+
+    QuickLookThumbnails(long maxCacheBytes) {
+        this.maxCacheBytes = maxCacheBytes;
+        thumbnails = new LinkedHashMap<>(256, 0.75f, true);
+        // entries are recreated when the library is queried again, which discards this state after new quick looks
+        // have been generated
+        unavailable = Collections.synchronizedMap(new WeakHashMap<>());
+        pending = new HashSet<>();
+        // last in, first out, so the rows which became visible last are loaded first while scrolling
+        loader = new ThreadPoolExecutor(LOADER_THREAD_COUNT, LOADER_THREAD_COUNT, 0L, TimeUnit.MILLISECONDS,
+                                        new LinkedBlockingDeque<Runnable>() {
+                                            @Override
+                                            public boolean offer(Runnable runnable) {
+                                                return offerFirst(runnable);
+                                            }
+                                        },
+                                        runnable -> {
+                                            final Thread thread = new Thread(runnable, "Product Library quick look loader");
+                                            thread.setDaemon(true);
+                                            thread.setPriority(Thread.MIN_PRIORITY);
+                                            return thread;
+                                        });
+    }
+
+    /**
+     * Returns the thumbnail of the given entry which fits into a cell of the given size.
+     *
+     * @param entry   the product entry
+     * @param width   the cell width
+     * @param height  the cell height
+     * @param onReady called on the EDT when a thumbnail which is not ready yet has been loaded
+     *
+     * @return the thumbnail, {@link #NOT_AVAILABLE} if the entry has no quick look, or {@code null} if the
+     * thumbnail is not ready yet
+     */
+    BufferedImage getThumbnail(ProductEntry entry, int width, int height, Runnable onReady) {
+        if (unavailable.containsKey(entry)) {
+            return NOT_AVAILABLE;
+        }
+        final long key = key(entry, width, height);
+        synchronized (this) {
+            final BufferedImage thumbnail = thumbnails.get(key);
+            if (thumbnail != null || !pending.add(key)) {
+                return thumbnail;
+            }
+        }
+        loader.execute(() -> {
+            BufferedImage thumbnail = null;
+            try {
+                final BufferedImage quickLook = entry.getQuickLook();
+                if (quickLook == null) {
+                    unavailable.put(entry, Boolean.TRUE);
+                } else {
+                    thumbnail = scale(quickLook, width, height);
+                }
+            } catch (Throwable e) {
+                unavailable.put(entry, Boolean.TRUE);
+                SystemUtils.LOG.log(Level.WARNING, "Failed to load the quick look of " + entry.getName(), e);
+            }
+            synchronized (this) {
+                pending.remove(key);
+                if (thumbnail != null) {
+                    cacheBytes += getBytes(thumbnail);
+                    final BufferedImage previous = thumbnails.put(key, thumbnail);
+                    if (previous != null) {
+                        cacheBytes -= getBytes(previous);
+                    }
+                    trim();
+                }
+            }
+            SwingUtilities.invokeLater(onReady);
+        });
+        return null;
+    }
+
+    synchronized int getCachedThumbnailCount() {
+        return thumbnails.size();
+    }
+
+    synchronized long getCacheBytes() {
+        return cacheBytes;
+    }
+
+    /**
+     * Evicts the least recently used thumbnails until the cache is within its budget, always keeping the newest.
+     */
+    private void trim() {
+        final Iterator<BufferedImage> iterator = thumbnails.values().iterator();
+        while (cacheBytes > maxCacheBytes && thumbnails.size() > 1) {
+            cacheBytes -= getBytes(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Scales the image to fit into the given size, keeping its aspect ratio.
+     */
+    static BufferedImage scale(BufferedImage image, int width, int height) {
+        final double scale = Math.min((double) width / image.getWidth(), (double) height / image.getHeight());
+        final int scaledWidth = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        final int scaledHeight = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        final BufferedImage thumbnail = new BufferedImage(scaledWidth, scaledHeight,
+                                                          image.getColorModel().hasAlpha()
+                                                          ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        final Graphics2D graphics = thumbnail.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, scaledWidth, scaledHeight, null);
+        } finally {
+            graphics.dispose();
+        }
+        return thumbnail;
+    }
+
+    private static long getBytes(BufferedImage image) {
+        return 4L * image.getWidth() * image.getHeight();
+    }
+
+    private static long key(ProductEntry entry, int width, int height) {
+        return ((long) entry.getId() << 32) | ((width & 0xFFFFL) << 16) | (height & 0xFFFFL);
+    }
+}
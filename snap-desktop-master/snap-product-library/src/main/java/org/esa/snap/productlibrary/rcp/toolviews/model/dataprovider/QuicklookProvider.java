@@ -35,6 +35,7 @@ import java.util.Comparator;
 public class QuicklookProvider implements DataProvider {
 
     private final static Comparator quickLookComparator = new QuickLookComparator();
+    private final static QuickLookThumbnails thumbnails = new QuickLookThumbnails();
     private TableColumn quickLookColumn;
     private static final int preferredWidth = 100;
     private static final int preferredHeight = 65;
@@ -105,20 +106,21 @@ public class QuicklookProvider implements DataProvider {
                 }
 
                 if (value instanceof ProductEntry) {
-                    final BufferedImage image = ((ProductEntry) value).getQuickLook();
-                    if (image == null) {
+                    final TableColumn tableColumn = table.getColumnModel().getColumn(column);
+                    final int cellSize = tableColumn.getWidth();
+                    final int modelRow = table.convertRowIndexToModel(row);
+                    final int modelColumn = table.convertColumnIndexToModel(column);
+                    final BufferedImage thumbnail = thumbnails.getThumbnail((ProductEntry) value, cellSize, cellSize,
+                                                                            () -> repaintCell(table, modelRow,
+                                                                                              modelColumn));
+                    if (thumbnail == null) {
+                        tableComponent.setIcon(null);
+                        tableComponent.setText("Loading...");
+                    } else if (thumbnail == QuickLookThumbnails.NOT_AVAILABLE) {
                         tableComponent.setIcon(null);
                         tableComponent.setText("Not available!");
                     } else {
-                        final TableColumn tableColumn = table.getColumnModel().getColumn(column);
-                        int cellWidth = tableColumn.getWidth();
-                        int cellHeight = tableColumn.getWidth();
-                        if (image.getHeight() > image.getWidth())
-                            cellWidth = -1;
-                        else
-                            cellHeight = -1;
-                        tableComponent.setIcon(
-                                new ImageIcon(image.getScaledInstance(cellWidth, cellHeight, BufferedImage.SCALE_FAST)));
+                        tableComponent.setIcon(new ImageIcon(thumbnail));
                         tableComponent.setText("");
                         setTableRowHeight(table, row);
                     }
@@ -132,6 +134,20 @@ public class QuicklookProvider implements DataProvider {
             return tableComponent;
         }
 
+        /**
+         * Repaints the cell of a loaded thumbnail at its current position, the rows may have been sorted meanwhile.
+         */
+        private static void repaintCell(final JTable table, final int modelRow, final int modelColumn) {
+            if (modelRow >= table.getModel().getRowCount()) {
+                return;
+            }
+            final int viewRow = table.convertRowIndexToView(modelRow);
+            final int viewColumn = table.convertColumnIndexToView(modelColumn);
+            if (viewRow >= 0 && viewColumn >= 0) {
+                table.repaint(table.getCellRect(viewRow, viewColumn, false));
+            }
+        }
+
         private void setBackground(final JTable table, final boolean isSelected) {
             if (tableComponent == null) return;
 
@@ -204,19 +220,10 @@ public class QuicklookProvider implements DataProvider {
                 return 1;
             }
 
-            final BufferedImage image1 = ((ProductEntry) o1).getQuickLook();
-            final BufferedImage image2 = ((ProductEntry) o2).getQuickLook();
-
-            if (image1 == null) {
-                return -1;
-            } else if (image2 == null) {
-                return 1;
-            }
-
-            final Integer height1 = image1.getHeight();
-            final Integer height2 = image2.getHeight();
-
-            return height1.compareTo(height2);
+            // entries without a quick look first, without loading the images
+            final boolean exists1 = ((ProductEntry) o1).quickLookExists();
+            final boolean exists2 = ((ProductEntry) o2).quickLookExists();
+            return Boolean.compare(exists1, exists2);
         }
     }
 }
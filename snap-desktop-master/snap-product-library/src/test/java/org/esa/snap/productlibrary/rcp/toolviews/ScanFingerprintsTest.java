@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2015 by Array Systems Computing Inc. http://www.array.ca
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.productlibrary.rcp.toolviews;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ScanFingerprintsTest {
+
+    private Path tmpDir;
+    private Path storeDir;
+    private File baseDir;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("ScanFingerprintsTest");
+        storeDir = tmpDir.resolve("store");
+        baseDir = Files.createDirectory(tmpDir.resolve("products")).toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(tmpDir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void testUnscannedFolder() throws Exception {
+        final File file = createFile("a.dim", "header");
+
+        final ScanFingerprints fingerprints = ScanFingerprints.load(baseDir, storeDir);
+
+        assertFalse(fingerprints.isKnown(file));
+        assertNull(fingerprints.getUnchangedOutcome(file));
+    }
+
+    @Test
+    public void testOutcomesOfUnchangedFiles() throws Exception {
+        final File product = createFile("a.dim", "header");
+        final File unknown = createFile("b.txt", "text");
+        final ScanFingerprints scan = ScanFingerprints.load(baseDir, storeDir);
+        scan.put(product, ScanFingerprints.Outcome.PRODUCT);
+        scan.put(unknown, ScanFingerprints.Outcome.NO_READER);
+        scan.save(true);
+
+        final ScanFingerprints rescan = ScanFingerprints.load(baseDir, storeDir);
+
+        assertTrue(rescan.isKnown(product));
+        assertEquals(ScanFingerprints.Outcome.PRODUCT, rescan.getUnchangedOutcome(product));
+        assertEquals(ScanFingerprints.Outcome.NO_READER, rescan.getUnchangedOutcome(unknown));
+    }
+
+    @Test
+    public void testChangedFileHasNoOutcome() throws Exception {
+        final File product = createFile("a.dim", "header");
+        final ScanFingerprints scan = ScanFingerprints.load(baseDir, storeDir);
+        scan.put(product, ScanFingerprints.Outcome.PRODUCT);
+        scan.save(true);
+
+        write(product, "changed header");
+
+        final ScanFingerprints rescan = ScanFingerprints.load(baseDir, storeDir);
+        assertTrue(rescan.isKnown(product));
+        assertNull(rescan.getUnchangedOutcome(product));
+    }
+
+    @Test
+    public void testDirectoryProductIsFingerprintedByItsFiles() throws Exception {
+        final File product = Files.createDirectory(baseDir.toPath().resolve("S1A.SAFE")).toFile();
+        final File manifest = new File(product, "manifest.safe");
+        write(manifest, "<manifest/>");
+        final ScanFingerprints scan = ScanFingerprints.load(baseDir, storeDir);
+        scan.put(product, ScanFingerprints.Outcome.PRODUCT);
+        scan.save(true);
+
+        assertEquals(ScanFingerprints.Outcome.PRODUCT,
+                     ScanFingerprints.load(baseDir, storeDir).getUnchangedOutcome(product));
+
+        write(manifest, "<manifest version=\"2\"/>");
+        assertNull(ScanFingerprints.load(baseDir, storeDir).getUnchangedOutcome(product));
+    }
+
+    @Test
+    public void testIncompleteScanKeepsPreviousFingerprints() throws Exception {
+        final File first = createFile("a.dim", "a");
+        final File second = createFile("b.dim", "b");
+        final ScanFingerprints scan = ScanFingerprints.load(baseDir, storeDir);
+        scan.put(first, ScanFingerprints.Outcome.PRODUCT);
+        scan.put(second, ScanFingerprints.Outcome.UNREADABLE);
+        scan.save(true);
+
+        final ScanFingerprints cancelledScan = ScanFingerprints.load(baseDir, storeDir);
+        assertEquals(ScanFingerprints.Outcome.PRODUCT, cancelledScan.getUnchangedOutcome(first));
+        cancelledScan.save(false);
+        assertEquals(ScanFingerprints.Outcome.UNREADABLE,
+                     ScanFingerprints.load(baseDir, storeDir).getUnchangedOutcome(second));
+
+        final ScanFingerprints completeScan = ScanFingerprints.load(baseDir, storeDir);
+        assertEquals(ScanFingerprints.Outcome.PRODUCT, completeScan.getUnchangedOutcome(first));
+        completeScan.save(true);
+        assertFalse(ScanFingerprints.load(baseDir, storeDir).isKnown(second));
+    }
+
+    private File createFile(String name, String content) throws IOException {
+        final File file = new File(baseDir, name);
+        write(file, content);
+        return file;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        final long lastModified = file.exists() ? file.lastModified() : 0;
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        // the modification time may have a resolution of seconds
+        if (file.lastModified() <= lastModified) {
+            file.setLastModified(lastModified + 2000);
+        }
+    }
+}
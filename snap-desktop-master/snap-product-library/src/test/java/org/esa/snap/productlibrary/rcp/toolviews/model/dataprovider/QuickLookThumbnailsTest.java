@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2015 by Array Systems Computing Inc. http://www.array.ca
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.productlibrary.rcp.toolviews.model.dataprovider;
+
+import org.esa.snap.engine_utilities.db.ProductEntry;
+import org.junit.Test;
+
+import javax.swing.SwingUtilities;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class QuickLookThumbnailsTest {
+
+    @Test
+    public void testThumbnailIsLoadedInTheBackgroundAndCached() throws Exception {
+        final QuickLookThumbnails thumbnails = new QuickLookThumbnails();
+        final ProductEntry entry = createEntry(1, new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB));
+
+        final BufferedImage thumbnail = load(thumbnails, entry, 50, 50);
+        assertEquals(50, thumbnail.getWidth());
+        assertEquals(25, thumbnail.getHeight());
+
+        assertSame(thumbnail, thumbnails.getThumbnail(entry, 50, 50, () -> fail("already loaded")));
+        verify(entry, times(1)).getQuickLook();
+    }
+
+    @Test
+    public void testThumbnailsOfOtherSizesAreLoadedSeparately() throws Exception {
+        final QuickLookThumbnails thumbnails = new QuickLookThumbnails();
+        final ProductEntry entry = createEntry(1, new BufferedImage(100, 200, BufferedImage.TYPE_INT_RGB));
+
+        assertEquals(20, load(thumbnails, entry, 40, 40).getWidth());
+        assertEquals(40, load(thumbnails, entry, 80, 80).getWidth());
+        assertEquals(2, thumbnails.getCachedThumbnailCount());
+    }
+
+    @Test
+    public void testEntriesWithoutQuickLookAreNotAvailable() throws Exception {
+        final QuickLookThumbnails thumbnails = new QuickLookThumbnails();
+        final ProductEntry missing = createEntry(1, null);
+        final ProductEntry broken = createEntry(2, null);
+        when(broken.getQuickLook()).thenThrow(new IllegalStateException("corrupt quick look"));
+
+        assertNull(load(thumbnails, missing, 50, 50));
+        assertNull(load(thumbnails, broken, 50, 50));
+
+        assertSame(QuickLookThumbnails.NOT_AVAILABLE, thumbnails.getThumbnail(missing, 50, 50, () -> {}));
+        assertSame(QuickLookThumbnails.NOT_AVAILABLE, thumbnails.getThumbnail(broken, 50, 50, () -> {}));
+        assertEquals(0, thumbnails.getCachedThumbnailCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedThumbnailsAreEvicted() throws Exception {
+        // room for two thumbnails of 10 x 10 pixels
+        final QuickLookThumbnails thumbnails = new QuickLookThumbnails(2 * 4 * 10 * 10);
+        final ProductEntry entry1 = createEntry(1, new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+        final ProductEntry entry2 = createEntry(2, new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+        final ProductEntry entry3 = createEntry(3, new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+        final ProductEntry large = createEntry(4, new BufferedImage(20, 20, BufferedImage.TYPE_INT_RGB));
+
+        load(thumbnails, entry1, 10, 10);
+        load(thumbnails, entry2, 10, 10);
+        assertNotNull(thumbnails.getThumbnail(entry1, 10, 10, () -> {}));
+        load(thumbnails, entry3, 10, 10);
+        // the second entry has been used least recently
+        assertEquals(2, thumbnails.getCachedThumbnailCount());
+        assertNotNull(thumbnails.getThumbnail(entry1, 10, 10, () -> {}));
+        assertNotNull(thumbnails.getThumbnail(entry3, 10, 10, () -> {}));
+
+        // a thumbnail exceeding the budget evicts all others, but is kept itself
+        load(thumbnails, large, 20, 20);
+        assertEquals(1, thumbnails.getCachedThumbnailCount());
+        assertEquals(4 * 20 * 20, thumbnails.getCacheBytes());
+    }
+
+    @Test
+    public void testScaleKeepsAspectRatio() throws Exception {
+        final BufferedImage portrait = QuickLookThumbnails.scale(new BufferedImage(30, 90, BufferedImage.TYPE_INT_ARGB),
+                                                                 60, 60);
+        assertEquals(20, portrait.getWidth());
+        assertEquals(60, portrait.getHeight());
+        assertEquals(BufferedImage.TYPE_INT_ARGB, portrait.getType());
+    }
+
+    private static ProductEntry createEntry(int id, BufferedImage quickLook) {
+        final ProductEntry entry = mock(ProductEntry.class);
+        when(entry.getId()).thenReturn(id);
+        when(entry.getName()).thenReturn("product" + id);
+        when(entry.getQuickLook()).thenReturn(quickLook);
+        return entry;
+    }
+
+    /**
+     * Requests a thumbnail which is not cached yet and waits until it has been loaded.
+     */
+    private static BufferedImage load(QuickLookThumbnails thumbnails, ProductEntry entry,
+                                      int width, int height) throws InterruptedException {
+        final CountDownLatch ready = new CountDownLatch(1);
+        final AtomicBoolean onEventDispatchThread = new AtomicBoolean();
+        final Runnable onReady = () -> {
+            onEventDispatchThread.set(SwingUtilities.isEventDispatchThread());
+            ready.countDown();
+        };
+        assertNull(thumbnails.getThumbnail(entry, width, height, onReady));
+        assertTrue("thumbnail not loaded", ready.await(10, TimeUnit.SECONDS));
+        assertTrue(onEventDispatchThread.get());
+        final BufferedImage thumbnail = thumbnails.getThumbnail(entry, width, height, () -> fail("already loaded"));
+        return thumbnail == QuickLookThumbnails.NOT_AVAILABLE ? null : thumbnail;
+    }
+}
@@ -17,6 +17,7 @@ package org.esa.snap.rcp.actions.file.export;
 
 
 import com.bc.ceres.core.ProgressMonitor;
+import com.bc.ceres.core.SubProgressMonitor;
 import com.bc.ceres.swing.progress.ProgressMonitorSwingWorker;
 import com.sun.media.jai.codec.ImageCodec;
 import com.sun.media.jai.codec.ImageEncoder;
@@ -44,6 +45,7 @@ import java.awt.Dimension;
 import java.awt.image.RenderedImage;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 
 public abstract class AbstractExportImageAction extends AbstractAction implements LookupListener, ContextAwareAction, HelpCtx.Provider {
@@ -155,6 +157,15 @@ public abstract class AbstractExportImageAction extends AbstractAction implement
 
     protected abstract RenderedImage createImage(String imageFormat, ProductSceneView view);
 
+    /**
+     * Creates an image whose tiles are rendered on demand, which is written tile by tile to (Geo)TIFF files.
+     * The default implementation returns {@code null}, so that the image created by {@link #createImage} is
+     * written.
+     */
+    protected TiledLayerImage createTiledImage(String imageFormat, ProductSceneView view) {
+        return null;
+    }
+
     protected abstract boolean isEntireImageSelected();
 
     protected abstract void configureFileChooser(SnapFileChooser fileChooser, ProductSceneView view,
@@ -202,6 +213,15 @@ public abstract class AbstractExportImageAction extends AbstractAction implement
                 pm.beginTask(message, 1);
                 snapApp.setStatusBarMessage(message);
                 snapApp.getMainFrame().setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+                if (isTiffFormat(imageFormat)) {
+                    final TiledLayerImage tiledImage = createTiledImage(imageFormat, view);
+                    if (tiledImage != null) {
+                        if (!writeTiledImage(tiledImage, SubProgressMonitor.create(pm, 1))) {
+                            SystemUtils.LOG.info("Image export to " + file.getPath() + " has been cancelled.");
+                        }
+                        return null;
+                    }
+                }
                 RenderedImage image = createImage(imageFormat, view);
 
                 boolean geoTIFFWritten = false;
@@ -232,5 +252,20 @@ public abstract class AbstractExportImageAction extends AbstractAction implement
             }
             return null;
         }
+
+        /**
+         * @return {@code false} if the writing has been cancelled, in which case no file is left behind
+         */
+        private boolean writeTiledImage(TiledLayerImage image, ProgressMonitor pm) throws IOException {
+            GeoTIFFMetadata metadata = null;
+            if (imageFormat.equals(GEOTIFF_FORMAT_DESCRIPTION[0]) && entireImageSelected) {
+                metadata = ProductUtils.createGeoTIFFMetadata(view.getProduct());
+            }
+            return new TiledTiffWriter(file, metadata).write(image, pm);
+        }
+
+        private boolean isTiffFormat(String imageFormat) {
+            return imageFormat.equals(TIFF_FORMAT_DESCRIPTION[0]) || imageFormat.equals(GEOTIFF_FORMAT_DESCRIPTION[0]);
+        }
     }
 }
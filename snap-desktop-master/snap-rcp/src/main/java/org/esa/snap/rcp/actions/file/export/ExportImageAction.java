@@ -169,6 +169,13 @@ public class ExportImageAction extends AbstractExportImageAction {
 
     }
 
+    @Override
+    protected TiledLayerImage createTiledImage(String imageFormat, ProductSceneView view) {
+        final boolean useAlpha = !BMP_FORMAT_DESCRIPTION[0].equals(imageFormat) && !JPEG_FORMAT_DESCRIPTION[0].equals(imageFormat);
+        return createTiledImage(view, isEntireImageSelected(), sizeComponent.getDimension(), useAlpha,
+                                GEOTIFF_FORMAT_DESCRIPTION[0].equals(imageFormat));
+    }
+
     protected RenderedImage createImage(String imageFormat, ProductSceneView view) {
         final boolean useAlpha = !BMP_FORMAT_DESCRIPTION[0].equals(imageFormat) && !JPEG_FORMAT_DESCRIPTION[0].equals(imageFormat);
         final boolean entireImage = isEntireImageSelected();
@@ -181,37 +188,64 @@ public class ExportImageAction extends AbstractExportImageAction {
                                      boolean alphaChannel, boolean geoReferenced) {
         final int imageType = alphaChannel ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR;
         final BufferedImage bufferedImage = new BufferedImage(dimension.width, dimension.height, imageType);
+        renderImage(view, fullScene, dimension, alphaChannel, geoReferenced,
+                    bufferedImage, new Rectangle(dimension));
+        return bufferedImage;
+    }
+
+    /**
+     * Creates an image whose tiles are rendered on demand, so that images of any size can be written tile by tile.
+     */
+    static TiledLayerImage createTiledImage(ProductSceneView view, boolean fullScene, Dimension dimension,
+                                            boolean alphaChannel, boolean geoReferenced) {
+        return new TiledLayerImage(dimension, alphaChannel,
+                                   (image, region) -> renderImage(view, fullScene, dimension, alphaChannel,
+                                                                  geoReferenced, image, region));
+    }
 
-        final BufferedImageRendering imageRendering = createRendering(view, fullScene,
-                                                                      geoReferenced, bufferedImage);
+    /**
+     * Renders the given region of an image of the given dimension into the buffered image, which has the size
+     * of the region.
+     */
+    static void renderImage(ProductSceneView view, boolean fullScene, Dimension dimension,
+                            boolean alphaChannel, boolean geoReferenced,
+                            BufferedImage bufferedImage, Rectangle region) {
+        final BufferedImageRendering imageRendering = createRendering(view, fullScene, dimension,
+                                                                      geoReferenced, bufferedImage, region);
         if (!alphaChannel) {
             final Graphics2D graphics = imageRendering.getGraphics();
+            final AffineTransform transform = graphics.getTransform();
+            graphics.setTransform(new AffineTransform());
             graphics.setColor(view.getLayerCanvas().getBackground());
-            graphics.fillRect(0, 0, dimension.width, dimension.height);
+            graphics.fillRect(0, 0, region.width, region.height);
+            graphics.setTransform(transform);
         }
         view.getRootLayer().render(imageRendering);
-
-        return bufferedImage;
     }
 
     private static BufferedImageRendering createRendering(ProductSceneView view, boolean fullScene,
-                                                          boolean geoReferenced, BufferedImage bufferedImage) {
+                                                          Dimension dimension, boolean geoReferenced,
+                                                          BufferedImage bufferedImage, Rectangle region) {
         final Viewport vp1 = view.getLayerCanvas().getViewport();
-        final Viewport vp2 = new DefaultViewport(new Rectangle(bufferedImage.getWidth(), bufferedImage.getHeight()),
-                                                 vp1.isModelYAxisDown());
+        final Viewport vp2 = new DefaultViewport(new Rectangle(dimension), vp1.isModelYAxisDown());
         if (fullScene) {
             vp2.zoom(view.getBaseImageLayer().getModelBounds());
         } else {
             setTransform(vp1, vp2);
         }
+        // the viewport of the region only covers the model area of the region, so that layers only fetch that
+        final Viewport vp3 = new DefaultViewport(new Rectangle(region.width, region.height), vp1.isModelYAxisDown());
+        vp3.setTransform(vp2);
+        vp3.moveViewDelta(-region.x, -region.y);
 
-        final BufferedImageRendering imageRendering = new BufferedImageRendering(bufferedImage, vp2);
+        final BufferedImageRendering imageRendering = new BufferedImageRendering(bufferedImage, vp3);
         if (geoReferenced) {
             // because image to model transform is stored with the exported image we have to invert
             // image to view transformation
             final AffineTransform m2iTransform = view.getBaseImageLayer().getModelToImageTransform(0);
-            final AffineTransform v2mTransform = vp2.getViewToModelTransform();
+            final AffineTransform v2mTransform = vp3.getViewToModelTransform();
             v2mTransform.preConcatenate(m2iTransform);
+            v2mTransform.preConcatenate(AffineTransform.getTranslateInstance(-region.x, -region.y));
             final AffineTransform v2iTransform = new AffineTransform(v2mTransform);
 
             final Graphics2D graphics2D = imageRendering.getGraphics();
@@ -17,6 +17,7 @@
 package org.esa.snap.rcp.actions.file.export;
 
 import com.bc.ceres.core.ProgressMonitor;
+import com.bc.ceres.core.SubProgressMonitor;
 import com.bc.ceres.swing.progress.ProgressMonitorSwingWorker;
 import com.sun.media.jai.codec.ImageCodec;
 import com.sun.media.jai.codec.ImageEncoder;
@@ -57,9 +58,13 @@ import org.openide.util.WeakListeners;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
+import javax.swing.BorderFactory;
+import javax.swing.JCheckBox;
 import javax.swing.JFileChooser;
+import javax.swing.JPanel;
 import java.awt.Cursor;
 import java.awt.Dimension;
+import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.image.RenderedImage;
 import java.io.File;
@@ -93,6 +98,8 @@ public class ExportKmzFileAction extends AbstractAction implements HelpCtx.Provi
     private static final String[] KMZ_FORMAT_DESCRIPTION = {"KMZ", "kmz", "KMZ - Google Earth File Format"};
     private static final String IMAGE_EXPORT_DIR_PREFERENCES_KEY = "user.image.export.dir";
     private static final String HELP_ID = "exportKmzFile";
+    // scenes larger than this are exported as super-overlay by default
+    private static final int SUPER_OVERLAY_MIN_SIZE = 4096;
 
     @SuppressWarnings("FieldCanBeLocal")
     private final Lookup.Result<ProductSceneView> result;
@@ -178,6 +185,16 @@ public class ExportKmzFileAction extends AbstractAction implements HelpCtx.Provi
 
         fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
 
+        final Product product = sceneView.getProduct();
+        final boolean largeScene = Math.max(product.getSceneRasterWidth(),
+                                            product.getSceneRasterHeight()) > SUPER_OVERLAY_MIN_SIZE;
+        final JCheckBox superOverlayCheckBox = new JCheckBox("Tiled super-overlay", largeScene); /*I18N*/
+        superOverlayCheckBox.setToolTipText("Write a quadtree of image tiles, which viewers load on demand"); /*I18N*/
+        final JPanel modePanel = new JPanel(new GridLayout(1, 1));
+        modePanel.setBorder(BorderFactory.createTitledBorder("Image Overlay")); /*I18N*/
+        modePanel.add(superOverlayCheckBox);
+        fileChooser.setAccessory(modePanel);
+
         Dimension fileChooserSize = fileChooser.getPreferredSize();
         if (fileChooserSize != null) {
             fileChooser.setPreferredSize(new Dimension(
@@ -209,7 +226,8 @@ public class ExportKmzFileAction extends AbstractAction implements HelpCtx.Provi
             return;
         }
 
-        final SaveKMLSwingWorker worker = new SaveKMLSwingWorker(snapApp, "Save KMZ", sceneView, file);
+        final SaveKMLSwingWorker worker = new SaveKMLSwingWorker(snapApp, "Save KMZ", sceneView, file,
+                                                                 superOverlayCheckBox.isSelected());
         worker.executeWithBlocking();
     }
 
@@ -218,8 +236,10 @@ public class ExportKmzFileAction extends AbstractAction implements HelpCtx.Provi
         return imageLegend.createImage();
     }
 
-    private static String formatKML(ProductSceneView view, String imageName) {
-        final RasterDataNode raster = view.getRaster();
+    /**
+     * @return the north, south, east and west bound of the scene
+     */
+    private static double[] getSceneBox(RasterDataNode raster) {
         final Product product = raster.getProduct();
         final GeoCoding geoCoding = raster.getGeoCoding();
         final PixelPos upperLeftPP = new PixelPos(0, 0);
@@ -231,6 +251,28 @@ public class ExportKmzFileAction extends AbstractAction implements HelpCtx.Provi
         if (geoCoding.isCrossingMeridianAt180()) {
             eastLon += 360;
         }
+        return new double[]{upperLeftGP.getLat(), lowerRightGP.getLat(), eastLon, upperLeftGP.getLon()};
+    }
+
+    private static String formatGroundOverlay(ProductSceneView view, String imageName) {
+        final double[] box = getSceneBox(view.getRaster());
+        return "  <GroundOverlay>\n"
+                + "    <name>Raster data</name>\n"
+                + "    <LatLonBox>\n"
+                + "      <north>" + box[0] + "</north>\n"
+                + "      <south>" + box[1] + "</south>\n"
+                + "      <east>" + box[2] + "</east>\n"
+                + "      <west>" + box[3] + "</west>\n"
+                + "    </LatLonBox>\n"
+                + "    <Icon>\n"
+                + "      <href>" + imageName + "</href>\n"
+                + "    </Icon>\n"
+                + "  </GroundOverlay>\n";
+    }
+
+    private static String formatKML(ProductSceneView view, String overlayKml) {
+        final RasterDataNode raster = view.getRaster();
+        final Product product = raster.getProduct();
 
         String pinKml = "";
         ProductNodeGroup<Placemark> pinGroup = product.getPinGroup();
@@ -271,22 +313,11 @@ public class ExportKmzFileAction extends AbstractAction implements HelpCtx.Provi
         }
 
         return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
-                + "<kml xmlns=\"http://earth.google.com/kml/2.0\">\n"
+                + "<kml xmlns=\"http://www.opengis.net/kml/2.2\">\n"
                 + "<Document>\n"
                 + "  <name>" + name + "</name>\n"
                 + "  <description>" + description + "</description>\n"
-                + "  <GroundOverlay>\n"
-                + "    <name>Raster data</name>\n"
-                + "    <LatLonBox>\n"
-                + "      <north>" + upperLeftGP.getLat() + "</north>\n"
-                + "      <south>" + lowerRightGP.getLat() + "</south>\n"
-                + "      <east>" + eastLon + "</east>\n"
-                + "      <west>" + upperLeftGP.getLon() + "</west>\n"
-                + "    </LatLonBox>\n"
-                + "    <Icon>\n"
-                + "      <href>" + imageName + "</href>\n"
-                + "    </Icon>\n"
-                + "  </GroundOverlay>\n"
+                + overlayKml
                 + legendKml
                 + pinKml
                 + "</Document>\n"
@@ -317,28 +348,35 @@ public class ExportKmzFileAction extends AbstractAction implements HelpCtx.Provi
         private final SnapApp snapApp;
         private final ProductSceneView view;
         private final File file;
+        private final boolean superOverlay;
 
-        SaveKMLSwingWorker(SnapApp snapApp, String message, ProductSceneView view, File file) {
+        SaveKMLSwingWorker(SnapApp snapApp, String message, ProductSceneView view, File file, boolean superOverlay) {
             super(snapApp.getMainFrame(), message);
             this.snapApp = snapApp;
             this.view = view;
             this.file = file;
+            this.superOverlay = superOverlay;
         }
 
         @Override
         protected Object doInBackground(ProgressMonitor pm) throws Exception {
             try {
                 final String message = String.format("Saving image as %s...", file.getPath());
-                pm.beginTask(message, view.isRGB() ? 4 : 3);
                 snapApp.setStatusBarMessage(message);
                 snapApp.getMainFrame().setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
                 final Dimension dimension = new Dimension(view.getProduct().getSceneRasterWidth(),
                                                           view.getProduct().getSceneRasterHeight());
+                if (superOverlay) {
+                    pm.beginTask(message, view.isRGB() ? 11 : 12);
+                    writeSuperOverlay(dimension, pm);
+                    return null;
+                }
+                pm.beginTask(message, view.isRGB() ? 4 : 3);
                 RenderedImage image = ExportImageAction.createImage(view, true, dimension, true, true);
                 pm.worked(1);
                 try (ZipOutputStream outStream = new ZipOutputStream(new FileOutputStream(file))) {
                     outStream.putNextEntry(new ZipEntry(OVERLAY_KML));
-                    final String kmlContent = formatKML(view, OVERLAY_PNG);
+                    final String kmlContent = formatKML(view, formatGroundOverlay(view, OVERLAY_PNG));
                     outStream.write(kmlContent.getBytes());
                     pm.worked(1);
 
@@ -348,9 +386,7 @@ public class ExportKmzFileAction extends AbstractAction implements HelpCtx.Provi
                     pm.worked(1);
 
                     if (!view.isRGB()) {
-                        outStream.putNextEntry(new ZipEntry(LEGEND_PNG));
-                        encoder = ImageCodec.createImageEncoder(IMAGE_TYPE, outStream, null);
-                        encoder.encode(createImageLegend(view.getRaster()));
+                        writeLegend(outStream);
                         pm.worked(1);
                     }
                 }
@@ -365,6 +401,47 @@ public class ExportKmzFileAction extends AbstractAction implements HelpCtx.Provi
             }
             return null;
         }
+
+        /**
+         * Writes the root document first and then streams the tiles into the zip as they are rendered, so that
+         * the scene never has to be held in memory at full resolution.
+         */
+        private void writeSuperOverlay(Dimension dimension, ProgressMonitor pm) throws Exception {
+            final double[] box = getSceneBox(view.getRaster());
+            final KmlSuperOverlayWriter writer = new KmlSuperOverlayWriter(
+                    dimension, box[0], box[1], box[2], box[3],
+                    (image, levelDimension, region) -> ExportImageAction.renderImage(view, true, levelDimension,
+                                                                                     true, false, image, region));
+            boolean written = false;
+            try {
+                final boolean completed;
+                try (ZipOutputStream outStream = new ZipOutputStream(new FileOutputStream(file))) {
+                    outStream.putNextEntry(new ZipEntry(OVERLAY_KML));
+                    outStream.write(formatKML(view, writer.formatRootLink()).getBytes());
+                    pm.worked(1);
+
+                    if (!view.isRGB()) {
+                        writeLegend(outStream);
+                        pm.worked(1);
+                    }
+
+                    completed = writer.write(outStream, SubProgressMonitor.create(pm, 10));
+                }
+                written = completed;
+            } finally {
+                // neither a cancelled nor a failed export leaves a partial file
+                if (!written) {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                }
+            }
+        }
+
+        private void writeLegend(ZipOutputStream outStream) throws Exception {
+            outStream.putNextEntry(new ZipEntry(LEGEND_PNG));
+            ImageEncoder encoder = ImageCodec.createImageEncoder(IMAGE_TYPE, outStream, null);
+            encoder.encode(createImageLegend(view.getRaster()));
+        }
     }
 
 }
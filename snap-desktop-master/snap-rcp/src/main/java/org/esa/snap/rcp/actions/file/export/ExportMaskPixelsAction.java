@@ -19,12 +19,9 @@ package org.esa.snap.rcp.actions.file.export;
 import com.bc.ceres.core.ProgressMonitor;
 import com.bc.ceres.swing.progress.ProgressMonitorSwingWorker;
 import org.esa.snap.core.datamodel.Band;
-import org.esa.snap.core.datamodel.GeoCoding;
-import org.esa.snap.core.datamodel.GeoPos;
 import org.esa.snap.core.datamodel.Mask;
-import org.esa.snap.core.datamodel.PixelPos;
 import org.esa.snap.core.datamodel.Product;
-import org.esa.snap.core.datamodel.TiePointGrid;
+import org.esa.snap.core.datamodel.RasterDataNode;
 import org.esa.snap.core.util.SystemUtils;
 import org.esa.snap.core.util.io.FileUtils;
 import org.esa.snap.core.util.io.SnapFileFilter;
@@ -59,14 +56,20 @@ import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.GregorianCalendar;
+import java.util.List;
 
 
 @ActionID(
@@ -187,40 +190,49 @@ public class ExportMaskPixelsAction extends AbstractAction implements ContextAwa
         final JCheckBox createHeaderBox = new JCheckBox("Create header");
         final JCheckBox exportTiePointsBox = new JCheckBox("Export tie-points");
         final JCheckBox exportWavelengthsAndSFBox = new JCheckBox("Export wavelengths + solar fluxes");
+        final JCheckBox binaryFormatBox = new JCheckBox("Binary columnar format (file only)");
         final int method = SelectExportMethodDialog.run(SnapApp.getDefault().getMainFrame(), getWindowTitle(),
                                                         questionText + numPixelsText, new JCheckBox[]{
                         createHeaderBox,
                         exportTiePointsBox,
-                        exportWavelengthsAndSFBox
+                        exportWavelengthsAndSFBox,
+                        binaryFormatBox
                 }, getHelpCtx().getHelpID());
 
         final boolean mustCreateHeader = createHeaderBox.isSelected();
         final boolean mustExportTiePoints = exportTiePointsBox.isSelected();
         final boolean mustExportWavelengthsAndSF = exportWavelengthsAndSFBox.isSelected();
+        final boolean binaryFormat = binaryFormatBox.isSelected() && method == SelectExportMethodDialog.EXPORT_TO_FILE;
 //
         final PrintWriter out;
+        final DataOutputStream binaryOut;
         final StringBuffer clipboardText;
         final int initialBufferSize = 256000;
         if (method == SelectExportMethodDialog.EXPORT_TO_CLIPBOARD) {
             // Write into string buffer
             final StringWriter stringWriter = new StringWriter(initialBufferSize);
             out = new PrintWriter(stringWriter);
+            binaryOut = null;
             clipboardText = stringWriter.getBuffer();
         } else if (method == SelectExportMethodDialog.EXPORT_TO_FILE) {
             // Write into file, get file from user
-            final File file = promptForFile(createDefaultFileName(product, maskName));
+            final File file = promptForFile(createDefaultFileName(product, maskName), binaryFormat);
             if (file == null) {
                 return; // Cancel
             }
-            final FileWriter fileWriter;
             try {
-                fileWriter = new FileWriter(file);
+                if (binaryFormat) {
+                    out = null;
+                    binaryOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), initialBufferSize));
+                } else {
+                    out = new PrintWriter(new BufferedWriter(new FileWriter(file), initialBufferSize));
+                    binaryOut = null;
+                }
             } catch (IOException e) {
                 SnapDialogs.showError(Bundle.CTL_ExportMaskPixelsAction_DialogTitle(),
                                       ERR_MSG_BASE + "Failed to create file '" + file + "':\n" + e.getMessage());
                 return; // Error
             }
-            out = new PrintWriter(new BufferedWriter(fileWriter, initialBufferSize));
             clipboardText = null;
         } else {
             return; // Cancel
@@ -233,16 +245,25 @@ public class ExportMaskPixelsAction extends AbstractAction implements ContextAwa
             protected Exception doInBackground(ProgressMonitor pm) throws Exception {
                 Exception returnValue = null;
                 try {
-                    boolean success = exportMaskPixels(out, product, maskImage, maskName,
-                                                       mustCreateHeader, mustExportTiePoints, mustExportWavelengthsAndSF, pm);
-                    if (success && clipboardText != null) {
-                        SystemUtils.copyToClipboard(clipboardText.toString());
-                        clipboardText.setLength(0);
+                    final MaskPixelsExporter exporter = createExporter(product, maskImage, mustExportTiePoints);
+                    if (binaryOut != null) {
+                        exportMaskPixels(binaryOut, exporter, pm);
+                    } else {
+                        boolean success = exportMaskPixels(out, product, exporter, maskName,
+                                                           mustCreateHeader, mustExportWavelengthsAndSF, pm);
+                        if (success && clipboardText != null) {
+                            SystemUtils.copyToClipboard(clipboardText.toString());
+                            clipboardText.setLength(0);
+                        }
                     }
                 } catch (Exception e) {
                     returnValue = e;
                 } finally {
-                    out.close();
+                    if (binaryOut != null) {
+                        binaryOut.close();
+                    } else {
+                        out.close();
+                    }
                 }
                 return returnValue;
             }
@@ -292,85 +313,87 @@ public class ExportMaskPixelsAction extends AbstractAction implements ContextAwa
      * @param visatApp the VISAT application
      * @return the selected file, <code>null</code> means "Cancel"
      */
-    private static File promptForFile(String defaultFileName) {
-        final SnapFileFilter fileFilter = new SnapFileFilter("TXT", "txt", "Text");
+    private static File promptForFile(String defaultFileName, boolean binaryFormat) {
+        final SnapFileFilter fileFilter;
+        final String defaultExtension;
+        if (binaryFormat) {
+            fileFilter = new SnapFileFilter("BIN", "bin", "Binary columnar");
+            defaultExtension = ".bin";
+        } else {
+            fileFilter = new SnapFileFilter("TXT", "txt", "Text");
+            defaultExtension = ".txt";
+        }
         return SnapDialogs.requestFileForSave(Bundle.CTL_ExportMaskPixelsAction_DialogTitle(),
                                               false,
                                               fileFilter,
-                                              ".txt",
+                                              defaultExtension,
                                               defaultFileName,
                                               null,
                                               "exportMaskPixels.lastDir");
     }
 
+    private static MaskPixelsExporter createExporter(Product product, RenderedImage maskImage, boolean mustExportTiePoints) {
+        final List<RasterDataNode> rasters = new ArrayList<>();
+        Collections.addAll(rasters, product.getBands());
+        if (mustExportTiePoints) {
+            Collections.addAll(rasters, product.getTiePointGrids());
+        }
+        return new MaskPixelsExporter(product, maskImage, rasters.toArray(new RasterDataNode[rasters.size()]),
+                                      Runtime.getRuntime().availableProcessors());
+    }
+
     /*
      * Writes all pixel values of the given product within the given Mask to the specified out.
      *
      * @param out      the data output writer
      * @param product  the product providing the pixel values
-     * @param maskImage the mask image for the Mask
+     * @param exporter the exporter reading the mask pixels tile by tile
      * @return <code>true</code> for success, <code>false</code> if export has been terminated (by user)
      */
     private static boolean exportMaskPixels(final PrintWriter out,
                                             final Product product,
-                                            final RenderedImage maskImage,
+                                            final MaskPixelsExporter exporter,
                                             String maskName,
                                             boolean mustCreateHeader,
-                                            boolean mustExportTiePoints,
                                             boolean mustExportWavelengthsAndSF,
                                             ProgressMonitor pm) throws IOException {
 
-        final Band[] bands = product.getBands();
-        final TiePointGrid[] tiePointGrids = product.getTiePointGrids();
-        final GeoCoding geoCoding = product.getSceneGeoCoding();
-
-        final int minTileX = maskImage.getMinTileX();
-        final int minTileY = maskImage.getMinTileY();
-
-        final int numXTiles = maskImage.getNumXTiles();
-        final int numYTiles = maskImage.getNumYTiles();
-
-        final int w = product.getSceneRasterWidth();
-        final int h = product.getSceneRasterHeight();
-        final Rectangle imageRect = new Rectangle(0, 0, w, h);
-
-        pm.beginTask("Writing pixel data...", numXTiles * numYTiles + 2);
+        pm.beginTask("Writing pixel data...", exporter.getTileCount() + 2);
         try {
             if (mustCreateHeader) {
                 createHeader(out, product, maskName, mustExportWavelengthsAndSF);
             }
             pm.worked(1);
-            writeColumnNames(out, geoCoding, bands, mustExportTiePoints, tiePointGrids);
+            writeColumnNames(out, exporter.hasGeoCoding(), exporter.getRasterNames());
             pm.worked(1);
 
-            for (int tileX = minTileX; tileX < minTileX + numXTiles; ++tileX) {
-                for (int tileY = minTileY; tileY < minTileY + numYTiles; ++tileY) {
-                    if (pm.isCanceled()) {
-                        return false;
-                    }
-                    final Rectangle tileRectangle = new Rectangle(maskImage.getTileGridXOffset() + tileX * maskImage.getTileWidth(),
-                                                                  maskImage.getTileGridYOffset() + tileY * maskImage.getTileHeight(),
-                                                                  maskImage.getTileWidth(), maskImage.getTileHeight());
-
-                    final Rectangle r = imageRect.intersection(tileRectangle);
-                    if (!r.isEmpty()) {
-                        Raster maskTile = maskImage.getTile(tileX, tileY);
-                        for (int y = r.y; y < r.y + r.height; y++) {
-                            for (int x = r.x; x < r.x + r.width; x++) {
-                                if (maskTile.getSample(x, y, 0) != 0) {
-                                    writeDataLine(out, geoCoding, bands, mustExportTiePoints, tiePointGrids, x, y);
-                                }
-                            }
-                        }
-                    }
-                    pm.worked(1);
-                }
-            }
+            return exporter.export(new MaskPixelsExporter.TextSink(out, exporter.getIntegerRasters()), pm);
         } finally {
             pm.done();
         }
+    }
 
-        return true;
+    /*
+     * Writes all pixel values of the given product within the given Mask in the binary columnar format.
+     *
+     * @param out      the binary data output
+     * @param exporter the exporter reading the mask pixels tile by tile
+     * @return <code>true</code> for success, <code>false</code> if export has been terminated (by user)
+     */
+    private static boolean exportMaskPixels(final DataOutputStream out,
+                                            final MaskPixelsExporter exporter,
+                                            ProgressMonitor pm) throws IOException {
+        pm.beginTask("Writing pixel data...", exporter.getTileCount());
+        try {
+            final MaskPixelsExporter.BinarySink sink = new MaskPixelsExporter.BinarySink(out, exporter.hasGeoCoding(),
+                                                                                         exporter.getRasterNames(),
+                                                                                         exporter.getIntegerRasters());
+            final boolean success = exporter.export(sink, pm);
+            sink.finish();
+            return success;
+        } finally {
+            pm.done();
+        }
     }
 
     private static void createHeader(PrintWriter out, Product product, String maskName, boolean mustExportWavelengthsAndSF) {
@@ -402,95 +425,29 @@ public class ExportMaskPixelsAction extends AbstractAction implements ContextAwa
     /*
      * Writes the header line of the dataset to be exported.
      *
-     * @param out                     the data output writer
-     * @param geoCoding               the product's geo-coding
-     * @param bands                   the array of bands to be considered
-     * @param mustExportTiePointGrids if tie-point grids shall be considered
-     * @param tiePointGrids           the array of tie-point grids to be considered
+     * @param out         the data output writer
+     * @param geoCoded    if the product has a geo-coding
+     * @param rasterNames the names of the bands and tie-point grids to be considered
      */
     private static void writeColumnNames(final PrintWriter out,
-                                         final GeoCoding geoCoding,
-                                         final Band[] bands,
-                                         boolean mustExportTiePointGrids,
-                                         TiePointGrid[] tiePointGrids) {
+                                         boolean geoCoded,
+                                         String[] rasterNames) {
         out.print("Pixel-X");
         out.print("\t");
         out.print("Pixel-Y");
-        if (geoCoding != null) {
+        if (geoCoded) {
             out.print("\t");
             out.print("Longitude");
             out.print("\t");
             out.print("Latitude");
         }
-        for (final Band band : bands) {
+        for (final String rasterName : rasterNames) {
             out.print("\t");
-            out.print(band.getName());
-        }
-        if (mustExportTiePointGrids) {
-            for (final TiePointGrid grid : tiePointGrids) {
-                out.print("\t");
-                out.print(grid.getName());
-            }
+            out.print(rasterName);
         }
         out.print("\n");
     }
 
-    /*
-     * Writes a data line of the dataset to be exported for the given pixel position.
-     *
-     * @param out                     the data output writer
-     * @param geoCoding               the product's geo-coding
-     * @param bands                   the array of bands that provide pixel values
-     * @param mustExportTiePointGrids if tie-point grids shall be exported
-     * @param tiePointGrids           the array of tie-point grids that provide pixel values
-     * @param x                       the current pixel's X coordinate
-     * @param y                       the current pixel's Y coordinate
-     */
-    private static void writeDataLine(final PrintWriter out,
-                                      final GeoCoding geoCoding,
-                                      final Band[] bands,
-                                      boolean mustExportTiePoints,
-                                      TiePointGrid[] tiePointGrids, int x,
-                                      int y) throws IOException {
-        final PixelPos pixelPos = new PixelPos(x + 0.5f, y + 0.5f);
-
-        out.print(String.valueOf(pixelPos.x));
-        out.print("\t");
-        out.print(String.valueOf(pixelPos.y));
-        if (geoCoding != null) {
-            final GeoPos geoPos = geoCoding.getGeoPos(pixelPos, null);
-            out.print("\t");
-            out.print(String.valueOf(geoPos.lon));
-            out.print("\t");
-            out.print(String.valueOf(geoPos.lat));
-        }
-        final int[] intPixel = new int[1];
-        final float[] floatPixel = new float[1];
-        for (final Band band : bands) {
-            out.print("\t");
-            if (band.isPixelValid(x, y)) {
-                if (band.isFloatingPointType()) {
-                    band.readPixels(x, y, 1, 1, floatPixel, ProgressMonitor.NULL);
-                    out.print(floatPixel[0]);
-                } else {
-                    band.readPixels(x, y, 1, 1, intPixel, ProgressMonitor.NULL);
-                    out.print(intPixel[0]);
-                }
-            } else {
-                out.print("NaN");
-            }
-        }
-        if (mustExportTiePoints) {
-            for (final TiePointGrid grid : tiePointGrids) {
-                grid.readPixels(x, y, 1, 1, floatPixel, ProgressMonitor.NULL);
-                out.print("\t");
-                out.print(floatPixel[0]);
-            }
-        }
-        out.print("\n");
-    }
-
-
     /*
      * Computes the total number of pixels within the specified Mask.
      *
@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.rcp.actions.file.export;
+
+import com.bc.ceres.core.ProgressMonitor;
+import com.sun.media.jai.codec.ImageCodec;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a scene in geographic coordinates as a regionated KML super-overlay into a KMZ file.
+ * <p>
+ * The super-overlay is a quadtree of PNG tiles. Level 0 is a single tile showing the whole scene and each level
+ * doubles the resolution, up to the full resolution of the scene. Every tile has its own KML document with a
+ * {@code Region} and links to its children, so viewers only load the tiles needed for the current view. The tiles
+ * are rendered and encoded on a pool of threads and streamed into the zip in order, with only a bounded number of
+ * tiles in flight.
+ */
+class KmlSuperOverlayWriter {
+
+    static final int TILE_SIZE = 256;
+    static final String TILE_DIR = "tiles/";
+
+    private static final int MIN_LOD_PIXELS = TILE_SIZE / 2;
+
+    /**
+     * Renders a region of the scene, scaled to the given dimension.
+     */
+    interface LevelRenderer {
+
+        /**
+         * @param image          the image to render into, which has the size of the region
+         * @param levelDimension the dimension of the whole scene at the level
+         * @param region         the region in the coordinates of the level
+         */
+        void render(BufferedImage image, Dimension levelDimension, Rectangle region);
+    }
+
+    private final Dimension sceneDimension;
+    private final double north;
+    private final double south;
+    private final double east;
+    private final double west;
+    private final LevelRenderer renderer;
+    private final int maxLevel;
+    private final int parallelism;
+
+    /**
+     * @param sceneDimension the dimension of the scene at full resolution
+     * @param north          the latitude of the upper edge of the scene
+     * @param south          the latitude of the lower edge of the scene
+     * @param east           the longitude of the right edge of the scene, greater than 180 if it crosses the
+     *                       anti-meridian
+     * @param west           the longitude of the left edge of the scene
+     * @param renderer       renders the tiles
+     */
+    KmlSuperOverlayWriter(Dimension sceneDimension, double north, double south, double east, double west,
+                          LevelRenderer renderer) {
+        this.sceneDimension = new Dimension(sceneDimension);
+        this.north = north;
+        this.south = south;
+        this.east = east;
+        this.west = west;
+        this.renderer = renderer;
+        this.maxLevel = computeMaxLevel(sceneDimension);
+        this.parallelism = Runtime.getRuntime().availableProcessors();
+    }
+
+    int getMaxLevel() {
+        return maxLevel;
+    }
+
+    int getNumTiles() {
+        int numTiles = 0;
+        for (int level = 0; level <= maxLevel; level++) {
+            final Dimension levelDimension = getLevelDimension(level);
+            numTiles += getNumTiles(levelDimension.width) * getNumTiles(levelDimension.height);
+        }
+        return numTiles;
+    }
+
+    Dimension getLevelDimension(int level) {
+        final double scale = Math.pow(2, maxLevel - level);
+        return new Dimension(Math.max(1, (int) Math.ceil(sceneDimension.width / scale)),
+                             Math.max(1, (int) Math.ceil(sceneDimension.height / scale)));
+    }
+
+    /**
+     * Creates a {@code NetworkLink} element loading the super-overlay, to be put into the root KML document.
+     */
+    String formatRootLink() {
+        return "  <NetworkLink>\n"
+               + "    <name>Raster data</name>\n"
+               + formatRegion(0, 0, 0, "    ")
+               + "    <Link>\n"
+               + "      <href>" + TILE_DIR + getTileName(0, 0, 0) + ".kml</href>\n"
+               + "      <viewRefreshMode>onRegion</viewRefreshMode>\n"
+               + "    </Link>\n"
+               + "  </NetworkLink>\n";
+    }
+
+    /**
+     * Writes the KML documents and images of all tiles into the given stream, below {@link #TILE_DIR}.
+     *
+     * @return {@code false} if the writing has been cancelled
+     */
+    boolean write(ZipOutputStream outStream, ProgressMonitor pm) throws IOException {
+        final ExecutorService executor = TileTasks.createExecutor(parallelism, "KMZ export tile writer");
+        pm.beginTask("Writing image tiles...", getNumTiles());
+        try {
+            final Deque<Future<Tile>> pendingTiles = new ArrayDeque<>();
+            final int maxPendingTiles = 2 * parallelism;
+            for (int level = 0; level <= maxLevel; level++) {
+                final Dimension levelDimension = getLevelDimension(level);
+                final int numXTiles = getNumTiles(levelDimension.width);
+                final int numYTiles = getNumTiles(levelDimension.height);
+                for (int tileY = 0; tileY < numYTiles; tileY++) {
+                    for (int tileX = 0; tileX < numXTiles; tileX++) {
+                        if (pendingTiles.size() == maxPendingTiles && !writeTile(outStream, pendingTiles.poll(), pm)) {
+                            return false;
+                        }
+                        final int z = level;
+                        final int x = tileX;
+                        final int y = tileY;
+                        pendingTiles.add(executor.submit(() -> createTile(z, x, y)));
+                    }
+                }
+            }
+            while (!pendingTiles.isEmpty()) {
+                if (!writeTile(outStream, pendingTiles.poll(), pm)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            executor.shutdownNow();
+            pm.done();
+        }
+    }
+
+    private static boolean writeTile(ZipOutputStream outStream, Future<Tile> future,
+                                     ProgressMonitor pm) throws IOException {
+        final Tile tile = TileTasks.getResult(future, pm);
+        if (tile == null) {
+            return false;
+        }
+        outStream.putNextEntry(new ZipEntry(TILE_DIR + tile.name + ".png"));
+        outStream.write(tile.png);
+        outStream.putNextEntry(new ZipEntry(TILE_DIR + tile.name + ".kml"));
+        outStream.write(tile.kml);
+        pm.worked(1);
+        return true;
+    }
+
+    private Tile createTile(int level, int tileX, int tileY) throws IOException {
+        final Dimension levelDimension = getLevelDimension(level);
+        final Rectangle region = getTileRegion(levelDimension, tileX, tileY);
+        final BufferedImage image = new BufferedImage(region.width, region.height, BufferedImage.TYPE_4BYTE_ABGR);
+        renderer.render(image, levelDimension, region);
+
+        final ByteArrayOutputStream pngStream = new ByteArrayOutputStream();
+        ImageCodec.createImageEncoder("PNG", pngStream, null).encode(image);
+        return new Tile(getTileName(level, tileX, tileY), pngStream.toByteArray(),
+                        formatTileKml(level, tileX, tileY).getBytes(StandardCharsets.UTF_8));
+    }
+
+    String formatTileKml(int level, int tileX, int tileY) {
+        final String tileName = getTileName(level, tileX, tileY);
+        final StringBuilder kml = new StringBuilder();
+        kml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<kml xmlns=\"http://www.opengis.net/kml/2.2\">\n")
+                .append("<Document>\n")
+                .append("  <name>").append(tileName).append("</name>\n")
+                .append(formatRegion(level, tileX, tileY, "  "))
+                .append("  <GroundOverlay>\n")
+                .append("    <drawOrder>").append(level).append("</drawOrder>\n")
+                .append("    <Icon>\n")
+                .append("      <href>").append(tileName).append(".png</href>\n")
+                .append("    </Icon>\n")
+                .append(formatBox("LatLonBox", level, tileX, tileY, "    "))
+                .append("  </GroundOverlay>\n");
+        if (level < maxLevel) {
+            final Dimension childDimension = getLevelDimension(level + 1);
+            final int numXTiles = getNumTiles(childDimension.width);
+            final int numYTiles = getNumTiles(childDimension.height);
+            for (int childY = 2 * tileY; childY <= 2 * tileY + 1 && childY < numYTiles; childY++) {
+                for (int childX = 2 * tileX; childX <= 2 * tileX + 1 && childX < numXTiles; childX++) {
+                    kml.append("  <NetworkLink>\n")
+                            .append(formatRegion(level + 1, childX, childY, "    "))
+                            .append("    <Link>\n")
+                            .append("      <href>").append(getTileName(level + 1, childX, childY))
+                            .append(".kml</href>\n")
+                            .append("      <viewRefreshMode>onRegion</viewRefreshMode>\n")
+                            .append("    </Link>\n")
+                            .append("  </NetworkLink>\n");
+                }
+            }
+        }
+        kml.append("</Document>\n")
+                .append("</kml>\n");
+        return kml.toString();
+    }
+
+    private String formatRegion(int level, int tileX, int tileY, String indent) {
+        // the overview is always shown, the tiles of the other levels once they cover enough pixels on screen
+        final int minLodPixels = level == 0 ? 0 : MIN_LOD_PIXELS;
+        return indent + "<Region>\n"
+               + formatBox("LatLonAltBox", level, tileX, tileY, indent + "  ")
+               + indent + "  <Lod>\n"
+               + indent + "    <minLodPixels>" + minLodPixels + "</minLodPixels>\n"
+               + indent + "    <maxLodPixels>-1</maxLodPixels>\n"
+               + indent + "  </Lod>\n"
+               + indent + "</Region>\n";
+    }
+
+    private String formatBox(String elementName, int level, int tileX, int tileY, String indent) {
+        final double[] box = getTileBox(level, tileX, tileY);
+        return indent + "<" + elementName + ">\n"
+               + indent + "  <north>" + box[0] + "</north>\n"
+               + indent + "  <south>" + box[1] + "</south>\n"
+               + indent + "  <east>" + box[2] + "</east>\n"
+               + indent + "  <west>" + box[3] + "</west>\n"
+               + indent + "</" + elementName + ">\n";
+    }
+
+    /**
+     * @return the north, south, east and west bound of the tile
+     */
+    double[] getTileBox(int level, int tileX, int tileY) {
+        final Dimension levelDimension = getLevelDimension(level);
+        final Rectangle region = getTileRegion(levelDimension, tileX, tileY);
+        final double lonPerPixel = (east - west) / levelDimension.width;
+        final double latPerPixel = (north - south) / levelDimension.height;
+        double tileWest = west + region.x * lonPerPixel;
+        double tileEast = west + (region.x + region.width) * lonPerPixel;
+        if (tileWest >= 180) {
+            tileWest -= 360;
+            tileEast -= 360;
+        }
+        return new double[]{
+                north - region.y * latPerPixel,
+                north - (region.y + region.height) * latPerPixel,
+                tileEast,
+                tileWest
+        };
+    }
+
+    static int computeMaxLevel(Dimension sceneDimension) {
+        int maxLevel = 0;
+        while (Math.max(sceneDimension.width, sceneDimension.height) > (long) TILE_SIZE << maxLevel) {
+            maxLevel++;
+        }
+        return maxLevel;
+    }
+
+    static String getTileName(int level, int tileX, int tileY) {
+        return level + "_" + tileX + "_" + tileY;
+    }
+
+    private static Rectangle getTileRegion(Dimension levelDimension, int tileX, int tileY) {
+        final Rectangle tile = new Rectangle(tileX * TILE_SIZE, tileY * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+        return tile.intersection(new Rectangle(levelDimension));
+    }
+
+    private static int getNumTiles(int size) {
+        return (size + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    private static class Tile {
+
+        private final String name;
+        private final byte[] png;
+        private final byte[] kml;
+
+        private Tile(String name, byte[] png, byte[] kml) {
+            this.name = name;
+            this.png = png;
+            this.kml = kml;
+        }
+    }
+}
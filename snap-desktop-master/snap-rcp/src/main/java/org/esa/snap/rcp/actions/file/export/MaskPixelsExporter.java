@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.actions.file.export;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.datamodel.GeoCoding;
+import org.esa.snap.core.datamodel.GeoPos;
+import org.esa.snap.core.datamodel.PixelPos;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.RasterDataNode;
+
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Exports the pixels of a mask tile by tile. For each mask tile containing at least one set pixel the data block
+ * of every exported raster is read once and the mask pixels are collected into a columnar {@link TileBlock}.
+ * Tiles are read in parallel, the resulting blocks are handed to a {@link Sink} in the original tile order.
+ */
+class MaskPixelsExporter {
+
+    private final RenderedImage maskImage;
+    private final RasterDataNode[] rasters;
+    private final boolean[] integerRasters;
+    private final String[] rasterNames;
+    private final GeoCoding geoCoding;
+    private final Rectangle imageRect;
+    private final int parallelism;
+
+    /**
+     * @param product     the product providing the pixel values
+     * @param maskImage   the mask image, pixels with a sample value other than zero are exported
+     * @param rasters     the bands and tie-point grids whose values are exported, in column order
+     * @param parallelism the maximum number of tiles read concurrently
+     */
+    MaskPixelsExporter(Product product, RenderedImage maskImage, RasterDataNode[] rasters, int parallelism) {
+        this.maskImage = maskImage;
+        this.rasters = rasters;
+        this.geoCoding = product.getSceneGeoCoding();
+        this.imageRect = new Rectangle(0, 0, product.getSceneRasterWidth(), product.getSceneRasterHeight());
+        this.parallelism = Math.max(1, parallelism);
+        this.integerRasters = new boolean[rasters.length];
+        this.rasterNames = new String[rasters.length];
+        for (int i = 0; i < rasters.length; i++) {
+            integerRasters[i] = !rasters[i].isFloatingPointType();
+            rasterNames[i] = rasters[i].getName();
+        }
+    }
+
+    boolean hasGeoCoding() {
+        return geoCoding != null;
+    }
+
+    String[] getRasterNames() {
+        return rasterNames;
+    }
+
+    boolean[] getIntegerRasters() {
+        return integerRasters;
+    }
+
+    int getTileCount() {
+        return maskImage.getNumXTiles() * maskImage.getNumYTiles();
+    }
+
+    /**
+     * Reads all mask tiles and passes the non-empty blocks to the given sink.
+     * The progress monitor is advanced by one unit per tile, but neither started nor finished.
+     *
+     * @return {@code true} for success, {@code false} if the export has been cancelled
+     */
+    boolean export(Sink sink, ProgressMonitor pm) throws IOException {
+        final int minTileX = maskImage.getMinTileX();
+        final int minTileY = maskImage.getMinTileY();
+        final int numXTiles = maskImage.getNumXTiles();
+        final int numYTiles = maskImage.getNumYTiles();
+        final int maxPending = 2 * parallelism;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        final Deque<Future<TileBlock>> pending = new ArrayDeque<>(maxPending);
+        try {
+            for (int tileX = minTileX; tileX < minTileX + numXTiles; ++tileX) {
+                for (int tileY = minTileY; tileY < minTileY + numYTiles; ++tileY) {
+                    while (pending.size() >= maxPending) {
+                        if (pm.isCanceled()) {
+                            return false;
+                        }
+                        writeNext(pending, sink);
+                        pm.worked(1);
+                    }
+                    final int tx = tileX;
+                    final int ty = tileY;
+                    pending.add(executor.submit(() -> readTile(tx, ty)));
+                }
+            }
+            while (!pending.isEmpty()) {
+                if (pm.isCanceled()) {
+                    return false;
+                }
+                writeNext(pending, sink);
+                pm.worked(1);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return true;
+    }
+
+    private static void writeNext(Deque<Future<TileBlock>> pending, Sink sink) throws IOException {
+        final TileBlock block;
+        try {
+            block = pending.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Mask pixel export interrupted");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+        if (block.size > 0) {
+            sink.write(block);
+        }
+    }
+
+    TileBlock readTile(int tileX, int tileY) {
+        final Rectangle tileRect = new Rectangle(maskImage.getTileGridXOffset() + tileX * maskImage.getTileWidth(),
+                                                 maskImage.getTileGridYOffset() + tileY * maskImage.getTileHeight(),
+                                                 maskImage.getTileWidth(), maskImage.getTileHeight());
+        final Rectangle r = imageRect.intersection(tileRect);
+        if (r.isEmpty()) {
+            return TileBlock.EMPTY;
+        }
+        final Raster maskTile = maskImage.getTile(tileX, tileY);
+        final int[] maskSamples = maskTile.getSamples(r.x, r.y, r.width, r.height, 0, (int[]) null);
+        int size = 0;
+        for (int maskSample : maskSamples) {
+            if (maskSample != 0) {
+                size++;
+            }
+        }
+        if (size == 0) {
+            return TileBlock.EMPTY;
+        }
+
+        final TileBlock block = new TileBlock(size, geoCoding != null, rasters.length);
+        final int[] indexes = new int[size];
+        int n = 0;
+        for (int i = 0; i < maskSamples.length; i++) {
+            if (maskSamples[i] != 0) {
+                indexes[n] = i;
+                block.x[n] = r.x + i % r.width;
+                block.y[n] = r.y + i / r.width;
+                n++;
+            }
+        }
+
+        if (geoCoding != null) {
+            final PixelPos pixelPos = new PixelPos();
+            final GeoPos geoPos = new GeoPos();
+            for (int k = 0; k < size; k++) {
+                pixelPos.setLocation(block.x[k] + 0.5, block.y[k] + 0.5);
+                geoCoding.getGeoPos(pixelPos, geoPos);
+                block.lon[k] = geoPos.lon;
+                block.lat[k] = geoPos.lat;
+            }
+        }
+
+        final double[] samples = new double[r.width * r.height];
+        int[] validSamples = null;
+        for (int i = 0; i < rasters.length; i++) {
+            final RasterDataNode raster = rasters[i];
+            raster.getGeophysicalImage().getData(r).getSamples(r.x, r.y, r.width, r.height, 0, samples);
+            final RenderedImage validMaskImage = raster.getValidMaskImage();
+            if (validMaskImage != null) {
+                validSamples = validMaskImage.getData(r).getSamples(r.x, r.y, r.width, r.height, 0, validSamples);
+            }
+            final double[] column = block.values[i];
+            for (int k = 0; k < size; k++) {
+                final int index = indexes[k];
+                if (validMaskImage == null || validSamples[index] != 0) {
+                    column[k] = integerRasters[i] ? (int) samples[index] : samples[index];
+                } else {
+                    column[k] = Double.NaN;
+                }
+            }
+        }
+        return block;
+    }
+
+    /**
+     * The mask pixels of a single tile, stored column-wise.
+     */
+    static final class TileBlock {
+
+        static final TileBlock EMPTY = new TileBlock(0, false, 0);
+
+        final int size;
+        final int[] x;
+        final int[] y;
+        final double[] lon;
+        final double[] lat;
+        final double[][] values;
+
+        TileBlock(int size, boolean geoCoded, int numRasters) {
+            this.size = size;
+            this.x = new int[size];
+            this.y = new int[size];
+            this.lon = geoCoded ? new double[size] : null;
+            this.lat = geoCoded ? new double[size] : null;
+            this.values = new double[numRasters][size];
+        }
+    }
+
+    /**
+     * Receives the tile blocks in tile order. Called from a single thread only.
+     */
+    interface Sink {
+
+        void write(TileBlock block) throws IOException;
+    }
+
+    /**
+     * Writes blocks as tab-separated text lines, one line per pixel.
+     */
+    static class TextSink implements Sink {
+
+        private final PrintWriter out;
+        private final boolean[] integerRasters;
+
+        TextSink(PrintWriter out, boolean[] integerRasters) {
+            this.out = out;
+            this.integerRasters = integerRasters;
+        }
+
+        @Override
+        public void write(TileBlock block) {
+            for (int k = 0; k < block.size; k++) {
+                out.print(String.valueOf(block.x[k] + 0.5));
+                out.print("\t");
+                out.print(String.valueOf(block.y[k] + 0.5));
+                if (block.lon != null) {
+                    out.print("\t");
+                    out.print(String.valueOf(block.lon[k]));
+                    out.print("\t");
+                    out.print(String.valueOf(block.lat[k]));
+                }
+                for (int i = 0; i < block.values.length; i++) {
+                    out.print("\t");
+                    final double value = block.values[i][k];
+                    if (Double.isNaN(value)) {
+                        out.print("NaN");
+                    } else if (integerRasters[i]) {
+                        out.print((int) value);
+                    } else {
+                        out.print((float) value);
+                    }
+                }
+                out.print("\n");
+            }
+        }
+    }
+
+    /**
+     * Writes blocks in a simple binary columnar format (big-endian):
+     * <pre>
+     *     header:  magic "SNAPMPX1", int columnCount, columnCount x (UTF name, byte type)
+     *     block:   int pixelCount, then each column as pixelCount consecutive values
+     *     trailer: int 0
+     * </pre>
+     * The column type is {@code 'F'} for float32 and {@code 'D'} for float64 values. Pixel coordinates
+     * refer to pixel centres, invalid pixels are written as NaN.
+     */
+    static class BinarySink implements Sink {
+
+        static final byte[] MAGIC = "SNAPMPX1".getBytes(StandardCharsets.US_ASCII);
+
+        private final DataOutputStream out;
+        private final boolean geoCoded;
+        private final boolean[] integerRasters;
+
+        BinarySink(DataOutputStream out, boolean geoCoded, String[] rasterNames, boolean[] integerRasters) throws IOException {
+            this.out = out;
+            this.geoCoded = geoCoded;
+            this.integerRasters = integerRasters;
+            out.write(MAGIC);
+            out.writeInt(2 + (geoCoded ? 2 : 0) + rasterNames.length);
+            writeColumn("Pixel-X", 'F');
+            writeColumn("Pixel-Y", 'F');
+            if (geoCoded) {
+                writeColumn("Longitude", 'D');
+                writeColumn("Latitude", 'D');
+            }
+            for (int i = 0; i < rasterNames.length; i++) {
+                // integer rasters may exceed the 24 bit mantissa of a float
+                writeColumn(rasterNames[i], integerRasters[i] ? 'D' : 'F');
+            }
+        }
+
+        private void writeColumn(String name, char type) throws IOException {
+            out.writeUTF(name);
+            out.writeByte(type);
+        }
+
+        @Override
+        public void write(TileBlock block) throws IOException {
+            out.writeInt(block.size);
+            for (int k = 0; k < block.size; k++) {
+                out.writeFloat(block.x[k] + 0.5F);
+            }
+            for (int k = 0; k < block.size; k++) {
+                out.writeFloat(block.y[k] + 0.5F);
+            }
+            if (geoCoded) {
+                writeDoubles(block.lon, block.size);
+                writeDoubles(block.lat, block.size);
+            }
+            for (int i = 0; i < block.values.length; i++) {
+                if (integerRasters[i]) {
+                    writeDoubles(block.values[i], block.size);
+                } else {
+                    for (int k = 0; k < block.size; k++) {
+                        out.writeFloat((float) block.values[i][k]);
+                    }
+                }
+            }
+        }
+
+        void finish() throws IOException {
+            out.writeInt(0);
+            out.flush();
+        }
+
+        private void writeDoubles(double[] column, int size) throws IOException {
+            for (int k = 0; k < size; k++) {
+                out.writeDouble(column[k]);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.rcp.actions.file.export;
+
+import com.bc.ceres.core.ProgressMonitor;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Helpers for the export writers, which render and encode tiles on a pool of threads and write them in order.
+ */
+class TileTasks {
+
+    private TileTasks() {
+    }
+
+    /**
+     * Creates a fixed pool of daemon threads with the given name.
+     */
+    static ExecutorService createExecutor(int parallelism, String threadName) {
+        return Executors.newFixedThreadPool(parallelism, r -> {
+            final Thread thread = new Thread(r, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Waits for the result of a task, cancelling it if the progress monitor has been cancelled.
+     *
+     * @return the result, or {@code null} if cancelled
+     */
+    static <T> T getResult(Future<T> future, ProgressMonitor pm) throws IOException {
+        while (true) {
+            if (pm.isCanceled()) {
+                future.cancel(true);
+                return null;
+            }
+            try {
+                return future.get(100, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // check for cancellation again
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Image export has been interrupted.", e);
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.rcp.actions.file.export;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.JAI;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.SourcelessOpImage;
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * An RGB(A) image whose tiles are rendered on demand. Its tiles are not cached, each call of {@link #getTile}
+ * renders the tile again, which may be done concurrently.
+ */
+class TiledLayerImage extends SourcelessOpImage {
+
+    static final int TILE_SIZE = 512;
+
+    /**
+     * Renders a region of the image.
+     */
+    interface RegionRenderer {
+
+        /**
+         * @param image  the image to render into, which has the size of the region
+         * @param region the region in image coordinates
+         */
+        void render(BufferedImage image, Rectangle region);
+    }
+
+    private final RegionRenderer renderer;
+
+    TiledLayerImage(Dimension dimension, boolean alphaChannel, RegionRenderer renderer) {
+        this(dimension, createPrototype(alphaChannel), renderer);
+    }
+
+    private TiledLayerImage(Dimension dimension, BufferedImage prototype, RegionRenderer renderer) {
+        super(createLayout(dimension, prototype), new RenderingHints(JAI.KEY_TILE_CACHE, null),
+              createSampleModel(prototype), 0, 0, dimension.width, dimension.height);
+        this.renderer = renderer;
+    }
+
+    boolean hasAlpha() {
+        return getColorModel().hasAlpha();
+    }
+
+    @Override
+    protected void computeRect(PlanarImage[] sources, WritableRaster dest, Rectangle destRect) {
+        final WritableRaster raster = dest.createWritableChild(destRect.x, destRect.y,
+                                                               destRect.width, destRect.height, 0, 0, null);
+        renderer.render(new BufferedImage(getColorModel(), raster, false, null), new Rectangle(destRect));
+    }
+
+    private static BufferedImage createPrototype(boolean alphaChannel) {
+        return new BufferedImage(1, 1, alphaChannel ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR);
+    }
+
+    private static SampleModel createSampleModel(BufferedImage prototype) {
+        return prototype.getSampleModel().createCompatibleSampleModel(TILE_SIZE, TILE_SIZE);
+    }
+
+    private static ImageLayout createLayout(Dimension dimension, BufferedImage prototype) {
+        return new ImageLayout(0, 0, dimension.width, dimension.height, 0, 0, TILE_SIZE, TILE_SIZE,
+                               createSampleModel(prototype), prototype.getColorModel());
+    }
+}
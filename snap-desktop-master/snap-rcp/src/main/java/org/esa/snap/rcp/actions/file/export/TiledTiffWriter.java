@@ -0,0 +1,425 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.rcp.actions.file.export;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.util.geotiff.GeoTIFFMetadata;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/**
+ * Writes 8-bit RGB(A) images as tiled, deflate compressed (Geo)TIFF files without holding the image in memory.
+ * <p>
+ * The tiles are fetched and compressed on a pool of threads and written in order, with only a bounded number of
+ * tiles in flight. The tile offsets and the directory are written after the tiles. Files which may exceed the
+ * 4 GB limit of TIFF are written as BigTIFF.
+ */
+class TiledTiffWriter {
+
+    private static final int TAG_IMAGE_WIDTH = 256;
+    private static final int TAG_IMAGE_LENGTH = 257;
+    private static final int TAG_BITS_PER_SAMPLE = 258;
+    private static final int TAG_COMPRESSION = 259;
+    private static final int TAG_PHOTOMETRIC_INTERPRETATION = 262;
+    private static final int TAG_SAMPLES_PER_PIXEL = 277;
+    private static final int TAG_PLANAR_CONFIGURATION = 284;
+    private static final int TAG_TILE_WIDTH = 322;
+    private static final int TAG_TILE_LENGTH = 323;
+    private static final int TAG_TILE_OFFSETS = 324;
+    private static final int TAG_TILE_BYTE_COUNTS = 325;
+    private static final int TAG_EXTRA_SAMPLES = 338;
+    private static final int[] GEOTIFF_TAGS = {33550, 33922, 34264, 34735, 34736, 34737};
+
+    private static final int TYPE_ASCII = 2;
+    private static final int TYPE_SHORT = 3;
+    private static final int TYPE_LONG = 4;
+    private static final int TYPE_DOUBLE = 12;
+    private static final int TYPE_LONG8 = 16;
+
+    private static final int COMPRESSION_DEFLATE = 8;
+    private static final int PHOTOMETRIC_RGB = 2;
+    private static final int EXTRA_SAMPLE_UNASSOCIATED_ALPHA = 2;
+    private static final long MAX_CLASSIC_TIFF_SIZE = 0xFFFFFFFFL;
+
+    private final File file;
+    private final GeoTIFFMetadata geoTIFFMetadata;
+    private final int parallelism;
+
+    /**
+     * @param file            the output file
+     * @param geoTIFFMetadata the GeoTIFF metadata, or {@code null} for a plain TIFF file
+     */
+    TiledTiffWriter(File file, GeoTIFFMetadata geoTIFFMetadata) {
+        this.file = file;
+        this.geoTIFFMetadata = geoTIFFMetadata;
+        this.parallelism = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Writes the image, whose tiles must be a multiple of 16 pixels wide and high. The file is deleted if the
+     * writing has been cancelled or has failed.
+     *
+     * @return {@code false} if the writing has been cancelled
+     */
+    boolean write(RenderedImage image, ProgressMonitor pm) throws IOException {
+        final int numXTiles = image.getNumXTiles();
+        final int numTiles = numXTiles * image.getNumYTiles();
+        final int numBands = image.getSampleModel().getNumBands();
+        final long tileSize = (long) image.getTileWidth() * image.getTileHeight() * numBands;
+        final boolean bigTiff = isBigTiffRequired(numTiles * tileSize, numTiles);
+        final long[] tileOffsets = new long[numTiles];
+        final long[] tileByteCounts = new long[numTiles];
+        final List<Field> geoFields = geoTIFFMetadata != null ? createGeoFields(geoTIFFMetadata) : new ArrayList<>();
+
+        final ExecutorService executor = TileTasks.createExecutor(parallelism, "Image export tile writer");
+        boolean canceled = false;
+        boolean written = false;
+        pm.beginTask("Writing image tiles...", numTiles);
+        try {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                                        StandardOpenOption.TRUNCATE_EXISTING,
+                                                        StandardOpenOption.WRITE)) {
+                writeHeader(channel, bigTiff, 0L);
+                final Deque<Future<byte[]>> pendingTiles = new ArrayDeque<>();
+                final int maxPendingTiles = 2 * parallelism;
+                int nextTileIndex = 0;
+                for (int i = 0; i < numTiles && !canceled; i++) {
+                    while (nextTileIndex < numTiles && pendingTiles.size() < maxPendingTiles) {
+                        final int tileX = nextTileIndex % numXTiles;
+                        final int tileY = nextTileIndex / numXTiles;
+                        pendingTiles.add(executor.submit(() -> encodeTile(image, tileX, tileY)));
+                        nextTileIndex++;
+                    }
+                    final byte[] data = TileTasks.getResult(pendingTiles.poll(), pm);
+                    if (data == null) {
+                        canceled = true;
+                    } else {
+                        tileOffsets[i] = channel.position();
+                        tileByteCounts[i] = data.length;
+                        writeFully(channel, ByteBuffer.wrap(data));
+                        pm.worked(1);
+                    }
+                }
+                if (!canceled) {
+                    final List<Field> fields = createImageFields(image, numBands, bigTiff,
+                                                                 tileOffsets, tileByteCounts);
+                    fields.addAll(geoFields);
+                    final long directoryOffset = writeDirectory(channel, fields, bigTiff);
+                    writeHeader(channel, bigTiff, directoryOffset);
+                }
+            }
+            written = !canceled;
+        } finally {
+            executor.shutdownNow();
+            pm.done();
+            if (!written) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        return written;
+    }
+
+    static boolean isBigTiffRequired(long uncompressedSize, int numTiles) {
+        // deflate may slightly expand incompressible tiles
+        return uncompressedSize + uncompressedSize / 100 + 64L * numTiles + (1 << 20) > MAX_CLASSIC_TIFF_SIZE;
+    }
+
+    /**
+     * Fetches a tile and compresses its pixels, padded to the full tile size.
+     */
+    static byte[] encodeTile(RenderedImage image, int tileX, int tileY) {
+        final int tileWidth = image.getTileWidth();
+        final int tileHeight = image.getTileHeight();
+        final int numBands = image.getSampleModel().getNumBands();
+        final Raster tile = image.getTile(tileX, tileY);
+        final Rectangle imageBounds = new Rectangle(image.getMinX(), image.getMinY(),
+                                                    image.getWidth(), image.getHeight());
+        final Rectangle bounds = tile.getBounds().intersection(imageBounds);
+
+        final byte[] pixels = new byte[tileWidth * tileHeight * numBands];
+        final byte[] data = (byte[]) tile.getDataElements(bounds.x, bounds.y, bounds.width, bounds.height, null);
+        final int rowLength = bounds.width * numBands;
+        for (int y = 0; y < bounds.height; y++) {
+            System.arraycopy(data, y * rowLength, pixels, y * tileWidth * numBands, rowLength);
+        }
+
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(pixels);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(pixels.length / 4);
+            final byte[] buffer = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static List<Field> createImageFields(RenderedImage image, int numBands, boolean bigTiff,
+                                                 long[] tileOffsets, long[] tileByteCounts) {
+        final List<Field> fields = new ArrayList<>();
+        fields.add(Field.createLongs(TAG_IMAGE_WIDTH, image.getWidth()));
+        fields.add(Field.createLongs(TAG_IMAGE_LENGTH, image.getHeight()));
+        final int[] bitsPerSample = new int[numBands];
+        Arrays.fill(bitsPerSample, 8);
+        fields.add(Field.createShorts(TAG_BITS_PER_SAMPLE, bitsPerSample));
+        fields.add(Field.createShorts(TAG_COMPRESSION, COMPRESSION_DEFLATE));
+        fields.add(Field.createShorts(TAG_PHOTOMETRIC_INTERPRETATION, PHOTOMETRIC_RGB));
+        fields.add(Field.createShorts(TAG_SAMPLES_PER_PIXEL, numBands));
+        fields.add(Field.createShorts(TAG_PLANAR_CONFIGURATION, 1));
+        fields.add(Field.createLongs(TAG_TILE_WIDTH, image.getTileWidth()));
+        fields.add(Field.createLongs(TAG_TILE_LENGTH, image.getTileHeight()));
+        fields.add(bigTiff ? Field.createLong8s(TAG_TILE_OFFSETS, tileOffsets)
+                           : Field.createLongs(TAG_TILE_OFFSETS, tileOffsets));
+        fields.add(bigTiff ? Field.createLong8s(TAG_TILE_BYTE_COUNTS, tileByteCounts)
+                           : Field.createLongs(TAG_TILE_BYTE_COUNTS, tileByteCounts));
+        if (numBands == 4) {
+            fields.add(Field.createShorts(TAG_EXTRA_SAMPLES, EXTRA_SAMPLE_UNASSOCIATED_ALPHA));
+        }
+        return fields;
+    }
+
+    /**
+     * Extracts the GeoTIFF fields from the TIFF image metadata tree of the GeoTIFF metadata.
+     */
+    static List<Field> createGeoFields(GeoTIFFMetadata metadata) throws IOException {
+        final Document document;
+        try {
+            final byte[] xml = metadata.getAsXML().getBytes(StandardCharsets.UTF_8);
+            document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Failed to create GeoTIFF metadata.", e);
+        }
+        final List<Field> fields = new ArrayList<>();
+        final NodeList fieldElements = document.getElementsByTagName("TIFFField");
+        for (int i = 0; i < fieldElements.getLength(); i++) {
+            final Element fieldElement = (Element) fieldElements.item(i);
+            final int tag = Integer.parseInt(fieldElement.getAttribute("number"));
+            if (isGeoTag(tag)) {
+                final Field field = createField(tag, fieldElement);
+                if (field != null) {
+                    fields.add(field);
+                }
+            }
+        }
+        return fields;
+    }
+
+    private static boolean isGeoTag(int tag) {
+        for (int geoTag : GEOTIFF_TAGS) {
+            if (tag == geoTag) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Field createField(int tag, Element fieldElement) {
+        final List<String> values = new ArrayList<>();
+        String valuesName = null;
+        for (Node child = fieldElement.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                valuesName = child.getNodeName();
+                for (Node value = child.getFirstChild(); value != null; value = value.getNextSibling()) {
+                    if (value instanceof Element) {
+                        values.add(((Element) value).getAttribute("value"));
+                    }
+                }
+            }
+        }
+        if ("TIFFShorts".equals(valuesName)) {
+            return Field.createShorts(tag, values.stream().mapToInt(Integer::parseInt).toArray());
+        } else if ("TIFFLongs".equals(valuesName)) {
+            return Field.createLongs(tag, values.stream().mapToLong(Long::parseLong).toArray());
+        } else if ("TIFFDoubles".equals(valuesName)) {
+            return Field.createDoubles(tag, values.stream().mapToDouble(Double::parseDouble).toArray());
+        } else if ("TIFFAsciis".equals(valuesName)) {
+            return Field.createAscii(tag, String.join("\0", values));
+        }
+        return null;
+    }
+
+    private static void writeHeader(FileChannel channel, boolean bigTiff, long directoryOffset) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(bigTiff ? 16 : 8).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put((byte) 'I').put((byte) 'I');
+        if (bigTiff) {
+            buffer.putShort((short) 43).putShort((short) 8).putShort((short) 0).putLong(directoryOffset);
+        } else {
+            buffer.putShort((short) 42).putInt((int) directoryOffset);
+        }
+        buffer.flip();
+        channel.position(0);
+        writeFully(channel, buffer);
+    }
+
+    /**
+     * Writes the values which don't fit into the directory entries followed by the directory.
+     *
+     * @return the offset of the directory
+     */
+    private static long writeDirectory(FileChannel channel, List<Field> fields, boolean bigTiff) throws IOException {
+        fields.sort(Comparator.comparingInt(field -> field.tag));
+        final int inlineSize = bigTiff ? 8 : 4;
+        final long[] valueOffsets = new long[fields.size()];
+        long position = channel.position();
+        for (int i = 0; i < fields.size(); i++) {
+            final byte[] value = fields.get(i).value;
+            if (value.length > inlineSize) {
+                position += position & 1;
+                valueOffsets[i] = position;
+                channel.position(position);
+                writeFully(channel, ByteBuffer.wrap(value));
+                position += value.length;
+            }
+        }
+        final long directoryOffset = position + (position & 1);
+        final int entrySize = bigTiff ? 20 : 12;
+        final ByteBuffer buffer = ByteBuffer.allocate((bigTiff ? 16 : 6) + entrySize * fields.size())
+                .order(ByteOrder.LITTLE_ENDIAN);
+        if (bigTiff) {
+            buffer.putLong(fields.size());
+        } else {
+            buffer.putShort((short) fields.size());
+        }
+        for (int i = 0; i < fields.size(); i++) {
+            final Field field = fields.get(i);
+            buffer.putShort((short) field.tag).putShort((short) field.type);
+            if (bigTiff) {
+                buffer.putLong(field.count);
+            } else {
+                buffer.putInt((int) field.count);
+            }
+            if (field.value.length > inlineSize) {
+                if (bigTiff) {
+                    buffer.putLong(valueOffsets[i]);
+                } else {
+                    buffer.putInt((int) valueOffsets[i]);
+                }
+            } else {
+                buffer.put(field.value);
+                for (int j = field.value.length; j < inlineSize; j++) {
+                    buffer.put((byte) 0);
+                }
+            }
+        }
+        // no further directory
+        if (bigTiff) {
+            buffer.putLong(0L);
+        } else {
+            buffer.putInt(0);
+        }
+        buffer.flip();
+        channel.position(directoryOffset);
+        writeFully(channel, buffer);
+        return directoryOffset;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * A field of the image file directory, with its value encoded in little-endian byte order.
+     */
+    static final class Field {
+
+        final int tag;
+        final int type;
+        final long count;
+        final byte[] value;
+
+        private Field(int tag, int type, long count, byte[] value) {
+            this.tag = tag;
+            this.type = type;
+            this.count = count;
+            this.value = value;
+        }
+
+        static Field createShorts(int tag, int... values) {
+            final ByteBuffer buffer = allocate(2 * values.length);
+            for (int value : values) {
+                buffer.putShort((short) value);
+            }
+            return new Field(tag, TYPE_SHORT, values.length, buffer.array());
+        }
+
+        static Field createLongs(int tag, long... values) {
+            final ByteBuffer buffer = allocate(4 * values.length);
+            for (long value : values) {
+                buffer.putInt((int) value);
+            }
+            return new Field(tag, TYPE_LONG, values.length, buffer.array());
+        }
+
+        static Field createLong8s(int tag, long... values) {
+            final ByteBuffer buffer = allocate(8 * values.length);
+            for (long value : values) {
+                buffer.putLong(value);
+            }
+            return new Field(tag, TYPE_LONG8, values.length, buffer.array());
+        }
+
+        static Field createDoubles(int tag, double... values) {
+            final ByteBuffer buffer = allocate(8 * values.length);
+            for (double value : values) {
+                buffer.putDouble(value);
+            }
+            return new Field(tag, TYPE_DOUBLE, values.length, buffer.array());
+        }
+
+        static Field createAscii(int tag, String value) {
+            final byte[] bytes = (value + "\0").getBytes(StandardCharsets.US_ASCII);
+            return new Field(tag, TYPE_ASCII, bytes.length, bytes);
+        }
+
+        private static ByteBuffer allocate(int size) {
+            return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+}
@@ -27,6 +27,7 @@ import org.esa.snap.core.datamodel.RasterDataNode;
 import org.esa.snap.core.datamodel.VirtualBand;
 import org.esa.snap.netbeans.docwin.WindowUtilities;
 import org.esa.snap.rcp.SnapApp;
+import org.esa.snap.rcp.bandmaths.ExpressionCompiler;
 import org.esa.snap.rcp.windows.ProductSceneViewTopComponent;
 import org.openide.awt.ActionID;
 import org.openide.awt.ActionReference;
@@ -139,7 +140,7 @@ public class ConvertComputedBandIntoBandAction extends AbstractAction implements
 
     MultiLevelImage createSourceImage(Band computedBand, Band realBand) {
         if (computedBand instanceof VirtualBand) {
-            return VirtualBand.createSourceImage(realBand, ((VirtualBand) computedBand).getExpression());
+            return ExpressionCompiler.createSourceImage(realBand, ((VirtualBand) computedBand).getExpression());
         }else {
             return computedBand.getSourceImage();
         }
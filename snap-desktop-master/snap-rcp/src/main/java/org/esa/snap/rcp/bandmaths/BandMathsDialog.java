@@ -167,13 +167,14 @@ class BandMathsDialog extends ModalDialog {
         bandGroup.add(band);
 
         if (saveExpressionOnly) {
+            // the virtual band creates its image itself, so that it follows later edits of its expression
             checkExpressionForExternalReferences(getExpression());
         } else {
             String expression = getExpression();
             if (validMaskExpression != null && !validMaskExpression.isEmpty()) {
                 expression = "(" + validMaskExpression + ") ? (" + expression + ") : NaN";
             }
-            band.setSourceImage(VirtualBand.createSourceImage(band, expression));
+            band.setSourceImage(ExpressionCompiler.createSourceImage(band, expression));
         }
 
         UndoRedo.Manager undoManager = SnapApp.getDefault().getUndoManager(targetProduct);
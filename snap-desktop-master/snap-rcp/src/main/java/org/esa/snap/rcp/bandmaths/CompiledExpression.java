@@ -0,0 +1,458 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.bandmaths;
+
+import org.esa.snap.core.dataop.barithm.RasterDataSymbol;
+import org.esa.snap.core.jexp.Term;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A band maths expression compiled by the {@link ExpressionCompiler}. The expression is evaluated for all pixels
+ * of a tile at once: every node of the expression runs a single loop over the tile arrays, instead of the
+ * expression tree being walked for every pixel. Boolean values are represented by {@code 1.0} and {@code 0.0}.
+ * <p>
+ * A compiled expression doesn't refer to rasters, its inputs are identified by the names of the raster data
+ * symbols, so it can be shared by all expressions with the same text.
+ */
+public final class CompiledExpression {
+
+    enum UnaryOp {
+        NEG, NOT, SIN, COS, TAN, ASIN, ACOS, ATAN, LOG, LOG10, EXP, EXP10, SQR, SQRT,
+        FLOOR, CEIL, ROUND, RINT, SIGN, ABS, DEG, RAD, NAN, INF, BOOL
+    }
+
+    enum BinaryOp {
+        ADD, SUB, MUL, DIV, MOD, AND, OR, EQ, NEQ, LT, LE, GT, GE, ATAN2, POW, MIN, MAX
+    }
+
+    // the scratch registers of a thread are shared by all compiled expressions, as a thread evaluates one
+    // expression at a time, so that their memory doesn't grow with the number of cached expressions
+    private static final ThreadLocal<double[][]> SCRATCH_REGISTERS = new ThreadLocal<>();
+
+    private final Node root;
+    private final String[] inputNames;
+    private final int registerCount;
+
+    CompiledExpression(Node root, String[] inputNames, int registerCount) {
+        this.root = root;
+        this.inputNames = inputNames;
+        this.registerCount = registerCount;
+    }
+
+    /**
+     * @return the names of the raster data symbols whose data is passed to {@link #evaluate}, in that order
+     */
+    public String[] getInputNames() {
+        return inputNames.clone();
+    }
+
+    /**
+     * Looks up the symbols of the inputs in a parsed expression with the same text as the compiled one.
+     *
+     * @param term the parsed expression
+     * @return the raster data symbols in the order of the inputs
+     * @throws IllegalArgumentException if the term doesn't refer to all inputs
+     */
+    public RasterDataSymbol[] getInputSymbols(Term term) {
+        Map<String, RasterDataSymbol> symbols = new HashMap<>();
+        collectRasterDataSymbols(term, symbols);
+        RasterDataSymbol[] inputSymbols = new RasterDataSymbol[inputNames.length];
+        for (int i = 0; i < inputNames.length; i++) {
+            inputSymbols[i] = symbols.get(inputNames[i]);
+            if (inputSymbols[i] == null) {
+                throw new IllegalArgumentException("Expression doesn't refer to '" + inputNames[i] + "'.");
+            }
+        }
+        return inputSymbols;
+    }
+
+    /**
+     * Evaluates the expression for a number of pixels.
+     *
+     * @param inputs the pixel values of the inputs
+     * @param result receives the values of the expression
+     * @param length the number of pixels
+     */
+    public void evaluate(double[][] inputs, double[] result, int length) {
+        final double[][] scratchRegisters = getScratchRegisters(registerCount - 1, length);
+        final double[][] registers = new double[registerCount][];
+        registers[0] = result;
+        System.arraycopy(scratchRegisters, 0, registers, 1, registerCount - 1);
+        root.evaluate(inputs, registers, length);
+    }
+
+    private static double[][] getScratchRegisters(int count, int length) {
+        double[][] scratchRegisters = SCRATCH_REGISTERS.get();
+        if (scratchRegisters == null || scratchRegisters.length < count
+            || count > 0 && scratchRegisters[0].length < length) {
+            final int previousCount = scratchRegisters != null ? scratchRegisters.length : 0;
+            final int previousLength = previousCount > 0 ? scratchRegisters[0].length : 0;
+            scratchRegisters = new double[Math.max(count, previousCount)][Math.max(length, previousLength)];
+            SCRATCH_REGISTERS.set(scratchRegisters);
+        }
+        return scratchRegisters;
+    }
+
+    static void collectRasterDataSymbols(Term term, Map<String, RasterDataSymbol> symbols) {
+        if (term instanceof Term.Ref && ((Term.Ref) term).getSymbol() instanceof RasterDataSymbol) {
+            RasterDataSymbol symbol = (RasterDataSymbol) ((Term.Ref) term).getSymbol();
+            symbols.put(symbol.getName(), symbol);
+        }
+        for (Term child : term.getChildren()) {
+            collectRasterDataSymbols(child, symbols);
+        }
+    }
+
+    /**
+     * A node of a compiled expression, which writes its values to the register given by the compiler. The
+     * children of a node use the registers above.
+     */
+    abstract static class Node {
+
+        final int register;
+
+        Node(int register) {
+            this.register = register;
+        }
+
+        abstract void evaluate(double[][] inputs, double[][] registers, int length);
+    }
+
+    static final class InputNode extends Node {
+
+        private final int input;
+
+        InputNode(int register, int input) {
+            super(register);
+            this.input = input;
+        }
+
+        @Override
+        void evaluate(double[][] inputs, double[][] registers, int length) {
+            System.arraycopy(inputs[input], 0, registers[register], 0, length);
+        }
+    }
+
+    static final class ConstantNode extends Node {
+
+        private final double value;
+
+        ConstantNode(int register, double value) {
+            super(register);
+            this.value = value;
+        }
+
+        @Override
+        void evaluate(double[][] inputs, double[][] registers, int length) {
+            Arrays.fill(registers[register], 0, length, value);
+        }
+    }
+
+    static final class UnaryNode extends Node {
+
+        private final UnaryOp op;
+        private final Node arg;
+
+        UnaryNode(UnaryOp op, Node arg) {
+            super(arg.register);
+            this.op = op;
+            this.arg = arg;
+        }
+
+        @Override
+        void evaluate(double[][] inputs, double[][] registers, int length) {
+            arg.evaluate(inputs, registers, length);
+            apply(op, registers[register], length);
+        }
+    }
+
+    static final class BinaryNode extends Node {
+
+        private final BinaryOp op;
+        private final Node arg1;
+        private final Node arg2;
+
+        BinaryNode(BinaryOp op, Node arg1, Node arg2) {
+            super(arg1.register);
+            this.op = op;
+            this.arg1 = arg1;
+            this.arg2 = arg2;
+        }
+
+        @Override
+        void evaluate(double[][] inputs, double[][] registers, int length) {
+            arg1.evaluate(inputs, registers, length);
+            arg2.evaluate(inputs, registers, length);
+            apply(op, registers[register], registers[arg2.register], length);
+        }
+    }
+
+    static final class CondNode extends Node {
+
+        private final Node condition;
+        private final Node trueValue;
+        private final Node falseValue;
+
+        CondNode(Node condition, Node trueValue, Node falseValue) {
+            super(condition.register);
+            this.condition = condition;
+            this.trueValue = trueValue;
+            this.falseValue = falseValue;
+        }
+
+        @Override
+        void evaluate(double[][] inputs, double[][] registers, int length) {
+            condition.evaluate(inputs, registers, length);
+            trueValue.evaluate(inputs, registers, length);
+            falseValue.evaluate(inputs, registers, length);
+            double[] c = registers[register];
+            double[] t = registers[trueValue.register];
+            double[] f = registers[falseValue.register];
+            for (int i = 0; i < length; i++) {
+                c[i] = c[i] != 0.0 ? t[i] : f[i];
+            }
+        }
+    }
+
+    // every operation gets its own loop, so that each loop is small and monomorphic for the JIT compiler
+    private static void apply(UnaryOp op, double[] a, int length) {
+        switch (op) {
+            case NEG:
+                for (int i = 0; i < length; i++) {
+                    a[i] = -a[i];
+                }
+                break;
+            case NOT:
+                for (int i = 0; i < length; i++) {
+                    a[i] = a[i] == 0.0 ? 1.0 : 0.0;
+                }
+                break;
+            case SIN:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Math.sin(a[i]);
+                }
+                break;
+            case COS:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Math.cos(a[i]);
+                }
+                break;
+            case TAN:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Math.tan(a[i]);
+                }
+                break;
+            case ASIN:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Math.asin(a[i]);
+                }
+                break;
+            case ACOS:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Math.acos(a[i]);
+                }
+                break;
+            case ATAN:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Math.atan(a[i]);
+                }
+                break;
+            case LOG:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Math.log(a[i]);
+                }
+                break;
+            case LOG10:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Math.log10(a[i]);
+                }
+                break;
+            case EXP:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Math.exp(a[i]);
+                }
+                break;
+            case EXP10:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Math.pow(10.0, a[i]);
+                }
+                break;
+            case SQR:
+                for (int i = 0; i < length; i++) {
+                    a[i] = a[i] * a[i];
+                }
+                break;
+            case SQRT:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Math.sqrt(a[i]);
+                }
+                break;
+            case FLOOR:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Math.floor(a[i]);
+                }
+                break;
+            case CEIL:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Math.ceil(a[i]);
+                }
+                break;
+            case ROUND:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Math.round(a[i]);
+                }
+                break;
+            case RINT:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Math.rint(a[i]);
+                }
+                break;
+            case SIGN:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Math.signum(a[i]);
+                }
+                break;
+            case ABS:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Math.abs(a[i]);
+                }
+                break;
+            case DEG:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Math.toDegrees(a[i]);
+                }
+                break;
+            case RAD:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Math.toRadians(a[i]);
+                }
+                break;
+            case NAN:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Double.isNaN(a[i]) ? 1.0 : 0.0;
+                }
+                break;
+            case INF:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Double.isInfinite(a[i]) ? 1.0 : 0.0;
+                }
+                break;
+            case BOOL:
+                for (int i = 0; i < length; i++) {
+                    a[i] = a[i] != 0.0 ? 1.0 : 0.0;
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown operation: " + op);
+        }
+    }
+
+    private static void apply(BinaryOp op, double[] a, double[] b, int length) {
+        switch (op) {
+            case ADD:
+                for (int i = 0; i < length; i++) {
+                    a[i] += b[i];
+                }
+                break;
+            case SUB:
+                for (int i = 0; i < length; i++) {
+                    a[i] -= b[i];
+                }
+                break;
+            case MUL:
+                for (int i = 0; i < length; i++) {
+                    a[i] *= b[i];
+                }
+                break;
+            case DIV:
+                for (int i = 0; i < length; i++) {
+                    a[i] /= b[i];
+                }
+                break;
+            case MOD:
+                for (int i = 0; i < length; i++) {
+                    a[i] %= b[i];
+                }
+                break;
+            case AND:
+                for (int i = 0; i < length; i++) {
+                    a[i] = a[i] != 0.0 && b[i] != 0.0 ? 1.0 : 0.0;
+                }
+                break;
+            case OR:
+                for (int i = 0; i < length; i++) {
+                    a[i] = a[i] != 0.0 || b[i] != 0.0 ? 1.0 : 0.0;
+                }
+                break;
+            case EQ:
+                for (int i = 0; i < length; i++) {
+                    a[i] = a[i] == b[i] ? 1.0 : 0.0;
+                }
+                break;
+            case NEQ:
+                for (int i = 0; i < length; i++) {
+                    a[i] = a[i] != b[i] ? 1.0 : 0.0;
+                }
+                break;
+            case LT:
+                for (int i = 0; i < length; i++) {
+                    a[i] = a[i] < b[i] ? 1.0 : 0.0;
+                }
+                break;
+            case LE:
+                for (int i = 0; i < length; i++) {
+                    a[i] = a[i] <= b[i] ? 1.0 : 0.0;
+                }
+                break;
+            case GT:
+                for (int i = 0; i < length; i++) {
+                    a[i] = a[i] > b[i] ? 1.0 : 0.0;
+                }
+                break;
+            case GE:
+                for (int i = 0; i < length; i++) {
+                    a[i] = a[i] >= b[i] ? 1.0 : 0.0;
+                }
+                break;
+            case ATAN2:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Math.atan2(a[i], b[i]);
+                }
+                break;
+            case POW:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Math.pow(a[i], b[i]);
+                }
+                break;
+            case MIN:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Math.min(a[i], b[i]);
+                }
+                break;
+            case MAX:
+                for (int i = 0; i < length; i++) {
+                    a[i] = Math.max(a[i], b[i]);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown operation: " + op);
+        }
+    }
+}
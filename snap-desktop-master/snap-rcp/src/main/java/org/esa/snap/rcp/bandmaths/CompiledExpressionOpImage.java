@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.bandmaths;
+
+import com.bc.ceres.glevel.MultiLevelImage;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.datamodel.RasterDataNode;
+import org.esa.snap.core.dataop.barithm.RasterDataSymbol;
+import org.esa.snap.core.image.RasterDataNodeOpImage;
+import org.esa.snap.core.image.ResolutionLevel;
+
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+
+/**
+ * An image whose tiles are computed by a {@link CompiledExpression} from the tiles of the rasters it refers to.
+ * Only floating point rasters are supported. Like the interpreted image, NaN and infinite results are replaced by
+ * the no-data value of the raster if it is used.
+ */
+class CompiledExpressionOpImage extends RasterDataNodeOpImage {
+
+    private final CompiledExpression expression;
+    private final RasterDataSymbol[] inputSymbols;
+    private final int level;
+    private final Double fillValue;
+
+    CompiledExpressionOpImage(RasterDataNode raster, CompiledExpression expression,
+                              RasterDataSymbol[] inputSymbols, ResolutionLevel level) {
+        super(raster, level);
+        this.expression = expression;
+        this.inputSymbols = inputSymbols;
+        this.level = level.getIndex();
+        this.fillValue = raster.isNoDataValueUsed() ? raster.getNoDataValue() : null;
+    }
+
+    @Override
+    protected void computeProductData(ProductData productData, Rectangle destRect) {
+        final int length = destRect.width * destRect.height;
+        final double[][] inputs = new double[inputSymbols.length][];
+        for (int i = 0; i < inputSymbols.length; i++) {
+            final RasterDataNode raster = inputSymbols[i].getRaster();
+            final MultiLevelImage image = inputSymbols[i].getSource() == RasterDataSymbol.RAW
+                                          ? raster.getSourceImage() : raster.getGeophysicalImage();
+            final Raster data = image.getImage(level).getData(destRect);
+            inputs[i] = data.getSamples(destRect.x, destRect.y, destRect.width, destRect.height, 0, (double[]) null);
+        }
+        final double[] result = new double[length];
+        expression.evaluate(inputs, result, length);
+
+        if (fillValue != null) {
+            for (int i = 0; i < length; i++) {
+                if (Double.isNaN(result[i]) || Double.isInfinite(result[i])) {
+                    result[i] = fillValue;
+                }
+            }
+        }
+
+        final Object elems = productData.getElems();
+        if (elems instanceof float[]) {
+            final float[] values = (float[]) elems;
+            for (int i = 0; i < length; i++) {
+                values[i] = (float) result[i];
+            }
+        } else if (elems instanceof double[]) {
+            System.arraycopy(result, 0, elems, 0, length);
+        } else {
+            throw new IllegalStateException("Unsupported data type: " + productData.getTypeString());
+        }
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.bandmaths;
+
+import com.bc.ceres.glevel.MultiLevelImage;
+import com.bc.ceres.glevel.support.AbstractMultiLevelSource;
+import com.bc.ceres.glevel.support.DefaultMultiLevelImage;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductManager;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.datamodel.RasterDataNode;
+import org.esa.snap.core.datamodel.VirtualBand;
+import org.esa.snap.core.dataop.barithm.BandArithmetic;
+import org.esa.snap.core.dataop.barithm.RasterDataSymbol;
+import org.esa.snap.core.image.ImageManager;
+import org.esa.snap.core.image.ResolutionLevel;
+import org.esa.snap.core.jexp.ParseException;
+import org.esa.snap.core.jexp.Symbol;
+import org.esa.snap.core.jexp.Term;
+
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compiles the terms of band maths expressions into {@link CompiledExpression}s, which evaluate whole tiles at
+ * once. Compiled expressions are cached by the normalised text of the expression and the types of the rasters
+ * it refers to.
+ * <p>
+ * Only the operators, functions and symbols whose semantics are known are compiled. Expressions containing
+ * anything else, e.g. pixel coordinates or integer divisions, are evaluated by the interpreter of the
+ * {@link VirtualBand} instead.
+ */
+public class ExpressionCompiler {
+
+    private static final int MAX_CACHED_EXPRESSIONS = 256;
+
+    private static final ExpressionCompiler DEFAULT = new ExpressionCompiler();
+
+    private static final Map<String, CompiledExpression.UnaryOp> UNARY_FUNCTIONS = new TreeMap<>();
+    private static final Map<String, CompiledExpression.BinaryOp> BINARY_FUNCTIONS = new TreeMap<>();
+    private static final Map<String, CompiledExpression.BinaryOp> BINARY_OPERATORS = new TreeMap<>();
+
+    static {
+        UNARY_FUNCTIONS.put("sin", CompiledExpression.UnaryOp.SIN);
+        UNARY_FUNCTIONS.put("cos", CompiledExpression.UnaryOp.COS);
+        UNARY_FUNCTIONS.put("tan", CompiledExpression.UnaryOp.TAN);
+        UNARY_FUNCTIONS.put("asin", CompiledExpression.UnaryOp.ASIN);
+        UNARY_FUNCTIONS.put("acos", CompiledExpression.UnaryOp.ACOS);
+        UNARY_FUNCTIONS.put("atan", CompiledExpression.UnaryOp.ATAN);
+        UNARY_FUNCTIONS.put("log", CompiledExpression.UnaryOp.LOG);
+        UNARY_FUNCTIONS.put("log10", CompiledExpression.UnaryOp.LOG10);
+        UNARY_FUNCTIONS.put("exp", CompiledExpression.UnaryOp.EXP);
+        UNARY_FUNCTIONS.put("exp10", CompiledExpression.UnaryOp.EXP10);
+        UNARY_FUNCTIONS.put("sqr", CompiledExpression.UnaryOp.SQR);
+        UNARY_FUNCTIONS.put("sqrt", CompiledExpression.UnaryOp.SQRT);
+        UNARY_FUNCTIONS.put("floor", CompiledExpression.UnaryOp.FLOOR);
+        UNARY_FUNCTIONS.put("ceil", CompiledExpression.UnaryOp.CEIL);
+        UNARY_FUNCTIONS.put("round", CompiledExpression.UnaryOp.ROUND);
+        UNARY_FUNCTIONS.put("rint", CompiledExpression.UnaryOp.RINT);
+        UNARY_FUNCTIONS.put("sign", CompiledExpression.UnaryOp.SIGN);
+        UNARY_FUNCTIONS.put("abs", CompiledExpression.UnaryOp.ABS);
+        UNARY_FUNCTIONS.put("deg", CompiledExpression.UnaryOp.DEG);
+        UNARY_FUNCTIONS.put("rad", CompiledExpression.UnaryOp.RAD);
+        UNARY_FUNCTIONS.put("nan", CompiledExpression.UnaryOp.NAN);
+        UNARY_FUNCTIONS.put("inf", CompiledExpression.UnaryOp.INF);
+
+        BINARY_FUNCTIONS.put("atan2", CompiledExpression.BinaryOp.ATAN2);
+        BINARY_FUNCTIONS.put("pow", CompiledExpression.BinaryOp.POW);
+        BINARY_FUNCTIONS.put("min", CompiledExpression.BinaryOp.MIN);
+        BINARY_FUNCTIONS.put("max", CompiledExpression.BinaryOp.MAX);
+
+        // the operator terms of jexp are identified by their class names, the type suffix doesn't matter
+        // as all values are evaluated as doubles
+        BINARY_OPERATORS.put("Add", CompiledExpression.BinaryOp.ADD);
+        BINARY_OPERATORS.put("Sub", CompiledExpression.BinaryOp.SUB);
+        BINARY_OPERATORS.put("Mul", CompiledExpression.BinaryOp.MUL);
+        BINARY_OPERATORS.put("Div", CompiledExpression.BinaryOp.DIV);
+        BINARY_OPERATORS.put("Mod", CompiledExpression.BinaryOp.MOD);
+        BINARY_OPERATORS.put("AndB", CompiledExpression.BinaryOp.AND);
+        BINARY_OPERATORS.put("OrB", CompiledExpression.BinaryOp.OR);
+        for (String type : new String[]{"I", "D"}) {
+            BINARY_OPERATORS.put("Eq" + type, CompiledExpression.BinaryOp.EQ);
+            BINARY_OPERATORS.put("NEq" + type, CompiledExpression.BinaryOp.NEQ);
+        }
+        for (String type : new String[]{"I", "D"}) {
+            BINARY_OPERATORS.put("Lt" + type, CompiledExpression.BinaryOp.LT);
+            BINARY_OPERATORS.put("Le" + type, CompiledExpression.BinaryOp.LE);
+            BINARY_OPERATORS.put("Gt" + type, CompiledExpression.BinaryOp.GT);
+            BINARY_OPERATORS.put("Ge" + type, CompiledExpression.BinaryOp.GE);
+        }
+    }
+
+    private final Map<String, CompiledExpression> cache;
+
+    public ExpressionCompiler() {
+        cache = new LinkedHashMap<String, CompiledExpression>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledExpression> eldest) {
+                return size() > MAX_CACHED_EXPRESSIONS;
+            }
+        };
+    }
+
+    public static ExpressionCompiler getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Creates the source image of a raster computed by a band maths expression. The expression is compiled if
+     * possible, otherwise the image of {@link VirtualBand#createSourceImage(RasterDataNode, String)} is returned.
+     * Rasters of integer data types always use the interpreted image, which evaluates their values as integers.
+     *
+     * @param raster     the raster whose source image is created
+     * @param expression the band maths expression
+     * @return the source image
+     */
+    public static MultiLevelImage createSourceImage(final RasterDataNode raster, String expression) {
+        if (!ProductData.isFloatingPointType(raster.getDataType())) {
+            return VirtualBand.createSourceImage(raster, expression);
+        }
+        final Product product = raster.getProduct();
+        final ProductManager productManager = product.getProductManager();
+        final Product[] products = productManager != null ? productManager.getProducts() : new Product[]{product};
+        final int defaultProductIndex = Math.max(0, Arrays.asList(products).indexOf(product));
+        final Term term;
+        try {
+            term = BandArithmetic.parseExpression(expression, products, defaultProductIndex);
+        } catch (ParseException e) {
+            // the interpreter reports the error
+            return VirtualBand.createSourceImage(raster, expression);
+        }
+        final CompiledExpression compiledExpression = getDefault().compile(expression, term);
+        if (compiledExpression == null) {
+            return VirtualBand.createSourceImage(raster, expression);
+        }
+        final RasterDataSymbol[] inputSymbols = compiledExpression.getInputSymbols(term);
+        for (RasterDataSymbol inputSymbol : inputSymbols) {
+            RasterDataNode inputRaster = inputSymbol.getRaster();
+            if (inputRaster.getSceneRasterWidth() != raster.getSceneRasterWidth()
+                || inputRaster.getSceneRasterHeight() != raster.getSceneRasterHeight()) {
+                return VirtualBand.createSourceImage(raster, expression);
+            }
+        }
+        return new DefaultMultiLevelImage(new AbstractMultiLevelSource(ImageManager.getMultiLevelModel(raster)) {
+            @Override
+            protected RenderedImage createImage(int level) {
+                return new CompiledExpressionOpImage(raster, compiledExpression, inputSymbols,
+                                                     ResolutionLevel.create(getModel(), level));
+            }
+        });
+    }
+
+    /**
+     * Compiles the term of an expression, or takes the compiled expression from the cache.
+     *
+     * @param expression the text of the expression
+     * @param term       the term parsed from the expression
+     * @return the compiled expression, or {@code null} if the term contains anything which can't be compiled
+     */
+    public CompiledExpression compile(String expression, Term term) {
+        final String key = getCacheKey(expression, term);
+        synchronized (cache) {
+            CompiledExpression compiledExpression = cache.get(key);
+            if (compiledExpression != null) {
+                return compiledExpression;
+            }
+        }
+        final CompiledExpression compiledExpression = new Compilation().compile(term);
+        if (compiledExpression != null) {
+            synchronized (cache) {
+                cache.put(key, compiledExpression);
+            }
+        }
+        return compiledExpression;
+    }
+
+    // the types of the referenced rasters are part of the key, because they decide about integer semantics
+    static String getCacheKey(String expression, Term term) {
+        Map<String, RasterDataSymbol> symbols = new TreeMap<>();
+        CompiledExpression.collectRasterDataSymbols(term, symbols);
+        StringBuilder sb = new StringBuilder(normalize(expression));
+        for (RasterDataSymbol symbol : symbols.values()) {
+            sb.append('|').append(symbol.getName()).append(':').append(symbol.getRetType());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Removes the whitespace from an expression which doesn't separate names or numbers. Quoted text is kept.
+     */
+    static String normalize(String expression) {
+        final StringBuilder sb = new StringBuilder(expression.length());
+        char quote = 0;
+        boolean pendingSpace = false;
+        for (int i = 0; i < expression.length(); i++) {
+            final char c = expression.charAt(i);
+            if (quote != 0) {
+                sb.append(c);
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+            } else {
+                if (pendingSpace && sb.length() > 0 && isNameChar(sb.charAt(sb.length() - 1)) && isNameChar(c)) {
+                    sb.append(' ');
+                }
+                pendingSpace = false;
+                if (c == '\'' || c == '"') {
+                    quote = c;
+                }
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '$';
+    }
+
+    /**
+     * The state of the compilation of a single term.
+     */
+    private static class Compilation {
+
+        private final List<String> inputNames = new ArrayList<>();
+        private int registerCount;
+
+        CompiledExpression compile(Term term) {
+            final CompiledExpression.Node root = compile(term, 0);
+            if (root == null) {
+                return null;
+            }
+            return new CompiledExpression(root, inputNames.toArray(new String[inputNames.size()]), registerCount);
+        }
+
+        private CompiledExpression.Node compile(Term term, int register) {
+            registerCount = Math.max(registerCount, register + 1);
+            final Term[] args = term.getChildren();
+            if (term instanceof Term.Ref) {
+                return compileSymbol(((Term.Ref) term).getSymbol(), register);
+            }
+            if (term instanceof Term.Call) {
+                final String name = ((Term.Call) term).getFunction().getName();
+                if (args.length == 1 && UNARY_FUNCTIONS.containsKey(name)) {
+                    return compileUnary(UNARY_FUNCTIONS.get(name), args[0], register);
+                }
+                if (args.length == 2 && BINARY_FUNCTIONS.containsKey(name)) {
+                    return compileBinary(BINARY_FUNCTIONS.get(name), args[0], args[1], register);
+                }
+                return null;
+            }
+            final String termName = term.getClass().getSimpleName();
+            switch (termName) {
+                case "ConstB":
+                case "ConstI":
+                case "ConstD":
+                    return new CompiledExpression.ConstantNode(register, term.evalD(null));
+                case "Neg":
+                    return compileUnary(CompiledExpression.UnaryOp.NEG, args[0], register);
+                case "NotB":
+                    return compileUnary(CompiledExpression.UnaryOp.NOT, args[0], register);
+                case "Cond":
+                    return compileCond(args[0], args[1], args[2], register);
+                case "EqB":
+                    return compileBooleanComparison(CompiledExpression.BinaryOp.EQ, args[0], args[1], register);
+                case "NEqB":
+                    return compileBooleanComparison(CompiledExpression.BinaryOp.NEQ, args[0], args[1], register);
+                case "Div":
+                case "Mod":
+                    if (term.isI()) {
+                        // integer divisions truncate, which is left to the interpreter
+                        return null;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            final CompiledExpression.BinaryOp op = BINARY_OPERATORS.get(termName);
+            if (op != null && args.length == 2) {
+                return compileBinary(op, args[0], args[1], register);
+            }
+            return null;
+        }
+
+        private CompiledExpression.Node compileSymbol(Symbol symbol, int register) {
+            if (symbol instanceof RasterDataSymbol) {
+                final String name = symbol.getName();
+                int input = inputNames.indexOf(name);
+                if (input == -1) {
+                    input = inputNames.size();
+                    inputNames.add(name);
+                }
+                return new CompiledExpression.InputNode(register, input);
+            }
+            switch (symbol.getName()) {
+                case "PI":
+                case "E":
+                case "NaN":
+                    return new CompiledExpression.ConstantNode(register, symbol.evalD(null));
+                default:
+                    // e.g. the pixel coordinates X and Y, which depend on the evaluation environment
+                    return null;
+            }
+        }
+
+        private CompiledExpression.Node compileUnary(CompiledExpression.UnaryOp op, Term arg, int register) {
+            final CompiledExpression.Node argNode = compile(arg, register);
+            return argNode != null ? new CompiledExpression.UnaryNode(op, argNode) : null;
+        }
+
+        private CompiledExpression.Node compileBinary(CompiledExpression.BinaryOp op, Term arg1, Term arg2,
+                                                      int register) {
+            final CompiledExpression.Node node1 = compile(arg1, register);
+            final CompiledExpression.Node node2 = node1 != null ? compile(arg2, register + 1) : null;
+            return node2 != null ? new CompiledExpression.BinaryNode(op, node1, node2) : null;
+        }
+
+        // boolean operands are compared by their truth, e.g. a mask value of 255 is equal to true
+        private CompiledExpression.Node compileBooleanComparison(CompiledExpression.BinaryOp op, Term arg1, Term arg2,
+                                                                 int register) {
+            final CompiledExpression.Node node1 = compileUnary(CompiledExpression.UnaryOp.BOOL, arg1, register);
+            final CompiledExpression.Node node2 = node1 != null
+                                                  ? compileUnary(CompiledExpression.UnaryOp.BOOL, arg2, register + 1)
+                                                  : null;
+            return node2 != null ? new CompiledExpression.BinaryNode(op, node1, node2) : null;
+        }
+
+        private CompiledExpression.Node compileCond(Term condition, Term trueValue, Term falseValue, int register) {
+            final CompiledExpression.Node conditionNode = compile(condition, register);
+            final CompiledExpression.Node trueNode = conditionNode != null ? compile(trueValue, register + 1) : null;
+            final CompiledExpression.Node falseNode = trueNode != null ? compile(falseValue, register + 2) : null;
+            return falseNode != null ? new CompiledExpression.CondNode(conditionNode, trueNode, falseNode) : null;
+        }
+    }
+}
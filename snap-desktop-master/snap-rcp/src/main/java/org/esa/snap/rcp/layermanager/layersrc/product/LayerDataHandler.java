@@ -20,12 +20,14 @@ package org.esa.snap.rcp.layermanager.layersrc.product;
 import com.bc.ceres.glayer.Layer;
 import com.bc.ceres.glayer.support.AbstractLayerListener;
 import com.bc.ceres.glayer.support.ImageLayer;
+import com.bc.ceres.glevel.MultiLevelSource;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.datamodel.ProductNodeEvent;
 import org.esa.snap.core.datamodel.ProductNodeListener;
 import org.esa.snap.core.datamodel.RasterDataNode;
 import org.esa.snap.core.datamodel.VirtualBand;
 import org.esa.snap.core.image.BandImageMultiLevelSource;
+import org.esa.snap.ui.product.ColorLookupMultiLevelSource;
 
 import java.util.Arrays;
 import java.util.List;
@@ -65,8 +67,17 @@ class LayerDataHandler extends AbstractLayerListener implements ProductNodeListe
             if (RasterDataNode.PROPERTY_NAME_NAME.equals(event.getPropertyName())) {
                 imageLayer.setName(rasterDataNode.getDisplayName());
             } else if (imageChangingProperties.contains(event.getPropertyName())) {
-                BandImageMultiLevelSource bandImageSource = (BandImageMultiLevelSource) imageLayer.getMultiLevelSource();
-                bandImageSource.setImageInfo(rasterDataNode.getImageInfo());
+                MultiLevelSource multiLevelSource = imageLayer.getMultiLevelSource();
+                if (multiLevelSource instanceof ColorLookupMultiLevelSource) {
+                    ColorLookupMultiLevelSource colorLookupSource = (ColorLookupMultiLevelSource) multiLevelSource;
+                    if (!RasterDataNode.PROPERTY_NAME_IMAGE_INFO.equals(event.getPropertyName())) {
+                        colorLookupSource.invalidateSamples();
+                    }
+                    colorLookupSource.setImageInfo(rasterDataNode.getImageInfo());
+                } else {
+                    BandImageMultiLevelSource bandImageSource = (BandImageMultiLevelSource) multiLevelSource;
+                    bandImageSource.setImageInfo(rasterDataNode.getImageInfo());
+                }
                 imageLayer.regenerate();
             }
         }
@@ -75,6 +86,9 @@ class LayerDataHandler extends AbstractLayerListener implements ProductNodeListe
     @Override
     public void nodeDataChanged(ProductNodeEvent event) {
         if (event.getSourceNode() == rasterDataNode) {
+            if (imageLayer.getMultiLevelSource() instanceof ColorLookupMultiLevelSource) {
+                ((ColorLookupMultiLevelSource) imageLayer.getMultiLevelSource()).invalidateSamples();
+            }
             imageLayer.regenerate();
         }
     }
@@ -25,6 +25,9 @@ import com.bc.ceres.glayer.support.ImageLayer;
 import com.bc.ceres.glevel.MultiLevelImage;
 import com.bc.ceres.grender.Rendering;
 import com.bc.ceres.grender.Viewport;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductNodeEvent;
+import org.esa.snap.core.datamodel.ProductNodeListenerAdapter;
 import org.esa.snap.core.datamodel.RasterDataNode;
 
 import java.awt.BasicStroke;
@@ -33,8 +36,8 @@ import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
-import java.awt.geom.Line2D;
-import java.awt.image.RenderedImage;
+import java.awt.geom.Path2D;
+import java.util.List;
 
 /**
  * Experimental wind field layer. Given two band names for u,v, it could
@@ -50,6 +53,8 @@ public class WindFieldLayer extends Layer {
     private double maxLength = 10.0; // m/s
     private int res = 16;
     private float lineThickness = 2.0f;
+    private final WindGlyphCache glyphCache;
+    private final WindDataChangeHandler windDataChangeHandler;
 
     public WindFieldLayer(PropertyContainer configuration) {
         this(LayerTypeRegistry.getLayerType(WindFieldLayerType.class.getName()),
@@ -68,12 +73,17 @@ public class WindFieldLayer extends Layer {
         for (int i = 0; i < palette.length; i++) {
             palette[i] = new Color(i, i, i);
         }
+        glyphCache = new WindGlyphCache(windu, windv, res, maxLength);
+        windDataChangeHandler = new WindDataChangeHandler();
+        final Product product = windu.getProduct();
+        if (product != null) {
+            product.addProductNodeListener(windDataChangeHandler);
+        }
     }
 
     @Override
     protected void renderLayer(Rendering rendering) {
         final MultiLevelImage winduMLI = windu.getGeophysicalImage();
-        final MultiLevelImage windvMLI = windv.getGeophysicalImage();
         final Viewport vp = rendering.getViewport();
         final int level = ImageLayer.getLevel(winduMLI.getModel(), vp);
 
@@ -84,80 +94,88 @@ public class WindFieldLayer extends Layer {
         final Shape mbounds = vp.getViewToModelTransform().createTransformedShape(vbounds);
         final Shape ibounds = m2i.createTransformedShape(mbounds);
 
-        final RenderedImage winduRI = winduMLI.getImage(level);
-        final RenderedImage windvRI = windvMLI.getImage(level);
-
-        final int width = winduRI.getWidth();
-        final int height = winduRI.getHeight();
-        final Rectangle irect = ibounds.getBounds().intersection(new Rectangle(0, 0, width, height));
-        if (irect.isEmpty()) {
+        // grow by one grid cell, so arrows anchored just outside of the view are drawn as well
+        final Rectangle irect = ibounds.getBounds();
+        irect.grow(res, res);
+        final List<WindGlyphCache.Glyphs> tileGlyphs = glyphCache.getGlyphs(level, irect);
+        if (tileGlyphs.isEmpty()) {
             return;
         }
 
-        final AffineTransform m2v = vp.getModelToViewTransform();
+        final AffineTransform i2v = new AffineTransform(vp.getModelToViewTransform());
+        i2v.concatenate(i2m);
 
         final Graphics2D graphics = rendering.getGraphics();
         graphics.setStroke(new BasicStroke(lineThickness));
 
-        final MultiLevelImage winduValidMLI = windu.getValidMaskImage();
-        final MultiLevelImage windvValidMLI = windv.getValidMaskImage();
-
-        final RenderedImage winduValidRI = winduValidMLI != null ? winduValidMLI.getImage(level) : null;
-        final RenderedImage windvValidRI = windvValidMLI != null ? windvValidMLI.getImage(level) : null;
-
-        final int x1 = res * (irect.x / res);
-        final int x2 = x1 + res * (1 + irect.width / res);
-        final int y1 = res * (irect.y / res);
-        final int y2 = y1 + res * (1 + irect.height / res);
-        final double[] ipts = new double[8];
-        final double[] mpts = new double[8];
-        final double[] vpts = new double[8];
-
-        final Rectangle pixelRect = new Rectangle(0, 0, 1, 1);
-        for (int y = y1; y <= y2; y += res) {
-            for (int x = x1; x <= x2; x += res) {
-                if (x >= 0 && x < width && y >= 0 && y < height) {
-                    pixelRect.x = x;
-                    pixelRect.y = y;
-                    final boolean winduValid = winduValidRI == null || winduValidRI.getData(pixelRect).getSample(x, y, 0) != 0;
-                    if (!winduValid) {
-                        continue;
-                    }
-                    final boolean windvValid = windvValidRI == null || windvValidRI.getData(pixelRect).getSample(x, y, 0) != 0;
-                    if (!windvValid) {
-                        continue;
-                    }
-
-                    final double u = winduRI.getData(pixelRect).getSampleDouble(x, y, 0);
-                    final double v = windvRI.getData(pixelRect).getSampleDouble(x, y, 0);
-                    final double length = Math.sqrt(u * u + v * v);
-                    final double ndx = length > 0 ? +u / length : 0;
-                    final double ndy = length > 0 ? -v / length : 0;
-                    final double ondx = -ndy;
-                    final double ondy = ndx;
-
-                    final double s0 = (length / maxLength) * res;
-                    final double s1 = s0 - 0.2 * res;
-                    final double s2 = 0.1 * res;
-
-                    ipts[0] = x;
-                    ipts[1] = y;
-                    ipts[2] = x + s0 * ndx;
-                    ipts[3] = y + s0 * ndy;
-                    ipts[4] = x + s1 * ndx + s2 * ondx;
-                    ipts[5] = y + s1 * ndy + s2 * ondy;
-                    ipts[6] = x + s1 * ndx - s2 * ondx;
-                    ipts[7] = y + s1 * ndy - s2 * ondy;
-                    i2m.transform(ipts, 0, mpts, 0, 4);
-                    m2v.transform(mpts, 0, vpts, 0, 4);
-
-                    final int grey = Math.min(255, (int) Math.round(256 * length / maxLength));
-                    graphics.setColor(palette[grey]);
-                    graphics.draw(new Line2D.Double(vpts[0], vpts[1], vpts[2], vpts[3]));
-                    graphics.draw(new Line2D.Double(vpts[4], vpts[5], vpts[2], vpts[3]));
-                    graphics.draw(new Line2D.Double(vpts[6], vpts[7], vpts[2], vpts[3]));
+        double[] vpts = new double[0];
+        final Path2D.Double path = new Path2D.Double();
+        for (WindGlyphCache.Glyphs glyphs : tileGlyphs) {
+            if (glyphs.count == 0) {
+                continue;
+            }
+            if (vpts.length < glyphs.count * WindGlyphCache.COORDS_PER_GLYPH) {
+                vpts = new double[glyphs.count * WindGlyphCache.COORDS_PER_GLYPH];
+            }
+            i2v.transform(glyphs.coords, 0, vpts, 0, glyphs.count * WindGlyphCache.COORDS_PER_GLYPH / 2);
+
+            // glyphs are sorted by grey level, so all arrows of the same colour are drawn with a single path
+            int start = 0;
+            while (start < glyphs.count) {
+                final int grey = glyphs.getGrey(start);
+                path.reset();
+                int i = start;
+                for (; i < glyphs.count && glyphs.getGrey(i) == grey; i++) {
+                    final int offset = i * WindGlyphCache.COORDS_PER_GLYPH;
+                    path.moveTo(vpts[offset], vpts[offset + 1]);
+                    path.lineTo(vpts[offset + 2], vpts[offset + 3]);
+                    path.moveTo(vpts[offset + 4], vpts[offset + 5]);
+                    path.lineTo(vpts[offset + 2], vpts[offset + 3]);
+                    path.moveTo(vpts[offset + 6], vpts[offset + 7]);
+                    path.lineTo(vpts[offset + 2], vpts[offset + 3]);
                 }
+                graphics.setColor(palette[grey]);
+                graphics.draw(path);
+                start = i;
+            }
+        }
+    }
+
+    @Override
+    protected void disposeLayer() {
+        final Product product = windu.getProduct();
+        if (product != null) {
+            product.removeProductNodeListener(windDataChangeHandler);
+        }
+        glyphCache.clear();
+        super.disposeLayer();
+    }
+
+    private class WindDataChangeHandler extends ProductNodeListenerAdapter {
+
+        @Override
+        public void nodeChanged(ProductNodeEvent event) {
+            final String propertyName = event.getPropertyName();
+            if (isWindNode(event) && !RasterDataNode.PROPERTY_NAME_IMAGE_INFO.equals(propertyName)
+                && !RasterDataNode.PROPERTY_NAME_STX.equals(propertyName)) {
+                windDataChanged();
+            }
+        }
+
+        @Override
+        public void nodeDataChanged(ProductNodeEvent event) {
+            if (isWindNode(event)) {
+                windDataChanged();
             }
         }
+
+        private boolean isWindNode(ProductNodeEvent event) {
+            return event.getSourceNode() == windu || event.getSourceNode() == windv;
+        }
+
+        private void windDataChanged() {
+            glyphCache.clear();
+            fireLayerDataChanged(null);
+        }
     }
 }
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.layermanager.layersrc.windfield;
+
+import com.bc.ceres.glevel.MultiLevelImage;
+import org.esa.snap.core.datamodel.RasterDataNode;
+
+import javax.media.jai.PlanarImage;
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Computes and caches the arrow glyphs of a wind field per resolution level and image tile. The glyphs of a tile
+ * are kept in image coordinates, so they stay valid while the view is panned or zoomed within the same level.
+ * The tiles of the u and v images and of their valid masks are fetched once per tile, and missing tiles are
+ * computed in parallel.
+ */
+class WindGlyphCache {
+
+    /**
+     * The number of coordinates per arrow: the anchor, the tip and the two ends of the head.
+     */
+    static final int COORDS_PER_GLYPH = 8;
+
+    private static final int MAX_CACHED_TILES = 256;
+
+    private final RasterDataNode windu;
+    private final RasterDataNode windv;
+    private final int res;
+    private final double maxLength;
+    private final Map<Long, Glyphs> cache;
+    private MultiLevelImage winduImage;
+    private MultiLevelImage windvImage;
+
+    WindGlyphCache(RasterDataNode windu, RasterDataNode windv, int res, double maxLength) {
+        this.windu = windu;
+        this.windv = windv;
+        this.res = res;
+        this.maxLength = maxLength;
+        cache = new LinkedHashMap<Long, Glyphs>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Glyphs> eldest) {
+                return size() > MAX_CACHED_TILES;
+            }
+        };
+    }
+
+    /**
+     * Discards all cached glyphs, e.g. after the data of the wind bands has changed.
+     */
+    synchronized void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Returns the glyphs of all tiles of the given level which intersect the given image region.
+     */
+    List<Glyphs> getGlyphs(int level, Rectangle region) {
+        final MultiLevelImage winduMLI = windu.getGeophysicalImage();
+        final MultiLevelImage windvMLI = windv.getGeophysicalImage();
+        final RenderedImage tiling = winduMLI.getImage(level);
+        final Rectangle imageRegion = region.intersection(getBounds(tiling));
+        if (imageRegion.isEmpty()) {
+            return new ArrayList<>();
+        }
+        final int minTileX = XToTileX(tiling, imageRegion.x);
+        final int minTileY = YToTileY(tiling, imageRegion.y);
+        final int maxTileX = XToTileX(tiling, imageRegion.x + imageRegion.width - 1);
+        final int maxTileY = YToTileY(tiling, imageRegion.y + imageRegion.height - 1);
+
+        final List<Glyphs> glyphs = new ArrayList<>();
+        final List<long[]> missing = new ArrayList<>();
+        synchronized (this) {
+            if (winduMLI != winduImage || windvMLI != windvImage) {
+                cache.clear();
+                winduImage = winduMLI;
+                windvImage = windvMLI;
+            }
+            for (int tileY = minTileY; tileY <= maxTileY; tileY++) {
+                for (int tileX = minTileX; tileX <= maxTileX; tileX++) {
+                    final long key = key(level, tileX, tileY);
+                    final Glyphs tileGlyphs = cache.get(key);
+                    if (tileGlyphs != null) {
+                        glyphs.add(tileGlyphs);
+                    } else {
+                        missing.add(new long[]{key, tileX, tileY});
+                    }
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return glyphs;
+        }
+
+        final RenderedImage winduRI = tiling;
+        final RenderedImage windvRI = windvMLI.getImage(level);
+        final MultiLevelImage winduValidMLI = windu.getValidMaskImage();
+        final MultiLevelImage windvValidMLI = windv.getValidMaskImage();
+        final RenderedImage winduValidRI = winduValidMLI != null ? winduValidMLI.getImage(level) : null;
+        final RenderedImage windvValidRI = windvValidMLI != null ? windvValidMLI.getImage(level) : null;
+        final Glyphs[] computed = new Glyphs[missing.size()];
+        IntStream.range(0, computed.length).parallel().forEach(i -> {
+            final long[] tile = missing.get(i);
+            computed[i] = computeGlyphs(winduRI, windvRI, winduValidRI, windvValidRI, (int) tile[1], (int) tile[2]);
+        });
+        synchronized (this) {
+            for (int i = 0; i < computed.length; i++) {
+                if (winduMLI == winduImage && windvMLI == windvImage) {
+                    cache.put(missing.get(i)[0], computed[i]);
+                }
+                glyphs.add(computed[i]);
+            }
+        }
+        return glyphs;
+    }
+
+    Glyphs computeGlyphs(RenderedImage winduRI, RenderedImage windvRI,
+                         RenderedImage winduValidRI, RenderedImage windvValidRI, int tileX, int tileY) {
+        final Rectangle tileRect = new Rectangle(winduRI.getTileGridXOffset() + tileX * winduRI.getTileWidth(),
+                                                 winduRI.getTileGridYOffset() + tileY * winduRI.getTileHeight(),
+                                                 winduRI.getTileWidth(), winduRI.getTileHeight());
+        final Rectangle rect = tileRect.intersection(getBounds(winduRI));
+        final int x1 = ceilToGrid(rect.x);
+        final int y1 = ceilToGrid(rect.y);
+        final int x2 = rect.x + rect.width;
+        final int y2 = rect.y + rect.height;
+        if (rect.isEmpty() || x1 >= x2 || y1 >= y2) {
+            return Glyphs.EMPTY;
+        }
+
+        final Raster winduData = getData(winduRI, rect);
+        final Raster windvData = getData(windvRI, rect);
+        final Raster winduValid = winduValidRI != null ? getData(winduValidRI, rect) : null;
+        final Raster windvValid = windvValidRI != null ? getData(windvValidRI, rect) : null;
+
+        final int capacity = ((x2 - x1 + res - 1) / res) * ((y2 - y1 + res - 1) / res);
+        final float[] coords = new float[capacity * COORDS_PER_GLYPH];
+        final byte[] greys = new byte[capacity];
+        int count = 0;
+        for (int y = y1; y < y2; y += res) {
+            for (int x = x1; x < x2; x += res) {
+                if (winduValid != null && winduValid.getSample(x, y, 0) == 0) {
+                    continue;
+                }
+                if (windvValid != null && windvValid.getSample(x, y, 0) == 0) {
+                    continue;
+                }
+                final double u = winduData.getSampleDouble(x, y, 0);
+                final double v = windvData.getSampleDouble(x, y, 0);
+                final double length = Math.sqrt(u * u + v * v);
+                final double ndx = length > 0 ? +u / length : 0;
+                final double ndy = length > 0 ? -v / length : 0;
+                final double ondx = -ndy;
+                final double ondy = ndx;
+
+                final double s0 = (length / maxLength) * res;
+                final double s1 = s0 - 0.2 * res;
+                final double s2 = 0.1 * res;
+
+                final int offset = count * COORDS_PER_GLYPH;
+                coords[offset] = x;
+                coords[offset + 1] = y;
+                coords[offset + 2] = (float) (x + s0 * ndx);
+                coords[offset + 3] = (float) (y + s0 * ndy);
+                coords[offset + 4] = (float) (x + s1 * ndx + s2 * ondx);
+                coords[offset + 5] = (float) (y + s1 * ndy + s2 * ondy);
+                coords[offset + 6] = (float) (x + s1 * ndx - s2 * ondx);
+                coords[offset + 7] = (float) (y + s1 * ndy - s2 * ondy);
+                greys[count] = (byte) Math.min(255, (int) Math.round(256 * length / maxLength));
+                count++;
+            }
+        }
+        return Glyphs.sortedByGrey(coords, greys, count);
+    }
+
+    private static Raster getData(RenderedImage image, Rectangle rect) {
+        // the wind images and their valid masks normally share the same tiling, so the tile itself can be used
+        final Raster tile = image.getTile(XToTileX(image, rect.x), YToTileY(image, rect.y));
+        if (tile != null && tile.getBounds().contains(rect)) {
+            return tile;
+        }
+        return image.getData(rect);
+    }
+
+    private int ceilToGrid(int coordinate) {
+        return -res * Math.floorDiv(-coordinate, res);
+    }
+
+    private static Rectangle getBounds(RenderedImage image) {
+        return new Rectangle(image.getMinX(), image.getMinY(), image.getWidth(), image.getHeight());
+    }
+
+    private static int XToTileX(RenderedImage image, int x) {
+        return PlanarImage.XToTileX(x, image.getTileGridXOffset(), image.getTileWidth());
+    }
+
+    private static int YToTileY(RenderedImage image, int y) {
+        return PlanarImage.YToTileY(y, image.getTileGridYOffset(), image.getTileHeight());
+    }
+
+    private static long key(int level, int tileX, int tileY) {
+        return ((long) level << 48) | ((tileY & 0xFFFFFFL) << 24) | (tileX & 0xFFFFFFL);
+    }
+
+    /**
+     * The arrow glyphs of a single tile in image coordinates, sorted by their grey level, so that arrows of the
+     * same colour can be drawn at once.
+     */
+    static final class Glyphs {
+
+        static final Glyphs EMPTY = new Glyphs(new float[0], new byte[0], 0);
+
+        final float[] coords;
+        final byte[] greys;
+        final int count;
+
+        private Glyphs(float[] coords, byte[] greys, int count) {
+            this.coords = coords;
+            this.greys = greys;
+            this.count = count;
+        }
+
+        int getGrey(int index) {
+            return greys[index] & 0xFF;
+        }
+
+        private static Glyphs sortedByGrey(float[] coords, byte[] greys, int count) {
+            if (count == 0) {
+                return EMPTY;
+            }
+            // key = grey level in the upper, glyph index in the lower 32 bits
+            final long[] keys = new long[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = ((long) (greys[i] & 0xFF) << 32) | i;
+            }
+            Arrays.sort(keys);
+            final float[] sortedCoords = new float[count * COORDS_PER_GLYPH];
+            final byte[] sortedGreys = new byte[count];
+            for (int k = 0; k < count; k++) {
+                final int i = (int) keys[k];
+                System.arraycopy(coords, i * COORDS_PER_GLYPH, sortedCoords, k * COORDS_PER_GLYPH, COORDS_PER_GLYPH);
+                sortedGreys[k] = greys[i];
+            }
+            return new Glyphs(sortedCoords, sortedGreys, count);
+        }
+    }
+}
@@ -16,20 +16,15 @@
 package org.esa.snap.rcp.mask;
 
 import com.bc.ceres.core.ProgressMonitor;
-import com.bc.ceres.glevel.MultiLevelImage;
 import com.bc.ceres.swing.progress.DialogProgressMonitor;
 import org.esa.snap.core.datamodel.Band;
-import org.esa.snap.core.datamodel.GeoCoding;
-import org.esa.snap.core.datamodel.GeoPos;
 import org.esa.snap.core.datamodel.Mask;
-import org.esa.snap.core.datamodel.PixelPos;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.datamodel.ProductNodeGroup;
 import org.esa.snap.core.datamodel.RasterDataNode;
 import org.esa.snap.core.datamodel.TiePointGrid;
 import org.esa.snap.core.util.Debug;
 import org.esa.snap.core.util.math.MathUtils;
-import org.esa.snap.core.util.math.RsMathUtils;
 import org.esa.snap.rcp.SnapApp;
 import org.esa.snap.rcp.SnapDialogs;
 import org.esa.snap.ui.AbstractDialog;
@@ -58,9 +53,7 @@ import javax.swing.JTextField;
 import javax.swing.SwingWorker;
 import java.awt.Dialog;
 import java.awt.GridBagConstraints;
-import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
-import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.text.MessageFormat;
 import java.util.ArrayList;
@@ -84,6 +77,7 @@ import java.util.concurrent.ExecutionException;
 public class ComputeMaskAreaAction extends AbstractAction implements LookupListener, ContextAwareAction, HelpCtx.Provider {
 
     private static final String HELP_ID = "computeMaskArea";
+    private static final String ALL_MASKS = "All masks";
     private final Lookup lookup;
     private Lookup.Result<ProductSceneView> result;
 
@@ -135,6 +129,9 @@ public class ComputeMaskAreaAction extends AbstractAction implements LookupListe
                 maskNameList.add(mask.getName());
             }
         }
+        if (maskNameList.size() > 1) {
+            maskNameList.add(ALL_MASKS);
+        }
         String[] maskNames = maskNameList.toArray(new String[maskNameList.size()]);
         String maskName;
         if (maskNames.length == 1) {
@@ -156,16 +153,26 @@ public class ComputeMaskAreaAction extends AbstractAction implements LookupListe
                 return;
             }
         }
-        final Mask mask = maskGroup.get(maskName);
+        final List<Mask> masks = new ArrayList<>();
+        if (ALL_MASKS.equals(maskName)) {
+            for (String name : maskNameList.subList(0, maskNameList.size() - 1)) {
+                masks.add(maskGroup.get(name));
+            }
+        } else {
+            masks.add(maskGroup.get(maskName));
+        }
 
-        RenderedImage maskImage = mask.getSourceImage();
-        if (maskImage == null) {
-            SnapDialogs.showError(Bundle.CTL_ComputeMaskAreaAction_DialogTitle(),
-                                  errMsgBase + "No Mask image available.");
-            return;
+        for (Mask mask : masks) {
+            RenderedImage maskImage = mask.getSourceImage();
+            if (maskImage == null) {
+                SnapDialogs.showError(Bundle.CTL_ComputeMaskAreaAction_DialogTitle(),
+                                      errMsgBase + "No Mask image available for '" + mask.getName() + "'.");
+                return;
+            }
         }
 
-        final SwingWorker<MaskAreaStatistics, Object> swingWorker = new MaskAreaSwingWorker(mask, errMsgBase);
+        final SwingWorker<MaskAreaStatistics[], Object> swingWorker =
+                new MaskAreaSwingWorker(masks.toArray(new Mask[masks.size()]), errMsgBase);
         swingWorker.execute();
     }
 
@@ -187,165 +194,38 @@ public class ComputeMaskAreaAction extends AbstractAction implements LookupListe
     }
 
 
-    private static class MaskAreaStatistics {
+    private class MaskAreaSwingWorker extends SwingWorker<MaskAreaStatistics[], Object> {
 
-        private double earthRadius;
-        private double maskArea;
-        private double pixelAreaMin;
-        private double pixelAreaMax;
-        private int numPixels;
-
-        private MaskAreaStatistics(double earthRadius) {
-            this.earthRadius = earthRadius;
-            maskArea = 0.0;
-            pixelAreaMax = Double.NEGATIVE_INFINITY;
-            pixelAreaMin = Double.POSITIVE_INFINITY;
-            numPixels = 0;
-        }
-
-        public double getEarthRadius() {
-            return earthRadius;
-        }
-
-        public double getMaskArea() {
-            return maskArea;
-        }
-
-        public void setMaskArea(double maskArea) {
-            this.maskArea = maskArea;
-        }
-
-        public double getPixelAreaMin() {
-            return pixelAreaMin;
-        }
-
-        public void setPixelAreaMin(double pixelAreaMin) {
-            this.pixelAreaMin = pixelAreaMin;
-        }
-
-        public double getPixelAreaMax() {
-            return pixelAreaMax;
-        }
-
-        public void setPixelAreaMax(double pixelAreaMax) {
-            this.pixelAreaMax = pixelAreaMax;
-        }
-
-        public int getNumPixels() {
-            return numPixels;
-        }
-
-        public void setNumPixels(int numPixels) {
-            this.numPixels = numPixels;
-        }
-    }
-
-    private class MaskAreaSwingWorker extends SwingWorker<MaskAreaStatistics, Object> {
-
-        private final RasterDataNode mask;
+        private final Mask[] masks;
         private final String errMsgBase;
 
-        private MaskAreaSwingWorker(RasterDataNode mask, String errMsgBase) {
-            this.mask = mask;
+        private MaskAreaSwingWorker(Mask[] masks, String errMsgBase) {
+            this.masks = masks;
             this.errMsgBase = errMsgBase;
         }
 
         @Override
-        protected MaskAreaStatistics doInBackground() throws Exception {
+        protected MaskAreaStatistics[] doInBackground() throws Exception {
             ProgressMonitor pm = new DialogProgressMonitor(SnapApp.getDefault().getMainFrame(), "Computing Mask area",
                                                            Dialog.ModalityType.APPLICATION_MODAL);
-            return computeMaskAreaStatistics(pm);
-        }
-
-        private MaskAreaStatistics computeMaskAreaStatistics(ProgressMonitor pm) {
-            final MultiLevelImage maskImage = mask.getSourceImage();
-
-            final int minTileX = maskImage.getMinTileX();
-            final int minTileY = maskImage.getMinTileY();
-
-            final int numXTiles = maskImage.getNumXTiles();
-            final int numYTiles = maskImage.getNumYTiles();
-
-            final int w = mask.getSceneRasterWidth();
-            final int h = mask.getSceneRasterHeight();
-            final Rectangle imageRect = new Rectangle(0, 0, w, h);
-
-            final PixelPos[] pixelPoints = new PixelPos[5];
-            final GeoPos[] geoPoints = new GeoPos[5];
-            for (int i = 0; i < geoPoints.length; i++) {
-                pixelPoints[i] = new PixelPos();
-                geoPoints[i] = new GeoPos();
-            }
-
-            MaskAreaStatistics areaStatistics = new MaskAreaStatistics(RsMathUtils.MEAN_EARTH_RADIUS / 1000.0);
-            GeoCoding geoCoding = mask.getGeoCoding();
-
-            pm.beginTask("Computing Mask area...", numXTiles * numYTiles);
-            try {
-                for (int tileX = minTileX; tileX < minTileX + numXTiles; ++tileX) {
-                    for (int tileY = minTileY; tileY < minTileY + numYTiles; ++tileY) {
-                        if (pm.isCanceled()) {
-                            break;
-                        }
-                        final Rectangle tileRectangle = new Rectangle(
-                                maskImage.getTileGridXOffset() + tileX * maskImage.getTileWidth(),
-                                maskImage.getTileGridYOffset() + tileY * maskImage.getTileHeight(),
-                                maskImage.getTileWidth(), maskImage.getTileHeight());
-
-                        final Rectangle r = imageRect.intersection(tileRectangle);
-                        if (!r.isEmpty()) {
-                            Raster maskTile = maskImage.getTile(tileX, tileY);
-                            for (int y = r.y; y < r.y + r.height; y++) {
-                                for (int x = r.x; x < r.x + r.width; x++) {
-                                    if (maskTile.getSample(x, y, 0) != 0) {
-                                        // 0: pixel center point
-                                        pixelPoints[0].setLocation(x + 0.5f, y + 0.5f);
-                                        // 1 --> 2 : parallel (geogr. hor. line) crossing pixel center point
-                                        pixelPoints[1].setLocation(x + 0.0f, y + 0.5f);
-                                        pixelPoints[2].setLocation(x + 1.0f, y + 0.5f);
-                                        // 3 --> 4 : meridian (geogr. ver. line) crossing pixel center point
-                                        pixelPoints[3].setLocation(x + 0.5f, y + 0.0f);
-                                        pixelPoints[4].setLocation(x + 0.5f, y + 1.0f);
-
-                                        for (int i = 0; i < geoPoints.length; i++) {
-                                            geoCoding.getGeoPos(pixelPoints[i], geoPoints[i]);
-                                        }
-                                        double deltaLon = Math.abs(geoPoints[2].getLon() - geoPoints[1].getLon());
-                                        double deltaLat = Math.abs(geoPoints[4].getLat() - geoPoints[3].getLat());
-                                        double r2 = areaStatistics.getEarthRadius() * Math.cos(
-                                                geoPoints[0].getLat() * MathUtils.DTOR);
-                                        double a = r2 * deltaLon * MathUtils.DTOR;
-                                        double b = areaStatistics.getEarthRadius() * deltaLat * MathUtils.DTOR;
-                                        double pixelArea = a * b;
-                                        areaStatistics.setPixelAreaMin(
-                                                Math.min(areaStatistics.getPixelAreaMin(), pixelArea));
-                                        areaStatistics.setPixelAreaMax(
-                                                Math.max(areaStatistics.getPixelAreaMax(), pixelArea));
-                                        areaStatistics.setMaskArea(areaStatistics.getMaskArea() + a * b);
-                                        areaStatistics.setNumPixels(areaStatistics.getNumPixels() + 1);
-                                    }
-                                }
-                            }
-                        }
-                        pm.worked(1);
-                    }
-                }
-            } finally {
-                pm.done();
-            }
-            return areaStatistics;
+            return new MaskAreaCalculator(masks).compute(pm);
         }
 
 
         @Override
         public void done() {
             try {
-                final MaskAreaStatistics areaStatistics = get();
-                if (areaStatistics.getNumPixels() == 0) {
+                final MaskAreaStatistics[] areaStatistics = get();
+                if (areaStatistics == null) {
+                    return;
+                }
+                if (masks.length > 1) {
+                    showResults(areaStatistics);
+                } else if (areaStatistics[0].getNumPixels() == 0) {
                     final String message = MessageFormat.format("{0}Mask is empty.", errMsgBase);
                     SnapDialogs.showError(Bundle.CTL_ComputeMaskAreaAction_DialogTitle(), message);
                 } else {
-                    showResults(areaStatistics);
+                    showResults(masks[0], areaStatistics[0]);
                 }
             } catch (ExecutionException | InterruptedException e) {
                 final String message = MessageFormat.format("An internal Error occurred:\n{0}", e.getMessage());
@@ -354,7 +234,49 @@ public class ComputeMaskAreaAction extends AbstractAction implements LookupListe
             }
         }
 
-        private void showResults(MaskAreaStatistics areaStatistics) {
+        private void showResults(MaskAreaStatistics[] areaStatistics) {
+            final double roundFactor = 10000.0;
+            final JPanel content = GridBagUtils.createPanel();
+            final GridBagConstraints gbc = new GridBagConstraints();
+            gbc.fill = GridBagConstraints.HORIZONTAL;
+            gbc.anchor = GridBagConstraints.WEST;
+            gbc.insets.right = 4;
+            gbc.gridy = 0;
+            gbc.weightx = 0;
+
+            gbc.insets.top = 2;
+            content.add(new JLabel("Mask"), gbc);
+            content.add(new JLabel("Number of pixels"), gbc);
+            content.add(new JLabel("Area [km^2]"), gbc);
+            content.add(new JLabel("Mean pixel area [km^2]"), gbc);
+            gbc.gridy++;
+            for (int i = 0; i < masks.length; i++) {
+                final MaskAreaStatistics statistics = areaStatistics[i];
+                final long numPixels = statistics.getNumPixels();
+                final double maskAreaR = MathUtils.round(statistics.getMaskArea(), roundFactor);
+                content.add(new JLabel(masks[i].getDisplayName()), gbc);
+                gbc.weightx = 1;
+                content.add(createTextField(String.format("%15d", numPixels)), gbc);
+                content.add(createTextField(String.format("%15.3f", maskAreaR)), gbc);
+                content.add(createTextField(numPixels > 0 ?
+                                            String.format("%15.3f", MathUtils.round(statistics.getMaskArea() / numPixels, roundFactor)) :
+                                            ""), gbc);
+                gbc.weightx = 0;
+                gbc.gridy++;
+            }
+            gbc.insets.top = 8;
+            content.add(new JLabel("Mean earth radius:"), gbc);
+            content.add(createTextField(String.format("%15.3f", areaStatistics[0].getEarthRadius())), gbc);
+            content.add(new JLabel("km"), gbc);
+            final ModalDialog dialog = new ModalDialog(SnapApp.getDefault().getMainFrame(),
+                                                       Bundle.CTL_ComputeMaskAreaAction_DialogTitle() + " - " + ALL_MASKS,
+                                                       content,
+                                                       ModalDialog.ID_OK | ModalDialog.ID_HELP,
+                                                       getHelpCtx().getHelpID());
+            dialog.show();
+        }
+
+        private void showResults(Mask mask, MaskAreaStatistics areaStatistics) {
             final double roundFactor = 10000.0;
             final double maskAreaR = MathUtils.round(areaStatistics.getMaskArea(), roundFactor);
             final double meanPixelAreaR = MathUtils.round(areaStatistics.getMaskArea() / areaStatistics.getNumPixels(),
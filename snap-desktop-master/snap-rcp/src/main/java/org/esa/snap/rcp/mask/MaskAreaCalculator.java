@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.rcp.mask;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.datamodel.GeoCoding;
+import org.esa.snap.core.datamodel.GeoPos;
+import org.esa.snap.core.datamodel.Mask;
+import org.esa.snap.core.datamodel.PixelPos;
+import org.esa.snap.core.util.math.MathUtils;
+import org.esa.snap.core.util.math.RsMathUtils;
+
+import java.awt.Rectangle;
+import java.awt.image.RenderedImage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes the spatial area of one or more masks of the same size in a single pass over their tiles.
+ * <p>
+ * The area of a pixel is derived from the geographical positions of the midpoints of its four edges and
+ * of its centre, which are interpolated from the positions of its corners. Within a tile, the corners are
+ * geolocated row by row, only for the columns containing mask pixels, and the corners on the lower edge of a
+ * row are reused as the upper corners of the next row. Tiles are processed on a dedicated fork/join pool, the
+ * per-tile statistics are merged when joining.
+ */
+class MaskAreaCalculator {
+
+    private final RenderedImage[] maskImages;
+    private final GeoCoding geoCoding;
+    private final double earthRadius;
+    private final Rectangle imageRect;
+    private final RenderedImage tiling;
+
+    MaskAreaCalculator(Mask... masks) {
+        this.maskImages = new RenderedImage[masks.length];
+        for (int i = 0; i < masks.length; i++) {
+            maskImages[i] = masks[i].getSourceImage();
+        }
+        this.tiling = maskImages[0];
+        this.geoCoding = masks[0].getGeoCoding();
+        this.earthRadius = RsMathUtils.MEAN_EARTH_RADIUS / 1000.0;
+        this.imageRect = new Rectangle(0, 0, tiling.getWidth(), tiling.getHeight());
+    }
+
+    /**
+     * @return the statistics in the order of the masks, or {@code null} if the computation has been cancelled
+     */
+    MaskAreaStatistics[] compute(ProgressMonitor pm) throws InterruptedException, ExecutionException {
+        final int numTiles = tiling.getNumXTiles() * tiling.getNumYTiles();
+        final AtomicInteger tilesDone = new AtomicInteger();
+        final AtomicBoolean canceled = new AtomicBoolean();
+        // reading the mask tiles blocks, so the common pool isn't used
+        final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        pm.beginTask("Computing Mask area...", numTiles);
+        try {
+            final ForkJoinTask<MaskAreaStatistics[]> task =
+                    pool.submit(new TileRangeTask(0, numTiles, tilesDone, canceled));
+            int worked = 0;
+            while (true) {
+                try {
+                    final MaskAreaStatistics[] statistics = task.get(100, TimeUnit.MILLISECONDS);
+                    return canceled.get() ? null : statistics;
+                } catch (TimeoutException e) {
+                    final int done = tilesDone.get();
+                    pm.worked(done - worked);
+                    worked = done;
+                    if (pm.isCanceled()) {
+                        canceled.set(true);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            pm.done();
+        }
+    }
+
+    private MaskAreaStatistics[] createStatistics() {
+        final MaskAreaStatistics[] statistics = new MaskAreaStatistics[maskImages.length];
+        for (int i = 0; i < statistics.length; i++) {
+            statistics[i] = new MaskAreaStatistics(earthRadius);
+        }
+        return statistics;
+    }
+
+    MaskAreaStatistics[] computeTile(int tileX, int tileY) {
+        final MaskAreaStatistics[] statistics = createStatistics();
+        final Rectangle tileRect = new Rectangle(tiling.getTileGridXOffset() + tileX * tiling.getTileWidth(),
+                                                 tiling.getTileGridYOffset() + tileY * tiling.getTileHeight(),
+                                                 tiling.getTileWidth(), tiling.getTileHeight());
+        final Rectangle r = imageRect.intersection(tileRect);
+        if (r.isEmpty()) {
+            return statistics;
+        }
+        final int[][] samples = new int[maskImages.length][];
+        for (int i = 0; i < maskImages.length; i++) {
+            samples[i] = maskImages[i].getData(r).getSamples(r.x, r.y, r.width, r.height, 0,
+                                                              new int[r.width * r.height]);
+        }
+
+        final PixelPos pixelPos = new PixelPos();
+        final GeoPos geoPos = new GeoPos();
+        // geographical positions of the pixel corners on the upper and lower edges of the current row,
+        // one more than the number of columns for the right edge of the last column
+        double[] upperLat = new double[r.width + 1];
+        double[] upperLon = new double[r.width + 1];
+        double[] lowerLat = new double[r.width + 1];
+        double[] lowerLon = new double[r.width + 1];
+        int lowerY = -1;
+        int lowerMinX = 0;
+        int lowerMaxX = -1;
+
+        for (int y = r.y; y < r.y + r.height; y++) {
+            final int rowOffset = (y - r.y) * r.width;
+            int minX = Integer.MAX_VALUE;
+            int maxX = -1;
+            for (int x = 0; x < r.width; x++) {
+                if (isAnySet(samples, rowOffset + x)) {
+                    minX = Math.min(minX, x);
+                    maxX = x;
+                }
+            }
+            if (maxX < 0) {
+                continue;
+            }
+
+            // the lower edge of the previous row is the upper edge of this one
+            if (lowerY == y && lowerMinX <= minX && lowerMaxX >= maxX) {
+                double[] tmp = upperLat;
+                upperLat = lowerLat;
+                lowerLat = tmp;
+                tmp = upperLon;
+                upperLon = lowerLon;
+                lowerLon = tmp;
+            } else {
+                geolocateCorners(r.x, minX, maxX, y, upperLat, upperLon, pixelPos, geoPos);
+            }
+            geolocateCorners(r.x, minX, maxX, y + 1, lowerLat, lowerLon, pixelPos, geoPos);
+            lowerY = y + 1;
+            lowerMinX = minX;
+            lowerMaxX = maxX;
+
+            for (int x = minX; x <= maxX; x++) {
+                final int index = rowOffset + x;
+                if (!isAnySet(samples, index)) {
+                    continue;
+                }
+                // the midpoints of the pixel edges and the pixel centre are interpolated from the corners
+                final double deltaLon = Math.abs(upperLon[x + 1] - upperLon[x] + lowerLon[x + 1] - lowerLon[x]) / 2;
+                final double deltaLat = Math.abs(lowerLat[x] + lowerLat[x + 1] - upperLat[x] - upperLat[x + 1]) / 2;
+                final double centerLat = (upperLat[x] + upperLat[x + 1] + lowerLat[x] + lowerLat[x + 1]) / 4;
+                final double r2 = earthRadius * Math.cos(centerLat * MathUtils.DTOR);
+                final double a = r2 * deltaLon * MathUtils.DTOR;
+                final double b = earthRadius * deltaLat * MathUtils.DTOR;
+                final double pixelArea = a * b;
+                for (int i = 0; i < samples.length; i++) {
+                    if (samples[i][index] != 0) {
+                        statistics[i].addPixel(pixelArea);
+                    }
+                }
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Geolocates the corners on the upper edge of the pixels in row {@code y}, from the left corner of
+     * column {@code minX} to the right corner of column {@code maxX}.
+     */
+    private void geolocateCorners(int offsetX, int minX, int maxX, int y, double[] lat, double[] lon,
+                                  PixelPos pixelPos, GeoPos geoPos) {
+        for (int x = minX; x <= maxX + 1; x++) {
+            pixelPos.setLocation(offsetX + x, y);
+            geoCoding.getGeoPos(pixelPos, geoPos);
+            lat[x] = geoPos.getLat();
+            lon[x] = geoPos.getLon();
+        }
+    }
+
+    private static boolean isAnySet(int[][] samples, int index) {
+        for (int[] maskSamples : samples) {
+            if (maskSamples[index] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private class TileRangeTask extends RecursiveTask<MaskAreaStatistics[]> {
+
+        private final int from;
+        private final int to;
+        private final AtomicInteger tilesDone;
+        private final AtomicBoolean canceled;
+
+        private TileRangeTask(int from, int to, AtomicInteger tilesDone, AtomicBoolean canceled) {
+            this.from = from;
+            this.to = to;
+            this.tilesDone = tilesDone;
+            this.canceled = canceled;
+        }
+
+        @Override
+        protected MaskAreaStatistics[] compute() {
+            if (to - from <= 1) {
+                if (to == from || canceled.get()) {
+                    return createStatistics();
+                }
+                final int numXTiles = tiling.getNumXTiles();
+                final MaskAreaStatistics[] statistics = computeTile(tiling.getMinTileX() + from % numXTiles,
+                                                                    tiling.getMinTileY() + from / numXTiles);
+                tilesDone.incrementAndGet();
+                return statistics;
+            }
+            final int mid = (from + to) >>> 1;
+            final TileRangeTask left = new TileRangeTask(from, mid, tilesDone, canceled);
+            final TileRangeTask right = new TileRangeTask(mid, to, tilesDone, canceled);
+            left.fork();
+            final MaskAreaStatistics[] statistics = right.compute();
+            final MaskAreaStatistics[] leftStatistics = left.join();
+            for (int i = 0; i < statistics.length; i++) {
+                statistics[i].merge(leftStatistics[i]);
+            }
+            return statistics;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.rcp.mask;
+
+/**
+ * The spatial area of a mask, accumulated pixel by pixel. Statistics of disjoint parts of a mask can be
+ * combined with {@link #merge(MaskAreaStatistics)}.
+ */
+class MaskAreaStatistics {
+
+    private final double earthRadius;
+    private double maskArea;
+    private double pixelAreaMin;
+    private double pixelAreaMax;
+    private long numPixels;
+
+    MaskAreaStatistics(double earthRadius) {
+        this.earthRadius = earthRadius;
+        maskArea = 0.0;
+        pixelAreaMax = Double.NEGATIVE_INFINITY;
+        pixelAreaMin = Double.POSITIVE_INFINITY;
+        numPixels = 0;
+    }
+
+    public double getEarthRadius() {
+        return earthRadius;
+    }
+
+    public double getMaskArea() {
+        return maskArea;
+    }
+
+    public double getPixelAreaMin() {
+        return pixelAreaMin;
+    }
+
+    public double getPixelAreaMax() {
+        return pixelAreaMax;
+    }
+
+    public long getNumPixels() {
+        return numPixels;
+    }
+
+    void addPixel(double pixelArea) {
+        pixelAreaMin = Math.min(pixelAreaMin, pixelArea);
+        pixelAreaMax = Math.max(pixelAreaMax, pixelArea);
+        maskArea += pixelArea;
+        numPixels++;
+    }
+
+    void merge(MaskAreaStatistics other) {
+        pixelAreaMin = Math.min(pixelAreaMin, other.pixelAreaMin);
+        pixelAreaMax = Math.max(pixelAreaMax, other.pixelAreaMax);
+        maskArea += other.maskArea;
+        numPixels += other.numPixels;
+    }
+}
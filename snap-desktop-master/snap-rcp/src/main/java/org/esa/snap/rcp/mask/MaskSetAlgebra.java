@@ -0,0 +1,623 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.rcp.mask;
+
+import com.bc.ceres.glevel.MultiLevelImage;
+import com.bc.ceres.glevel.support.AbstractMultiLevelSource;
+import com.bc.ceres.glevel.support.DefaultMultiLevelImage;
+import org.esa.snap.core.datamodel.Mask;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductManager;
+import org.esa.snap.core.datamodel.ProductNodeEvent;
+import org.esa.snap.core.datamodel.ProductNodeListenerAdapter;
+import org.esa.snap.core.datamodel.RasterDataNode;
+import org.esa.snap.core.dataop.barithm.BandArithmetic;
+import org.esa.snap.core.dataop.barithm.RasterDataSymbol;
+import org.esa.snap.core.image.ImageManager;
+import org.esa.snap.core.image.ResolutionLevel;
+import org.esa.snap.core.jexp.ParseException;
+import org.esa.snap.core.jexp.Term;
+
+import java.awt.Rectangle;
+import java.awt.image.RenderedImage;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Evaluates masks defined by set operations on other masks, i.e. band maths masks whose expressions only combine
+ * masks with {@code &&}, {@code ||} and {@code !}, as created by the union, intersection, difference and complement
+ * actions of the mask manager.
+ * <p>
+ * The tiles of such masks are computed as packed bitsets, one bit per pixel, with word-wide bitwise operations on
+ * the packed tiles of their operands. Operands which are set operations themselves are evaluated the same way, so
+ * a chain of combined masks never goes through the byte images of its intermediate masks. The packed tiles are
+ * cached in a LRU cache bounded by their memory and are invalidated when a mask changes.
+ * <p>
+ * Once a product is attached, all its masks which are set operations are installed, also those which are added
+ * later on, e.g. copied from other products, and those whose expressions are edited into set operations.
+ * <p>
+ * The caches refer to masks weakly, and all entries of a product are dropped when it is removed from its product
+ * manager, so that closed products can be garbage collected.
+ */
+class MaskSetAlgebra {
+
+    private static final long MAX_CACHE_BYTES = 64L * 1024 * 1024;
+    // guards against masks referring to each other
+    private static final int MAX_DEPTH = 64;
+
+    private static final MaskSetAlgebra INSTANCE = new MaskSetAlgebra(MAX_CACHE_BYTES);
+
+    private final long maxCacheBytes;
+    private final Map<TileKey, long[]> tiles;
+    private final Map<Mask, ParsedExpression> expressions = new WeakHashMap<>();
+    // the installed images are only referred to weakly, because their level images refer to their masks
+    private final Map<Mask, WeakReference<MultiLevelImage>> installedImages = new WeakHashMap<>();
+    private final Map<Product, MaskChangeHandler> changeHandlers = new WeakHashMap<>();
+    private final Map<ProductManager, ProductRemovalHandler> removalHandlers = new WeakHashMap<>();
+    // the masks whose change is currently propagated, whose own events are not propagated again
+    private final Set<Mask> propagatingMasks = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long cacheBytes;
+
+    MaskSetAlgebra(long maxCacheBytes) {
+        this.maxCacheBytes = maxCacheBytes;
+        tiles = new LinkedHashMap<TileKey, long[]>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TileKey, long[]> eldest) {
+                if (cacheBytes > MaskSetAlgebra.this.maxCacheBytes && size() > 1) {
+                    cacheBytes -= getBytes(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    static MaskSetAlgebra getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Installs all masks of the product which are set operations, and the masks which are added to the product or
+     * whose expressions are edited later on.
+     *
+     * @param product the product
+     */
+    void attach(Product product) {
+        addHandlers(product);
+        for (Mask mask : product.getMaskGroup().toArray(new Mask[0])) {
+            install(mask);
+        }
+    }
+
+    /**
+     * Lets the given mask be computed by set operations on packed tiles, if its expression is a set operation.
+     * Otherwise the mask keeps its image.
+     *
+     * @param mask a band maths mask which is part of a product
+     */
+    void install(final Mask mask) {
+        if (getSetNode(mask) == null) {
+            return;
+        }
+        final MultiLevelImage image = new DefaultMultiLevelImage(new PackedMaskMultiLevelSource(mask));
+        synchronized (this) {
+            installedImages.put(mask, new WeakReference<>(image));
+        }
+        addHandlers(mask.getProduct());
+        mask.setSourceImage(image);
+    }
+
+    private synchronized void addHandlers(Product product) {
+        if (!changeHandlers.containsKey(product)) {
+            final MaskChangeHandler changeHandler = new MaskChangeHandler();
+            changeHandlers.put(product, changeHandler);
+            product.addProductNodeListener(changeHandler);
+        }
+        final ProductManager productManager = product.getProductManager();
+        if (productManager != null && !removalHandlers.containsKey(productManager)) {
+            final ProductRemovalHandler removalHandler = new ProductRemovalHandler();
+            removalHandlers.put(productManager, removalHandler);
+            productManager.addListener(removalHandler);
+        }
+    }
+
+    /**
+     * Drops all cached tiles and expressions of the masks of the product and stops listening to it.
+     */
+    void release(Product product) {
+        final MaskChangeHandler changeHandler;
+        synchronized (this) {
+            final Iterator<Map.Entry<TileKey, long[]>> iterator = tiles.entrySet().iterator();
+            while (iterator.hasNext()) {
+                final Map.Entry<TileKey, long[]> entry = iterator.next();
+                final Mask mask = entry.getKey().mask.get();
+                if (mask == null || mask.getProduct() == product || mask.getProduct() == null) {
+                    cacheBytes -= getBytes(entry.getValue());
+                    iterator.remove();
+                }
+            }
+            expressions.keySet().removeIf(mask -> mask.getProduct() == product || mask.getProduct() == null);
+            installedImages.keySet().removeIf(mask -> mask.getProduct() == product || mask.getProduct() == null);
+            changeHandler = changeHandlers.remove(product);
+        }
+        if (changeHandler != null) {
+            product.removeProductNodeListener(changeHandler);
+        }
+    }
+
+    synchronized int getCachedTileCount() {
+        return tiles.size();
+    }
+
+    /**
+     * @return the packed tile of the mask computed by the given set operation, which must not be modified
+     */
+    long[] getPackedTile(Mask mask, SetNode node, int level, Rectangle rect) {
+        return getPackedTile(mask, node, level, rect, 0);
+    }
+
+    private long[] getPackedTile(Mask mask, SetNode node, int level, Rectangle rect, int depth) {
+        final TileKey key = new TileKey(mask, level, rect);
+        synchronized (this) {
+            final long[] bits = tiles.get(key);
+            if (bits != null) {
+                return bits;
+            }
+        }
+        final long[] bits;
+        if (node != null) {
+            bits = node.evaluate(this, level, rect, depth + 1);
+        } else {
+            final RenderedImage image = mask.getSourceImage().getImage(level);
+            final int length = rect.width * rect.height;
+            bits = pack(image.getData(rect).getSamples(rect.x, rect.y, rect.width, rect.height, 0,
+                                                       new int[length]), length);
+        }
+        synchronized (this) {
+            cacheBytes += getBytes(bits);
+            final long[] previous = tiles.put(key, bits);
+            if (previous != null) {
+                cacheBytes -= getBytes(previous);
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * @return the set operation defined by the expression of the mask, or {@code null} if it is something else
+     */
+    SetNode getSetNode(Mask mask) {
+        if (mask.getImageType() != Mask.BandMathsType.INSTANCE || mask.getProduct() == null) {
+            return null;
+        }
+        final String expression = (String) mask.getImageConfig().getValue(Mask.BandMathsType.PROPERTY_NAME_EXPRESSION);
+        if (expression == null) {
+            return null;
+        }
+        synchronized (this) {
+            final ParsedExpression parsed = expressions.get(mask);
+            if (parsed != null && parsed.expression.equals(expression)) {
+                return parsed.node;
+            }
+        }
+        final SetNode node;
+        try {
+            final Term term = BandArithmetic.parseExpression(expression, new Product[]{mask.getProduct()}, 0);
+            node = createSetNode(term, mask);
+        } catch (ParseException e) {
+            // not cached, the referred masks may be added later on
+            return null;
+        }
+        synchronized (this) {
+            expressions.put(mask, new ParsedExpression(expression, node));
+        }
+        return node;
+    }
+
+    // jexp's logical operator terms are identified by their class names
+    private static SetNode createSetNode(Term term, Mask mask) {
+        if (term instanceof Term.Ref) {
+            final Object symbol = ((Term.Ref) term).getSymbol();
+            if (symbol instanceof RasterDataSymbol) {
+                final RasterDataNode raster = ((RasterDataSymbol) symbol).getRaster();
+                if (raster instanceof Mask && raster != mask
+                    && raster.getSceneRasterWidth() == mask.getSceneRasterWidth()
+                    && raster.getSceneRasterHeight() == mask.getSceneRasterHeight()) {
+                    return new MaskNode((Mask) raster);
+                }
+            }
+            return null;
+        }
+        final Term[] args = term.getChildren();
+        switch (term.getClass().getSimpleName()) {
+            case "NotB": {
+                final SetNode arg = createSetNode(args[0], mask);
+                return arg != null ? new NotNode(arg) : null;
+            }
+            case "AndB": {
+                final SetNode arg1 = createSetNode(args[0], mask);
+                final SetNode arg2 = arg1 != null ? createSetNode(args[1], mask) : null;
+                if (arg2 instanceof NotNode) {
+                    // a && !b is a difference, which needs no complement of b
+                    return new BinaryNode(BinaryNode.AND_NOT, arg1, ((NotNode) arg2).arg);
+                }
+                return arg2 != null ? new BinaryNode(BinaryNode.AND, arg1, arg2) : null;
+            }
+            case "OrB": {
+                final SetNode arg1 = createSetNode(args[0], mask);
+                final SetNode arg2 = arg1 != null ? createSetNode(args[1], mask) : null;
+                return arg2 != null ? new BinaryNode(BinaryNode.OR, arg1, arg2) : null;
+            }
+            default:
+                return null;
+        }
+    }
+
+    private synchronized void invalidate(Mask mask) {
+        final Iterator<Map.Entry<TileKey, long[]>> iterator = tiles.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<TileKey, long[]> entry = iterator.next();
+            final Mask tileMask = entry.getKey().mask.get();
+            if (tileMask == mask || tileMask == null) {
+                cacheBytes -= getBytes(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    private void expressionChanged(Mask mask) {
+        final boolean installed;
+        final MultiLevelImage installedImage;
+        synchronized (this) {
+            final WeakReference<MultiLevelImage> imageRef = installedImages.get(mask);
+            installed = imageRef != null;
+            installedImage = installed ? imageRef.get() : null;
+        }
+        if (installed && installedImage != null && mask.isSourceImageSet() && mask.getSourceImage() == installedImage) {
+            // the levels are created again from the edited expression
+            installedImage.reset();
+        } else {
+            // the image of the mask has been replaced, or the expression may have become a set operation
+            install(mask);
+        }
+        maskChanged(mask);
+    }
+
+    /**
+     * Invalidates the tiles of the mask and of all masks depending on it, directly or through other masks. Each
+     * dependent mask is visited once, also if masks refer to each other in a cycle, and announces its changed data.
+     */
+    private void maskChanged(Mask mask) {
+        synchronized (propagatingMasks) {
+            if (propagatingMasks.contains(mask)) {
+                return;
+            }
+        }
+        invalidate(mask);
+        final List<Mask> installedMasks = new ArrayList<>();
+        synchronized (this) {
+            for (Mask installedMask : installedImages.keySet()) {
+                if (installedMask.getProduct() == mask.getProduct()) {
+                    installedMasks.add(installedMask);
+                }
+            }
+        }
+        final Set<Mask> visitedMasks = Collections.newSetFromMap(new IdentityHashMap<>());
+        visitedMasks.add(mask);
+        final List<Mask> dependentMasks = new ArrayList<>();
+        final Deque<Mask> changedMasks = new ArrayDeque<>();
+        changedMasks.add(mask);
+        while (!changedMasks.isEmpty()) {
+            final Mask changedMask = changedMasks.poll();
+            for (Mask installedMask : installedMasks) {
+                if (!visitedMasks.contains(installedMask)) {
+                    final SetNode node = getSetNode(installedMask);
+                    if (node != null && node.refersTo(changedMask)) {
+                        visitedMasks.add(installedMask);
+                        dependentMasks.add(installedMask);
+                        changedMasks.add(installedMask);
+                    }
+                }
+            }
+        }
+        for (Mask dependentMask : dependentMasks) {
+            invalidate(dependentMask);
+            if (dependentMask.isSourceImageSet()) {
+                dependentMask.getSourceImage().reset();
+            }
+        }
+        synchronized (propagatingMasks) {
+            propagatingMasks.addAll(visitedMasks);
+        }
+        try {
+            for (Mask dependentMask : dependentMasks) {
+                dependentMask.fireProductNodeDataChanged();
+            }
+        } finally {
+            synchronized (propagatingMasks) {
+                propagatingMasks.removeAll(visitedMasks);
+            }
+        }
+    }
+
+    private synchronized void maskRemoved(Mask mask) {
+        invalidate(mask);
+        installedImages.remove(mask);
+        expressions.remove(mask);
+    }
+
+    static long[] pack(int[] samples, int length) {
+        final long[] bits = new long[getWordCount(length)];
+        for (int i = 0; i < length; i++) {
+            if (samples[i] != 0) {
+                bits[i >>> 6] |= 1L << i;
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Writes the pixels of a packed tile as 255 for set and 0 for unset pixels.
+     */
+    static void unpack(long[] bits, byte[] values, int length) {
+        for (int i = 0; i < length; i++) {
+            values[i] = (bits[i >>> 6] & 1L << i) != 0 ? (byte) 255 : 0;
+        }
+    }
+
+    private static int getWordCount(int length) {
+        return (length + 63) >>> 6;
+    }
+
+    private static long getBytes(long[] bits) {
+        return 8L * bits.length;
+    }
+
+    /**
+     * A node of a set operation, evaluated to a new packed tile which may be modified by the caller.
+     */
+    abstract static class SetNode {
+
+        abstract long[] evaluate(MaskSetAlgebra algebra, int level, Rectangle rect, int depth);
+
+        abstract boolean refersTo(Mask mask);
+    }
+
+    static final class MaskNode extends SetNode {
+
+        // weak, so that the cached expressions do not keep the masks and their products alive
+        private final WeakReference<Mask> mask;
+
+        MaskNode(Mask mask) {
+            this.mask = new WeakReference<>(mask);
+        }
+
+        @Override
+        long[] evaluate(MaskSetAlgebra algebra, int level, Rectangle rect, int depth) {
+            final Mask mask = this.mask.get();
+            if (mask == null) {
+                return new long[getWordCount(rect.width * rect.height)];
+            }
+            final SetNode node = depth < MAX_DEPTH ? algebra.getSetNode(mask) : null;
+            return algebra.getPackedTile(mask, node, level, rect, depth).clone();
+        }
+
+        @Override
+        boolean refersTo(Mask mask) {
+            return this.mask.get() == mask;
+        }
+    }
+
+    static final class NotNode extends SetNode {
+
+        private final SetNode arg;
+
+        NotNode(SetNode arg) {
+            this.arg = arg;
+        }
+
+        @Override
+        long[] evaluate(MaskSetAlgebra algebra, int level, Rectangle rect, int depth) {
+            final long[] bits = arg.evaluate(algebra, level, rect, depth);
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = ~bits[i];
+            }
+            // the bits beyond the last pixel stay unset, as in the packed tiles of masks
+            final int length = rect.width * rect.height;
+            if ((length & 63) != 0) {
+                bits[bits.length - 1] &= (1L << length) - 1;
+            }
+            return bits;
+        }
+
+        @Override
+        boolean refersTo(Mask mask) {
+            return arg.refersTo(mask);
+        }
+    }
+
+    static final class BinaryNode extends SetNode {
+
+        static final int AND = 0;
+        static final int OR = 1;
+        static final int AND_NOT = 2;
+
+        private final int op;
+        private final SetNode arg1;
+        private final SetNode arg2;
+
+        BinaryNode(int op, SetNode arg1, SetNode arg2) {
+            this.op = op;
+            this.arg1 = arg1;
+            this.arg2 = arg2;
+        }
+
+        @Override
+        long[] evaluate(MaskSetAlgebra algebra, int level, Rectangle rect, int depth) {
+            final long[] bits1 = arg1.evaluate(algebra, level, rect, depth);
+            final long[] bits2 = arg2.evaluate(algebra, level, rect, depth);
+            switch (op) {
+                case AND:
+                    for (int i = 0; i < bits1.length; i++) {
+                        bits1[i] &= bits2[i];
+                    }
+                    break;
+                case OR:
+                    for (int i = 0; i < bits1.length; i++) {
+                        bits1[i] |= bits2[i];
+                    }
+                    break;
+                default:
+                    for (int i = 0; i < bits1.length; i++) {
+                        bits1[i] &= ~bits2[i];
+                    }
+                    break;
+            }
+            return bits1;
+        }
+
+        @Override
+        boolean refersTo(Mask mask) {
+            return arg1.refersTo(mask) || arg2.refersTo(mask);
+        }
+    }
+
+    /**
+     * The image of a mask computed by set operations, which refers to its mask weakly.
+     */
+    private class PackedMaskMultiLevelSource extends AbstractMultiLevelSource {
+
+        private final WeakReference<Mask> mask;
+
+        private PackedMaskMultiLevelSource(Mask mask) {
+            super(ImageManager.getMultiLevelModel(mask));
+            this.mask = new WeakReference<>(mask);
+        }
+
+        @Override
+        protected RenderedImage createImage(int level) {
+            final Mask mask = this.mask.get();
+            if (mask == null) {
+                throw new IllegalStateException("The mask has been disposed.");
+            }
+            // the expression may have been edited since the image has been installed
+            final SetNode node = getSetNode(mask);
+            if (node == null) {
+                return mask.getImageType().createImage(mask).getImage(level);
+            }
+            return new PackedMaskOpImage(mask, node, ResolutionLevel.create(getModel(), level));
+        }
+    }
+
+    private class MaskChangeHandler extends ProductNodeListenerAdapter {
+
+        // changes of e.g. the colour or transparency do not affect the pixels of a mask
+        @Override
+        public void nodeChanged(ProductNodeEvent event) {
+            if (event.getSourceNode() instanceof Mask
+                && Mask.BandMathsType.PROPERTY_NAME_EXPRESSION.equals(event.getPropertyName())) {
+                expressionChanged((Mask) event.getSourceNode());
+            }
+        }
+
+        @Override
+        public void nodeDataChanged(ProductNodeEvent event) {
+            if (event.getSourceNode() instanceof Mask) {
+                maskChanged((Mask) event.getSourceNode());
+            }
+        }
+
+        @Override
+        public void nodeAdded(ProductNodeEvent event) {
+            if (event.getSourceNode() instanceof Mask) {
+                install((Mask) event.getSourceNode());
+            }
+        }
+
+        @Override
+        public void nodeRemoved(ProductNodeEvent event) {
+            if (event.getSourceNode() instanceof Mask) {
+                maskRemoved((Mask) event.getSourceNode());
+            }
+        }
+    }
+
+    private class ProductRemovalHandler implements ProductManager.Listener {
+
+        @Override
+        public void productAdded(ProductManager.Event event) {
+        }
+
+        @Override
+        public void productRemoved(ProductManager.Event event) {
+            release(event.getProduct());
+        }
+    }
+
+    private static class ParsedExpression {
+
+        private final String expression;
+        private final SetNode node;
+
+        private ParsedExpression(String expression, SetNode node) {
+            this.expression = expression;
+            this.node = node;
+        }
+    }
+
+    private static class TileKey {
+
+        private final WeakReference<Mask> mask;
+        private final int maskHash;
+        private final int level;
+        private final Rectangle rect;
+
+        private TileKey(Mask mask, int level, Rectangle rect) {
+            this.mask = new WeakReference<>(mask);
+            this.maskHash = System.identityHashCode(mask);
+            this.level = level;
+            this.rect = new Rectangle(rect);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof TileKey)) {
+                return false;
+            }
+            final TileKey other = (TileKey) o;
+            final Mask mask = this.mask.get();
+            return mask != null && mask == other.mask.get() && level == other.level && rect.equals(other.rect);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * maskHash + level) + rect.hashCode();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.mask;
+
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductManager;
+import org.esa.snap.rcp.SnapApp;
+import org.openide.modules.OnStart;
+
+/**
+ * Attaches all opened products to the {@link MaskSetAlgebra}, so that their masks which are set operations on other
+ * masks are computed on packed tiles, regardless of whether they are read from a file, restored from a session,
+ * copied or created in the mask manager.
+ * <p>
+ * This non-API class is public as an implementation detail. Don't use it, it may be removed anytime.
+ */
+@OnStart
+public class MaskSetAlgebraInstaller implements Runnable {
+
+    @Override
+    public void run() {
+        final ProductManager productManager = SnapApp.getDefault().getProductManager();
+        productManager.addListener(new ProductManager.Listener() {
+            @Override
+            public void productAdded(ProductManager.Event event) {
+                MaskSetAlgebra.getInstance().attach(event.getProduct());
+            }
+
+            @Override
+            public void productRemoved(ProductManager.Event event) {
+                // the algebra releases the product itself
+            }
+        });
+        for (Product product : productManager.getProducts()) {
+            MaskSetAlgebra.getInstance().attach(product);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.mask;
+
+import org.esa.snap.core.datamodel.Mask;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.image.RasterDataNodeOpImage;
+import org.esa.snap.core.image.ResolutionLevel;
+
+import java.awt.Rectangle;
+
+/**
+ * The image of a mask defined by a set operation on other masks. Its tiles are unpacked from the packed tiles
+ * computed by the {@link MaskSetAlgebra}.
+ */
+class PackedMaskOpImage extends RasterDataNodeOpImage {
+
+    private final Mask mask;
+    private final MaskSetAlgebra.SetNode node;
+    private final int level;
+
+    PackedMaskOpImage(Mask mask, MaskSetAlgebra.SetNode node, ResolutionLevel level) {
+        super(mask, level);
+        this.mask = mask;
+        this.node = node;
+        this.level = level.getIndex();
+    }
+
+    @Override
+    protected void computeProductData(ProductData productData, Rectangle destRect) {
+        final long[] bits = MaskSetAlgebra.getInstance().getPackedTile(mask, node, level, destRect);
+        MaskSetAlgebra.unpack(bits, (byte[]) productData.getElems(), destRect.width * destRect.height);
+    }
+}
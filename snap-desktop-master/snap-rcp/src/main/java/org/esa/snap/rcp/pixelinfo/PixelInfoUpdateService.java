@@ -17,12 +17,14 @@ package org.esa.snap.rcp.pixelinfo;
 
 import org.esa.snap.ui.product.ProductSceneView;
 
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 
 /**
+ * Runs the updates of the pixel info view on a background thread. Updates are triggered by cursor and
+ * product events; events arriving while an update is running are coalesced into a single update for the
+ * most recent state.
+ *
  * @author Marco Zuehlke
  * @version $Revision$ $Date$
  * @since BEAM 4.5.2
@@ -30,16 +32,19 @@ import java.util.concurrent.TimeUnit;
 public class PixelInfoUpdateService {
 
     private final PixelInfoViewModelUpdater modelUpdater;
-    private final ScheduledExecutorService scheduledExecutorService;
-    private ScheduledFuture<?> updaterFuture;
+    private final ExecutorService executorService;
     private PixelInfoState state;
     private boolean needUpdate;
-    private int numUnchangedStates;
+    private boolean updateScheduled;
     private Runnable updaterRunnable;
 
     public PixelInfoUpdateService(PixelInfoViewModelUpdater modelUpdater) {
         this.modelUpdater = modelUpdater;
-        this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+        this.executorService = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "Pixel info updater");
+            thread.setDaemon(true);
+            return thread;
+        });
         state = PixelInfoState.INVALID;
         updaterRunnable = new UpdaterRunnable();
     }
@@ -47,8 +52,7 @@ public class PixelInfoUpdateService {
     synchronized void updateState(ProductSceneView view, int pixelX, int pixelY, int level, boolean pixelPosValid) {
         if (!state.equals(view, pixelX, pixelY, level, pixelPosValid)) {
             state = new PixelInfoState(view, pixelX, pixelY, level, pixelPosValid);
-            needUpdate = true;
-            assertTimerStarted();
+            scheduleUpdate();
         }
     }
 
@@ -56,48 +60,39 @@ public class PixelInfoUpdateService {
         if (state == PixelInfoState.INVALID) {
             return;
         }
-        needUpdate = true;
-        assertTimerStarted();
+        scheduleUpdate();
     }
 
     synchronized void clearState() {
         state = PixelInfoState.INVALID;
     }
 
-
-    private void assertTimerStarted() {
-        if (updaterFuture == null) {
-            updaterFuture = scheduledExecutorService.scheduleAtFixedRate(updaterRunnable, 100, 100, TimeUnit.MILLISECONDS);
-        }
-    }
-
-    private synchronized void stopTimer() {
-        if (updaterFuture != null) {
-            updaterFuture.cancel(true);
-            updaterFuture = null;
+    private void scheduleUpdate() {
+        needUpdate = true;
+        if (!updateScheduled) {
+            updateScheduled = true;
+            executorService.execute(updaterRunnable);
         }
-        clearState();
     }
 
     private class UpdaterRunnable implements Runnable {
         @Override
         public void run() {
-            if (state == PixelInfoState.INVALID) {
-                return;
-            }
-            if (needUpdate) {
-                numUnchangedStates = 0;
-                needUpdate = false;
+            while (true) {
+                final PixelInfoState currentState;
+                synchronized (PixelInfoUpdateService.this) {
+                    if (!needUpdate || state == PixelInfoState.INVALID) {
+                        updateScheduled = false;
+                        return;
+                    }
+                    needUpdate = false;
+                    currentState = state;
+                }
                 try {
-                    modelUpdater.update(state);
+                    modelUpdater.update(currentState);
                 } catch (Throwable ignored) {
 
                 }
-            } else {
-                numUnchangedStates++;
-                if (numUnchangedStates > 100) {
-                    stopTimer();
-                }
             }
         }
     }
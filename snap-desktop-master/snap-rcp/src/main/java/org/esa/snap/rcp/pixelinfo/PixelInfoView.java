@@ -162,6 +162,13 @@ public class PixelInfoView extends JPanel {
         return new ProductNodeListenerAdapter() {
             @Override
             public void nodeChanged(ProductNodeEvent event) {
+                modelUpdater.clearPixelStack();
+                updateService.requestUpdate();
+            }
+
+            @Override
+            public void nodeDataChanged(ProductNodeEvent event) {
+                modelUpdater.clearPixelStack();
                 updateService.requestUpdate();
             }
 
@@ -30,7 +30,6 @@ import org.esa.snap.core.datamodel.ProductNodeListener;
 import org.esa.snap.core.datamodel.RasterDataNode;
 import org.esa.snap.core.datamodel.TiePointGrid;
 import org.esa.snap.core.dataop.maptransf.MapTransform;
-import org.esa.snap.core.image.ImageManager;
 import org.esa.snap.core.util.Guardian;
 import org.esa.snap.core.util.ProductUtils;
 import org.esa.snap.core.util.math.MathUtils;
@@ -40,13 +39,15 @@ import org.opengis.geometry.DirectPosition;
 import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.TransformException;
 
-import javax.media.jai.PlanarImage;
 import javax.swing.SwingUtilities;
 import java.awt.Dimension;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
-import java.awt.image.Raster;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
 import java.util.Vector;
 
 /**
@@ -69,6 +70,14 @@ public class PixelInfoViewModelUpdater {
     private volatile ProductSceneView currentView;
     private Band[] currentFlagBands;
 
+    private final PixelStackSampler pixelStackSampler;
+    private final SampleFormatter sampleFormatter;
+    private final PixelStack bandStack;
+    private final PixelStack tiePointStack;
+    private final PixelStack flagStack;
+    private boolean clearRasterTableSelectionPending;
+    private boolean tableChangePending;
+
     private int pixelX;
     private int pixelY;
     private int level;
@@ -90,6 +99,12 @@ public class PixelInfoViewModelUpdater {
         this.bandModel = bandModel;
         this.tiePointModel = tiePointModel;
         this.flagModel = flagModel;
+        pixelStackSampler = new PixelStackSampler();
+        sampleFormatter = new SampleFormatter();
+        bandStack = new PixelStack();
+        tiePointStack = new PixelStack();
+        flagStack = new PixelStack();
+        currentFlagBands = new Band[0];
     }
 
     Product getCurrentProduct() {
@@ -155,9 +170,30 @@ public class PixelInfoViewModelUpdater {
         resetFlagTableModel();
     }
 
+    /**
+     * Releases the tiles kept for sampling, e.g. after the data of a raster has changed.
+     */
+    void clearPixelStack() {
+        pixelStackSampler.clear();
+    }
+
     private void fireTableChanged(final boolean clearRasterTableSelection) {
+        synchronized (this) {
+            // coalesce the table events if the event dispatch thread lags behind the updates
+            clearRasterTableSelectionPending |= clearRasterTableSelection;
+            if (tableChangePending) {
+                return;
+            }
+            tableChangePending = true;
+        }
         SwingUtilities.invokeLater(() -> {
-            if (clearRasterTableSelection) {
+            final boolean clearSelection;
+            synchronized (this) {
+                clearSelection = clearRasterTableSelectionPending;
+                clearRasterTableSelectionPending = false;
+                tableChangePending = false;
+            }
+            if (clearSelection) {
                 pixelInfoView.clearSelectionInRasterTables();
             }
             positionModel.fireTableDataChanged();
@@ -307,22 +343,22 @@ public class PixelInfoViewModelUpdater {
 
     private void resetBandTableModel() {
         bandModel.clear();
+        final List<RasterDataNode> bands = new ArrayList<>();
         if (currentRaster != null) {
             final int numBands = currentProduct.getNumBands();
             for (int i = 0; i < numBands; i++) {
                 final Band band = currentProduct.getBandAt(i);
                 if (shouldDisplayBand(band)) {
                     bandModel.addRow(band.getName(), "", band.getUnit());
+                    bands.add(band);
                 }
             }
         }
+        bandStack.reset(bands);
     }
 
     private void updateBandPixelValues() {
-        for (int i = 0; i < bandModel.getRowCount(); i++) {
-            final String bandName = (String) bandModel.getValueAt(i, 0);
-            bandModel.updateValue(getPixelString(currentProduct.getBand(bandName)), i);
-        }
+        updatePixelStringValues(bandStack, bandModel);
     }
 
     private int getBandRowCount() {
@@ -362,26 +398,27 @@ public class PixelInfoViewModelUpdater {
 
     private void resetTiePointGridTableModel() {
         tiePointModel.clear();
+        final List<RasterDataNode> grids = new ArrayList<>();
         if (currentRaster != null) {
             final int numTiePointGrids = currentProduct.getNumTiePointGrids();
             for (int i = 0; i < numTiePointGrids; i++) {
                 final TiePointGrid tiePointGrid = currentProduct.getTiePointGridAt(i);
                 if (equalsViewRasterSize(tiePointGrid.getSceneRasterSize())) {
                     tiePointModel.addRow(tiePointGrid.getName(), "", tiePointGrid.getUnit());
+                    grids.add(tiePointGrid);
                 }
             }
         }
+        tiePointStack.reset(grids);
     }
 
     private void updateTiePointGridPixelValues() {
-        for (int i = 0; i < tiePointModel.getRowCount(); i++) {
-            final TiePointGrid grid = currentProduct.getTiePointGrid((String) tiePointModel.getValueAt(i, 0));
-            tiePointModel.updateValue(getPixelString(grid), i);
-        }
+        updatePixelStringValues(tiePointStack, tiePointModel);
     }
 
     private void resetFlagTableModel() {
         flagModel.clear();
+        flagStack.reset(Arrays.asList(currentFlagBands));
         if (currentRaster != null) {
             for (Band band : currentFlagBands) {  // currentFlagBands is already filtered for "equals size" in registerFlagDatasets
                 final FlagCoding flagCoding = band.getFlagCoding();
@@ -401,9 +438,13 @@ public class PixelInfoViewModelUpdater {
         if (flagModel.getRowCount() != getFlagRowCount()) {
             resetFlagTableModel();
         }
+        if (available) {
+            flagStack.sample(false);
+        }
         int rowIndex = 0;
-        for (Band band : currentFlagBands) {
-            long pixelValue = available ? ProductUtils.getGeophysicalSampleAsLong(band, pixelX, pixelY, level) : 0;
+        for (int i = 0; i < currentFlagBands.length; i++) {
+            final Band band = currentFlagBands[i];
+            long pixelValue = available && flagStack.states[i] == PixelStackSampler.VALID ? flagStack.longSamples[i] : 0;
 
             for (int j = 0; j < band.getFlagCoding().getNumAttributes(); j++) {
                 if (available) {
@@ -444,44 +485,43 @@ public class PixelInfoViewModelUpdater {
     }
 
 
-    private String getPixelString(RasterDataNode raster) {
+    private void updatePixelStringValues(PixelStack stack, PixelInfoViewTableModel model) {
+        if (stack.rasters.length != model.getRowCount()) {
+            return;
+        }
         if (!pixelPosValid) {
-            return RasterDataNode.INVALID_POS_TEXT;
-        }
-        if (isPixelValid(raster, pixelX, pixelY, level)) {
-            if (raster.isScalingApplied() || ProductData.isFloatingPointType(raster.getDataType())) {
-                int dataType = raster.getGeophysicalDataType();
-                if (dataType == ProductData.TYPE_FLOAT64) {
-                    double pixel = ProductUtils.getGeophysicalSampleAsDouble(raster, pixelX, pixelY, level);
-                    return String.format("%.10f", pixel);
-                } else if (dataType == ProductData.TYPE_FLOAT32) {
-                    double pixel = ProductUtils.getGeophysicalSampleAsDouble(raster, pixelX, pixelY, level);
-                    return String.format("%.5f", pixel);
-                }
+            for (int i = 0; i < stack.rasters.length; i++) {
+                model.updateValue(RasterDataNode.INVALID_POS_TEXT, i);
             }
-            return String.valueOf(ProductUtils.getGeophysicalSampleAsLong(raster, pixelX, pixelY, level));
-        } else {
-            return RasterDataNode.NO_DATA_TEXT;
+            stack.invalidate();
+            return;
         }
-    }
-
-    private boolean isPixelValid(RasterDataNode raster, int pixelX, int pixelY, int level) {
-        if (raster.isValidMaskUsed()) {
-            PlanarImage image = ImageManager.getInstance().getValidMaskImage(raster, level);
-            Raster data = getRasterTile(image, pixelX, pixelY);
-            return data.getSample(pixelX, pixelY, 0) != 0;
-        } else {
-            return true;
+        stack.sample(true);
+        for (int i = 0; i < stack.rasters.length; i++) {
+            if (stack.isUnchanged(i)) {
+                continue;
+            }
+            model.updateValue(getPixelString(stack, i), i);
         }
+        stack.setFormatted();
     }
 
-    private Raster getRasterTile(PlanarImage image, int pixelX, int pixelY) {
-        final int tileX = image.XToTileX(pixelX);
-        final int tileY = image.YToTileY(pixelY);
-        return image.getTile(tileX, tileY);
+    private String getPixelString(PixelStack stack, int index) {
+        if (stack.states[index] != PixelStackSampler.VALID) {
+            return RasterDataNode.NO_DATA_TEXT;
+        }
+        final RasterDataNode raster = stack.rasters[index];
+        if (raster.isScalingApplied() || ProductData.isFloatingPointType(raster.getDataType())) {
+            int dataType = raster.getGeophysicalDataType();
+            if (dataType == ProductData.TYPE_FLOAT64) {
+                return sampleFormatter.format(stack.doubleSamples[index], 10);
+            } else if (dataType == ProductData.TYPE_FLOAT32) {
+                return sampleFormatter.format(stack.doubleSamples[index], 5);
+            }
+        }
+        return String.valueOf(stack.longSamples[index]);
     }
 
-
     private boolean isSampleValueAvailable(int pixelX, int pixelY, boolean pixelValid) {
         return currentRaster != null
                 && pixelValid
@@ -496,5 +536,61 @@ public class PixelInfoViewModelUpdater {
         currentRaster = null;
         currentView = null;
         currentFlagBands = new Band[0];
+        bandStack.reset(Collections.emptyList());
+        tiePointStack.reset(Collections.emptyList());
+        flagStack.reset(Collections.emptyList());
+        pixelStackSampler.clear();
+    }
+
+    /**
+     * The samples of a stack of rasters at the current pixel, together with the samples of the previous update,
+     * which allow to skip formatting values which have not changed.
+     */
+    private class PixelStack {
+
+        private RasterDataNode[] rasters = new RasterDataNode[0];
+        private byte[] states = new byte[0];
+        private double[] doubleSamples = new double[0];
+        private long[] longSamples = new long[0];
+        private byte[] previousStates = new byte[0];
+        private double[] previousDoubleSamples = new double[0];
+        private long[] previousLongSamples = new long[0];
+        private boolean previousValid;
+
+        void reset(List<? extends RasterDataNode> rasterList) {
+            final int n = rasterList.size();
+            rasters = rasterList.toArray(new RasterDataNode[n]);
+            states = new byte[n];
+            doubleSamples = new double[n];
+            longSamples = new long[n];
+            previousStates = new byte[n];
+            previousDoubleSamples = new double[n];
+            previousLongSamples = new long[n];
+            previousValid = false;
+        }
+
+        void sample(boolean useValidMask) {
+            if (previousValid) {
+                System.arraycopy(states, 0, previousStates, 0, states.length);
+                System.arraycopy(doubleSamples, 0, previousDoubleSamples, 0, doubleSamples.length);
+                System.arraycopy(longSamples, 0, previousLongSamples, 0, longSamples.length);
+            }
+            pixelStackSampler.sample(rasters, pixelX, pixelY, level, useValidMask, states, doubleSamples, longSamples);
+        }
+
+        boolean isUnchanged(int index) {
+            return previousValid
+                   && states[index] == previousStates[index]
+                   && Double.doubleToLongBits(doubleSamples[index]) == Double.doubleToLongBits(previousDoubleSamples[index])
+                   && longSamples[index] == previousLongSamples[index];
+        }
+
+        void setFormatted() {
+            previousValid = true;
+        }
+
+        void invalidate() {
+            previousValid = false;
+        }
     }
 }
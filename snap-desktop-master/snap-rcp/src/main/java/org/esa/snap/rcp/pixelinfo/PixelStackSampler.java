@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.rcp.pixelinfo;
+
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.datamodel.RasterDataNode;
+import org.esa.snap.core.image.ImageManager;
+
+import javax.media.jai.PlanarImage;
+import java.awt.image.Raster;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Samples a stack of rasters at a single pixel position. The tiles around the cursor are kept in a small
+ * LRU cache, so moving the cursor within a tile does not need to look up the tiles of every raster again.
+ * Large stacks are sampled in parallel.
+ */
+class PixelStackSampler {
+
+    static final byte NOT_AVAILABLE = 0;
+    static final byte VALID = 1;
+    static final byte INVALID = 2;
+
+    private static final int MIN_CACHED_TILES = 16;
+    private static final int CACHED_TILES_PER_IMAGE = 2;
+    private static final int PARALLEL_THRESHOLD = 8;
+
+    private final TileCache tileCache = new TileCache();
+
+    /**
+     * Samples the given rasters at the given pixel of the given resolution level. The samples are the same as
+     * provided by {@code ProductUtils.getGeophysicalSampleAsDouble} and {@code ProductUtils.getGeophysicalSampleAsLong}.
+     *
+     * @param rasters       the rasters
+     * @param pixelX        the pixel X coordinate at the given level
+     * @param pixelY        the pixel Y coordinate at the given level
+     * @param level         the resolution level
+     * @param useValidMask  whether to check the valid mask of the rasters
+     * @param states        receives {@link #VALID}, {@link #INVALID} or {@link #NOT_AVAILABLE} for each raster
+     * @param doubleSamples receives the geophysical samples as double
+     * @param longSamples   receives the geophysical samples as long
+     */
+    void sample(RasterDataNode[] rasters, int pixelX, int pixelY, int level, boolean useValidMask,
+                byte[] states, double[] doubleSamples, long[] longSamples) {
+        tileCache.setCapacity(CACHED_TILES_PER_IMAGE * rasters.length * (useValidMask ? 2 : 1));
+        if (rasters.length < PARALLEL_THRESHOLD) {
+            for (int i = 0; i < rasters.length; i++) {
+                sample(rasters, i, pixelX, pixelY, level, useValidMask, states, doubleSamples, longSamples);
+            }
+        } else {
+            IntStream.range(0, rasters.length).parallel().forEach(
+                    i -> sample(rasters, i, pixelX, pixelY, level, useValidMask, states, doubleSamples, longSamples));
+        }
+    }
+
+    /**
+     * Releases all cached tiles, e.g. after the data of a raster has changed.
+     */
+    void clear() {
+        tileCache.clear();
+    }
+
+    private void sample(RasterDataNode[] rasters, int i, int pixelX, int pixelY, int level, boolean useValidMask,
+                        byte[] states, double[] doubleSamples, long[] longSamples) {
+        final RasterDataNode raster = rasters[i];
+        if (useValidMask && raster.isValidMaskUsed()) {
+            final Raster validTile = getTile(ImageManager.getInstance().getValidMaskImage(raster, level), pixelX, pixelY);
+            if (validTile == null) {
+                states[i] = NOT_AVAILABLE;
+                return;
+            }
+            if (validTile.getSample(pixelX, pixelY, 0) == 0) {
+                states[i] = INVALID;
+                return;
+            }
+        }
+        final Raster data = getTile(ImageManager.getInstance().getSourceImage(raster, level), pixelX, pixelY);
+        if (data == null) {
+            states[i] = NOT_AVAILABLE;
+            return;
+        }
+        final long rawSample;
+        final double rawDoubleSample;
+        if (raster.getDataType() == ProductData.TYPE_INT8) {
+            rawSample = (byte) data.getSample(pixelX, pixelY, 0);
+            rawDoubleSample = rawSample;
+        } else if (raster.getDataType() == ProductData.TYPE_UINT32) {
+            rawSample = data.getSample(pixelX, pixelY, 0) & 0xFFFFFFFFL;
+            rawDoubleSample = rawSample;
+        } else {
+            rawSample = data.getSample(pixelX, pixelY, 0);
+            rawDoubleSample = data.getSampleDouble(pixelX, pixelY, 0);
+        }
+        if (raster.isScalingApplied()) {
+            doubleSamples[i] = raster.scale(rawDoubleSample);
+            longSamples[i] = (long) raster.scale(rawSample);
+        } else {
+            doubleSamples[i] = rawDoubleSample;
+            longSamples[i] = rawSample;
+        }
+        states[i] = VALID;
+    }
+
+    private Raster getTile(PlanarImage image, int pixelX, int pixelY) {
+        final int tileX = image.XToTileX(pixelX);
+        final int tileY = image.YToTileY(pixelY);
+        final TileKey key = new TileKey(image, tileX, tileY);
+        Raster tile = tileCache.get(key);
+        if (tile == null) {
+            tile = image.getTile(tileX, tileY);
+            if (tile != null) {
+                tileCache.put(key, tile);
+            }
+        }
+        return tile;
+    }
+
+    private static final class TileKey {
+
+        private final PlanarImage image;
+        private final int tileX;
+        private final int tileY;
+
+        private TileKey(PlanarImage image, int tileX, int tileY) {
+            this.image = image;
+            this.tileX = tileX;
+            this.tileY = tileY;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof TileKey)) {
+                return false;
+            }
+            final TileKey other = (TileKey) o;
+            return image == other.image && tileX == other.tileX && tileY == other.tileY;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * System.identityHashCode(image) + tileX) + tileY;
+        }
+    }
+
+    private static final class TileCache {
+
+        private final LinkedHashMap<TileKey, Raster> tiles;
+        private int capacity = MIN_CACHED_TILES;
+
+        private TileCache() {
+            tiles = new LinkedHashMap<TileKey, Raster>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<TileKey, Raster> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        synchronized void setCapacity(int minCapacity) {
+            capacity = Math.max(MIN_CACHED_TILES, minCapacity);
+        }
+
+        synchronized Raster get(TileKey key) {
+            return tiles.get(key);
+        }
+
+        synchronized void put(TileKey key, Raster tile) {
+            tiles.put(key, tile);
+        }
+
+        synchronized void clear() {
+            tiles.clear();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.rcp.pixelinfo;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * Formats sample values with a fixed number of fraction digits like {@code String.format("%.nf", value)}, but
+ * without the overhead of parsing a format string and creating a formatter for every value. Only the resulting
+ * string is allocated. Not thread-safe.
+ */
+class SampleFormatter {
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L, 10000000000L
+    };
+    // values scaled beyond this are no longer represented exactly enough and are formatted by String.format
+    private static final double MAX_SCALED_VALUE = 1.0e15;
+
+    private final StringBuilder buffer = new StringBuilder(32);
+    private final Locale locale;
+    private final char decimalSeparator;
+
+    SampleFormatter() {
+        this(Locale.getDefault(Locale.Category.FORMAT));
+    }
+
+    SampleFormatter(Locale locale) {
+        this.locale = locale;
+        this.decimalSeparator = DecimalFormatSymbols.getInstance(locale).getDecimalSeparator();
+    }
+
+    String format(double value, int fractionDigits) {
+        final long scale = POWERS_OF_TEN[fractionDigits];
+        final double scaled = Math.abs(value) * scale;
+        if (Double.isNaN(scaled) || scaled >= MAX_SCALED_VALUE || isNearHalfway(scaled)) {
+            return String.format(locale, "%." + fractionDigits + "f", value);
+        }
+        final long units = Math.round(scaled);
+        final long fraction = units % scale;
+        buffer.setLength(0);
+        if (value < 0.0 || Double.doubleToRawLongBits(value) == Long.MIN_VALUE) {
+            buffer.append('-');
+        }
+        buffer.append(units / scale);
+        if (fractionDigits > 0) {
+            buffer.append(decimalSeparator);
+            for (long p = scale / 10; p > 1 && p > fraction; p /= 10) {
+                buffer.append('0');
+            }
+            buffer.append(fraction);
+        }
+        return buffer.toString();
+    }
+
+    // the scaling may have moved a value across the rounding boundary, leave these cases to String.format
+    private static boolean isNearHalfway(double scaled) {
+        return Math.abs(scaled - Math.floor(scaled) - 0.5) <= 8 * Math.ulp(scaled);
+    }
+}
@@ -904,7 +904,7 @@ public class PlacemarkManagerTopComponent extends TopComponent implements UndoRe
                 placemarkList.add(placemarkTableModel.getPlacemarkAt(modelRow));
                 Object[] values = new Object[columnCount];
                 for (int col = 0; col < columnCount; col++) {
-                    values[col] = placemarkTableModel.getValueAt(modelRow, col);
+                    values[col] = placemarkTableModel.readValueAt(modelRow, col);
                 }
                 valueList.add(values);
             }
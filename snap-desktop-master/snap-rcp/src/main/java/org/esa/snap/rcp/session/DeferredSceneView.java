@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.session;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductManager;
+import org.esa.snap.core.datamodel.ProductNode;
+import org.esa.snap.core.util.PropertyMap;
+import org.esa.snap.ui.product.ProductSceneView;
+
+import java.util.List;
+
+/**
+ * A scene view of a restored session which has not been created yet. Creating a scene view is
+ * expensive, so it is deferred until the view is actually shown.
+ */
+public class DeferredSceneView {
+
+    private final Session.ViewRef viewRef;
+    private final ProductManager productManager;
+    private final PropertyMap applicationPreferences;
+
+    DeferredSceneView(Session.ViewRef viewRef, ProductManager productManager, PropertyMap applicationPreferences) {
+        this.viewRef = viewRef;
+        this.productManager = productManager;
+        this.applicationPreferences = applicationPreferences;
+    }
+
+    public Product getProduct() {
+        return productManager.getProductByRefNo(viewRef.productRefNo);
+    }
+
+    /**
+     * @return the raster displayed by the view, or the product in case of an RGB view
+     */
+    public ProductNode getProductNode() {
+        Product product = getProduct();
+        if (viewRef.productNodeName != null) {
+            return product.getRasterDataNode(viewRef.productNodeName);
+        }
+        return product;
+    }
+
+    public String getName() {
+        if (viewRef.productNodeName != null) {
+            return getProduct().getRasterDataNode(viewRef.productNodeName).getDisplayName();
+        }
+        return viewRef.viewName;
+    }
+
+    /**
+     * Creates the scene view. Must be called on the event dispatch thread.
+     *
+     * @param problems receives the problems which occurred while restoring the layers of the view
+     * @return the scene view
+     * @throws Exception if the scene view could not be created
+     */
+    public ProductSceneView create(List<Exception> problems) throws Exception {
+        return Session.restoreSceneView(viewRef, productManager, applicationPreferences, ProgressMonitor.NULL,
+                                        problems);
+    }
+}
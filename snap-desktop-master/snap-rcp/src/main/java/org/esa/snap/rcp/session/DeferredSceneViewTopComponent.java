@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.session;
+
+import com.bc.ceres.grender.Viewport;
+import org.esa.snap.core.datamodel.ProductNode;
+import org.esa.snap.netbeans.docwin.DocumentTopComponent;
+import org.esa.snap.netbeans.docwin.DocumentWindowManager;
+import org.esa.snap.rcp.SnapApp;
+import org.esa.snap.rcp.SnapDialogs;
+import org.esa.snap.rcp.actions.window.OpenRGBImageViewAction;
+import org.esa.snap.ui.product.ProductSceneView;
+
+import javax.swing.JLabel;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import java.awt.BorderLayout;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A document window which stands in for a scene view of a restored session. When the window is shown
+ * for the first time, the scene view is created and the window is replaced by the image view window.
+ */
+class DeferredSceneViewTopComponent extends DocumentTopComponent<ProductNode, ProductSceneView> {
+
+    private final DeferredSceneView sceneView;
+    private boolean restoring;
+
+    DeferredSceneViewTopComponent(DeferredSceneView sceneView) {
+        super(sceneView.getProductNode());
+        this.sceneView = sceneView;
+        setDisplayName(sceneView.getName());
+        setName(getDisplayName());
+        setLayout(new BorderLayout());
+        add(new JLabel("Restoring view...", SwingConstants.CENTER), BorderLayout.CENTER);
+    }
+
+    /**
+     * @return always {@code null}, the scene view is created when the window is shown
+     */
+    @Override
+    public ProductSceneView getView() {
+        return null;
+    }
+
+    @Override
+    public void componentShowing() {
+        if (!restoring) {
+            restoring = true;
+            // the window is replaced after the window system has finished showing it
+            SwingUtilities.invokeLater(this::restoreView);
+        }
+    }
+
+    private void restoreView() {
+        if (!isOpened()) {
+            return;
+        }
+        List<Exception> problems = new ArrayList<Exception>();
+        try {
+            ProductSceneView view = sceneView.create(problems);
+            view.getLayerCanvas().setInitiallyZoomingAll(false);
+            Viewport viewport = view.getLayerCanvas().getViewport().clone();
+            OpenRGBImageViewAction.openDocumentWindow(view);
+            view.getLayerCanvas().getViewport().setTransform(viewport);
+        } catch (Exception e) {
+            SnapApp.getDefault().handleError("The image view '" + getDisplayName() + "' could not be restored.", e);
+        } finally {
+            DocumentWindowManager.getDefault().closeWindow(this);
+        }
+        if (!problems.isEmpty()) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("The following problem(s) occurred while restoring the image view '");
+            sb.append(getDisplayName());
+            sb.append("':\n");
+            for (Exception problem : problems) {
+                problem.printStackTrace();
+                sb.append("  ");
+                sb.append(problem.getMessage());
+                sb.append("\n");
+            }
+            SnapDialogs.showWarning(sb.toString());
+        }
+    }
+}
@@ -21,6 +21,7 @@ import com.bc.ceres.grender.Viewport;
 import com.bc.ceres.swing.progress.ProgressMonitorSwingWorker;
 import org.esa.snap.core.dataio.ProductIO;
 import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.netbeans.docwin.DocumentWindowManager;
 import org.esa.snap.rcp.SnapApp;
 import org.esa.snap.rcp.SnapDialogs;
 import org.esa.snap.rcp.actions.file.CloseAllProductsAction;
@@ -150,6 +151,11 @@ public class OpenSessionAction extends AbstractAction {
             }
 
 
+            // the windows of the scene views are opened right away, their views are created when shown first
+            for (DeferredSceneView sceneView : restoredSession.getSceneViews()) {
+                DocumentWindowManager.getDefault().openWindow(new DeferredSceneViewTopComponent(sceneView));
+            }
+
             // todo - Handle view persistence in a generic way. (nf - 08.05.2009)
             //        These are the only 3 views currently known in BEAM.
 
@@ -222,7 +228,7 @@ public class OpenSessionAction extends AbstractAction {
                     throw new CanceledException();
                 }
 
-                if (answer[0] == SnapDialogs.Answer.YES) {
+                if (answer[0] == SnapDialogs.Answer.CANCELLED) {
                     throw new CanceledException();
                 }
 
@@ -30,11 +30,18 @@ public class RestoredSession {
 
     private final Product[] products;
     private final ProductNodeView[] views;
+    private final DeferredSceneView[] sceneViews;
     private final Exception[] problems;
 
     public RestoredSession(Product[] products, ProductNodeView[] views, Exception[] problems) {
+        this(products, views, new DeferredSceneView[0], problems);
+    }
+
+    public RestoredSession(Product[] products, ProductNodeView[] views, DeferredSceneView[] sceneViews,
+                           Exception[] problems) {
         this.products = products;
         this.views = views;
+        this.sceneViews = sceneViews;
         this.problems = problems;
     }
 
@@ -46,6 +53,13 @@ public class RestoredSession {
         return views.clone();
     }
 
+    /**
+     * @return the scene views, which are created when they are shown first
+     */
+    public DeferredSceneView[] getSceneViews() {
+        return sceneViews.clone();
+    }
+
     public Exception[] getProblems() {
         return problems.clone();
     }
@@ -40,12 +40,14 @@ import com.thoughtworks.xstream.converters.SingleValueConverterWrapper;
 import com.thoughtworks.xstream.converters.basic.AbstractSingleValueConverter;
 import org.esa.snap.core.dataio.ProductIO;
 import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.ImageInfo;
 import org.esa.snap.core.datamodel.MetadataElement;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.datamodel.ProductData;
 import org.esa.snap.core.datamodel.ProductManager;
 import org.esa.snap.core.datamodel.RGBImageProfile;
 import org.esa.snap.core.datamodel.RasterDataNode;
+import org.esa.snap.core.datamodel.Stx;
 import org.esa.snap.core.datamodel.VirtualBand;
 import org.esa.snap.core.layer.MaskCollectionLayerType;
 import org.esa.snap.core.util.PropertyMap;
@@ -57,9 +59,9 @@ import org.esa.snap.ui.product.ProductNodeView;
 import org.esa.snap.ui.product.ProductSceneImage;
 import org.esa.snap.ui.product.ProductSceneView;
 
+import javax.media.jai.Histogram;
 import javax.swing.JComponent;
 import javax.swing.RootPaneContainer;
-import javax.swing.SwingUtilities;
 import java.awt.Container;
 import java.awt.Rectangle;
 import java.io.File;
@@ -68,6 +70,12 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Data container used for storing/restoring BEAM sessions.
@@ -80,7 +88,10 @@ import java.util.List;
 @XStreamAlias("session")
 public class Session {
 
-    public static String CURRENT_MODEL_VERSION = "1.0.0";
+    // 1.1.0: views store the image info and the statistics of their rasters
+    public static String CURRENT_MODEL_VERSION = "1.1.0";
+
+    private static final int MAX_PRODUCT_READERS = 4;
 
     String modelVersion;
     @XStreamAlias("products")
@@ -137,6 +148,8 @@ public class Session {
             String expressionG = null;
             String expressionB = null;
             int productRefNo = 0;
+            ImageInfo imageInfo = null;
+            StxDef[] stxDefs = null;
 
             if (view instanceof ProductSceneView) {
                 ProductSceneView psv = (ProductSceneView) view;
@@ -153,6 +166,10 @@ public class Session {
                     productNodeName = view.getVisibleProductNode().getName();
                     productRefNo = view.getVisibleProductNode().getProduct().getRefNo();
                 }
+                if (psv.getImageInfo() != null) {
+                    imageInfo = psv.getImageInfo().clone();
+                }
+                stxDefs = getStxDefs(psv.getRasters());
             }
 //            else if (view instanceof ProductMetadataView) {
 //                ProductMetadataView metadataView = (ProductMetadataView) view;
@@ -180,7 +197,20 @@ public class Session {
                                       expressionG,
                                       expressionB,
                                       layerRefs);
+            viewRefs[i].imageInfo = imageInfo;
+            viewRefs[i].stxDefs = stxDefs;
+        }
+    }
+
+    // the statistics are stored with the session, so that restored views don't need to compute them again
+    private static StxDef[] getStxDefs(RasterDataNode[] rasters) {
+        StxDef[] stxDefs = new StxDef[rasters.length];
+        for (int i = 0; i < rasters.length; i++) {
+            if (rasters[i].isStxSet()) {
+                stxDefs[i] = new StxDef(rasters[i].getStx());
+            }
         }
+        return stxDefs;
     }
 
     // todo - code duplication in RgbImageLayerType.java (nf 10.2009)
@@ -273,50 +303,106 @@ public class Session {
             ProductManager productManager = restoreProducts(rootURI, SubProgressMonitor.create(pm, 80),
                                                             problemSolver, problems);
             // Note: ProductManager is used for the SessionDomConverter
-            ProductNodeView[] views = restoreViews(productManager, appContext.getPreferences(), SubProgressMonitor.create(pm, 20), problems
-            );
+            ArrayList<DeferredSceneView> sceneViews = new ArrayList<DeferredSceneView>();
+            ProductNodeView[] views = restoreViews(productManager, appContext.getPreferences(), sceneViews,
+                                                   SubProgressMonitor.create(pm, 20), problems);
             return new RestoredSession(productManager.getProducts(),
                                        views,
+                                       sceneViews.toArray(new DeferredSceneView[sceneViews.size()]),
                                        problems.toArray(new Exception[problems.size()]));
         } finally {
             pm.done();
         }
     }
 
-    ProductManager restoreProducts(URI rootURI, ProgressMonitor pm, ProblemSolver problemSolver,
+    /**
+     * Reads the products of the session concurrently. The products are added to the product manager in the
+     * order of the session, and calls to the problem solver are made one at a time.
+     */
+    ProductManager restoreProducts(final URI rootURI, ProgressMonitor pm, final ProblemSolver problemSolver,
                                    List<Exception> problems) throws CanceledException {
         ProductManager productManager = new ProductManager();
+        final ProductReadContext context = new ProductReadContext(problemSolver);
+        int readerCount = Math.max(1, Math.min(Math.min(MAX_PRODUCT_READERS, productRefs.length),
+                                               Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(readerCount, runnable -> {
+            Thread thread = new Thread(runnable, "Session product reader");
+            thread.setDaemon(true);
+            return thread;
+        });
         try {
             pm.beginTask("Restoring products", productRefs.length);
-            for (ProductRef productRef : productRefs) {
+            List<Future<Product>> futures = new ArrayList<Future<Product>>(productRefs.length);
+            for (final ProductRef productRef : productRefs) {
+                futures.add(executor.submit(() -> readProduct(rootURI, productRef, context)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
                 try {
-                    Product product;
-                    File productFile = new File(rootURI.resolve(productRef.uri));
-                    if (productFile.exists()) {
-                        product = ProductIO.readProduct(productFile);
-                    } else {
-                        product = problemSolver.solveProductNotFound(productRef.refNo, productFile);
-                        if (product == null) {
-                            throw new IOException("Product [" + productRef.refNo + "] not found.");
-                        }
-                    }
-                    product.setRefNo(productRef.refNo);
+                    Product product = getProduct(futures.get(i), pm);
+                    product.setRefNo(productRefs[i].refNo);
                     productManager.addProduct(product);
-                } catch (IOException e) {
+                } catch (CanceledException e) {
+                    throw e;
+                } catch (Exception e) {
                     problems.add(e);
                 } finally {
                     pm.worked(1);
                 }
             }
+        } catch (CanceledException e) {
+            context.cancel();
+            throw e;
         } finally {
+            executor.shutdownNow();
             pm.done();
         }
 
         return productManager;
     }
 
+    private static Product readProduct(URI rootURI, ProductRef productRef, ProductReadContext context)
+            throws IOException, CanceledException {
+        Product product;
+        File productFile = new File(rootURI.resolve(productRef.uri));
+        if (productFile.exists()) {
+            product = ProductIO.readProduct(productFile);
+            if (product == null) {
+                throw new IOException("No reader found for product [" + productRef.refNo + "].");
+            }
+        } else {
+            product = context.solveProductNotFound(productRef.refNo, productFile);
+            if (product == null) {
+                throw new IOException("Product [" + productRef.refNo + "] not found.");
+            }
+        }
+        context.add(product);
+        return product;
+    }
+
+    private static Product getProduct(Future<Product> future, ProgressMonitor pm) throws Exception {
+        while (true) {
+            if (pm.isCanceled()) {
+                throw new CanceledException();
+            }
+            try {
+                return future.get(100, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ignore) {
+                // check again whether the user has cancelled
+            } catch (InterruptedException e) {
+                throw new CanceledException();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw (Error) cause;
+            }
+        }
+    }
+
     private ProductNodeView[] restoreViews(ProductManager productManager,
                                            PropertyMap applicationPreferences,
+                                           List<DeferredSceneView> sceneViews,
                                            ProgressMonitor pm,
                                            List<Exception> problems) {
         ArrayList<ProductNodeView> views = new ArrayList<ProductNodeView>();
@@ -325,7 +411,7 @@ public class Session {
             for (ViewRef viewRef : viewRefs) {
                 try {
                     if (ProductSceneView.class.getName().equals(viewRef.type)) {
-                        collectSceneView(viewRef, productManager, applicationPreferences, pm, problems, views);
+                        collectSceneView(viewRef, productManager, applicationPreferences, sceneViews);
                     } else if (MetadataViewTopComponent.class.getName().equals(viewRef.type)) {
                         collectMetadataView(viewRef, productManager, views);
                         // todo - flag and index coding views (rq-20100618)
@@ -344,39 +430,47 @@ public class Session {
         return views.toArray(new ProductNodeView[views.size()]);
     }
 
-    private static void collectSceneView(final ViewRef viewRef,
-                                         final ProductManager productManager,
-                                         final PropertyMap applicationPreferences,
-                                         final ProgressMonitor pm,
-                                         final List<Exception> problems,
-                                         final List<ProductNodeView> views) throws Exception {
-            SwingUtilities.invokeAndWait(new Runnable() {
-                @Override
-                public void run()  {
-                    ProductSceneView view;
-                    try {
-                        view = createSceneView(viewRef, productManager, applicationPreferences, pm);
-                    } catch (Exception e) {
-                        throw new IllegalStateException("Could not create scene", e);
-                    }
-                    views.add(view);
-                    for (int i = 0; i < viewRef.getLayerCount(); i++) {
-                        LayerRef ref = viewRef.getLayerRef(i);
-                        if (isBaseImageLayerRef(view, ref)) {
-                            // The BaseImageLayer is not restored by LayerRef, so we have to adjust
-                            // transparency and visibility  manually
-                            view.getBaseImageLayer().setTransparency(ref.transparency);
-                            view.getBaseImageLayer().setVisible(ref.visible);
-                        } else {
-                            try {
-                                addLayerRef(view, view.getRootLayer(), ref, productManager);
-                            } catch (Exception e) {
-                                problems.add(e);
-                            }
-                        }
-                    }
+    // scene views are only checked here, they are created when their window is shown first
+    private static void collectSceneView(ViewRef viewRef,
+                                         ProductManager productManager,
+                                         PropertyMap applicationPreferences,
+                                         List<DeferredSceneView> sceneViews) throws Exception {
+        Product product = productManager.getProductByRefNo(viewRef.productRefNo);
+        if (product == null) {
+            throw new Exception("Unknown product reference number: " + viewRef.productRefNo);
+        }
+        if (viewRef.productNodeName != null && product.getRasterDataNode(viewRef.productNodeName) == null) {
+            throw new Exception("Unknown raster data source: " + viewRef.productNodeName);
+        }
+        sceneViews.add(new DeferredSceneView(viewRef, productManager, applicationPreferences));
+    }
+
+    /**
+     * Creates the scene view of the given view reference including its layers. Must be called
+     * on the event dispatch thread.
+     */
+    static ProductSceneView restoreSceneView(ViewRef viewRef,
+                                             ProductManager productManager,
+                                             PropertyMap applicationPreferences,
+                                             ProgressMonitor pm,
+                                             List<Exception> problems) throws Exception {
+        ProductSceneView view = createSceneView(viewRef, productManager, applicationPreferences, pm);
+        for (int i = 0; i < viewRef.getLayerCount(); i++) {
+            LayerRef ref = viewRef.getLayerRef(i);
+            if (isBaseImageLayerRef(view, ref)) {
+                // The BaseImageLayer is not restored by LayerRef, so we have to adjust
+                // transparency and visibility  manually
+                view.getBaseImageLayer().setTransparency(ref.transparency);
+                view.getBaseImageLayer().setVisible(ref.visible);
+            } else {
+                try {
+                    addLayerRef(view, view.getRootLayer(), ref, productManager);
+                } catch (Exception e) {
+                    problems.add(e);
                 }
-            });
+            }
+        }
+        return view;
     }
 
     private static boolean isBaseImageLayerRef(ProductSceneView view, LayerRef ref) {
@@ -395,6 +489,13 @@ public class Session {
         if (viewRef.productNodeName != null) {
             RasterDataNode node = product.getRasterDataNode(viewRef.productNodeName);
             if (node != null) {
+                restoreStatistics(viewRef, node);
+                if (viewRef.imageInfo != null) {
+                    // restoring the colours doesn't modify the product
+                    boolean modified = product.isModified();
+                    node.setImageInfo(viewRef.imageInfo.clone());
+                    product.setModified(modified);
+                }
                 sceneImage = new ProductSceneImage(node, applicationPreferences,
                                                    SubProgressMonitor.create(pm, 1));
             } else {
@@ -407,9 +508,13 @@ public class Session {
                                     RGBImageProfile.RGB_BAND_NAMES[1]);
             Band bBand = getRgbBand(product, viewRef.expressionB,
                                     RGBImageProfile.RGB_BAND_NAMES[2]);
+            restoreStatistics(viewRef, rBand, gBand, bBand);
             sceneImage = new ProductSceneImage(viewRef.viewName, rBand, gBand, bBand,
                                                applicationPreferences,
                                                SubProgressMonitor.create(pm, 1));
+            if (viewRef.imageInfo != null) {
+                sceneImage.setImageInfo(viewRef.imageInfo.clone());
+            }
         }
 
         ProductSceneView view = new ProductSceneView(sceneImage);
@@ -429,6 +534,18 @@ public class Session {
         return view;
     }
 
+    private static void restoreStatistics(ViewRef viewRef, RasterDataNode... rasters) {
+        if (viewRef.stxDefs == null || viewRef.stxDefs.length != rasters.length) {
+            return;
+        }
+        for (int i = 0; i < rasters.length; i++) {
+            // statistics which have already been computed for the raster are up to date
+            if (viewRef.stxDefs[i] != null && !rasters[i].isStxSet()) {
+                rasters[i].setStx(viewRef.stxDefs[i].toStx());
+            }
+        }
+    }
+
     private static void collectMetadataView(ViewRef viewRef,
                                             ProductManager productManager,
                                             ArrayList<ProductNodeView> views) throws Exception {
@@ -542,6 +659,10 @@ public class Session {
         @XStreamAlias("layers")
         LayerRef[] layerRefs;
 
+        ImageInfo imageInfo;
+        @XStreamAlias("statistics")
+        StxDef[] stxDefs;
+
         /**
          * No-arg constructor required by XStream.
          */
@@ -638,6 +759,96 @@ public class Session {
         }
     }
 
+    /**
+     * The statistics of a raster including its histogram.
+     */
+    @XStreamAlias("stx")
+    public static class StxDef {
+
+        double minimum;
+        double maximum;
+        double mean;
+        double standardDeviation;
+        boolean logHistogram;
+        boolean intHistogram;
+        int resolutionLevel;
+        double histogramLowValue;
+        double histogramHighValue;
+        int[] histogramBins;
+
+        /**
+         * No-arg constructor required by XStream.
+         */
+        @SuppressWarnings("UnusedDeclaration")
+        public StxDef() {
+        }
+
+        public StxDef(Stx stx) {
+            this.minimum = stx.getMinimum();
+            this.maximum = stx.getMaximum();
+            this.mean = stx.getMean();
+            this.standardDeviation = stx.getStandardDeviation();
+            this.logHistogram = stx.isLogHistogram();
+            this.intHistogram = stx.isIntHistogram();
+            this.resolutionLevel = stx.getResolutionLevel();
+            Histogram histogram = stx.getHistogram();
+            this.histogramLowValue = histogram.getLowValue(0);
+            this.histogramHighValue = histogram.getHighValue(0);
+            this.histogramBins = histogram.getBins(0).clone();
+        }
+
+        /**
+         * @return the statistics, skewness and kurtosis are not stored and are therefore unknown
+         */
+        public Stx toStx() {
+            Histogram histogram = new Histogram(histogramBins.length, histogramLowValue, histogramHighValue, 1);
+            System.arraycopy(histogramBins, 0, histogram.getBins(0), 0, histogramBins.length);
+            return new Stx(minimum, maximum, mean, standardDeviation, Double.NaN, Double.NaN,
+                           logHistogram, intHistogram, histogram, resolutionLevel);
+        }
+    }
+
+    /**
+     * Keeps track of the products read concurrently and serialises the calls to the problem solver.
+     */
+    private static class ProductReadContext {
+
+        private final ProblemSolver problemSolver;
+        private final Object problemSolverLock = new Object();
+        private final List<Product> products = new ArrayList<Product>();
+        private volatile boolean canceled;
+
+        private ProductReadContext(ProblemSolver problemSolver) {
+            this.problemSolver = problemSolver;
+        }
+
+        private Product solveProductNotFound(int id, File file) throws CanceledException {
+            synchronized (problemSolverLock) {
+                if (canceled) {
+                    throw new CanceledException();
+                }
+                return problemSolver.solveProductNotFound(id, file);
+            }
+        }
+
+        // products read after the restore has been cancelled are disposed right away
+        private synchronized void add(Product product) throws CanceledException {
+            if (canceled) {
+                product.dispose();
+                throw new CanceledException();
+            }
+            products.add(product);
+        }
+
+        private synchronized void cancel() {
+            canceled = true;
+            for (Product product : products) {
+                product.dispose();
+            }
+            products.clear();
+        }
+    }
+
     private static Band getRgbBand(Product product, String expression, String bandName) {
         Band band = null;
         if (expression != null && !expression.isEmpty()) {
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.rcp.spectrum;
+
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.image.ImageManager;
+
+import javax.media.jai.PlanarImage;
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Samples and caches the spectra of a set of bands. A spectrum is stored as a {@code double[]} in the order
+ * of the bands and is keyed by its pixel position and resolution level. Invalid samples and samples equal to
+ * the no-data value of their band are {@code NaN}.
+ * <p>
+ * Spectra which are not cached yet are read grouped by image tile, so all pixels within the same tile share
+ * a single read of each band. The neighbourhood of the cursor can be prefetched in the background.
+ */
+class SpectrumSampler {
+
+    private static final int MAX_CACHED_SPECTRA = 4096;
+    private static final int PREFETCH_RADIUS = 2;
+
+    private final Map<Long, double[]> cache;
+    private final ExecutorService prefetchExecutor;
+    private final AtomicInteger prefetchGeneration;
+    private Band[] bands;
+    private Map<Band, Integer> bandIndexes;
+
+    SpectrumSampler() {
+        cache = new LinkedHashMap<Long, double[]>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, double[]> eldest) {
+                return size() > MAX_CACHED_SPECTRA;
+            }
+        };
+        prefetchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "Spectrum prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        prefetchGeneration = new AtomicInteger();
+        bands = new Band[0];
+        bandIndexes = new IdentityHashMap<>();
+    }
+
+    /**
+     * Sets the bands to be sampled. The cache is cleared if the bands differ from the current ones.
+     */
+    synchronized void setBands(Band[] bands) {
+        if (Arrays.equals(this.bands, bands)) {
+            return;
+        }
+        this.bands = bands.clone();
+        bandIndexes = new IdentityHashMap<>();
+        for (int i = 0; i < bands.length; i++) {
+            bandIndexes.put(bands[i], i);
+        }
+        cache.clear();
+    }
+
+    /**
+     * @return the index of the band's samples within the spectra, or -1 if the band is not sampled
+     */
+    synchronized int indexOf(Band band) {
+        final Integer index = bandIndexes.get(band);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Discards all cached spectra, e.g. after band data has changed.
+     */
+    synchronized void clear() {
+        cache.clear();
+    }
+
+    double[] getSpectrum(int level, int pixelX, int pixelY) {
+        return getSpectra(level, new int[]{pixelX}, new int[]{pixelY})[0];
+    }
+
+    /**
+     * Returns the spectra at the given pixel positions of the given level. Spectra of positions outside of the
+     * image consist of {@code NaN} values only.
+     */
+    double[][] getSpectra(int level, int[] pixelX, int[] pixelY) {
+        final double[][] spectra = new double[pixelX.length][];
+        final Band[] sampledBands;
+        int missingCount = 0;
+        final int[] missing = new int[pixelX.length];
+        synchronized (this) {
+            sampledBands = bands;
+            for (int i = 0; i < pixelX.length; i++) {
+                spectra[i] = cache.get(key(level, pixelX[i], pixelY[i]));
+                if (spectra[i] == null) {
+                    missing[missingCount++] = i;
+                }
+            }
+        }
+        if (missingCount == 0) {
+            return spectra;
+        }
+        final int[] missingX = new int[missingCount];
+        final int[] missingY = new int[missingCount];
+        for (int k = 0; k < missingCount; k++) {
+            missingX[k] = pixelX[missing[k]];
+            missingY[k] = pixelY[missing[k]];
+        }
+        final double[][] read = read(sampledBands, level, missingX, missingY);
+        synchronized (this) {
+            for (int k = 0; k < missingCount; k++) {
+                spectra[missing[k]] = read[k];
+                if (bands == sampledBands) {
+                    cache.put(key(level, missingX[k], missingY[k]), read[k]);
+                }
+            }
+        }
+        return spectra;
+    }
+
+    /**
+     * Reads the spectra around the given pixel in the background. Pending prefetches for previous cursor
+     * positions are dropped.
+     */
+    void prefetchNeighbourhood(int level, int pixelX, int pixelY) {
+        final int generation = prefetchGeneration.incrementAndGet();
+        prefetchExecutor.submit(() -> {
+            if (generation != prefetchGeneration.get()) {
+                return;
+            }
+            final int size = 2 * PREFETCH_RADIUS + 1;
+            final int[] x = new int[size * size];
+            final int[] y = new int[size * size];
+            int count = 0;
+            for (int dy = -PREFETCH_RADIUS; dy <= PREFETCH_RADIUS; dy++) {
+                for (int dx = -PREFETCH_RADIUS; dx <= PREFETCH_RADIUS; dx++) {
+                    x[count] = pixelX + dx;
+                    y[count] = pixelY + dy;
+                    count++;
+                }
+            }
+            getSpectra(level, x, y);
+        });
+    }
+
+    static double[][] read(Band[] bands, int level, int[] pixelX, int[] pixelY) {
+        final double[][] spectra = new double[pixelX.length][bands.length];
+        for (double[] spectrum : spectra) {
+            Arrays.fill(spectrum, Double.NaN);
+        }
+        if (bands.length == 0) {
+            return spectra;
+        }
+
+        // key = tile index in the upper, point index in the lower 32 bits
+        final PlanarImage tiling = ImageManager.getInstance().getSourceImage(bands[0], level);
+        final Rectangle bounds = tiling.getBounds();
+        final long[] keys = new long[pixelX.length];
+        int keyCount = 0;
+        for (int i = 0; i < pixelX.length; i++) {
+            if (bounds.contains(pixelX[i], pixelY[i])) {
+                final long tileIndex = (long) tiling.YToTileY(pixelY[i]) * tiling.getNumXTiles() + tiling.XToTileX(pixelX[i]);
+                keys[keyCount++] = (tileIndex << 32) | i;
+            }
+        }
+        Arrays.sort(keys, 0, keyCount);
+
+        int start = 0;
+        while (start < keyCount) {
+            int end = start + 1;
+            while (end < keyCount && (keys[end] >>> 32) == (keys[start] >>> 32)) {
+                end++;
+            }
+            final Rectangle region = new Rectangle(pixelX[(int) keys[start]], pixelY[(int) keys[start]], 1, 1);
+            for (int k = start + 1; k < end; k++) {
+                region.add(new Rectangle(pixelX[(int) keys[k]], pixelY[(int) keys[k]], 1, 1));
+            }
+            for (int b = 0; b < bands.length; b++) {
+                readBand(bands[b], b, level, region, keys, start, end, pixelX, pixelY, spectra);
+            }
+            start = end;
+        }
+        return spectra;
+    }
+
+    private static void readBand(Band band, int bandIndex, int level, Rectangle region, long[] keys, int start, int end,
+                                 int[] pixelX, int[] pixelY, double[][] spectra) {
+        final Raster data = ImageManager.getInstance().getSourceImage(band, level).getData(region);
+        final Raster valid = band.isValidMaskUsed()
+                             ? ImageManager.getInstance().getValidMaskImage(band, level).getData(region) : null;
+        final double noDataValue = band.getGeophysicalNoDataValue();
+        for (int k = start; k < end; k++) {
+            final int i = (int) keys[k];
+            final int x = pixelX[i];
+            final int y = pixelY[i];
+            if (valid != null && valid.getSample(x, y, 0) == 0) {
+                continue;
+            }
+            // same as ProductUtils.getGeophysicalSampleAsDouble
+            double sample;
+            if (band.getDataType() == ProductData.TYPE_INT8) {
+                sample = (byte) data.getSample(x, y, 0);
+            } else if (band.getDataType() == ProductData.TYPE_UINT32) {
+                sample = data.getSample(x, y, 0) & 0xFFFFFFFFL;
+            } else {
+                sample = data.getSampleDouble(x, y, 0);
+            }
+            if (band.isScalingApplied()) {
+                sample = band.scale(sample);
+            }
+            if (sample != noDataValue) {
+                spectra[i][bandIndex] = sample;
+            }
+        }
+    }
+
+    private static long key(int level, int pixelX, int pixelY) {
+        return ((long) level << 56) | ((pixelX & 0xFFFFFFFL) << 28) | (pixelY & 0xFFFFFFFL);
+    }
+}
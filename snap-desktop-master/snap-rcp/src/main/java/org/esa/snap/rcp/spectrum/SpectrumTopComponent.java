@@ -27,7 +27,6 @@ import org.esa.snap.core.datamodel.ProductNodeGroup;
 import org.esa.snap.core.datamodel.ProductNodeListenerAdapter;
 import org.esa.snap.core.datamodel.RasterDataNode;
 import org.esa.snap.core.image.ImageManager;
-import org.esa.snap.core.util.ProductUtils;
 import org.esa.snap.rcp.SnapApp;
 import org.esa.snap.rcp.SnapDialogs;
 import org.esa.snap.rcp.actions.help.HelpAction;
@@ -96,6 +95,7 @@ import java.awt.geom.Point2D;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -732,12 +732,8 @@ public class SpectrumTopComponent extends ToolTopComponent {
             chart.getXYPlot().setRangeGridlinesVisible(visible);
         }
 
-        private void removePinInformation(Placemark pin) {
-            chartUpdater.removePinInformation(pin);
-        }
-
-        private void removeBandInformation(Band band) {
-            chartUpdater.removeBandinformation(band);
+        private void clearSpectra() {
+            chartUpdater.clearSpectra();
         }
 
         private void setPlotMessage(String messageText) {
@@ -771,7 +767,7 @@ public class SpectrumTopComponent extends ToolTopComponent {
         private final static int range_axis_index = 1;
         private final static double relativePlotInset = 0.05;
 
-        private final Map<Placemark, Map<Band, Double>> pinToEnergies;
+        private final SpectrumSampler spectrumSampler;
         private int pixelX;
         private int pixelY;
         private int level;
@@ -779,7 +775,7 @@ public class SpectrumTopComponent extends ToolTopComponent {
         private XYSeriesCollection dataset;
 
         private ChartUpdater() {
-            pinToEnergies = new HashMap<>();
+            spectrumSampler = new SpectrumSampler();
             plotBounds = new Range[2];
             invalidatePlotBounds();
         }
@@ -801,6 +797,7 @@ public class SpectrumTopComponent extends ToolTopComponent {
         private void updateData(JFreeChart chart, List<DisplayableSpectrum> spectra) {
             dataset = new XYSeriesCollection();
             if (level >= 0) {
+                spectrumSampler.setBands(getSelectedBands(spectra));
                 fillDatasetWithPinSeries(spectra, dataset, chart);
                 if (hasValidCursorPosition()) {
                     fillDatasetWithCursorSeries(spectra, dataset, chart);
@@ -869,20 +866,20 @@ public class SpectrumTopComponent extends ToolTopComponent {
                              bounds.getUpperBound() + delta);
         }
 
+        private Band[] getSelectedBands(List<DisplayableSpectrum> spectra) {
+            final List<Band> bands = new ArrayList<>();
+            for (DisplayableSpectrum spectrum : spectra) {
+                Collections.addAll(bands, spectrum.getSelectedBands());
+            }
+            return bands.toArray(new Band[bands.size()]);
+        }
+
         private void fillDatasetWithCursorSeries(List<DisplayableSpectrum> spectra, XYSeriesCollection dataset, JFreeChart chart) {
             if (isShowingCursorSpectrum() && currentView != null && currentView.isCurrentPixelPosValid()) {
+                final double[] energies = spectrumSampler.getSpectrum(level, pixelX, pixelY);
+                spectrumSampler.prefetchNeighbourhood(level, pixelX, pixelY);
                 for (DisplayableSpectrum spectrum : spectra) {
-                    XYSeries series = new XYSeries(spectrum.getName());
-                    final Band[] spectralBands = spectrum.getSelectedBands();
-                    for (Band spectralBand : spectralBands) {
-                        final float wavelength = spectralBand.getSpectralWavelength();
-                        if (spectralBand.isPixelValid(pixelX, pixelY)) {
-                            final double energy = ProductUtils.getGeophysicalSampleAsDouble(spectralBand, pixelX, pixelY, level);
-                            if (energy != spectralBand.getGeophysicalNoDataValue()) {
-                                series.add(wavelength, energy);
-                            }
-                        }
-                    }
+                    XYSeries series = createXYSeries(spectrum.getName(), spectrum, energies);
                     updateRenderer(dataset.getSeriesCount(), Color.BLACK, spectrum, chart);
                     dataset.addSeries(series);
                 }
@@ -891,44 +888,47 @@ public class SpectrumTopComponent extends ToolTopComponent {
 
         private void fillDatasetWithPinSeries(List<DisplayableSpectrum> spectra, XYSeriesCollection dataset, JFreeChart chart) {
             Placemark[] pins = getDisplayedPins();
-            for (Placemark pin : pins) {
-                List<XYSeries> pinSeries = createXYSeriesFromPin(pin, dataset.getSeriesCount(), spectra, chart);
+            final Band[] spectralBands = getSelectedBands(spectra);
+            if (pins.length == 0 || spectralBands.length == 0) {
+                return;
+            }
+            // all spectral bands are size-compatible, so their multi-level models agree
+            final MultiLevelModel multiLevelModel = ImageManager.getMultiLevelModel(spectralBands[0]);
+            final int[] pinPixelX = new int[pins.length];
+            final int[] pinPixelY = new int[pins.length];
+            for (int i = 0; i < pins.length; i++) {
+                setPinPixel(pins[i], multiLevelModel, i, pinPixelX, pinPixelY);
+            }
+            // pins within the same tile share the band tiles
+            final double[][] pinEnergies = spectrumSampler.getSpectra(level, pinPixelX, pinPixelY);
+            for (int i = 0; i < pins.length; i++) {
+                List<XYSeries> pinSeries = createXYSeriesFromPin(pins[i], pinEnergies[i], dataset.getSeriesCount(), spectra, chart);
                 pinSeries.forEach(dataset::addSeries);
             }
         }
 
-        private List<XYSeries> createXYSeriesFromPin(Placemark pin, int seriesIndex, List<DisplayableSpectrum> spectra, JFreeChart chart) {
+        private List<XYSeries> createXYSeriesFromPin(Placemark pin, double[] energies, int seriesIndex,
+                                                     List<DisplayableSpectrum> spectra, JFreeChart chart) {
             List<XYSeries> pinSeries = new ArrayList<>();
             Color pinColor = PlacemarkUtils.getPlacemarkColor(pin, currentView);
             for (DisplayableSpectrum spectrum : spectra) {
-                XYSeries series = new XYSeries(spectrum.getName() + "_" + pin.getLabel());
-                final Band[] spectralBands = spectrum.getSelectedBands();
-                Map<Band, Double> bandToEnergy;
-                if (pinToEnergies.containsKey(pin)) {
-                    bandToEnergy = pinToEnergies.get(pin);
-                } else {
-                    bandToEnergy = new HashMap<>();
-                    pinToEnergies.put(pin, bandToEnergy);
-                }
-                for (Band spectralBand : spectralBands) {
-                    double energy;
-                    if (bandToEnergy.containsKey(spectralBand)) {
-                        energy = bandToEnergy.get(spectralBand);
-                    } else {
-                        energy = readEnergy(pin, spectralBand);
-                        bandToEnergy.put(spectralBand, energy);
-                    }
-                    final float wavelength = spectralBand.getSpectralWavelength();
-                    if (energy != spectralBand.getGeophysicalNoDataValue()) {
-                        series.add(wavelength, energy);
-                    }
-                }
+                XYSeries series = createXYSeries(spectrum.getName() + "_" + pin.getLabel(), spectrum, energies);
                 updateRenderer(seriesIndex++, pinColor, spectrum, chart);
                 pinSeries.add(series);
             }
             return pinSeries;
         }
 
+        private XYSeries createXYSeries(String name, DisplayableSpectrum spectrum, double[] energies) {
+            XYSeries series = new XYSeries(name);
+            for (Band spectralBand : spectrum.getSelectedBands()) {
+                final int index = spectrumSampler.indexOf(spectralBand);
+                if (index >= 0 && !Double.isNaN(energies[index])) {
+                    series.add(spectralBand.getSpectralWavelength(), energies[index]);
+                }
+            }
+            return series;
+        }
 
         private void updateRenderer(int seriesIndex, Color seriesColor, DisplayableSpectrum spectrum, JFreeChart chart) {
             final XYItemRenderer renderer = chart.getXYPlot().getRenderer();
@@ -939,31 +939,22 @@ public class SpectrumTopComponent extends ToolTopComponent {
             renderer.setSeriesShape(seriesIndex, symbol);
         }
 
-        private double readEnergy(Placemark pin, Band spectralBand) {
-            final MultiLevelModel multiLevelModel = ImageManager.getMultiLevelModel(spectralBand);
+        private void setPinPixel(Placemark pin, MultiLevelModel multiLevelModel, int index, int[] pinPixelX, int[] pinPixelY) {
+            if (pin.getPixelPos() == null) {
+                pinPixelX[index] = -1;
+                pinPixelY[index] = -1;
+                return;
+            }
             final AffineTransform i2mTransform = multiLevelModel.getImageToModelTransform(0);
             final AffineTransform m2iTransform = multiLevelModel.getModelToImageTransform(level);
             final Point2D modelPixel = i2mTransform.transform(pin.getPixelPos(), null);
             final Point2D imagePixel = m2iTransform.transform(modelPixel, null);
-            int pinPixelX = (int) Math.floor(imagePixel.getX());
-            int pinPixelY = (int) Math.floor(imagePixel.getY());
-            if (spectralBand.isPixelValid(pinPixelX, pinPixelY)) {
-                return ProductUtils.getGeophysicalSampleAsDouble(spectralBand, pinPixelX, pinPixelY, level);
-            }
-            return spectralBand.getGeophysicalNoDataValue();
+            pinPixelX[index] = (int) Math.floor(imagePixel.getX());
+            pinPixelY[index] = (int) Math.floor(imagePixel.getY());
         }
 
-        private void removePinInformation(Placemark pin) {
-            pinToEnergies.remove(pin);
-        }
-
-        private void removeBandinformation(Band band) {
-            for (Placemark pin : pinToEnergies.keySet()) {
-                Map<Band, Double> bandToEnergiesMap = pinToEnergies.get(pin);
-                if (bandToEnergiesMap.containsKey(band)) {
-                    bandToEnergiesMap.remove(band);
-                }
-            }
+        private void clearSpectra() {
+            spectrumSampler.clear();
         }
 
         public boolean hasValidCursorPosition() {
@@ -1037,6 +1028,11 @@ public class SpectrumTopComponent extends ToolTopComponent {
             boolean chartHasChanged = false;
             if (event.getSourceNode() instanceof Band) {
                 final String propertyName = event.getPropertyName();
+                if (!propertyName.equals(RasterDataNode.PROPERTY_NAME_IMAGE_INFO)
+                    && !propertyName.equals(RasterDataNode.PROPERTY_NAME_STX)) {
+                    // e.g. the valid-pixel expression or the scaling may have changed
+                    chartHandler.clearSpectra();
+                }
                 if (propertyName.equals(DataNode.PROPERTY_NAME_UNIT)) {
                     updateSpectraUnits();
                     chartHasChanged = true;
@@ -1045,9 +1041,6 @@ public class SpectrumTopComponent extends ToolTopComponent {
                     chartHasChanged = true;
                 }
             } else if (event.getSourceNode() instanceof Placemark) {
-                if (event.getPropertyName().equals("geoPos") || event.getPropertyName().equals("pixelPos")) {
-                    chartHandler.removePinInformation((Placemark) event.getSourceNode());
-                }
                 if (isShowingPinSpectra()) {
                     chartHasChanged = true;
                 }
@@ -1062,6 +1055,16 @@ public class SpectrumTopComponent extends ToolTopComponent {
             }
         }
 
+        @Override
+        public void nodeDataChanged(final ProductNodeEvent event) {
+            if (event.getSourceNode() instanceof Band) {
+                chartHandler.clearSpectra();
+                if (isActive() && isShowingPinSpectra()) {
+                    recreateChart();
+                }
+            }
+        }
+
         @Override
         public void nodeAdded(final ProductNodeEvent event) {
             if (!isActive()) {
@@ -1090,7 +1093,6 @@ public class SpectrumTopComponent extends ToolTopComponent {
             if (event.getSourceNode() instanceof Band) {
                 Band band = (Band) event.getSourceNode();
                 removeBandFromSpectra(band);
-                chartHandler.removeBandInformation(band);
                 recreateChart();
             } else if (event.getSourceNode() instanceof Placemark) {
                 if (isShowingPinSpectra()) {
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.statistics;
+
+import org.esa.snap.core.datamodel.GeoCoding;
+import org.esa.snap.core.datamodel.GeoPos;
+import org.esa.snap.core.datamodel.Mask;
+import org.esa.snap.core.datamodel.PixelPos;
+import org.esa.snap.core.datamodel.RasterDataNode;
+
+import java.awt.Rectangle;
+import java.awt.image.RenderedImage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Computes the mean and standard deviation of a raster within a box around each of a set of points.
+ * <p>
+ * The points are sorted by the image tile containing their box. For each group of points the raster data,
+ * the valid mask and the ROI mask are fetched once for the region covering all boxes of the group, and the
+ * groups are processed in parallel.
+ */
+class BoxStatisticsSampler {
+
+    private final RasterDataNode raster;
+    private final Mask roiMask;
+    private final int boxSize;
+    private final int parallelism;
+
+    BoxStatisticsSampler(RasterDataNode raster, Mask roiMask, int boxSize, int parallelism) {
+        this.raster = raster;
+        this.roiMask = roiMask;
+        this.boxSize = boxSize;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Samples the raster at the given image positions.
+     *
+     * @param pixelX the X image coordinates of the points
+     * @param pixelY the Y image coordinates of the points
+     * @return the box statistics for each point, {@code null} for points outside of the raster, points whose
+     * centre pixel is not within the ROI mask and points without any valid pixel in their box
+     * @throws IOException if the raster data cannot be read
+     */
+    BoxStatistics[] sample(float[] pixelX, float[] pixelY) throws IOException {
+        final RenderedImage image = raster.getGeophysicalImage();
+        final Rectangle sceneRect = new Rectangle(image.getWidth(), image.getHeight());
+        final BoxStatistics[] results = new BoxStatistics[pixelX.length];
+
+        // key = tile index in the upper, point index in the lower 32 bits
+        final long[] keys = new long[pixelX.length];
+        final Rectangle[] boxes = new Rectangle[pixelX.length];
+        int keyCount = 0;
+        for (int i = 0; i < pixelX.length; i++) {
+            if (!sceneRect.contains(pixelX[i], pixelY[i])) {
+                continue;
+            }
+            final Rectangle box = sceneRect.intersection(new Rectangle(((int) pixelX[i]) - boxSize / 2,
+                                                                       ((int) pixelY[i]) - boxSize / 2,
+                                                                       boxSize, boxSize));
+            if (box.isEmpty()) {
+                continue;
+            }
+            boxes[i] = box;
+            final int tileX = Math.floorDiv(box.x - image.getTileGridXOffset(), image.getTileWidth());
+            final int tileY = Math.floorDiv(box.y - image.getTileGridYOffset(), image.getTileHeight());
+            final long tileIndex = (long) tileY * image.getNumXTiles() + tileX;
+            keys[keyCount++] = (tileIndex << 32) | i;
+        }
+        Arrays.sort(keys, 0, keyCount);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            int start = 0;
+            while (start < keyCount) {
+                int end = start + 1;
+                while (end < keyCount && (keys[end] >>> 32) == (keys[start] >>> 32)) {
+                    end++;
+                }
+                final int[] group = new int[end - start];
+                for (int k = start; k < end; k++) {
+                    group[k - start] = (int) keys[k];
+                }
+                futures.add(executor.submit(() -> sampleGroup(image, group, boxes, pixelX, pixelY, results)));
+                start = end;
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Point sampling interrupted");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            throw new IOException(cause.getMessage(), cause);
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    private void sampleGroup(RenderedImage image, int[] group, Rectangle[] boxes,
+                             float[] pixelX, float[] pixelY, BoxStatistics[] results) {
+        final Rectangle region = new Rectangle(boxes[group[0]]);
+        for (int index : group) {
+            region.add(boxes[index]);
+        }
+        final int size = region.width * region.height;
+        final double[] values = image.getData(region).getSamples(region.x, region.y, region.width, region.height, 0,
+                                                                 new double[size]);
+        final RenderedImage validMaskImage = raster.getValidMaskImage();
+        final int[] valid = validMaskImage != null ? getMaskSamples(validMaskImage, region) : null;
+        final int[] roi = roiMask != null ? getMaskSamples(roiMask.getSourceImage(), region) : null;
+
+        final GeoCoding geoCoding = raster.getGeoCoding();
+        final PixelPos pixelPos = new PixelPos();
+        for (int index : group) {
+            final Rectangle box = boxes[index];
+            if (roi != null) {
+                final int centerX = box.x + box.width / 2 - region.x;
+                final int centerY = box.y + box.height / 2 - region.y;
+                if (roi[centerY * region.width + centerX] == 0) {
+                    continue;
+                }
+            }
+            double sum = 0;
+            double sumSqr = 0;
+            int n = 0;
+            for (int y = box.y - region.y; y < box.y - region.y + box.height; y++) {
+                for (int x = box.x - region.x; x < box.x - region.x + box.width; x++) {
+                    final int i = y * region.width + x;
+                    if ((valid == null || valid[i] != 0) && (roi == null || roi[i] != 0)) {
+                        final double value = values[i];
+                        sum += value;
+                        sumSqr += value * value;
+                        n++;
+                    }
+                }
+            }
+            if (n == 0) {
+                continue;
+            }
+            final GeoPos geoPos = new GeoPos();
+            if (geoCoding != null && geoCoding.canGetGeoPos()) {
+                pixelPos.setLocation(pixelX[index], pixelY[index]);
+                geoCoding.getGeoPos(pixelPos, geoPos);
+            } else {
+                geoPos.setInvalid();
+            }
+            final double mean = sum / n;
+            final double sigma = n > 1 ? Math.sqrt((sumSqr - (sum * sum) / n) / (n - 1)) : 0.0;
+            results[index] = new BoxStatistics(mean, sigma, n, geoPos.getLat(), geoPos.getLon());
+        }
+    }
+
+    private static int[] getMaskSamples(RenderedImage maskImage, Rectangle region) {
+        return maskImage.getData(region).getSamples(region.x, region.y, region.width, region.height, 0,
+                                                    new int[region.width * region.height]);
+    }
+
+    /**
+     * The statistics of the valid pixels within the box around a point.
+     */
+    static final class BoxStatistics {
+
+        final double mean;
+        final double sigma;
+        final int pixelCount;
+        final double lat;
+        final double lon;
+
+        BoxStatistics(double mean, double sigma, int pixelCount, double lat, double lon) {
+            this.mean = mean;
+            this.sigma = sigma;
+            this.pixelCount = pixelCount;
+            this.lat = lat;
+            this.lon = lon;
+        }
+    }
+}
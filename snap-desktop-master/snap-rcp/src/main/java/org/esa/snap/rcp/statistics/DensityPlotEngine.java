@@ -0,0 +1,528 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.statistics;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.datamodel.Mask;
+import org.esa.snap.core.datamodel.RasterDataNode;
+import org.esa.snap.core.datamodel.VirtualBand;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.RenderedImage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes the value ranges and the 2-D bin counts of a density plot in a single, tile-parallel pass over
+ * two rasters.
+ * <p>
+ * As the value ranges are not known in advance, the counts are accumulated in a fine grid whose extent grows
+ * by doubling: whenever a tile contains values outside of the grid, adjacent bins are merged pairwise along the
+ * affected axis. The counts are therefore never lost, only the grid resolution gets coarser. The tiles are read
+ * by all tasks concurrently, but accumulated into a few grids only, which are merged once all tiles have been
+ * read. The resulting {@link BinnedCounts} can be rendered into density plot images for any axis range without
+ * reading the rasters again.
+ */
+class DensityPlotEngine {
+
+    static final int DEFAULT_GRID_SIZE = 2048;
+
+    // limits the memory used for the counts, as each grid of the default size takes 16 MB
+    private static final int MAX_GRID_COUNT = 4;
+
+    private final RasterDataNode rasterX;
+    private final RasterDataNode rasterY;
+    private final Mask roiMask;
+    private final int gridSize;
+    private final int parallelism;
+
+    DensityPlotEngine(RasterDataNode rasterX, RasterDataNode rasterY, Mask roiMask) {
+        this(rasterX, rasterY, roiMask, DEFAULT_GRID_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    DensityPlotEngine(RasterDataNode rasterX, RasterDataNode rasterY, Mask roiMask, int gridSize, int parallelism) {
+        this.rasterX = rasterX;
+        this.rasterY = rasterY;
+        this.roiMask = roiMask;
+        this.gridSize = gridSize;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Performs the single pass over the rasters.
+     *
+     * @param pm a progress monitor, one unit of work per tile
+     * @return the binned counts, or {@code null} if the computation has been cancelled
+     * @throws IOException if the raster data cannot be read
+     */
+    BinnedCounts compute(ProgressMonitor pm) throws IOException {
+        final RenderedImage imageX = rasterX.getGeophysicalImage();
+        final RenderedImage imageY = rasterY.getGeophysicalImage();
+        final RenderedImage validX = rasterX.getValidMaskImage();
+        final RenderedImage validY = rasterY.getValidMaskImage();
+        final RenderedImage roiImage = roiMask != null ? roiMask.getSourceImage() : null;
+
+        final Rectangle imageRect = new Rectangle(0, 0, imageX.getWidth(), imageX.getHeight());
+        final int numXTiles = imageX.getNumXTiles();
+        final int numYTiles = imageX.getNumYTiles();
+        final List<Rectangle> tileRects = new ArrayList<>(numXTiles * numYTiles);
+        for (int tileY = imageX.getMinTileY(); tileY < imageX.getMinTileY() + numYTiles; tileY++) {
+            for (int tileX = imageX.getMinTileX(); tileX < imageX.getMinTileX() + numXTiles; tileX++) {
+                final Rectangle tileRect = new Rectangle(imageX.getTileGridXOffset() + tileX * imageX.getTileWidth(),
+                                                         imageX.getTileGridYOffset() + tileY * imageX.getTileHeight(),
+                                                         imageX.getTileWidth(), imageX.getTileHeight());
+                final Rectangle r = imageRect.intersection(tileRect);
+                if (!r.isEmpty()) {
+                    tileRects.add(r);
+                }
+            }
+        }
+
+        // the tasks read and filter their tiles concurrently and accumulate them into one of a few grids,
+        // which are merged at the end
+        final int numTasks = Math.min(parallelism, tileRects.size());
+        final int numGrids = Math.max(1, Math.min(numTasks, MAX_GRID_COUNT));
+        final BlockingQueue<BinnedCounts> grids = new ArrayBlockingQueue<>(numGrids);
+        for (int i = 0; i < numGrids; i++) {
+            grids.add(new BinnedCounts(rasterX, rasterY, roiMask, gridSize));
+        }
+        final AtomicInteger nextTile = new AtomicInteger();
+        final AtomicInteger tilesDone = new AtomicInteger();
+        final AtomicBoolean canceled = new AtomicBoolean();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, numTasks));
+        pm.beginTask("Computing density plot...", tileRects.size());
+        try {
+            final List<Future<?>> futures = new ArrayList<>(numTasks);
+            for (int i = 0; i < numTasks; i++) {
+                futures.add(executor.submit(() -> {
+                    int tileIndex;
+                    while (!canceled.get() && (tileIndex = nextTile.getAndIncrement()) < tileRects.size()) {
+                        accumulateTile(tileRects.get(tileIndex), imageX, imageY, validX, validY, roiImage, grids);
+                        tilesDone.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            int worked = 0;
+            for (Future<?> future : futures) {
+                while (true) {
+                    if (pm.isCanceled()) {
+                        canceled.set(true);
+                        return null;
+                    }
+                    try {
+                        future.get(100, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException e) {
+                        final int done = tilesDone.get();
+                        pm.worked(done - worked);
+                        worked = done;
+                    }
+                }
+            }
+            pm.worked(tileRects.size() - worked);
+            BinnedCounts counts = grids.remove();
+            for (BinnedCounts gridCounts : grids) {
+                if (counts.getPixelCount() == 0) {
+                    counts = gridCounts;
+                } else {
+                    counts.merge(gridCounts);
+                }
+            }
+            return counts;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Density plot computation interrupted");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            throw new IOException(cause.getMessage(), cause);
+        } finally {
+            executor.shutdownNow();
+            pm.done();
+        }
+    }
+
+    private static void accumulateTile(Rectangle r,
+                                       RenderedImage imageX, RenderedImage imageY,
+                                       RenderedImage validX, RenderedImage validY,
+                                       RenderedImage roiImage,
+                                       BlockingQueue<BinnedCounts> grids) throws InterruptedException {
+        final int n = r.width * r.height;
+        final float[] xs = imageX.getData(r).getSamples(r.x, r.y, r.width, r.height, 0, new float[n]);
+        final float[] ys = imageY.getData(r).getSamples(r.x, r.y, r.width, r.height, 0, new float[n]);
+        final int[] vx = validX != null ? validX.getData(r).getSamples(r.x, r.y, r.width, r.height, 0, new int[n]) : null;
+        final int[] vy = validY != null ? validY.getData(r).getSamples(r.x, r.y, r.width, r.height, 0, new int[n]) : null;
+        final int[] roi = roiImage != null ? roiImage.getData(r).getSamples(r.x, r.y, r.width, r.height, 0, new int[n]) : null;
+
+        int count = 0;
+        float minX = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            final float x = xs[i];
+            final float y = ys[i];
+            if ((vx == null || vx[i] != 0) && (vy == null || vy[i] != 0) && (roi == null || roi[i] != 0)
+                && !Float.isNaN(x) && !Float.isInfinite(x) && !Float.isNaN(y) && !Float.isInfinite(y)) {
+                // compact the valid pairs in place
+                xs[count] = x;
+                ys[count] = y;
+                count++;
+                minX = Math.min(minX, x);
+                maxX = Math.max(maxX, x);
+                minY = Math.min(minY, y);
+                maxY = Math.max(maxY, y);
+            }
+        }
+        if (count > 0) {
+            final BinnedCounts counts = grids.take();
+            try {
+                counts.add(xs, ys, count, minX, maxX, minY, maxY);
+            } finally {
+                grids.add(counts);
+            }
+        }
+    }
+
+    /**
+     * The 2-D bin counts of a density plot together with the exact value ranges of the considered pixels.
+     * Instances are not thread-safe, they are filled by one task at a time and only read once completed.
+     */
+    static final class BinnedCounts {
+
+        private final RasterDataNode rasterX;
+        private final RasterDataNode rasterY;
+        private final Mask roiMask;
+        private final String sourceState;
+        private final int gridSize;
+        private final int[] counts;
+        private final Axis axisX;
+        private final Axis axisY;
+        private long pixelCount;
+
+        BinnedCounts(RasterDataNode rasterX, RasterDataNode rasterY, Mask roiMask, int gridSize) {
+            this.rasterX = rasterX;
+            this.rasterY = rasterY;
+            this.roiMask = roiMask;
+            this.sourceState = getSourceState(rasterX, rasterY, roiMask);
+            this.gridSize = gridSize;
+            this.counts = new int[gridSize * gridSize];
+            this.axisX = new Axis(gridSize);
+            this.axisY = new Axis(gridSize);
+        }
+
+        /**
+         * @return {@code true} if the counts have been computed for the given rasters and mask, and neither the
+         * expressions nor the valid pixels of these have changed since
+         */
+        boolean isComputedFor(RasterDataNode rasterX, RasterDataNode rasterY, Mask roiMask) {
+            return this.rasterX == rasterX && this.rasterY == rasterY && this.roiMask == roiMask
+                   && sourceState.equals(getSourceState(rasterX, rasterY, roiMask));
+        }
+
+        /**
+         * Describes what determines the considered pixels and their values, which may change without a change of
+         * the raster data, e.g. a valid pixel expression or no-data value.
+         */
+        private static String getSourceState(RasterDataNode... nodes) {
+            final StringBuilder state = new StringBuilder();
+            for (RasterDataNode node : nodes) {
+                if (node != null) {
+                    state.append(node.getValidMaskExpression());
+                    if (node instanceof VirtualBand) {
+                        state.append('|').append(((VirtualBand) node).getExpression());
+                    } else if (node instanceof Mask) {
+                        state.append('|').append(Mask.BandMathsType.getExpression((Mask) node));
+                    }
+                }
+                state.append(';');
+            }
+            return state.toString();
+        }
+
+        boolean isComputedFrom(Object node) {
+            return node != null && (node == rasterX || node == rasterY || node == roiMask);
+        }
+
+        long getPixelCount() {
+            return pixelCount;
+        }
+
+        double getMinX() {
+            return axisX.min;
+        }
+
+        double getMaxX() {
+            return axisX.max;
+        }
+
+        double getMinY() {
+            return axisY.min;
+        }
+
+        double getMaxY() {
+            return axisY.max;
+        }
+
+        void add(float[] xs, float[] ys, int n, double minX, double maxX, double minY, double maxY) {
+            include(minX, maxX, minY, maxY);
+            for (int i = 0; i < n; i++) {
+                counts[axisY.index(ys[i]) * gridSize + axisX.index(xs[i])]++;
+            }
+            pixelCount += n;
+        }
+
+        /**
+         * Adds the counts of another grid. Its bins are added to the bins containing their centres, limited to the
+         * value range, so the merged counts are accurate to a bin of the coarser of both grids.
+         */
+        void merge(BinnedCounts other) {
+            if (other.pixelCount == 0) {
+                return;
+            }
+            include(other.axisX.min, other.axisX.max, other.axisY.min, other.axisY.max);
+            for (int j = 0; j < other.gridSize; j++) {
+                final int rowOffset = axisY.index(other.axisY.clampedCenter(j)) * gridSize;
+                for (int i = 0; i < other.gridSize; i++) {
+                    final int count = other.counts[j * other.gridSize + i];
+                    if (count != 0) {
+                        counts[rowOffset + axisX.index(other.axisX.clampedCenter(i))] += count;
+                    }
+                }
+            }
+            pixelCount += other.pixelCount;
+        }
+
+        private void include(double minX, double maxX, double minY, double maxY) {
+            while (axisX.mustGrowLeft(minX) || axisX.mustGrowRight(maxX)) {
+                mergeColumns(axisX.grow(minX));
+            }
+            while (axisY.mustGrowLeft(minY) || axisY.mustGrowRight(maxY)) {
+                mergeRows(axisY.grow(minY));
+            }
+            axisX.include(minX, maxX);
+            axisY.include(minY, maxY);
+        }
+
+        private void mergeColumns(int offset) {
+            final int[] row = new int[gridSize];
+            for (int j = 0; j < gridSize; j++) {
+                final int rowOffset = j * gridSize;
+                System.arraycopy(counts, rowOffset, row, 0, gridSize);
+                Arrays.fill(counts, rowOffset, rowOffset + gridSize, 0);
+                for (int i = 0; i < gridSize; i++) {
+                    counts[rowOffset + (i + offset) / 2] += row[i];
+                }
+            }
+        }
+
+        private void mergeRows(int offset) {
+            final int[] merged = new int[counts.length];
+            for (int j = 0; j < gridSize; j++) {
+                final int targetOffset = ((j + offset) / 2) * gridSize;
+                final int sourceOffset = j * gridSize;
+                for (int i = 0; i < gridSize; i++) {
+                    merged[targetOffset + i] += counts[sourceOffset + i];
+                }
+            }
+            System.arraycopy(merged, 0, counts, 0, counts.length);
+        }
+
+        /**
+         * Renders the counts into a density plot image. The image has one byte per pixel holding the count
+         * cropped at 255, the Y-axis points upwards. A bin wider than a pixel is spread evenly over the pixels it
+         * covers, so that narrow axis ranges still show a density rather than single pixels per bin.
+         */
+        BufferedImage createImage(double minX, double maxX, double minY, double maxY,
+                                  int width, int height, IndexColorModel colorModel) {
+            final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+            if (pixelCount == 0) {
+                return image;
+            }
+            final PixelSpans spansX = new PixelSpans(axisX, minX, maxX, width);
+            final PixelSpans spansY = new PixelSpans(axisY, minY, maxY, height);
+            final double[] sums = new double[width * height];
+            for (int j = 0; j < gridSize; j++) {
+                if (spansY.first[j] < 0) {
+                    continue;
+                }
+                for (int i = 0; i < gridSize; i++) {
+                    final int count = counts[j * gridSize + i];
+                    if (count == 0 || spansX.first[i] < 0) {
+                        continue;
+                    }
+                    final double share = count / ((double) spansX.pixelCount[i] * spansY.pixelCount[j]);
+                    for (int py = spansY.first[j]; py <= spansY.last[j]; py++) {
+                        final int rowOffset = (height - 1 - py) * width;
+                        for (int px = spansX.first[i]; px <= spansX.last[i]; px++) {
+                            sums[rowOffset + px] += share;
+                        }
+                    }
+                }
+            }
+            final byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            for (int k = 0; k < sums.length; k++) {
+                // pixels covered by any count stay visible
+                data[k] = sums[k] > 0 ? (byte) Math.min(255, Math.max(1, Math.round(sums[k]))) : 0;
+            }
+            return image;
+        }
+    }
+
+    /**
+     * The pixels covered by the bins of an axis, for a given axis range and image size. A pixel belongs to the bin
+     * containing its centre, a bin narrower than a pixel to the pixel containing the bin centre.
+     */
+    private static final class PixelSpans {
+
+        /**
+         * The first pixel covered by a bin, or -1 if the bin is outside of the axis range.
+         */
+        private final int[] first;
+        private final int[] last;
+        /**
+         * The number of pixels covered by a bin, including those outside of the image.
+         */
+        private final int[] pixelCount;
+
+        private PixelSpans(Axis axis, double min, double max, int size) {
+            final double range = max > min ? max - min : 1.0;
+            first = new int[axis.size];
+            last = new int[axis.size];
+            pixelCount = new int[axis.size];
+            for (int i = 0; i < axis.size; i++) {
+                if (!axis.overlaps(i, min, max)) {
+                    first[i] = -1;
+                    continue;
+                }
+                final int p0 = (int) Math.ceil((axis.lower(i) - min) / range * size - 0.5);
+                final int p1 = (int) Math.ceil((axis.lower(i + 1) - min) / range * size - 0.5) - 1;
+                if (p1 < p0) {
+                    first[i] = last[i] = toPixel(axis.center(i), min, range, size);
+                    pixelCount[i] = 1;
+                } else {
+                    first[i] = Math.max(0, p0);
+                    last[i] = Math.min(size - 1, p1);
+                    pixelCount[i] = p1 - p0 + 1;
+                    if (last[i] < first[i]) {
+                        first[i] = -1;
+                    }
+                }
+            }
+        }
+
+        private static int toPixel(double value, double min, double range, int size) {
+            final int pixel = (int) Math.floor((value - min) / range * size);
+            return pixel < 0 ? 0 : pixel >= size ? size - 1 : pixel;
+        }
+    }
+
+    /**
+     * One axis of the growing bin grid.
+     */
+    private static final class Axis {
+
+        private final int size;
+        private boolean initialized;
+        private double origin;
+        private double extent;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        private Axis(int size) {
+            this.size = size;
+        }
+
+        boolean mustGrowLeft(double lo) {
+            return initialized && lo < origin;
+        }
+
+        boolean mustGrowRight(double hi) {
+            return initialized && hi >= origin + extent;
+        }
+
+        /**
+         * Doubles the extent towards the values not yet covered.
+         *
+         * @return the bin offset to be used for merging, i.e. the new index of an old bin {@code i} is
+         * {@code (i + offset) / 2}
+         */
+        int grow(double lo) {
+            if (lo < origin) {
+                origin -= extent;
+                extent *= 2;
+                return size;
+            }
+            extent *= 2;
+            return 0;
+        }
+
+        void include(double lo, double hi) {
+            if (!initialized) {
+                origin = lo;
+                // make sure hi falls into the last bin, also for constant values
+                extent = Math.max(hi - lo, Math.max(Math.abs(lo), 1.0) * 1.0e-6) * (1.0 + 2.0 / size);
+                initialized = true;
+            }
+            min = Math.min(min, lo);
+            max = Math.max(max, hi);
+        }
+
+        int index(double value) {
+            final int index = (int) ((value - origin) / extent * size);
+            return index < 0 ? 0 : index >= size ? size - 1 : index;
+        }
+
+        double center(int index) {
+            return origin + (index + 0.5) * extent / size;
+        }
+
+        /**
+         * @return the centre of the bin, limited to the range of the included values
+         */
+        double clampedCenter(int index) {
+            return Math.max(min, Math.min(max, center(index)));
+        }
+
+        boolean overlaps(int index, double lo, double hi) {
+            return lower(index + 1) > lo && lower(index) <= hi;
+        }
+
+        /**
+         * @return the lower bound of the bin, which is the upper bound of the previous bin
+         */
+        double lower(int index) {
+            return origin + index * extent / size;
+        }
+    }
+}
@@ -21,7 +21,6 @@ import com.bc.ceres.binding.PropertyContainer;
 import com.bc.ceres.binding.ValidationException;
 import com.bc.ceres.binding.ValueSet;
 import com.bc.ceres.core.ProgressMonitor;
-import com.bc.ceres.core.SubProgressMonitor;
 import com.bc.ceres.swing.binding.BindingContext;
 import com.bc.ceres.swing.progress.ProgressMonitorSwingWorker;
 import org.esa.snap.core.datamodel.Band;
@@ -30,11 +29,8 @@ import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.datamodel.ProductNode;
 import org.esa.snap.core.datamodel.ProductNodeEvent;
 import org.esa.snap.core.datamodel.RasterDataNode;
-import org.esa.snap.core.datamodel.Stx;
-import org.esa.snap.core.datamodel.StxFactory;
 import org.esa.snap.core.dataop.barithm.BandArithmetic;
 import org.esa.snap.core.util.Debug;
-import org.esa.snap.core.util.ProductUtils;
 import org.esa.snap.core.util.math.MathUtils;
 import org.esa.snap.rcp.SnapApp;
 import org.esa.snap.rcp.SnapDialogs;
@@ -66,7 +62,6 @@ import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferByte;
 import java.awt.image.IndexColorModel;
-import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
@@ -123,6 +118,7 @@ class DensityPlotPanel extends ChartPagePanel {
     private static final Color backgroundColor = new Color(255, 255, 255, 0);
     private boolean plotColorsInverted;
     private JCheckBox toggleColorCheckBox;
+    private volatile DensityPlotEngine.BinnedCounts binnedCounts;
 
     DensityPlotPanel(TopComponent parentComponent, String helpId) {
         super(parentComponent, helpId, CHART_TITLE, true);
@@ -151,6 +147,9 @@ class DensityPlotPanel extends ChartPagePanel {
     @Override
     public void nodeDataChanged(ProductNodeEvent event) {
         super.nodeDataChanged(event);
+        if (binnedCounts != null && binnedCounts.isComputedFrom(event.getSourceNode())) {
+            binnedCounts = null;
+        }
         if (!dataSourceConfig.useRoiMask) {
             return;
         }
@@ -172,6 +171,7 @@ class DensityPlotPanel extends ChartPagePanel {
     protected void updateComponents() {
         super.updateComponents();
         if (isRasterChanged() || isProductChanged()) {
+            binnedCounts = null;
             plot.setImage(null);
             plot.setDataset(null);
             if (isProductChanged()) {
@@ -486,29 +486,29 @@ class DensityPlotPanel extends ChartPagePanel {
 
             @Override
             protected BufferedImage doInBackground(ProgressMonitor pm) throws Exception {
-                pm.beginTask("Computing scatter plot...", 100);
-                try {
-                    checkBandsForRange();
-                    setRange(X_VAR, rasterX, dataSourceConfig.useRoiMask ? dataSourceConfig.roiMask : null, SubProgressMonitor.create(pm, 15));
-                    setRange(Y_VAR, rasterY, dataSourceConfig.useRoiMask ? dataSourceConfig.roiMask : null, SubProgressMonitor.create(pm, 15));
-                    final BufferedImage densityPlotImage = ProductUtils.createDensityPlotImage(rasterX,
-                                                                                               axisRangeControls[X_VAR].getMin().floatValue(),
-                                                                                               axisRangeControls[X_VAR].getMax().floatValue(),
-                                                                                               rasterY,
-                                                                                               axisRangeControls[Y_VAR].getMin().floatValue(),
-                                                                                               axisRangeControls[Y_VAR].getMax().floatValue(),
-                                                                                               dataSourceConfig.useRoiMask ? dataSourceConfig.roiMask : null,
-                                                                                               512,
-                                                                                               512,
-                                                                                               backgroundColor,
-                                                                                               null,
-                                                                                               SubProgressMonitor.create(pm, 70));
-                    toggleColorCheckBox.setSelected(false);
-                    plotColorsInverted = false;
-                    return densityPlotImage;
-                } finally {
-                    pm.done();
+                checkBandsForRange();
+                final Mask roiMask = dataSourceConfig.useRoiMask ? dataSourceConfig.roiMask : null;
+                DensityPlotEngine.BinnedCounts counts = binnedCounts;
+                if (counts == null || !counts.isComputedFor(rasterX, rasterY, roiMask)) {
+                    // a single pass over the rasters provides both the value ranges and the bin counts
+                    counts = new DensityPlotEngine(rasterX, rasterY, roiMask).compute(pm);
+                    if (counts == null) {
+                        return null;
+                    }
+                    binnedCounts = counts;
                 }
+                setRange(X_VAR, counts.getMinX(), counts.getMaxX());
+                setRange(Y_VAR, counts.getMinY(), counts.getMaxY());
+                final BufferedImage densityPlotImage = counts.createImage(axisRangeControls[X_VAR].getMin(),
+                                                                          axisRangeControls[X_VAR].getMax(),
+                                                                          axisRangeControls[Y_VAR].getMin(),
+                                                                          axisRangeControls[Y_VAR].getMax(),
+                                                                          512,
+                                                                          512,
+                                                                          toggledColorModel);
+                toggleColorCheckBox.setSelected(false);
+                plotColorsInverted = false;
+                return densityPlotImage;
             }
 
             @Override
@@ -516,6 +516,9 @@ class DensityPlotPanel extends ChartPagePanel {
                 try {
                     checkBandsForRange();
                     final BufferedImage densityPlotImage = get();
+                    if (densityPlotImage == null) {
+                        return;
+                    }
                     double minX = axisRangeControls[X_VAR].getMin();
                     double maxX = axisRangeControls[X_VAR].getMax();
                     double minY = axisRangeControls[Y_VAR].getMin();
@@ -570,16 +573,10 @@ class DensityPlotPanel extends ChartPagePanel {
         swingWorker.execute();
     }
 
-    private static void setRange(int varIndex, RasterDataNode raster, Mask mask, ProgressMonitor pm) throws IOException {
+    private static void setRange(int varIndex, double min, double max) {
         final AxisRangeControl axisRangeControl = axisRangeControls[varIndex];
         if (axisRangeControl.isAutoMinMax()) {
-            Stx stx;
-            if (mask == null) {
-                stx = raster.getStx(false, pm);
-            } else {
-                stx = new StxFactory().withRoiMask(mask).create(raster, pm);
-            }
-            axisRangeControl.adjustComponents(stx.getMinimum(), stx.getMaximum(), NUM_DECIMALS);
+            axisRangeControl.adjustComponents(min, max, NUM_DECIMALS);
         }
     }
 
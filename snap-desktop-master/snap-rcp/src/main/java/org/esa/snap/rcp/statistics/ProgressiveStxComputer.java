@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.statistics;
+
+import com.bc.ceres.core.NullProgressMonitor;
+import com.bc.ceres.core.ProgressMonitor;
+import com.bc.ceres.glevel.MultiLevelModel;
+import org.esa.snap.core.datamodel.Mask;
+import org.esa.snap.core.datamodel.RasterDataNode;
+import org.esa.snap.core.datamodel.Stx;
+import org.esa.snap.core.datamodel.StxFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes the statistics of a raster for several ROI masks concurrently. In progressive mode the statistics
+ * of each mask are first computed at the coarsest level of the raster's image pyramid and then refined level
+ * by level down to level zero. Every intermediate {@link Stx} is reported together with the fraction of the
+ * raster's pixels it is based on. Cancelling the progress monitor also stops the computations in progress.
+ */
+class ProgressiveStxComputer {
+
+    private final RasterDataNode raster;
+    private final int binCount;
+    private final boolean progressive;
+    private final int parallelism;
+
+    ProgressiveStxComputer(RasterDataNode raster, int binCount, boolean progressive, int parallelism) {
+        this.raster = raster;
+        this.binCount = binCount;
+        this.progressive = progressive;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Receives the statistics as they become available. Always called from the thread which invoked
+     * {@link #compute(Mask[], Listener, ProgressMonitor)}.
+     */
+    interface Listener {
+
+        void stxComputed(PartialStx partialStx);
+    }
+
+    /**
+     * Computes the statistics for the given masks, a {@code null} mask stands for the whole raster.
+     *
+     * @return {@code true} for success, {@code false} if the computation has been cancelled
+     */
+    boolean compute(Mask[] masks, Listener listener, ProgressMonitor pm) throws InterruptedException {
+        final MultiLevelModel model = raster.getSourceImage().getModel();
+        final int firstLevel = progressive ? getFirstLevel() : 0;
+        final BlockingQueue<PartialStx> results = new LinkedBlockingQueue<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, masks.length)));
+        final List<Future<?>> futures = new ArrayList<>(masks.length);
+        final TaskProgressMonitor taskPm = new TaskProgressMonitor();
+
+        pm.beginTask("Computing statistics...", masks.length * (firstLevel + 1));
+        try {
+            for (int i = 0; i < masks.length; i++) {
+                final int index = i;
+                final Mask mask = masks[i];
+                futures.add(executor.submit(() -> {
+                    for (int level = firstLevel; level >= 0 && !taskPm.isCanceled(); level--) {
+                        final StxFactory factory = new StxFactory()
+                                .withHistogramBinCount(binCount)
+                                .withResolutionLevel(level);
+                        if (mask != null) {
+                            factory.withRoiMask(mask);
+                        }
+                        final Stx stx;
+                        try {
+                            stx = factory.create(raster, taskPm);
+                        } catch (CancellationException e) {
+                            return;
+                        }
+                        if (taskPm.isCanceled()) {
+                            return;
+                        }
+                        final double scale = model.getScale(level);
+                        results.add(new PartialStx(index, mask, stx, level, 1.0 / (scale * scale)));
+                    }
+                }));
+            }
+            while (true) {
+                final PartialStx result = results.poll(100, TimeUnit.MILLISECONDS);
+                if (pm.isCanceled()) {
+                    return false;
+                }
+                if (result != null) {
+                    listener.stxComputed(result);
+                    pm.worked(1);
+                }
+                if (result == null && isDone(futures)) {
+                    for (Future<?> future : futures) {
+                        rethrow(future);
+                    }
+                    PartialStx remaining;
+                    while ((remaining = results.poll()) != null) {
+                        listener.stxComputed(remaining);
+                        pm.worked(1);
+                    }
+                    return true;
+                }
+            }
+        } finally {
+            taskPm.setCanceled(true);
+            executor.shutdownNow();
+            pm.done();
+        }
+    }
+
+    private int getFirstLevel() {
+        return raster.getSourceImage().getModel().getLevelCount() - 1;
+    }
+
+    private static boolean isDone(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            if (!future.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void rethrow(Future<?> future) throws InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * The progress monitor passed to the {@link StxFactory}. It is cancelled when the computation ends or when the
+     * computing thread is interrupted.
+     */
+    private static final class TaskProgressMonitor extends NullProgressMonitor {
+
+        private volatile boolean canceled;
+
+        @Override
+        public boolean isCanceled() {
+            return canceled || Thread.currentThread().isInterrupted();
+        }
+
+        @Override
+        public void setCanceled(boolean canceled) {
+            this.canceled = canceled;
+        }
+    }
+
+    /**
+     * The statistics of a mask computed at a certain resolution level.
+     */
+    static final class PartialStx {
+
+        private final int index;
+        private final Mask mask;
+        private final Stx stx;
+        private final int level;
+        private final double coverage;
+
+        PartialStx(int index, Mask mask, Stx stx, int level, double coverage) {
+            this.index = index;
+            this.mask = mask;
+            this.stx = stx;
+            this.level = level;
+            this.coverage = coverage;
+        }
+
+        /**
+         * @return the index of the mask within the array of masks passed to the computer
+         */
+        int getIndex() {
+            return index;
+        }
+
+        Mask getMask() {
+            return mask;
+        }
+
+        Stx getStx() {
+            return stx;
+        }
+
+        int getLevel() {
+            return level;
+        }
+
+        /**
+         * @return the fraction of the raster's pixels the statistics are based on, {@code 1.0} at level zero
+         */
+        double getCoverage() {
+            return coverage;
+        }
+
+        boolean isFinal() {
+            return level == 0;
+        }
+    }
+}
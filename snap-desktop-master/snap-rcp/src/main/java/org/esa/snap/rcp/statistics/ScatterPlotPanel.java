@@ -23,9 +23,7 @@ import com.bc.ceres.binding.ValueRange;
 import com.bc.ceres.swing.binding.BindingContext;
 import com.vividsolutions.jts.geom.Point;
 import org.esa.snap.core.datamodel.GeoCoding;
-import org.esa.snap.core.datamodel.GeoPos;
 import org.esa.snap.core.datamodel.Mask;
-import org.esa.snap.core.datamodel.PixelPos;
 import org.esa.snap.core.datamodel.Placemark;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.datamodel.ProductManager;
@@ -87,7 +85,6 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.GridBagConstraints;
-import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
@@ -95,7 +92,6 @@ import java.awt.geom.Rectangle2D;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -638,85 +634,39 @@ class ScatterPlotPanel extends ChartPagePanel {
                 final FeatureCollection<SimpleFeatureType, SimpleFeature> collection = scatterPlotModel.pointDataSource.getFeatureCollection();
                 final SimpleFeature[] features = collection.toArray(new SimpleFeature[collection.size()]);
 
-                final int boxSize = scatterPlotModel.boxSize;
-
-                final Rectangle sceneRect = new Rectangle(raster.getSceneRasterWidth(), raster.getSceneRasterHeight());
-
                 final GeoCoding geoCoding = raster.getGeoCoding();
                 final AffineTransform imageToModelTransform;
                 imageToModelTransform = ImageManager.getImageToModelTransform(geoCoding);
-                for (SimpleFeature feature : features) {
-                    final Point point = (Point) feature.getDefaultGeometryProperty().getValue();
+                final float[] pixelX = new float[features.length];
+                final float[] pixelY = new float[features.length];
+                for (int i = 0; i < features.length; i++) {
+                    final Point point = (Point) features[i].getDefaultGeometryProperty().getValue();
                     Point2D modelPos = new Point2D.Float((float) point.getX(), (float) point.getY());
                     final Point2D imagePos = imageToModelTransform.inverseTransform(modelPos, null);
+                    pixelX[i] = (float) imagePos.getX();
+                    pixelY[i] = (float) imagePos.getY();
+                }
 
-                    if (!sceneRect.contains(imagePos)) {
-                        continue;
-                    }
-                    final float imagePosX = (float) imagePos.getX();
-                    final float imagePosY = (float) imagePos.getY();
-                    final Rectangle imageRect = sceneRect.intersection(new Rectangle(((int) imagePosX) - boxSize / 2,
-                                                                                     ((int) imagePosY) - boxSize / 2,
-                                                                                     boxSize, boxSize));
-                    if (imageRect.isEmpty()) {
-                        continue;
-                    }
-                    final double[] rasterValues = new double[imageRect.width * imageRect.height];
-                    raster.readPixels(imageRect.x, imageRect.y, imageRect.width, imageRect.height, rasterValues);
-
-                    final int[] maskBuffer = new int[imageRect.width * imageRect.height];
-                    Arrays.fill(maskBuffer, 1);
-                    if (selectedMask != null) {
-                        selectedMask.readPixels(imageRect.x, imageRect.y, imageRect.width, imageRect.height,
-                                                maskBuffer);
-                    }
-
-                    final int centerIndex = imageRect.width * (imageRect.height / 2) + (imageRect.width / 2);
-                    if (maskBuffer[centerIndex] == 0) {
-                        continue;
-                    }
-
-                    double sum = 0;
-                    double sumSqr = 0;
-                    int n = 0;
-                    boolean valid = false;
-
-                    for (int y = 0; y < imageRect.height; y++) {
-                        for (int x = 0; x < imageRect.width; x++) {
-                            final int index = y * imageRect.height + x;
-                            if (raster.isPixelValid(x + imageRect.x, y + imageRect.y) && maskBuffer[index] != 0) {
-                                final double rasterValue = rasterValues[index];
-                                sum += rasterValue;
-                                sumSqr += rasterValue * rasterValue;
-                                n++;
-                                valid = true;
-                            }
-                        }
-                    }
+                final BoxStatisticsSampler sampler = new BoxStatisticsSampler(raster, selectedMask, scatterPlotModel.boxSize,
+                                                                              Runtime.getRuntime().availableProcessors());
+                final BoxStatisticsSampler.BoxStatistics[] boxStatistics = sampler.sample(pixelX, pixelY);
 
-                    if (!valid) {
+                String localName = dataField.getLocalName();
+                for (int i = 0; i < features.length; i++) {
+                    final BoxStatisticsSampler.BoxStatistics statistics = boxStatistics[i];
+                    if (statistics == null) {
                         continue;
                     }
-
-                    double rasterMean = sum / n;
-                    double rasterSigma = n > 1 ? Math.sqrt((sumSqr - (sum * sum) / n) / (n - 1)) : 0.0;
-
-                    String localName = dataField.getLocalName();
+                    final SimpleFeature feature = features[i];
                     Number attribute = (Number) feature.getAttribute(localName);
 
                     final Collection<org.opengis.feature.Property> featureProperties = feature.getProperties();
 
                     final float correlativeData = attribute.floatValue();
-                    final GeoPos geoPos = new GeoPos();
-                    if (geoCoding.canGetGeoPos()) {
-                        final PixelPos pixelPos = new PixelPos(imagePosX, imagePosY);
-                        geoCoding.getGeoPos(pixelPos, geoPos);
-                    } else {
-                        geoPos.setInvalid();
-                    }
                     computedDataList.add(
-                            new ComputedData(imagePosX, imagePosY, (float) geoPos.getLat(), (float) geoPos.getLon(), (float) rasterMean,
-                                             (float) rasterSigma, correlativeData, featureProperties));
+                            new ComputedData(pixelX[i], pixelY[i], (float) statistics.lat, (float) statistics.lon,
+                                             (float) statistics.mean, (float) statistics.sigma, correlativeData,
+                                             featureProperties));
                 }
 
                 return computedDataList.toArray(new ComputedData[computedDataList.size()]);
@@ -21,14 +21,12 @@ import com.bc.ceres.binding.PropertyDescriptor;
 import com.bc.ceres.binding.ValueRange;
 import com.bc.ceres.binding.validators.IntervalValidator;
 import com.bc.ceres.core.ProgressMonitor;
-import com.bc.ceres.core.SubProgressMonitor;
 import com.bc.ceres.swing.binding.BindingContext;
 import com.bc.ceres.swing.progress.ProgressMonitorSwingWorker;
 import org.esa.snap.core.datamodel.Mask;
 import org.esa.snap.core.datamodel.ProductNodeGroup;
 import org.esa.snap.core.datamodel.RasterDataNode;
 import org.esa.snap.core.datamodel.Stx;
-import org.esa.snap.core.datamodel.StxFactory;
 import org.esa.snap.core.datamodel.VectorDataNode;
 import org.esa.snap.core.util.StringUtils;
 import org.esa.snap.rcp.SnapDialogs;
@@ -110,6 +108,7 @@ class StatisticsPanel extends PagePanel implements MultipleRoiComputePanel.Compu
     private ExportStatisticsAsCsvAction exportAsCsvAction;
     private PutStatisticsIntoVectorDataAction putStatisticsIntoVectorDataAction;
     private AccuracyModel accuracyModel;
+    private JCheckBox progressiveCheckBox;
 
     public StatisticsPanel(final TopComponent parentDialog, String helpID) {
         super(parentDialog, helpID, TITLE_PREFIX);
@@ -231,6 +230,10 @@ class StatisticsPanel extends PagePanel implements MultipleRoiComputePanel.Compu
         GridBagUtils.addToPanel(accuracyPanel, checkBox, gbc, "gridy=1,insets.left=5,insets.top=2");
         GridBagUtils.addToPanel(accuracyPanel, label, gbc, "gridy=2, insets.left=26,weightx=0.0,fill=NONE,anchor=WEST,gridwidth=1");
         GridBagUtils.addToPanel(accuracyPanel, accuracySpinner, gbc, "gridx=1,weightx=1.0,fill=HORIZONTAL,insets.right=5,insets.left=5");
+
+        progressiveCheckBox = new JCheckBox("Progressive (coarse to fine)", true);
+        progressiveCheckBox.setToolTipText("Show approximate statistics from the lower resolution levels first.");
+        GridBagUtils.addToPanel(accuracyPanel, progressiveCheckBox, gbc, "gridx=0,gridy=3,gridwidth=2,insets.left=5,insets.right=0,insets.top=2,fill=NONE,anchor=WEST");
         return accuracyPanel;
     }
 
@@ -266,74 +269,59 @@ class StatisticsPanel extends PagePanel implements MultipleRoiComputePanel.Compu
         return histograms;
     }
 
-    private static class ComputeResult {
-
-        final Stx stx;
-        final Mask mask;
-
-        ComputeResult(Stx stx, Mask mask) {
-            this.stx = stx;
-            this.mask = mask;
-        }
-    }
-
     @Override
     public void compute(final Mask[] selectedMasks) {
         this.histograms = new Histogram[selectedMasks.length];
+        final RasterDataNode raster = getRaster();
+        final Stx[] finalStx = new Stx[selectedMasks.length];
+        final boolean progressive = progressiveCheckBox.isSelected();
         final String title = "Computing Statistics";
-        SwingWorker<Object, ComputeResult> swingWorker = new ProgressMonitorSwingWorker<Object, ComputeResult>(this, title) {
+        SwingWorker<Object, ProgressiveStxComputer.PartialStx> swingWorker = new ProgressMonitorSwingWorker<Object, ProgressiveStxComputer.PartialStx>(this, title) {
 
             @Override
-            protected Object doInBackground(ProgressMonitor pm) {
-                pm.beginTask(title, selectedMasks.length);
-                try {
-                    final int binCount = Util.computeBinCount(accuracyModel.accuracy);
-                    for (int i = 0; i < selectedMasks.length; i++) {
-                        final Mask mask = selectedMasks[i];
-                        final Stx stx;
-                        ProgressMonitor subPm = SubProgressMonitor.create(pm, 1);
-                        if (mask == null) {
-                            stx = new StxFactory()
-                                    .withHistogramBinCount(binCount)
-                                    .create(getRaster(), subPm);
-                            getRaster().setStx(stx);
-                        } else {
-                            stx = new StxFactory()
-                                    .withHistogramBinCount(binCount)
-                                    .withRoiMask(mask)
-                                    .create(getRaster(), subPm);
-                        }
-                        histograms[i] = stx.getHistogram();
-                        publish(new ComputeResult(stx, mask));
-                    }
-                } finally {
-                    pm.done();
-                }
+            protected Object doInBackground(ProgressMonitor pm) throws Exception {
+                final int binCount = Util.computeBinCount(accuracyModel.accuracy);
+                final ProgressiveStxComputer computer = new ProgressiveStxComputer(raster, binCount, progressive,
+                                                                                   Runtime.getRuntime().availableProcessors());
+                computer.compute(selectedMasks, partialStx -> publish(partialStx), pm);
                 return null;
             }
 
             @Override
-            protected void process(List<ComputeResult> chunks) {
+            protected void process(List<ProgressiveStxComputer.PartialStx> chunks) {
 
-                for (ComputeResult result : chunks) {
+                for (ProgressiveStxComputer.PartialStx result : chunks) {
 
-                    final Stx stx = result.stx;
-                    final Mask mask = result.mask;
+                    final int index = result.getIndex();
+                    final Stx stx = result.getStx();
+                    final Mask mask = result.getMask();
 
-                    if (resultText.length() > 0) {
-                        resultText.append("\n");
+                    if (result.isFinal()) {
+                        finalStx[index] = stx;
+                        histograms[index] = stx.getHistogram();
+                        if (mask == null) {
+                            raster.setStx(stx);
+                        }
                     }
-                    resultText.append(createText(stx, mask));
 
-                    JPanel statPanel = createStatPanel(stx, mask);
-                    contentPanel.add(statPanel);
-                    contentPanel.revalidate();
-                    contentPanel.repaint();
+                    JPanel statPanel = createStatPanel(stx, mask, result.getCoverage());
+                    contentPanel.remove(index);
+                    contentPanel.add(statPanel, index);
                 }
+                contentPanel.revalidate();
+                contentPanel.repaint();
             }
 
             @Override
             protected void done() {
+                for (int i = 0; i < finalStx.length; i++) {
+                    if (finalStx[i] != null) {
+                        if (resultText.length() > 0) {
+                            resultText.append("\n");
+                        }
+                        resultText.append(createText(finalStx[i], selectedMasks[i]));
+                    }
+                }
                 try {
                     get();
                     if (exportAsCsvAction == null) {
@@ -357,11 +345,23 @@ class StatisticsPanel extends PagePanel implements MultipleRoiComputePanel.Compu
 
         resultText.setLength(0);
         contentPanel.removeAll();
+        for (Mask mask : selectedMasks) {
+            final String subject = mask != null ? "ROI-mask '" + mask.getName() + "'" : "'" + raster.getName() + "'";
+            final JLabel placeholder = new JLabel("Computing statistics of " + subject + "...");
+            placeholder.setBorder(new EmptyBorder(10, 2, 10, 2));
+            contentPanel.add(placeholder);
+        }
+        contentPanel.revalidate();
+        contentPanel.repaint();
 
         swingWorker.execute();
     }
 
     private JPanel createStatPanel(Stx stx, final Mask mask) {
+        return createStatPanel(stx, mask, 1.0);
+    }
+
+    private JPanel createStatPanel(Stx stx, final Mask mask, double coverage) {
         final Histogram histogram = stx.getHistogram();
 
         XIntervalSeries histogramSeries = new XIntervalSeries("Histogram");
@@ -452,7 +452,7 @@ class StatisticsPanel extends PagePanel implements MultipleRoiComputePanel.Compu
         JPanel statPanel = new JPanel(new BorderLayout(4, 4));
         statPanel.setBorder(new EmptyBorder(10, 2, 10, 2));
         statPanel.setBackground(Color.WHITE);
-        statPanel.add(new JLabel(getSubPanelTitle(mask)), BorderLayout.NORTH);
+        statPanel.add(new JLabel(getSubPanelTitle(mask, coverage)), BorderLayout.NORTH);
         statPanel.add(textContainerPanel, BorderLayout.WEST);
         statPanel.add(plotContainerPanel, BorderLayout.CENTER);
 
@@ -464,11 +464,21 @@ class StatisticsPanel extends PagePanel implements MultipleRoiComputePanel.Compu
     }
 
     private String getSubPanelTitle(Mask mask) {
+        return getSubPanelTitle(mask, 1.0);
+    }
+
+    private String getSubPanelTitle(Mask mask, double coverage) {
+        final String approximation;
+        if (coverage < 1.0) {
+            approximation = String.format(" (approximation from %.2f%% of the pixels)", 100.0 * coverage);
+        } else {
+            approximation = "";
+        }
         final String title;
         if (mask != null) {
-            title = String.format("<html><b>%s</b> with ROI-mask <b>%s</b></html>", getRaster().getName(), mask.getName());
+            title = String.format("<html><b>%s</b> with ROI-mask <b>%s</b>%s</html>", getRaster().getName(), mask.getName(), approximation);
         } else {
-            title = String.format("<html><b>%s</b></html>", getRaster().getName());
+            title = String.format("<html><b>%s</b>%s</html>", getRaster().getName(), approximation);
         }
         return title;
     }
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.actions.file.export;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.junit.Test;
+
+import java.awt.Dimension;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class KmlSuperOverlayWriterTest {
+
+    @Test
+    public void testLevels() throws Exception {
+        assertEquals(0, KmlSuperOverlayWriter.computeMaxLevel(new Dimension(256, 100)));
+        assertEquals(1, KmlSuperOverlayWriter.computeMaxLevel(new Dimension(257, 100)));
+        assertEquals(3, KmlSuperOverlayWriter.computeMaxLevel(new Dimension(1200, 2000)));
+
+        final KmlSuperOverlayWriter writer = createWriter(new Dimension(1000, 300));
+        assertEquals(2, writer.getMaxLevel());
+        assertEquals(new Dimension(250, 75), writer.getLevelDimension(0));
+        assertEquals(new Dimension(500, 150), writer.getLevelDimension(1));
+        assertEquals(new Dimension(1000, 300), writer.getLevelDimension(2));
+        assertEquals(1 + 2 + 4 * 2, writer.getNumTiles());
+    }
+
+    @Test
+    public void testTileBox() throws Exception {
+        final KmlSuperOverlayWriter writer = createWriter(new Dimension(1000, 300));
+        assertArrayEquals(new double[]{60.0, 30.0, 20.0, 10.0}, writer.getTileBox(0, 0, 0), 1e-9);
+        // the last column of the full resolution level is narrower than a tile
+        assertArrayEquals(new double[]{60.0, 60.0 - 256 * 0.1, 20.0, 10.0 + 768 * 0.01},
+                          writer.getTileBox(2, 3, 0), 1e-9);
+    }
+
+    @Test
+    public void testTileLinksToChildren() throws Exception {
+        final KmlSuperOverlayWriter writer = createWriter(new Dimension(1000, 300));
+        final String kml = writer.formatTileKml(1, 1, 0);
+        assertTrue(kml.contains("<href>1_1_0.png</href>"));
+        assertTrue(kml.contains("<href>2_2_0.kml</href>"));
+        assertTrue(kml.contains("<href>2_3_0.kml</href>"));
+        assertTrue(kml.contains("<href>2_2_1.kml</href>"));
+        assertTrue(kml.contains("<href>2_3_1.kml</href>"));
+        assertFalse(writer.formatTileKml(2, 3, 1).contains("<NetworkLink>"));
+    }
+
+    @Test
+    public void testWriteStreamsAllTiles() throws Exception {
+        final KmlSuperOverlayWriter writer = createWriter(new Dimension(1000, 300));
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream outStream = new ZipOutputStream(bytes)) {
+            assertTrue(writer.write(outStream, ProgressMonitor.NULL));
+        }
+
+        final List<String> entryNames = new ArrayList<>();
+        try (ZipInputStream inStream = new ZipInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = inStream.getNextEntry()) != null) {
+                entryNames.add(entry.getName());
+            }
+        }
+        assertEquals(2 * writer.getNumTiles(), entryNames.size());
+        assertEquals("tiles/0_0_0.png", entryNames.get(0));
+        assertEquals("tiles/0_0_0.kml", entryNames.get(1));
+        assertEquals("tiles/2_3_1.kml", entryNames.get(entryNames.size() - 1));
+    }
+
+    private static KmlSuperOverlayWriter createWriter(Dimension dimension) {
+        return new KmlSuperOverlayWriter(dimension, 60.0, 30.0, 20.0, 10.0,
+                                         (image, levelDimension, region) -> image.setRGB(0, 0, 0xff000000));
+    }
+}
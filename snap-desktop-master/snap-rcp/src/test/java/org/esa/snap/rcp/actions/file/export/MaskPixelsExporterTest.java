@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.actions.file.export;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Mask;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.datamodel.RasterDataNode;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class MaskPixelsExporterTest {
+
+    private Product product;
+    private MaskPixelsExporter exporter;
+
+    @Before
+    public void setUp() throws Exception {
+        product = new Product("P", "T", 4, 3);
+        final Band a = product.addBand("a", ProductData.TYPE_FLOAT32);
+        a.setSynthetic(true);
+        final float[] aData = new float[12];
+        for (int i = 0; i < aData.length; i++) {
+            aData[i] = i + 0.25F;
+        }
+        a.setData(ProductData.createInstance(aData));
+        final Band b = product.addBand("b", ProductData.TYPE_INT16);
+        b.setSynthetic(true);
+        final short[] bData = new short[12];
+        for (int i = 0; i < bData.length; i++) {
+            bData[i] = (short) (100 + i);
+        }
+        b.setData(ProductData.createInstance(bData));
+        b.setNoDataValue(110);
+        b.setNoDataValueUsed(true);
+        final Mask mask = Mask.BandMathsType.create("m", null, 4, 3, "a > 8", Color.RED, 0.5);
+        product.getMaskGroup().add(mask);
+
+        exporter = new MaskPixelsExporter(product, mask.getSourceImage(), new RasterDataNode[]{a, b}, 2);
+    }
+
+    @Test
+    public void testTextExport() throws IOException {
+        final StringWriter stringWriter = new StringWriter();
+        final PrintWriter out = new PrintWriter(stringWriter);
+        assertTrue(exporter.export(new MaskPixelsExporter.TextSink(out, exporter.getIntegerRasters()), ProgressMonitor.NULL));
+        out.flush();
+
+        assertEquals("1.5\t2.5\t9.25\t109\n" +
+                     "2.5\t2.5\t10.25\tNaN\n" +
+                     "3.5\t2.5\t11.25\t111\n", stringWriter.toString());
+    }
+
+    @Test
+    public void testBinaryExport() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        final MaskPixelsExporter.BinarySink sink = new MaskPixelsExporter.BinarySink(out, exporter.hasGeoCoding(),
+                                                                                     exporter.getRasterNames(),
+                                                                                     exporter.getIntegerRasters());
+        assertTrue(exporter.export(sink, ProgressMonitor.NULL));
+        sink.finish();
+
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        final byte[] magic = new byte[MaskPixelsExporter.BinarySink.MAGIC.length];
+        in.readFully(magic);
+        assertArrayEquals(MaskPixelsExporter.BinarySink.MAGIC, magic);
+        assertEquals(4, in.readInt());
+        assertEquals("Pixel-X", in.readUTF());
+        assertEquals('F', in.readByte());
+        assertEquals("Pixel-Y", in.readUTF());
+        assertEquals('F', in.readByte());
+        assertEquals("a", in.readUTF());
+        assertEquals('F', in.readByte());
+        assertEquals("b", in.readUTF());
+        assertEquals('D', in.readByte());
+
+        assertEquals(3, in.readInt());
+        assertEquals(1.5F, in.readFloat(), 0.0F);
+        assertEquals(2.5F, in.readFloat(), 0.0F);
+        assertEquals(3.5F, in.readFloat(), 0.0F);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(2.5F, in.readFloat(), 0.0F);
+        }
+        assertEquals(9.25F, in.readFloat(), 0.0F);
+        assertEquals(10.25F, in.readFloat(), 0.0F);
+        assertEquals(11.25F, in.readFloat(), 0.0F);
+        assertEquals(109.0, in.readDouble(), 0.0);
+        assertTrue(Double.isNaN(in.readDouble()));
+        assertEquals(111.0, in.readDouble(), 0.0);
+        assertEquals(0, in.readInt());
+    }
+}
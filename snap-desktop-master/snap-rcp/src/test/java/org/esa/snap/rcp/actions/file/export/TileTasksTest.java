@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.actions.file.export;
+
+import com.bc.ceres.core.NullProgressMonitor;
+import com.bc.ceres.core.ProgressMonitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class TileTasksTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = TileTasks.createExecutor(1, "TileTasksTest");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testResult() throws Exception {
+        assertEquals("tile", TileTasks.getResult(executor.submit(() -> "tile"), ProgressMonitor.NULL));
+    }
+
+    @Test
+    public void testCancellationCancelsTask() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final Future<String> future = executor.submit(() -> {
+            release.await();
+            return "tile";
+        });
+        final ProgressMonitor pm = new NullProgressMonitor();
+        pm.setCanceled(true);
+
+        assertNull(TileTasks.getResult(future, pm));
+        assertTrue(future.isCancelled());
+    }
+
+    @Test
+    public void testFailuresAreUnwrapped() throws Exception {
+        try {
+            TileTasks.getResult(executor.submit(() -> {
+                throw new IOException("tile unreadable");
+            }), ProgressMonitor.NULL);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertEquals("tile unreadable", expected.getMessage());
+        }
+        try {
+            TileTasks.getResult(executor.submit(() -> {
+                throw new IllegalStateException("rendering failed");
+            }), ProgressMonitor.NULL);
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException expected) {
+            assertEquals("rendering failed", expected.getMessage());
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.actions.file.export;
+
+import com.bc.ceres.core.ProgressMonitor;
+import com.sun.media.jai.codec.FileSeekableStream;
+import com.sun.media.jai.codec.ImageCodec;
+import com.sun.media.jai.codec.ImageDecoder;
+import com.sun.media.jai.codec.TIFFDirectory;
+import com.sun.media.jai.codec.TIFFField;
+import org.esa.snap.core.util.geotiff.GeoTIFFMetadata;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Dimension;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class TiledTiffWriterTest {
+
+    private static final int TAG_MODEL_PIXEL_SCALE = 33550;
+    private static final int TAG_MODEL_TIE_POINT = 33922;
+    private static final int TAG_GEO_KEY_DIRECTORY = 34735;
+    private static final int GT_MODEL_TYPE_GEO_KEY = 1024;
+    private static final int GEOGRAPHIC_TYPE_GEO_KEY = 2048;
+    private static final int MODEL_TYPE_GEOGRAPHIC = 2;
+    private static final int GCS_WGS_84 = 4326;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("TiledTiffWriterTest", ".tif");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    @Test
+    public void testWriteRenderedTiles() throws Exception {
+        final int width = TiledLayerImage.TILE_SIZE + 100;
+        final int height = 70;
+        final TiledLayerImage image = new TiledLayerImage(new Dimension(width, height), true, (tile, region) -> {
+            for (int y = 0; y < region.height; y++) {
+                for (int x = 0; x < region.width; x++) {
+                    tile.setRGB(x, y, getRGB(region.x + x, region.y + y));
+                }
+            }
+        });
+
+        assertTrue(new TiledTiffWriter(file, null).write(image, ProgressMonitor.NULL));
+
+        try (FileSeekableStream stream = new FileSeekableStream(file)) {
+            final ImageDecoder decoder = ImageCodec.createImageDecoder("TIFF", stream, null);
+            final RenderedImage decoded = decoder.decodeAsRenderedImage();
+            assertEquals(width, decoded.getWidth());
+            assertEquals(height, decoded.getHeight());
+            assertEquals(4, decoded.getSampleModel().getNumBands());
+            final Raster data = decoded.getData();
+            for (int y = 0; y < height; y += 7) {
+                for (int x = 0; x < width; x += 11) {
+                    final int rgb = getRGB(x, y);
+                    assertEquals((rgb >> 16) & 0xff, data.getSample(x, y, 0));
+                    assertEquals((rgb >> 8) & 0xff, data.getSample(x, y, 1));
+                    assertEquals(rgb & 0xff, data.getSample(x, y, 2));
+                    assertEquals((rgb >>> 24) & 0xff, data.getSample(x, y, 3));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testGeoFieldsAreWrittenToDirectory() throws Exception {
+        final GeoTIFFMetadata metadata = new GeoTIFFMetadata();
+        metadata.addGeoShortParam(GT_MODEL_TYPE_GEO_KEY, MODEL_TYPE_GEOGRAPHIC);
+        metadata.addGeoShortParam(GEOGRAPHIC_TYPE_GEO_KEY, GCS_WGS_84);
+        metadata.setModelPixelScale(0.5, 0.25);
+        metadata.addModelTiePoint(0.0, 0.0, 10.0, 60.0);
+        final TiledLayerImage image = new TiledLayerImage(new Dimension(40, 30), false,
+                                                          (tile, region) -> tile.setRGB(0, 0, 0xff000000));
+
+        assertTrue(new TiledTiffWriter(file, metadata).write(image, ProgressMonitor.NULL));
+
+        try (FileSeekableStream stream = new FileSeekableStream(file)) {
+            final TIFFDirectory directory = new TIFFDirectory(stream, 0);
+
+            final TIFFField geoKeyDirectory = directory.getField(TAG_GEO_KEY_DIRECTORY);
+            assertNotNull(geoKeyDirectory);
+            final int numKeys = geoKeyDirectory.getAsInt(3);
+            assertEquals(4 * (numKeys + 1), geoKeyDirectory.getCount());
+            assertEquals(MODEL_TYPE_GEOGRAPHIC, getGeoKeyValue(geoKeyDirectory, GT_MODEL_TYPE_GEO_KEY));
+            assertEquals(GCS_WGS_84, getGeoKeyValue(geoKeyDirectory, GEOGRAPHIC_TYPE_GEO_KEY));
+
+            final TIFFField pixelScale = directory.getField(TAG_MODEL_PIXEL_SCALE);
+            assertNotNull(pixelScale);
+            assertEquals(0.5, pixelScale.getAsDouble(0), 0.0);
+            assertEquals(0.25, pixelScale.getAsDouble(1), 0.0);
+            final TIFFField tiePoint = directory.getField(TAG_MODEL_TIE_POINT);
+            assertNotNull(tiePoint);
+            assertEquals(10.0, tiePoint.getAsDouble(3), 0.0);
+            assertEquals(60.0, tiePoint.getAsDouble(4), 0.0);
+        }
+    }
+
+    @Test
+    public void testPartialFileIsDeletedWhenWritingFails() throws Exception {
+        final TiledLayerImage image = new TiledLayerImage(new Dimension(40, 30), false, (tile, region) -> {
+            throw new IllegalStateException("rendering failed");
+        });
+
+        try {
+            new TiledTiffWriter(file, null).write(image, ProgressMonitor.NULL);
+            fail("Exception expected");
+        } catch (RuntimeException | IOException expected) {
+            assertFalse(file.exists());
+        }
+    }
+
+    @Test
+    public void testBigTiffIsOnlyUsedForLargeImages() throws Exception {
+        assertFalse(TiledTiffWriter.isBigTiffRequired(10000L * 10000 * 4, 400));
+        assertTrue(TiledTiffWriter.isBigTiffRequired(40000L * 40000 * 4, 6400));
+    }
+
+    private static int getGeoKeyValue(TIFFField geoKeyDirectory, int key) {
+        // the header is followed by an entry of key, location, count and value per key
+        for (int i = 4; i < geoKeyDirectory.getCount(); i += 4) {
+            if (geoKeyDirectory.getAsInt(i) == key) {
+                assertEquals(0, geoKeyDirectory.getAsInt(i + 1));
+                return geoKeyDirectory.getAsInt(i + 3);
+            }
+        }
+        fail("GeoKey " + key + " not found");
+        return -1;
+    }
+
+    private static int getRGB(int x, int y) {
+        return ((x * y) & 0xff) << 24 | (x & 0xff) << 16 | (y & 0xff) << 8 | ((x + y) & 0xff);
+    }
+}
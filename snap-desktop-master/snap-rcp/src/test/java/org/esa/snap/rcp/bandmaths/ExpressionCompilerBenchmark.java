@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.bandmaths;
+
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.dataop.barithm.BandArithmetic;
+import org.esa.snap.core.dataop.barithm.RasterDataEvalEnv;
+import org.esa.snap.core.dataop.barithm.RasterDataSymbol;
+import org.esa.snap.core.jexp.Term;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the evaluation of band maths expressions by the interpreter, which walks the term for every pixel,
+ * with the evaluation of the compiled expressions for a whole tile. Run it with the {@link #main} method from
+ * the test class path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ExpressionCompilerBenchmark {
+
+    private static final int TILE_SIZE = 512;
+
+    @Param({
+            "(b1 - b2) / (b1 + b2)",
+            "2.5 * (b3 - b2) / (b3 + 6 * b2 - 7.5 * b1 + 1)",
+            "b1 > 0.1 && b2 < 0.9 ? sqrt(b1 * b2) + log(b3) : NaN"
+    })
+    public String expression;
+
+    private Term term;
+    private RasterDataEvalEnv env;
+    private CompiledExpression compiledExpression;
+    private double[][] inputs;
+    private double[] result;
+
+    @Setup
+    public void setUp() throws Exception {
+        Product product = new Product("benchmark", "benchmark", TILE_SIZE, TILE_SIZE);
+        product.addBand("b1", ProductData.TYPE_FLOAT32);
+        product.addBand("b2", ProductData.TYPE_FLOAT32);
+        product.addBand("b3", ProductData.TYPE_FLOAT32);
+        term = BandArithmetic.parseExpression(expression, new Product[]{product}, 0);
+        compiledExpression = new ExpressionCompiler().compile(expression, term);
+        if (compiledExpression == null) {
+            throw new IllegalStateException("Expression can't be compiled: " + expression);
+        }
+
+        // both paths get the same pixels, the interpreter as float arrays like the rasters provide them
+        final Random random = new Random(42);
+        final RasterDataSymbol[] symbols = compiledExpression.getInputSymbols(term);
+        inputs = new double[symbols.length][TILE_SIZE * TILE_SIZE];
+        for (int i = 0; i < symbols.length; i++) {
+            float[] data = new float[TILE_SIZE * TILE_SIZE];
+            for (int j = 0; j < data.length; j++) {
+                data[j] = random.nextFloat();
+                inputs[i][j] = data[j];
+            }
+            symbols[i].setData(data);
+        }
+        env = new RasterDataEvalEnv(0, 0, TILE_SIZE, TILE_SIZE);
+        result = new double[TILE_SIZE * TILE_SIZE];
+    }
+
+    @Benchmark
+    public double[] interpreter() {
+        for (int i = 0; i < result.length; i++) {
+            env.setElemIndex(i);
+            result[i] = term.evalD(env);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public double[] compiled() {
+        compiledExpression.evaluate(inputs, result, result.length);
+        return result;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ExpressionCompilerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
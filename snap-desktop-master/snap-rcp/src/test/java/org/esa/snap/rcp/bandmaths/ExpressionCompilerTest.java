@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.bandmaths;
+
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.datamodel.VirtualBand;
+import org.esa.snap.core.dataop.barithm.BandArithmetic;
+import org.esa.snap.core.dataop.barithm.RasterDataSymbol;
+import org.esa.snap.core.jexp.Term;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.image.Raster;
+
+import static org.junit.Assert.*;
+
+public class ExpressionCompilerTest {
+
+    private Product product;
+    private ExpressionCompiler compiler;
+
+    @Before
+    public void setUp() throws Exception {
+        product = new Product("test", "test", 2, 2);
+        product.addBand("a", ProductData.TYPE_FLOAT32);
+        product.addBand("b", ProductData.TYPE_FLOAT32);
+        product.addBand("i", ProductData.TYPE_INT16);
+        compiler = new ExpressionCompiler();
+    }
+
+    @Test
+    public void testArithmetic() throws Exception {
+        CompiledExpression expression = compile("(a - b) / (a + b)");
+
+        assertArrayEquals(new String[]{"a", "b"}, expression.getInputNames());
+        double[] result = evaluate(expression, new double[]{3, 1, 0, 2}, new double[]{1, 1, 0, 6});
+        assertArrayEquals(new double[]{0.5, 0.0, Double.NaN, -0.5}, result, 1e-10);
+    }
+
+    @Test
+    public void testConditionAndFunctions() throws Exception {
+        CompiledExpression expression = compile("a > 1 && !nan(b) ? sqrt(a) * max(b, 2) : -1");
+
+        double[] result = evaluate(expression, new double[]{4, 9, 0, 16}, new double[]{1, 3, 5, Double.NaN});
+        assertArrayEquals(new double[]{4.0, 9.0, -1.0, -1.0}, result, 1e-10);
+    }
+
+    @Test
+    public void testRepeatedInputIsPassedOnce() throws Exception {
+        CompiledExpression expression = compile("a * a + PI");
+
+        assertArrayEquals(new String[]{"a"}, expression.getInputNames());
+        double[] result = evaluate(expression, new double[]{1, 2, 3, 4});
+        assertArrayEquals(new double[]{1 + Math.PI, 4 + Math.PI, 9 + Math.PI, 16 + Math.PI}, result, 1e-10);
+    }
+
+    @Test
+    public void testUnsupportedTermsAreNotCompiled() throws Exception {
+        assertNull(compile("a + X"));
+        assertNull(compile("i / 2"));
+    }
+
+    @Test
+    public void testCompiledExpressionsAreCachedByNormalisedText() throws Exception {
+        CompiledExpression expression = compile("a + b");
+
+        assertSame(expression, compile("  a+ b "));
+        assertNotSame(expression, compile("a - b"));
+    }
+
+    @Test
+    public void testInputSymbolsAreBoundByName() throws Exception {
+        Term term = BandArithmetic.parseExpression("b + a", new Product[]{product}, 0);
+        CompiledExpression expression = compiler.compile("b + a", term);
+
+        RasterDataSymbol[] symbols = expression.getInputSymbols(term);
+
+        assertEquals(2, symbols.length);
+        assertSame(product.getBand("b"), symbols[0].getRaster());
+        assertSame(product.getBand("a"), symbols[1].getRaster());
+    }
+
+    @Test
+    public void testCompiledImagesEqualInterpretedImages() throws Exception {
+        Product product = new Product("test", "test", 7, 5);
+        addVirtualBand(product, "a", ProductData.TYPE_FLOAT32, "X > 5 && Y < 2 ? NaN : (X - 3) * 0.7 + Y");
+        addVirtualBand(product, "b", ProductData.TYPE_FLOAT32, "Y * 0.4 - X * 0.1");
+        addVirtualBand(product, "i", ProductData.TYPE_INT32, "floor(X) + 2 * floor(Y)");
+        product.addMask("m", "a > 0.5", "", Color.RED, 0.5);
+        Band target = product.addBand("target", ProductData.TYPE_FLOAT32);
+        Band intTarget = product.addBand("intTarget", ProductData.TYPE_INT32);
+        Band fillTarget = product.addBand("fillTarget", ProductData.TYPE_FLOAT32);
+        fillTarget.setNoDataValue(-999.0);
+        fillTarget.setNoDataValueUsed(true);
+
+        String[] compiledExpressions = {
+                "a + b * 2",
+                "(a - b) / (a + b)",
+                "a > b ? a : b",
+                "nan(a) ? -1 : sqrt(abs(a)) + min(a, b)",
+                "m ? a : -a",
+                "m == (b > 0)",
+                "m != (b > 0)",
+                "!m || b < 0.3",
+                "i * 2 + a",
+                "i / 2.0 + i % 3.0",
+                "i > 6 && a != a",
+                "pow(b, 2) + exp(b) - log(i + 1)",
+        };
+        for (String expression : compiledExpressions) {
+            assertNotNull(expression, compiler.compile(expression,
+                                                       BandArithmetic.parseExpression(expression,
+                                                                                      new Product[]{product}, 0)));
+            assertSameImages(expression, target);
+            assertSameImages(expression, intTarget);
+            assertSameImages(expression, fillTarget);
+        }
+        // the interpreter is used for these
+        assertSameImages("i / 2", target);
+        assertSameImages("a + X", target);
+    }
+
+    @Test
+    public void testNanAndInfiniteResultsAreReplacedByNoDataValue() throws Exception {
+        Product product = new Product("test", "test", 3, 1);
+        addVirtualBand(product, "a", ProductData.TYPE_FLOAT32, "X > 2 ? NaN : X - 1.5");
+        Band target = product.addBand("target", ProductData.TYPE_FLOAT32);
+        target.setNoDataValue(-999.0);
+        target.setNoDataValueUsed(true);
+
+        Raster data = ExpressionCompiler.createSourceImage(target, "1 / a").getData();
+
+        assertEquals(-1.0f, data.getSampleFloat(0, 0, 0), 1e-6f);
+        assertEquals(-999.0f, data.getSampleFloat(1, 0, 0), 1e-6f);
+        assertEquals(-999.0f, data.getSampleFloat(2, 0, 0), 1e-6f);
+    }
+
+    @Test
+    public void testNormalize() throws Exception {
+        assertEquals("(a+b)*2", ExpressionCompiler.normalize(" ( a + b )\t* 2 "));
+        assertEquals("a and not b", ExpressionCompiler.normalize("a  and\nnot   b"));
+        assertEquals("'band 1'+1", ExpressionCompiler.normalize("'band 1' + 1"));
+    }
+
+    private static void addVirtualBand(Product product, String name, int dataType, String expression) {
+        product.addBand(new VirtualBand(name, dataType, product.getSceneRasterWidth(),
+                                        product.getSceneRasterHeight(), expression));
+    }
+
+    private static void assertSameImages(String expression, Band target) {
+        Raster expected = VirtualBand.createSourceImage(target, expression).getData();
+        Raster actual = ExpressionCompiler.createSourceImage(target, expression).getData();
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expression + " at " + x + "," + y,
+                             expected.getSampleFloat(x, y, 0), actual.getSampleFloat(x, y, 0), 1e-5f);
+            }
+        }
+    }
+
+    private CompiledExpression compile(String expression) throws Exception {
+        Term term = BandArithmetic.parseExpression(expression, new Product[]{product}, 0);
+        return compiler.compile(expression, term);
+    }
+
+    private static double[] evaluate(CompiledExpression expression, double[]... inputs) {
+        double[] result = new double[inputs[0].length];
+        expression.evaluate(inputs, result, result.length);
+        return result;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.layermanager.layersrc.windfield;
+
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WindGlyphCacheTest {
+
+    private Band windu;
+    private Band windv;
+
+    @Before
+    public void setUp() throws Exception {
+        final Product product = new Product("P", "T", 40, 40);
+        windu = createWindBand(product, "zonal_wind", 3.0f);
+        windv = createWindBand(product, "merid_wind", 4.0f);
+        windu.setValidPixelExpression("X < 20");
+    }
+
+    @Test
+    public void testGetGlyphs() throws Exception {
+        final WindGlyphCache cache = new WindGlyphCache(windu, windv, 16, 10.0);
+        final List<WindGlyphCache.Glyphs> glyphs = cache.getGlyphs(0, new Rectangle(0, 0, 40, 40));
+
+        int count = 0;
+        for (WindGlyphCache.Glyphs tileGlyphs : glyphs) {
+            for (int i = 0; i < tileGlyphs.count; i++) {
+                final float[] coords = Arrays.copyOfRange(tileGlyphs.coords, i * WindGlyphCache.COORDS_PER_GLYPH,
+                                                          (i + 1) * WindGlyphCache.COORDS_PER_GLYPH);
+                // anchors on the 16 pixel grid, invalid for X >= 20
+                assertEquals(0.0f, coords[0] % 16, 0.0f);
+                assertEquals(0.0f, coords[1] % 16, 0.0f);
+                assertTrue(coords[0] < 20);
+                // length 5 m/s is half of the maximum length, so the arrow is 8 pixels long
+                assertEquals(coords[0] + 4.8f, coords[2], 1.0e-5f);
+                assertEquals(coords[1] - 6.4f, coords[3], 1.0e-5f);
+                assertEquals(128, tileGlyphs.getGrey(i));
+                count++;
+            }
+        }
+        assertEquals(6, count);
+        assertEquals(glyphs, cache.getGlyphs(0, new Rectangle(0, 0, 40, 40)));
+
+        cache.clear();
+        assertNotSame(glyphs.get(0), cache.getGlyphs(0, new Rectangle(0, 0, 40, 40)).get(0));
+    }
+
+    @Test
+    public void testGetGlyphsOutsideOfImage() throws Exception {
+        final WindGlyphCache cache = new WindGlyphCache(windu, windv, 16, 10.0);
+        assertTrue(cache.getGlyphs(0, new Rectangle(50, 50, 10, 10)).isEmpty());
+    }
+
+    private static Band createWindBand(Product product, String name, float value) {
+        final Band band = product.addBand(name, ProductData.TYPE_FLOAT32);
+        final float[] data = new float[40 * 40];
+        Arrays.fill(data, value);
+        band.setData(ProductData.createInstance(data));
+        return band;
+    }
+}
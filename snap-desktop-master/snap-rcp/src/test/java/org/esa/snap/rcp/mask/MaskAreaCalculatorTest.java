@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.mask;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.GeoCoding;
+import org.esa.snap.core.datamodel.GeoPos;
+import org.esa.snap.core.datamodel.Mask;
+import org.esa.snap.core.datamodel.PixelPos;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.util.math.MathUtils;
+import org.esa.snap.core.util.math.RsMathUtils;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.Raster;
+
+import static org.junit.Assert.*;
+
+public class MaskAreaCalculatorTest {
+
+    private Product product;
+
+    @Before
+    public void setUp() throws Exception {
+        product = new Product("test", "test", 60, 45);
+        product.setPreferredTileSize(new Dimension(16, 16));
+        // a sheared grid at high latitudes, so the pixel areas differ from row to row and from column to column
+        final AffineTransform imageToMap = new AffineTransform(0.25, -0.05, 0.1, -0.2, 5.0, 75.0);
+        product.setSceneGeoCoding(new CrsGeoCoding(DefaultGeographicCRS.WGS84, new Rectangle(60, 45), imageToMap));
+        product.addMask("disc", "(X - 25) * (X - 25) + (Y - 20) * (Y - 20) < 300", "", Color.RED, 0.5);
+        product.addMask("band", "X > 0.5 * Y + 10 && X < 0.5 * Y + 30", "", Color.RED, 0.5);
+        product.addMask("empty", "X < 0", "", Color.RED, 0.5);
+    }
+
+    @Test
+    public void testAreasEqualAreasComputedPixelByPixel() throws Exception {
+        final Mask[] masks = {
+                product.getMaskGroup().get("disc"),
+                product.getMaskGroup().get("band"),
+                product.getMaskGroup().get("empty")
+        };
+
+        final MaskAreaStatistics[] statistics = new MaskAreaCalculator(masks).compute(ProgressMonitor.NULL);
+
+        assertEquals(masks.length, statistics.length);
+        for (int i = 0; i < masks.length; i++) {
+            final MaskAreaStatistics expected = computePixelByPixel(masks[i]);
+            final String name = masks[i].getName();
+            assertEquals(name, expected.getNumPixels(), statistics[i].getNumPixels());
+            assertEquals(name, expected.getMaskArea(), statistics[i].getMaskArea(), 1e-9 * expected.getMaskArea());
+            assertEquals(name, expected.getPixelAreaMin(), statistics[i].getPixelAreaMin(),
+                         1e-9 * expected.getPixelAreaMin());
+            assertEquals(name, expected.getPixelAreaMax(), statistics[i].getPixelAreaMax(),
+                         1e-9 * expected.getPixelAreaMax());
+        }
+        assertTrue(statistics[0].getNumPixels() > 0);
+        assertTrue(statistics[0].getPixelAreaMin() < statistics[0].getPixelAreaMax());
+        assertEquals(0, statistics[2].getNumPixels());
+    }
+
+    /**
+     * The former computation, which geolocates the midpoints of the edges and the centre of every pixel.
+     */
+    private static MaskAreaStatistics computePixelByPixel(Mask mask) {
+        final MaskAreaStatistics statistics = new MaskAreaStatistics(RsMathUtils.MEAN_EARTH_RADIUS / 1000.0);
+        final GeoCoding geoCoding = mask.getGeoCoding();
+        final Raster data = mask.getSourceImage().getData();
+        final double earthRadius = statistics.getEarthRadius();
+        for (int y = 0; y < data.getHeight(); y++) {
+            for (int x = 0; x < data.getWidth(); x++) {
+                if (data.getSample(x, y, 0) != 0) {
+                    final GeoPos center = geoCoding.getGeoPos(new PixelPos(x + 0.5, y + 0.5), null);
+                    final GeoPos left = geoCoding.getGeoPos(new PixelPos(x, y + 0.5), null);
+                    final GeoPos right = geoCoding.getGeoPos(new PixelPos(x + 1.0, y + 0.5), null);
+                    final GeoPos upper = geoCoding.getGeoPos(new PixelPos(x + 0.5, y), null);
+                    final GeoPos lower = geoCoding.getGeoPos(new PixelPos(x + 0.5, y + 1.0), null);
+                    final double deltaLon = Math.abs(right.getLon() - left.getLon());
+                    final double deltaLat = Math.abs(lower.getLat() - upper.getLat());
+                    final double r2 = earthRadius * Math.cos(center.getLat() * MathUtils.DTOR);
+                    statistics.addPixel(r2 * deltaLon * MathUtils.DTOR * earthRadius * deltaLat * MathUtils.DTOR);
+                }
+            }
+        }
+        return statistics;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.mask;
+
+import org.esa.snap.core.datamodel.Mask;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.datamodel.ProductNodeEvent;
+import org.esa.snap.core.datamodel.ProductNodeListenerAdapter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+
+import static org.junit.Assert.*;
+
+public class MaskSetAlgebraTest {
+
+    private Product product;
+    private MaskSetAlgebra algebra;
+
+    @Before
+    public void setUp() throws Exception {
+        product = new Product("test", "test", 10, 10);
+        product.addBand("px", "X");
+        product.addBand("py", "Y");
+        product.addBand("b", ProductData.TYPE_FLOAT32);
+        product.addMask("left", "px < 5", "", Color.RED, 0.5);
+        product.addMask("top", "py < 5", "", Color.RED, 0.5);
+        product.addMask("diagonal", "px == py", "", Color.RED, 0.5);
+        algebra = new MaskSetAlgebra(1024 * 1024);
+    }
+
+    @Test
+    public void testPackAndUnpack() throws Exception {
+        int[] samples = new int[70];
+        samples[0] = 255;
+        samples[63] = 1;
+        samples[64] = 255;
+        samples[69] = 255;
+
+        long[] bits = MaskSetAlgebra.pack(samples, samples.length);
+        assertEquals(2, bits.length);
+        assertEquals(4, count(bits));
+
+        byte[] values = new byte[70];
+        MaskSetAlgebra.unpack(bits, values, values.length);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(samples[i] != 0 ? (byte) 255 : 0, values[i]);
+        }
+    }
+
+    @Test
+    public void testSetOperationsAreParsed() throws Exception {
+        Mask difference = addMask("difference", "left && !(top || diagonal)");
+
+        MaskSetAlgebra.SetNode node = algebra.getSetNode(difference);
+        assertTrue(node instanceof MaskSetAlgebra.BinaryNode);
+        assertTrue(node.refersTo(product.getMaskGroup().get("left")));
+        assertTrue(node.refersTo(product.getMaskGroup().get("diagonal")));
+        assertFalse(node.refersTo(difference));
+    }
+
+    @Test
+    public void testOtherExpressionsAreNotParsed() throws Exception {
+        assertNull(algebra.getSetNode(addMask("threshold", "left && b > 0")));
+        assertNull(algebra.getSetNode(product.getMaskGroup().get("left")));
+    }
+
+    @Test
+    public void testSetOperations() throws Exception {
+        Rectangle rect = new Rectangle(0, 0, 10, 10);
+
+        assertEquals(75, count("left || top", rect));
+        assertEquals(25, count("left && top", rect));
+        assertEquals(25, count("!(left || top)", rect));
+        assertEquals(45, count("left && !diagonal", rect));
+        assertEquals(25, count("left && !(top || diagonal)", rect));
+        // the complement must not set the bits beyond the last pixel
+        assertEquals(50, count("!left", rect));
+        assertEquals(5, count("!left && !top", new Rectangle(5, 5, 5, 1)));
+    }
+
+    @Test
+    public void testChangesOfMasksReferringToEachOtherArePropagatedOnce() throws Exception {
+        Mask first = addMask("first", "left");
+        Mask second = addMask("second", "first || top");
+        algebra.install(first);
+        algebra.install(second);
+        first.getImageConfig().setValue(Mask.BandMathsType.PROPERTY_NAME_EXPRESSION, "second || diagonal");
+        assertNotNull(algebra.getSetNode(first));
+        assertTrue(algebra.getSetNode(second).refersTo(first));
+
+        final int[] dataChangeCounts = new int[2];
+        product.addProductNodeListener(new ProductNodeListenerAdapter() {
+            @Override
+            public void nodeDataChanged(ProductNodeEvent event) {
+                if (event.getSourceNode() == first) {
+                    dataChangeCounts[0]++;
+                } else if (event.getSourceNode() == second) {
+                    dataChangeCounts[1]++;
+                }
+            }
+        });
+        second.fireProductNodeDataChanged();
+
+        assertEquals(1, dataChangeCounts[0]);
+        assertEquals(1, dataChangeCounts[1]);
+    }
+
+    @Test
+    public void testColourChangesKeepTiles() throws Exception {
+        Mask union = addMask("union", "left || top");
+        algebra.install(union);
+        algebra.getPackedTile(union, algebra.getSetNode(union), 0, new Rectangle(0, 0, 10, 10));
+        int tileCount = algebra.getCachedTileCount();
+
+        union.setImageColor(Color.BLUE);
+        product.getMaskGroup().get("left").setImageTransparency(0.1);
+        assertEquals(tileCount, algebra.getCachedTileCount());
+
+        product.getMaskGroup().get("left").fireProductNodeDataChanged();
+        assertTrue(algebra.getCachedTileCount() < tileCount);
+    }
+
+    @Test
+    public void testReleaseDropsTilesOfProduct() throws Exception {
+        Mask union = addMask("union", "left || top");
+        algebra.install(union);
+        algebra.getPackedTile(union, algebra.getSetNode(union), 0, new Rectangle(0, 0, 10, 10));
+        assertTrue(algebra.getCachedTileCount() > 0);
+
+        algebra.release(product);
+        assertEquals(0, algebra.getCachedTileCount());
+    }
+
+    @Test
+    public void testMasksOfAttachedProductAreInstalled() throws Exception {
+        Mask union = addMask("union", "left || top");
+        algebra.attach(product);
+        assertTrue(isInstalled(union));
+        assertFalse(isInstalled(product.getMaskGroup().get("left")));
+
+        // masks added later on, e.g. copied from another product
+        Mask intersection = addMask("intersection", "left && top");
+        assertTrue(isInstalled(intersection));
+
+        // masks edited into set operations
+        Mask threshold = addMask("threshold", "b > 0");
+        assertFalse(isInstalled(threshold));
+        threshold.getImageConfig().setValue(Mask.BandMathsType.PROPERTY_NAME_EXPRESSION, "!diagonal");
+        assertTrue(isInstalled(threshold));
+    }
+
+    @Test
+    public void testMasksReferringToMasksAddedLaterAreParsed() throws Exception {
+        Mask complement = addMask("complement", "!right");
+        assertNull(algebra.getSetNode(complement));
+
+        addMask("right", "px >= 5");
+        assertNotNull(algebra.getSetNode(complement));
+    }
+
+    private static boolean isInstalled(Mask mask) {
+        return mask.getSourceImage().getImage(0) instanceof PackedMaskOpImage;
+    }
+
+    private int count(String expression, Rectangle rect) {
+        Mask mask = addMask("mask" + product.getMaskGroup().getNodeCount(), expression);
+        MaskSetAlgebra.SetNode node = algebra.getSetNode(mask);
+        assertNotNull(expression, node);
+        return count(algebra.getPackedTile(mask, node, 0, rect));
+    }
+
+    private static int count(long[] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    private Mask addMask(String name, String expression) {
+        return product.addMask(name, expression, "", Color.RED, 0.5);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.rcp.pixelinfo;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SampleFormatterTest {
+
+    @Test
+    public void testFormat() {
+        final SampleFormatter formatter = new SampleFormatter(Locale.ENGLISH);
+        assertEquals("0.00000", formatter.format(0.0, 5));
+        assertEquals("-0.00000", formatter.format(-0.0, 5));
+        assertEquals("-0.00000", formatter.format(-0.000001, 5));
+        assertEquals("1.50000", formatter.format(1.5, 5));
+        assertEquals("-273.15000", formatter.format(-273.15, 5));
+        assertEquals("0.00012", formatter.format(0.000123, 5));
+        assertEquals("0.0000000001", formatter.format(1.0e-10, 10));
+        assertEquals("3.1415926536", formatter.format(Math.PI, 10));
+        assertEquals("12", formatter.format(12.3, 0));
+        assertEquals("NaN", formatter.format(Double.NaN, 5));
+        assertEquals("Infinity", formatter.format(Double.POSITIVE_INFINITY, 5));
+        assertEquals(String.format(Locale.ENGLISH, "%.5f", 1.0e12), formatter.format(1.0e12, 5));
+    }
+
+    @Test
+    public void testFormatUsesLocaleDecimalSeparator() {
+        assertEquals("2,25000", new SampleFormatter(Locale.GERMAN).format(2.25, 5));
+    }
+
+    @Test
+    public void testFormatAgreesWithStringFormat() {
+        final SampleFormatter formatter = new SampleFormatter(Locale.ENGLISH);
+        final Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            final float value = (float) ((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12) - 4));
+            assertEquals(String.format(Locale.ENGLISH, "%.5f", value), formatter.format(value, 5));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.session;
+
+import org.esa.snap.core.datamodel.Stx;
+import org.junit.Test;
+
+import javax.media.jai.Histogram;
+
+import static org.junit.Assert.*;
+
+public class StxDefTest {
+
+    @Test
+    public void testStxIsRestored() throws Exception {
+        Histogram histogram = new Histogram(4, 10, 20, 1);
+        int[] bins = histogram.getBins(0);
+        bins[0] = 3;
+        bins[1] = 8;
+        bins[2] = 5;
+        bins[3] = 1;
+        Stx stx = new Stx(10, 20, 14.5, 2.5, 0, 0, false, true, histogram, 2);
+
+        Stx restoredStx = new Session.StxDef(stx).toStx();
+
+        assertEquals(10, restoredStx.getMinimum(), 1e-10);
+        assertEquals(20, restoredStx.getMaximum(), 1e-10);
+        assertEquals(14.5, restoredStx.getMean(), 1e-10);
+        assertEquals(2.5, restoredStx.getStandardDeviation(), 1e-10);
+        assertEquals(2, restoredStx.getResolutionLevel());
+        assertFalse(restoredStx.isLogHistogram());
+        assertTrue(restoredStx.isIntHistogram());
+        assertEquals(10, restoredStx.getHistogram().getLowValue(0), 1e-10);
+        assertEquals(20, restoredStx.getHistogram().getHighValue(0), 1e-10);
+        assertArrayEquals(new int[]{3, 8, 5, 1}, restoredStx.getHistogram().getBins(0));
+    }
+
+    @Test
+    public void testStxDefIsNotAffectedByChangesOfTheHistogram() throws Exception {
+        Histogram histogram = new Histogram(2, 0, 1, 1);
+        histogram.getBins(0)[0] = 4;
+        Session.StxDef stxDef = new Session.StxDef(new Stx(0, 1, 0.5, 0.1, 0, 0, false, false, histogram, 0));
+
+        histogram.getBins(0)[0] = 7;
+
+        assertArrayEquals(new int[]{4, 0}, stxDef.toStx().getHistogram().getBins(0));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.rcp.spectrum;
+
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SpectrumSamplerTest {
+
+    private Band[] bands;
+
+    @Before
+    public void setUp() throws Exception {
+        final Product product = new Product("P", "T", 6, 4);
+        bands = new Band[3];
+        for (int b = 0; b < bands.length; b++) {
+            bands[b] = product.addBand("radiance_" + b, ProductData.TYPE_FLOAT32);
+            bands[b].setSynthetic(true);
+            bands[b].setSpectralWavelength(400 + 100 * b);
+            final float[] data = new float[6 * 4];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = 100 * b + i;
+            }
+            bands[b].setData(ProductData.createInstance(data));
+        }
+        bands[1].setNoDataValue(108);
+        bands[1].setNoDataValueUsed(true);
+        bands[2].setValidPixelExpression("X < 5");
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        final double[][] spectra = SpectrumSampler.read(bands, 0, new int[]{2, 3, 5, 6}, new int[]{1, 0, 3, 0});
+
+        assertArrayEquals(new double[]{8, Double.NaN, 208}, spectra[0], 1.0e-6);
+        assertArrayEquals(new double[]{3, 103, 203}, spectra[1], 1.0e-6);
+        // excluded by the valid-pixel expression of the third band
+        assertArrayEquals(new double[]{23, 123, Double.NaN}, spectra[2], 1.0e-6);
+        // outside of the image
+        assertArrayEquals(new double[]{Double.NaN, Double.NaN, Double.NaN}, spectra[3], 1.0e-6);
+    }
+
+    @Test
+    public void testSpectraAreCachedPerBandSet() throws Exception {
+        final SpectrumSampler sampler = new SpectrumSampler();
+        sampler.setBands(bands);
+        final double[] spectrum = sampler.getSpectrum(0, 3, 0);
+        assertArrayEquals(new double[]{3, 103, 203}, spectrum, 1.0e-6);
+        assertSame(spectrum, sampler.getSpectrum(0, 3, 0));
+        assertEquals(2, sampler.indexOf(bands[2]));
+
+        sampler.setBands(new Band[]{bands[2], bands[0]});
+        assertEquals(-1, sampler.indexOf(bands[1]));
+        assertArrayEquals(new double[]{203, 3}, sampler.getSpectrum(0, 3, 0), 1.0e-6);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.statistics;
+
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Mask;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Color;
+
+import static org.junit.Assert.*;
+
+public class BoxStatisticsSamplerTest {
+
+    private Product product;
+    private Band band;
+
+    @Before
+    public void setUp() throws Exception {
+        product = new Product("P", "T", 6, 4);
+        band = product.addBand("b", ProductData.TYPE_FLOAT32);
+        band.setSynthetic(true);
+        final float[] data = new float[6 * 4];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = i;
+        }
+        band.setData(ProductData.createInstance(data));
+        band.setNoDataValue(7);
+        band.setNoDataValueUsed(true);
+    }
+
+    @Test
+    public void testBoxStatistics() throws Exception {
+        final BoxStatisticsSampler sampler = new BoxStatisticsSampler(band, null, 3, 2);
+        final BoxStatisticsSampler.BoxStatistics[] statistics = sampler.sample(new float[]{2.5F, 0.5F, 10.5F},
+                                                                               new float[]{1.5F, 0.5F, 1.5F});
+
+        assertEquals(3, statistics.length);
+        // box x=1..3, y=0..2 without the no-data pixel 7
+        assertEquals(8, statistics[0].pixelCount);
+        assertEquals((1 + 2 + 3 + 8 + 9 + 13 + 14 + 15) / 8.0, statistics[0].mean, 1.0e-6);
+        // box clipped at the upper left corner
+        assertEquals(3, statistics[1].pixelCount);
+        assertEquals((0 + 1 + 6) / 3.0, statistics[1].mean, 1.0e-6);
+        // outside of the raster
+        assertNull(statistics[2]);
+    }
+
+    @Test
+    public void testCenterPixelOutsideOfRoiIsRejected() throws Exception {
+        final Mask roiMask = Mask.BandMathsType.create("roi", null, 6, 4, "X > 3", Color.RED, 0.5);
+        product.getMaskGroup().add(roiMask);
+
+        final BoxStatisticsSampler sampler = new BoxStatisticsSampler(band, roiMask, 3, 1);
+        final BoxStatisticsSampler.BoxStatistics[] statistics = sampler.sample(new float[]{1.5F, 3.5F},
+                                                                               new float[]{1.5F, 1.5F});
+
+        assertNull(statistics[0]);
+        // box x=2..4, y=0..2, only x=3,4 within the ROI
+        assertEquals(6, statistics[1].pixelCount);
+        assertEquals((3 + 4 + 9 + 10 + 15 + 16) / 6.0, statistics[1].mean, 1.0e-6);
+    }
+}
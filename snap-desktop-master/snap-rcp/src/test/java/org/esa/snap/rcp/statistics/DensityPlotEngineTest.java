@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.statistics;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+
+import static org.junit.Assert.*;
+
+public class DensityPlotEngineTest {
+
+    private static final IndexColorModel GRAY = createGrayColorModel();
+
+    @Test
+    public void testSinglePassComputesRangesAndCounts() throws Exception {
+        final Product product = new Product("P", "T", 4, 4);
+        final Band x = addBand(product, "x", i -> i % 4);
+        final Band y = addBand(product, "y", i -> 10 + i / 4);
+        y.setNoDataValue(10);
+        y.setNoDataValueUsed(true);
+
+        final DensityPlotEngine.BinnedCounts counts = new DensityPlotEngine(x, y, null, 64, 2).compute(ProgressMonitor.NULL);
+
+        assertEquals(12, counts.getPixelCount());
+        assertEquals(0.0, counts.getMinX(), 0.0);
+        assertEquals(3.0, counts.getMaxX(), 0.0);
+        assertEquals(11.0, counts.getMinY(), 0.0);
+        assertEquals(13.0, counts.getMaxY(), 0.0);
+
+        final BufferedImage image = counts.createImage(0, 3, 11, 13, 4, 3, GRAY);
+        assertEquals(12, sum(image));
+        // y points upwards, so the maximum y value is found in the first row
+        assertEquals(1, sample(image, 0, 0));
+        assertEquals(1, sample(image, 3, 2));
+    }
+
+    @Test
+    public void testCountsAreOutdatedWhenValidPixelsChange() throws Exception {
+        final Product product = new Product("P", "T", 4, 4);
+        final Band x = addBand(product, "x", i -> i % 4);
+        final Band y = addBand(product, "y", i -> 10 + i / 4);
+
+        final DensityPlotEngine.BinnedCounts counts = new DensityPlotEngine(x, y, null, 64, 1).compute(ProgressMonitor.NULL);
+        assertTrue(counts.isComputedFor(x, y, null));
+
+        y.setNoDataValue(10);
+        y.setNoDataValueUsed(true);
+        assertFalse(counts.isComputedFor(x, y, null));
+        assertEquals(12, new DensityPlotEngine(x, y, null, 64, 1).compute(ProgressMonitor.NULL).getPixelCount());
+
+        final DensityPlotEngine.BinnedCounts validCounts = new DensityPlotEngine(x, y, null, 64, 1).compute(ProgressMonitor.NULL);
+        x.setValidPixelExpression("x > 0");
+        assertFalse(validCounts.isComputedFor(x, y, null));
+    }
+
+    @Test
+    public void testNarrowedRangeIsRenderedFromCounts() throws Exception {
+        final Product product = new Product("P", "T", 4, 4);
+        final Band x = addBand(product, "x", i -> i % 4);
+        final Band y = addBand(product, "y", i -> i / 4);
+
+        final DensityPlotEngine.BinnedCounts counts = new DensityPlotEngine(x, y, null, 64, 1).compute(ProgressMonitor.NULL);
+
+        assertEquals(16, sum(counts.createImage(0, 3, 0, 3, 8, 8, GRAY)));
+        assertEquals(4, sum(counts.createImage(0, 1.5, 0, 1.5, 8, 8, GRAY)));
+    }
+
+    @Test
+    public void testBinsWiderThanPixelsAreSpread() throws Exception {
+        final DensityPlotEngine.BinnedCounts counts = new DensityPlotEngine.BinnedCounts(null, null, null, 16);
+        final int n = 1001;
+        final float[] xs = new float[n];
+        final float[] ys = new float[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = i * 0.1F;
+        }
+        counts.add(xs, ys, n, 0.0, 100.0, 0.0, 0.0);
+
+        // the range of 5 % of the values is covered by a single bin
+        final BufferedImage image = counts.createImage(0.0, 5.0, -1.0, 1.0, 100, 1, GRAY);
+
+        final int first = sample(image, 0, 0);
+        assertTrue(first > 0);
+        for (int x = 1; x < 100; x++) {
+            assertEquals(first, sample(image, x, 0));
+        }
+    }
+
+    @Test
+    public void testGridGrowsWithoutLosingCounts() throws Exception {
+        final DensityPlotEngine.BinnedCounts counts = new DensityPlotEngine.BinnedCounts(null, null, null, 16);
+        counts.add(new float[]{1.0F, 2.0F}, new float[]{1.0F, 2.0F}, 2, 1.0, 2.0, 1.0, 2.0);
+        counts.add(new float[]{-100.0F}, new float[]{50.0F}, 1, -100.0, -100.0, 50.0, 50.0);
+        counts.add(new float[]{500.0F}, new float[]{-7.0F}, 1, 500.0, 500.0, -7.0, -7.0);
+
+        assertEquals(4, counts.getPixelCount());
+        assertEquals(-100.0, counts.getMinX(), 0.0);
+        assertEquals(500.0, counts.getMaxX(), 0.0);
+        assertEquals(-7.0, counts.getMinY(), 0.0);
+        assertEquals(50.0, counts.getMaxY(), 0.0);
+        assertEquals(4, sum(counts.createImage(-100.0, 500.0, -7.0, 50.0, 10, 10, GRAY)));
+    }
+
+    @Test
+    public void testTaskCountsAreMerged() throws Exception {
+        final DensityPlotEngine.BinnedCounts counts = new DensityPlotEngine.BinnedCounts(null, null, null, 16);
+        counts.add(new float[]{1.0F, 2.0F}, new float[]{1.0F, 2.0F}, 2, 1.0, 2.0, 1.0, 2.0);
+        final DensityPlotEngine.BinnedCounts taskCounts = new DensityPlotEngine.BinnedCounts(null, null, null, 16);
+        taskCounts.add(new float[]{-100.0F, 2.0F}, new float[]{50.0F, 2.0F}, 2, -100.0, 2.0, 2.0, 50.0);
+
+        counts.merge(taskCounts);
+        counts.merge(new DensityPlotEngine.BinnedCounts(null, null, null, 16));
+
+        assertEquals(4, counts.getPixelCount());
+        assertEquals(-100.0, counts.getMinX(), 0.0);
+        assertEquals(2.0, counts.getMaxX(), 0.0);
+        assertEquals(1.0, counts.getMinY(), 0.0);
+        assertEquals(50.0, counts.getMaxY(), 0.0);
+        assertEquals(4, sum(counts.createImage(-100.0, 2.0, 1.0, 50.0, 4, 4, GRAY)));
+        // the pixel at (-100, 50) lies in the upper left corner, the others in the lower right one
+        assertEquals(1, sample(counts.createImage(-100.0, 2.0, 1.0, 50.0, 4, 4, GRAY), 0, 0));
+        assertEquals(3, sample(counts.createImage(-100.0, 2.0, 1.0, 50.0, 4, 4, GRAY), 3, 3));
+    }
+
+    @Test
+    public void testParallelTasksCountAllPixels() throws Exception {
+        final Product product = new Product("P", "T", 300, 200);
+        product.setPreferredTileSize(64, 64);
+        final Band x = addBand(product, "x", i -> i % 300);
+        final Band y = addBand(product, "y", i -> (i % 300) * 0.5F + i / 300);
+
+        final DensityPlotEngine.BinnedCounts counts = new DensityPlotEngine(x, y, null, 64, 4).compute(ProgressMonitor.NULL);
+
+        assertEquals(300 * 200, counts.getPixelCount());
+        assertEquals(0.0, counts.getMinX(), 0.0);
+        assertEquals(299.0, counts.getMaxX(), 0.0);
+        assertEquals(0.0, counts.getMinY(), 0.0);
+        assertEquals(149.5 + 199.0, counts.getMaxY(), 0.0);
+    }
+
+    private interface ValueFunction {
+        float apply(int index);
+    }
+
+    private static Band addBand(Product product, String name, ValueFunction function) {
+        final Band band = product.addBand(name, ProductData.TYPE_FLOAT32);
+        band.setSynthetic(true);
+        final float[] data = new float[product.getSceneRasterWidth() * product.getSceneRasterHeight()];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = function.apply(i);
+        }
+        band.setData(ProductData.createInstance(data));
+        return band;
+    }
+
+    private static int sample(BufferedImage image, int x, int y) {
+        return image.getRaster().getSample(x, y, 0);
+    }
+
+    private static int sum(BufferedImage image) {
+        int sum = 0;
+        for (byte b : ((DataBufferByte) image.getRaster().getDataBuffer()).getData()) {
+            sum += b & 0xff;
+        }
+        return sum;
+    }
+
+    private static IndexColorModel createGrayColorModel() {
+        final byte[] gray = new byte[256];
+        for (int i = 0; i < gray.length; i++) {
+            gray[i] = (byte) i;
+        }
+        return new IndexColorModel(8, 256, gray, gray, gray);
+    }
+}
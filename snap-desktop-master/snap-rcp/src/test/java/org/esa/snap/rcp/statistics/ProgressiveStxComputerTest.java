@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.rcp.statistics;
+
+import com.bc.ceres.core.NullProgressMonitor;
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.datamodel.Mask;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.datamodel.Stx;
+import org.esa.snap.core.datamodel.StxFactory;
+import org.esa.snap.core.datamodel.VirtualBand;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ProgressiveStxComputerTest {
+
+    private static final int BIN_COUNT = 64;
+
+    private Product product;
+    private VirtualBand band;
+
+    @Before
+    public void setUp() throws Exception {
+        product = new Product("P", "T", 1024, 768);
+        band = new VirtualBand("b", ProductData.TYPE_FLOAT32, 1024, 768, "sin(X / 40) * cos(Y / 25) * 100 + Y / 10");
+        product.addBand(band);
+        product.addMask("upper", "Y < 200", "", Color.RED, 0.5);
+    }
+
+    @Test
+    public void testProgressiveStatisticsConvergeToStatisticsAtFullResolution() throws Exception {
+        final int levelCount = band.getSourceImage().getModel().getLevelCount();
+        assertTrue(levelCount > 1);
+        final Mask[] masks = {null, product.getMaskGroup().get("upper")};
+
+        final List<ProgressiveStxComputer.PartialStx> results = new ArrayList<>();
+        final ProgressiveStxComputer computer = new ProgressiveStxComputer(band, BIN_COUNT, true, 2);
+        assertTrue(computer.compute(masks, results::add, ProgressMonitor.NULL));
+
+        assertEquals(masks.length * levelCount, results.size());
+        for (int i = 0; i < masks.length; i++) {
+            // the levels of a mask are reported from the coarsest to level zero, with increasing coverage
+            final List<ProgressiveStxComputer.PartialStx> maskResults = getResults(results, i);
+            assertEquals(levelCount, maskResults.size());
+            for (int j = 0; j < levelCount; j++) {
+                final ProgressiveStxComputer.PartialStx result = maskResults.get(j);
+                assertSame(masks[i], result.getMask());
+                assertEquals(levelCount - 1 - j, result.getLevel());
+                assertEquals(j == levelCount - 1, result.isFinal());
+                if (j > 0) {
+                    assertTrue(result.getCoverage() > maskResults.get(j - 1).getCoverage());
+                }
+            }
+
+            final ProgressiveStxComputer.PartialStx coarsest = maskResults.get(0);
+            final ProgressiveStxComputer.PartialStx last = maskResults.get(levelCount - 1);
+            assertEquals(1.0, last.getCoverage(), 0.0);
+            final Stx expected = computeStx(masks[i]);
+            assertStxEquals(expected, last.getStx());
+            // already the coarsest level approximates the statistics
+            final double range = expected.getMaximum() - expected.getMinimum();
+            assertEquals(expected.getMean(), coarsest.getStx().getMean(), 0.05 * range);
+        }
+    }
+
+    @Test
+    public void testNonProgressiveComputationOnlyReportsLevelZero() throws Exception {
+        final Mask[] masks = {product.getMaskGroup().get("upper")};
+
+        final List<ProgressiveStxComputer.PartialStx> results = new ArrayList<>();
+        final ProgressiveStxComputer computer = new ProgressiveStxComputer(band, BIN_COUNT, false, 1);
+        assertTrue(computer.compute(masks, results::add, ProgressMonitor.NULL));
+
+        assertEquals(1, results.size());
+        assertTrue(results.get(0).isFinal());
+        assertStxEquals(computeStx(masks[0]), results.get(0).getStx());
+    }
+
+    @Test
+    public void testCancellation() throws Exception {
+        final Mask[] masks = {null, product.getMaskGroup().get("upper")};
+        final NullProgressMonitor pm = new NullProgressMonitor();
+
+        final List<ProgressiveStxComputer.PartialStx> results = new ArrayList<>();
+        final ProgressiveStxComputer computer = new ProgressiveStxComputer(band, BIN_COUNT, true, 2);
+        final boolean completed = computer.compute(masks, partialStx -> {
+            results.add(partialStx);
+            pm.setCanceled(true);
+        }, pm);
+
+        assertFalse(completed);
+        // nothing is reported after the computation has been cancelled
+        assertEquals(1, results.size());
+        assertFalse(results.get(0).isFinal());
+    }
+
+    @Test
+    public void testNothingIsReportedWhenCancelledBeforehand() throws Exception {
+        final Mask[] masks = {null, product.getMaskGroup().get("upper")};
+        final NullProgressMonitor pm = new NullProgressMonitor();
+        pm.setCanceled(true);
+
+        final List<ProgressiveStxComputer.PartialStx> results = new ArrayList<>();
+        final ProgressiveStxComputer computer = new ProgressiveStxComputer(band, BIN_COUNT, true, 2);
+
+        assertFalse(computer.compute(masks, results::add, pm));
+        assertTrue(results.isEmpty());
+    }
+
+    private Stx computeStx(Mask mask) {
+        final StxFactory factory = new StxFactory().withHistogramBinCount(BIN_COUNT);
+        if (mask != null) {
+            factory.withRoiMask(mask);
+        }
+        return factory.create(band, ProgressMonitor.NULL);
+    }
+
+    private static List<ProgressiveStxComputer.PartialStx> getResults(List<ProgressiveStxComputer.PartialStx> results,
+                                                                      int index) {
+        final List<ProgressiveStxComputer.PartialStx> maskResults = new ArrayList<>();
+        for (ProgressiveStxComputer.PartialStx result : results) {
+            if (result.getIndex() == index) {
+                maskResults.add(result);
+            }
+        }
+        return maskResults;
+    }
+
+    private static void assertStxEquals(Stx expected, Stx actual) {
+        assertEquals(expected.getSampleCount(), actual.getSampleCount());
+        assertEquals(expected.getMinimum(), actual.getMinimum(), 1e-6);
+        assertEquals(expected.getMaximum(), actual.getMaximum(), 1e-6);
+        assertEquals(expected.getMean(), actual.getMean(), 1e-6);
+        assertEquals(expected.getStandardDeviation(), actual.getStandardDeviation(), 1e-6);
+        assertArrayEquals(expected.getHistogram().getBins(0), actual.getHistogram().getBins(0));
+    }
+}
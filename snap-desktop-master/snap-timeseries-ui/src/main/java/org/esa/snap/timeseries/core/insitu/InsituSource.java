@@ -18,30 +18,25 @@ package org.esa.snap.timeseries.core.insitu;
 
 import org.esa.snap.core.datamodel.GeoPos;
 import org.esa.snap.timeseries.core.insitu.csv.InsituRecord;
-import org.esa.snap.util.StringUtils;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Date;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
 
 /**
- * Represents a source for in situ data.
+ * Represents a source for in situ data. The records of the underlying record source are read once on construction
+ * and kept in an indexed, columnar in-memory store.
  *
  * @author Thomas Storm
  * @author Sabine Embacher
  */
 public class InsituSource {
 
-    private RecordSource recordSource;
+    private final RecordSource recordSource;
+    private final InsituStore store;
 
     public InsituSource(RecordSource recordSource) throws IOException {
         this.recordSource = recordSource;
+        this.store = InsituStore.load(recordSource);
     }
 
     /**
@@ -50,17 +45,7 @@ public class InsituSource {
      * @return a collection of in-situ positions
      */
     public Collection<GeoPos> getInsituPositionsFor(String parameterName) {
-        Set<GeoPos> result = new HashSet<>();
-        final int columnIndex = getIndexForParameter(parameterName);
-        final Iterable<Record> records = recordSource.getRecords();
-        for (Record record : records) {
-            final Double value = (Double) record.getAttributeValues()[columnIndex];
-            if (value == null) {
-                continue;
-            }
-            result.add(record.getLocation());
-        }
-        return result;
+        return store.getPositionsFor(parameterName);
     }
 
     /**
@@ -70,26 +55,7 @@ public class InsituSource {
      * @return an array of in-situ records
      */
     public InsituRecord[] getValuesFor(String parameterName, GeoPos position) {
-        final int columnIndex = getIndexForParameter(parameterName);
-        final Iterable<Record> records = recordSource.getRecords();
-        final List<InsituRecord> parameterRecords = new ArrayList<>();
-        for (Record record : records) {
-            final GeoPos pos = record.getLocation();
-            if (position != null && !pos.equals(position)) {
-                continue;
-            }
-            final Date time = record.getTime();
-            final Double value = (Double) record.getAttributeValues()[columnIndex];
-            if (value == null) {
-                continue;
-            }
-            final String stationName = record.getStationName() == null ? "" : record.getStationName();
-            final InsituRecord insituRecord = new InsituRecord(pos, time, stationName, value);
-            parameterRecords.add(insituRecord);
-        }
-
-        sortRecordsAscending(parameterRecords);
-        return parameterRecords.toArray(new InsituRecord[parameterRecords.size()]);
+        return store.getValuesFor(parameterName, position);
     }
 
     /**
@@ -112,13 +78,7 @@ public class InsituSource {
      * @return the name, or an empty string if no such name exists
      */
     public String getNameFor(GeoPos geoPos) {
-        Iterable<Record> records = recordSource.getRecords();
-        for (Record record : records) {
-            if (record.getLocation().equals(geoPos)) {
-                return record.getStationName();
-            }
-        }
-        return "";
+        return store.getNameFor(geoPos);
     }
 
     /**
@@ -127,23 +87,4 @@ public class InsituSource {
     public void close() {
         recordSource.close();
     }
-
-    private int getIndexForParameter(String parameterName) {
-        final Header header = recordSource.getHeader();
-        final String[] columnNames = header.getColumnNames();
-        return StringUtils.indexOf(columnNames, parameterName);
-    }
-
-    private void sortRecordsAscending(List<InsituRecord> parameterRecords) {
-        Collections.sort(parameterRecords, new Comparator<InsituRecord>() {
-            @Override
-            public int compare(InsituRecord o1, InsituRecord o2) {
-                if (o1.time.equals(o2.time)) {
-                    return 0;
-                }
-                return o1.time.before(o2.time) ? -1 : 1;
-            }
-        });
-    }
-
 }
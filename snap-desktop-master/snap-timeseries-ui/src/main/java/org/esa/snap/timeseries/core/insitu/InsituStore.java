@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.timeseries.core.insitu;
+
+import org.esa.snap.core.datamodel.GeoPos;
+import org.esa.snap.timeseries.core.insitu.csv.InsituRecord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the records of a {@link RecordSource} in primitive column arrays. The records are indexed by their
+ * location, and the records of every location as well as all records together are sorted by time, so that
+ * queries don't need to scan the record source again.
+ */
+class InsituStore {
+
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final int NO_LOCATION = -1;
+
+    private final String[] parameterNames;
+    private final double[][] values;
+    private final BitSet[] present;
+    private final long[] times;
+    private final int[] locationIndexes;
+    private final String[] stationNames;
+    private final GeoPos[] locations;
+    private final String[] locationNames;
+    private final Map<GeoPos, Integer> locationIndex;
+    private final int[] timeOrder;
+    private final int[][] locationTimeOrders;
+    private final int[][] parameterLocations;
+
+    private InsituStore(String[] parameterNames, double[][] values, BitSet[] present, long[] times,
+                        int[] locationIndexes, String[] stationNames, List<GeoPos> locations, List<String> locationNames,
+                        Map<GeoPos, Integer> locationIndex) {
+        this.parameterNames = parameterNames;
+        this.values = values;
+        this.present = present;
+        this.times = times;
+        this.locationIndexes = locationIndexes;
+        this.stationNames = stationNames;
+        this.locations = locations.toArray(new GeoPos[locations.size()]);
+        this.locationNames = locationNames.toArray(new String[locationNames.size()]);
+        this.locationIndex = locationIndex;
+        timeOrder = sortByTime(times);
+        locationTimeOrders = groupByLocation(timeOrder, locationIndexes, this.locations.length);
+        parameterLocations = new int[parameterNames.length][];
+    }
+
+    /**
+     * Reads all records of the given record source once.
+     */
+    static InsituStore load(RecordSource recordSource) {
+        final Header header = recordSource.getHeader();
+        final String[] parameterNames = header.getParameterNames();
+        final String[] columnNames = header.getColumnNames();
+        final int[] columnIndexes = new int[parameterNames.length];
+        for (int p = 0; p < parameterNames.length; p++) {
+            columnIndexes[p] = Arrays.asList(columnNames).indexOf(parameterNames[p]);
+        }
+
+        int capacity = 1024;
+        int count = 0;
+        double[][] values = new double[parameterNames.length][capacity];
+        final BitSet[] present = new BitSet[parameterNames.length];
+        for (int p = 0; p < parameterNames.length; p++) {
+            present[p] = new BitSet();
+        }
+        long[] times = new long[capacity];
+        int[] locationIndexes = new int[capacity];
+        String[] stationNames = new String[capacity];
+        final List<GeoPos> locations = new ArrayList<>();
+        final List<String> locationNames = new ArrayList<>();
+        final Map<GeoPos, Integer> locationIndex = new HashMap<>();
+
+        for (Record record : recordSource.getRecords()) {
+            if (count == capacity) {
+                capacity *= 2;
+                for (int p = 0; p < parameterNames.length; p++) {
+                    values[p] = Arrays.copyOf(values[p], capacity);
+                }
+                times = Arrays.copyOf(times, capacity);
+                locationIndexes = Arrays.copyOf(locationIndexes, capacity);
+                stationNames = Arrays.copyOf(stationNames, capacity);
+            }
+            final Object[] attributeValues = record.getAttributeValues();
+            for (int p = 0; p < parameterNames.length; p++) {
+                final int columnIndex = columnIndexes[p];
+                if (columnIndex >= 0 && columnIndex < attributeValues.length
+                    && attributeValues[columnIndex] instanceof Number) {
+                    values[p][count] = ((Number) attributeValues[columnIndex]).doubleValue();
+                    present[p].set(count);
+                }
+            }
+            final Date time = record.getTime();
+            times[count] = time != null ? time.getTime() : NO_TIME;
+            final GeoPos location = record.getLocation();
+            if (location != null) {
+                Integer index = locationIndex.get(location);
+                if (index == null) {
+                    index = locations.size();
+                    locationIndex.put(new GeoPos(location), index);
+                    locations.add(new GeoPos(location));
+                    locationNames.add(record.getStationName());
+                }
+                locationIndexes[count] = index;
+            } else {
+                locationIndexes[count] = NO_LOCATION;
+            }
+            stationNames[count] = record.getStationName() == null ? "" : record.getStationName();
+            count++;
+        }
+
+        for (int p = 0; p < parameterNames.length; p++) {
+            values[p] = Arrays.copyOf(values[p], count);
+        }
+        return new InsituStore(parameterNames, values, present, Arrays.copyOf(times, count),
+                               Arrays.copyOf(locationIndexes, count), Arrays.copyOf(stationNames, count),
+                               locations, locationNames, locationIndex);
+    }
+
+    /**
+     * @return the positions of all locations with at least one value of the given parameter
+     */
+    List<GeoPos> getPositionsFor(String parameterName) {
+        final int p = indexOf(parameterName);
+        final List<GeoPos> result = new ArrayList<>();
+        if (p < 0) {
+            return result;
+        }
+        for (int location : getParameterLocations(p)) {
+            result.add(new GeoPos(locations[location]));
+        }
+        return result;
+    }
+
+    /**
+     * @return the time-sorted values of the given parameter at the given position, or at all positions if the
+     * position is {@code null}
+     */
+    InsituRecord[] getValuesFor(String parameterName, GeoPos position) {
+        final int p = indexOf(parameterName);
+        if (p < 0) {
+            return new InsituRecord[0];
+        }
+        final int[] rows;
+        if (position == null) {
+            rows = timeOrder;
+        } else {
+            final Integer location = locationIndex.get(position);
+            if (location == null) {
+                return new InsituRecord[0];
+            }
+            rows = locationTimeOrders[location];
+        }
+        final List<InsituRecord> records = new ArrayList<>();
+        for (int row : rows) {
+            if (present[p].get(row)) {
+                final int location = locationIndexes[row];
+                final GeoPos pos = location != NO_LOCATION ? new GeoPos(locations[location]) : null;
+                final Date time = times[row] != NO_TIME ? new Date(times[row]) : null;
+                records.add(new InsituRecord(pos, time, stationNames[row], values[p][row]));
+            }
+        }
+        return records.toArray(new InsituRecord[records.size()]);
+    }
+
+    /**
+     * @return the station name of the first record at the given position, or an empty string if there is none
+     */
+    String getNameFor(GeoPos position) {
+        final Integer location = locationIndex.get(position);
+        return location != null ? locationNames[location] : "";
+    }
+
+    private synchronized int[] getParameterLocations(int p) {
+        if (parameterLocations[p] == null) {
+            int count = 0;
+            final int[] result = new int[locations.length];
+            for (int location = 0; location < locations.length; location++) {
+                for (int row : locationTimeOrders[location]) {
+                    if (present[p].get(row)) {
+                        result[count++] = location;
+                        break;
+                    }
+                }
+            }
+            parameterLocations[p] = Arrays.copyOf(result, count);
+        }
+        return parameterLocations[p];
+    }
+
+    private int indexOf(String parameterName) {
+        return Arrays.asList(parameterNames).indexOf(parameterName);
+    }
+
+    // stable, so records with equal times keep their order within the record source
+    private static int[] sortByTime(long[] times) {
+        final long[] distinctTimes = times.clone();
+        Arrays.sort(distinctTimes);
+        // key = rank of the time in the upper, row index in the lower 32 bits
+        final long[] keys = new long[times.length];
+        for (int row = 0; row < times.length; row++) {
+            keys[row] = ((long) Arrays.binarySearch(distinctTimes, times[row]) << 32) | row;
+        }
+        Arrays.sort(keys);
+        final int[] order = new int[times.length];
+        for (int i = 0; i < keys.length; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    private static int[][] groupByLocation(int[] timeOrder, int[] locationIndexes, int locationCount) {
+        final int[] counts = new int[locationCount];
+        for (int location : locationIndexes) {
+            if (location != NO_LOCATION) {
+                counts[location]++;
+            }
+        }
+        final int[][] groups = new int[locationCount][];
+        for (int location = 0; location < locationCount; location++) {
+            groups[location] = new int[counts[location]];
+        }
+        Arrays.fill(counts, 0);
+        for (int row : timeOrder) {
+            final int location = locationIndexes[row];
+            if (location != NO_LOCATION) {
+                groups[location][counts[location]++] = row;
+            }
+        }
+        return groups;
+    }
+}
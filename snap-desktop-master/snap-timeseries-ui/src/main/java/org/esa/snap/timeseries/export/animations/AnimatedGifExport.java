@@ -16,6 +16,7 @@
 
 package org.esa.snap.timeseries.export.animations;
 
+import com.bc.ceres.core.Assert;
 import com.bc.ceres.core.ProgressMonitor;
 import com.bc.ceres.swing.progress.ProgressMonitorSwingWorker;
 import org.esa.snap.core.datamodel.Band;
@@ -34,26 +35,38 @@ import javax.imageio.metadata.IIOMetadata;
 import javax.imageio.metadata.IIOMetadataNode;
 import javax.imageio.stream.ImageOutputStream;
 import java.awt.Component;
-import java.awt.image.RenderedImage;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.esa.snap.timeseries.export.util.TimeSeriesExportHelper.*;
 
+/**
+ * Exports the bands of a time series variable as an animated GIF. Several worker threads render and quantise the
+ * upcoming frames, while the export thread writes them in order. At most {@link #getLookAhead() look-ahead}
+ * frames are rendered ahead of the writer, which bounds the memory used by the export.
+ */
 public class AnimatedGifExport extends ProgressMonitorSwingWorker<Void, Void> {
 
     private final File outputFile;
     private static final String EXPORT_DIR_PREFERENCES_KEY = "user.export.dir";
-    private RenderedImage[] frames;
+    private Band[] frames;
     private int level;
+    private int lookAhead;
 
     public AnimatedGifExport(Component parentComponent, String title) {
         super(parentComponent, title);
         FileWithLevel fileWithLevel = fetchOutputFile();
         this.outputFile = fileWithLevel.file;
         this.level = fileWithLevel.level;
+        this.lookAhead = 2 * Runtime.getRuntime().availableProcessors();
     }
 
     @Override
@@ -63,27 +76,51 @@ public class AnimatedGifExport extends ProgressMonitorSwingWorker<Void, Void> {
     }
 
     public void createFrames(List<Band> bandsForVariable) {
-        List<RenderedImage> images = new ArrayList<>();
-        for (Band band : bandsForVariable) {
-            images.add(band.getGeophysicalImage().getImage(level));
-        }
+        frames = bandsForVariable.toArray(new Band[bandsForVariable.size()]);
+    }
+
+    /**
+     * @return the maximum number of frames rendered ahead of the frame being written
+     */
+    public int getLookAhead() {
+        return lookAhead;
+    }
 
-        frames = images.toArray(new RenderedImage[images.size()]);
+    /**
+     * Sets the maximum number of frames rendered ahead of the frame being written. Larger values keep more worker
+     * threads busy, but each frame held in the window needs one byte per pixel.
+     *
+     * @param lookAhead the look-ahead, at least one
+     */
+    public void setLookAhead(int lookAhead) {
+        Assert.argument(lookAhead >= 1, "lookAhead >= 1");
+        this.lookAhead = lookAhead;
     }
 
     private void exportAnimation(String delayTime, File file, ProgressMonitor pm) {
 
         ImageWriter imageWriter = ImageIO.getImageWritersByFormatName("gif").next();
-
-        try {
-            ImageOutputStream outputStream = ImageIO.createImageOutputStream(file);
+        final int threadCount = Math.max(1, Math.min(lookAhead, Runtime.getRuntime().availableProcessors()));
+        final ExecutorService renderer = Executors.newFixedThreadPool(threadCount, runnable -> {
+            final Thread thread = new Thread(runnable, "Animated GIF frame renderer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final Deque<Future<BufferedImage>> renderedFrames = new ArrayDeque<>(lookAhead);
+
+        try (ImageOutputStream outputStream = ImageIO.createImageOutputStream(file)) {
             imageWriter.setOutput(outputStream);
             imageWriter.prepareWriteSequence(null);
 
             pm.beginTask("Exporting time series as animated gif", frames.length);
 
-            for (int i = 0; i < frames.length; i++) {
-                RenderedImage currentImage = frames[i];
+            int nextFrame = 0;
+            for (int i = 0; i < frames.length && !pm.isCanceled(); i++) {
+                while (nextFrame < frames.length && nextFrame < i + lookAhead) {
+                    final Band band = frames[nextFrame++];
+                    renderedFrames.add(renderer.submit(() -> GifFrameRenderer.render(band, level)));
+                }
+                BufferedImage currentImage = renderedFrames.remove().get();
                 ImageWriteParam writeParameters = imageWriter.getDefaultWriteParam();
                 IIOMetadata metadata = imageWriter.getDefaultImageMetadata(new ImageTypeSpecifier(currentImage),
                                                                            writeParameters);
@@ -94,10 +131,16 @@ public class AnimatedGifExport extends ProgressMonitorSwingWorker<Void, Void> {
                 pm.worked(1);
             }
             imageWriter.endWriteSequence();
-            outputStream.close();
-            pm.done();
         } catch (IOException e) {
             SnapApp.getDefault().handleError("Unable to create animated gif", e);
+        } catch (ExecutionException e) {
+            SnapApp.getDefault().handleError("Unable to create animated gif", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            renderer.shutdownNow();
+            imageWriter.dispose();
+            pm.done();
         }
     }
 
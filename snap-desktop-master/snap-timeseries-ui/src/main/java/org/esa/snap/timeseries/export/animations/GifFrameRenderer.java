@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.timeseries.export.animations;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.datamodel.ImageInfo;
+import org.esa.snap.core.datamodel.RasterDataNode;
+import org.esa.snap.core.image.ImageManager;
+
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.RenderedImage;
+
+/**
+ * Renders the frames of an animated GIF. A frame is the coloured image of a raster at a given resolution level,
+ * quantised to an indexed image with at most 256 colours. Frames with no more than 256 distinct colours, which
+ * is the usual case for images coloured by a colour palette, are converted without loss. Otherwise a uniform
+ * colour cube is used. Semi-transparent pixels, e.g. no-data pixels, are mapped to a transparent index.
+ */
+class GifFrameRenderer {
+
+    private static final int MAX_COLORS = 256;
+    private static final int RED_LEVELS = 6;
+    private static final int GREEN_LEVELS = 7;
+    private static final int BLUE_LEVELS = 6;
+    private static final int EMPTY = 0;
+
+    private GifFrameRenderer() {
+    }
+
+    static BufferedImage render(RasterDataNode raster, int level) {
+        final ImageInfo imageInfo = raster.getImageInfo(ProgressMonitor.NULL);
+        final RenderedImage image = ImageManager.getInstance().createColoredBandImage(new RasterDataNode[]{raster},
+                                                                                      imageInfo, level);
+        final BufferedImage argbImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D graphics = argbImage.createGraphics();
+        try {
+            graphics.drawRenderedImage(image, AffineTransform.getTranslateInstance(-image.getMinX(), -image.getMinY()));
+        } finally {
+            graphics.dispose();
+        }
+        return toIndexedImage(argbImage);
+    }
+
+    static BufferedImage toIndexedImage(BufferedImage argbImage) {
+        final int width = argbImage.getWidth();
+        final int height = argbImage.getHeight();
+        final int[] argb = ((DataBufferInt) argbImage.getRaster().getDataBuffer()).getData();
+
+        boolean hasTransparency = false;
+        for (int pixel : argb) {
+            if (isTransparent(pixel)) {
+                hasTransparency = true;
+                break;
+            }
+        }
+        final int firstColorIndex = hasTransparency ? 1 : 0;
+        final ColorTable colorTable = ColorTable.create(argb, MAX_COLORS - firstColorIndex);
+
+        final byte[] reds = new byte[MAX_COLORS];
+        final byte[] greens = new byte[MAX_COLORS];
+        final byte[] blues = new byte[MAX_COLORS];
+        final int colorCount;
+        if (colorTable != null) {
+            colorCount = colorTable.fillPalette(reds, greens, blues, firstColorIndex);
+        } else {
+            colorCount = fillColorCube(reds, greens, blues, firstColorIndex);
+        }
+        final IndexColorModel colorModel = new IndexColorModel(8, Math.max(1, firstColorIndex + colorCount), reds, greens, blues,
+                                                               hasTransparency ? 0 : -1);
+
+        final BufferedImage indexedImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+        final byte[] indexes = ((DataBufferByte) indexedImage.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < argb.length; i++) {
+            final int pixel = argb[i];
+            final int index;
+            if (isTransparent(pixel)) {
+                index = 0;
+            } else if (colorTable != null) {
+                index = firstColorIndex + colorTable.indexOf(pixel & 0xFFFFFF);
+            } else {
+                index = firstColorIndex + colorCubeIndex(pixel);
+            }
+            indexes[i] = (byte) index;
+        }
+        return indexedImage;
+    }
+
+    private static boolean isTransparent(int pixel) {
+        return (pixel >>> 24) < 0x80;
+    }
+
+    private static int fillColorCube(byte[] reds, byte[] greens, byte[] blues, int offset) {
+        int index = offset;
+        for (int r = 0; r < RED_LEVELS; r++) {
+            for (int g = 0; g < GREEN_LEVELS; g++) {
+                for (int b = 0; b < BLUE_LEVELS; b++) {
+                    reds[index] = (byte) (r * 255 / (RED_LEVELS - 1));
+                    greens[index] = (byte) (g * 255 / (GREEN_LEVELS - 1));
+                    blues[index] = (byte) (b * 255 / (BLUE_LEVELS - 1));
+                    index++;
+                }
+            }
+        }
+        return index - offset;
+    }
+
+    private static int colorCubeIndex(int pixel) {
+        final int r = (((pixel >> 16) & 0xFF) * (RED_LEVELS - 1) + 127) / 255;
+        final int g = (((pixel >> 8) & 0xFF) * (GREEN_LEVELS - 1) + 127) / 255;
+        final int b = ((pixel & 0xFF) * (BLUE_LEVELS - 1) + 127) / 255;
+        return (r * GREEN_LEVELS + g) * BLUE_LEVELS + b;
+    }
+
+    /**
+     * An open-addressing hash table of the distinct opaque RGB colours of an image.
+     */
+    private static final class ColorTable {
+
+        // twice the maximum number of colours keeps the table sparse; RGB values are stored offset by one,
+        // so that zero marks an empty slot
+        private final int[] keys = new int[2 * MAX_COLORS];
+        private final int[] indexes = new int[2 * MAX_COLORS];
+        private int size;
+
+        /**
+         * @return the table of the distinct colours, or {@code null} if there are more than the given maximum
+         */
+        static ColorTable create(int[] argb, int maxColors) {
+            final ColorTable table = new ColorTable();
+            int lastRgb = -1;
+            for (int pixel : argb) {
+                if (isTransparent(pixel)) {
+                    continue;
+                }
+                final int rgb = pixel & 0xFFFFFF;
+                if (rgb != lastRgb) {
+                    if (table.add(rgb) > maxColors) {
+                        return null;
+                    }
+                    lastRgb = rgb;
+                }
+            }
+            return table;
+        }
+
+        int indexOf(int rgb) {
+            return indexes[slot(rgb)];
+        }
+
+        int fillPalette(byte[] reds, byte[] greens, byte[] blues, int offset) {
+            final int[] rgbs = new int[size];
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != EMPTY) {
+                    rgbs[indexes[slot]] = keys[slot] - 1;
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                reds[offset + i] = (byte) (rgbs[i] >> 16);
+                greens[offset + i] = (byte) (rgbs[i] >> 8);
+                blues[offset + i] = (byte) rgbs[i];
+            }
+            return size;
+        }
+
+        private int add(int rgb) {
+            final int slot = slot(rgb);
+            if (keys[slot] == EMPTY) {
+                if (size == MAX_COLORS) {
+                    return size + 1;
+                }
+                keys[slot] = rgb + 1;
+                indexes[slot] = size++;
+            }
+            return size;
+        }
+
+        private int slot(int rgb) {
+            int slot = (rgb * 0x9E3779B1 >>> 23) & (keys.length - 1);
+            while (keys[slot] != EMPTY && keys[slot] != rgb + 1) {
+                slot = (slot + 1) & (keys.length - 1);
+            }
+            return slot;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.timeseries.ui.graph;
+
+import com.bc.ceres.glevel.MultiLevelImage;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.image.ImageManager;
+
+import javax.media.jai.PlanarImage;
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads the values of pixel stacks, i.e. the values of a list of bands at a single pixel. All stacks of a graph
+ * update are read together: the (pixel, band) requests are grouped by band tile, and every group is read on a
+ * bounded thread pool with a single request for the pixel region of the group. Recently read stacks are kept in
+ * a small LRU cache.
+ */
+class PixelStackReader {
+
+    private static final int MAX_CACHED_STACKS = 64;
+    private static final ExecutorService READER = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())), runnable -> {
+                final Thread thread = new Thread(runnable, "Time series pixel reader");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final Map<StackKey, double[]> cache;
+
+    PixelStackReader() {
+        cache = new LinkedHashMap<StackKey, double[]>(MAX_CACHED_STACKS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<StackKey, double[]> eldest) {
+                return size() > MAX_CACHED_STACKS;
+            }
+        };
+    }
+
+    /**
+     * Discards all cached stacks, e.g. after band data has changed.
+     */
+    synchronized void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Reads the values of the given stacks. For each band, the value is the geophysical sample, the no-data value
+     * of the band if the pixel is invalid, or {@code NaN} if the pixel is outside of the band.
+     *
+     * @param stacks the stacks to be read
+     *
+     * @return the values of each stack in the order of its bands
+     */
+    double[][] read(List<Stack> stacks) throws InterruptedException, ExecutionException {
+        final double[][] values = new double[stacks.size()][];
+        final Map<TileKey, List<long[]>> groups = new HashMap<>();
+        synchronized (this) {
+            for (int s = 0; s < values.length; s++) {
+                values[s] = cache.get(stacks.get(s).key);
+            }
+        }
+        for (int s = 0; s < values.length; s++) {
+            if (values[s] != null) {
+                continue;
+            }
+            final Stack stack = stacks.get(s);
+            values[s] = new double[stack.bands.length];
+            Arrays.fill(values[s], Double.NaN);
+            for (int b = 0; b < stack.bands.length; b++) {
+                final PlanarImage image = ImageManager.getInstance().getSourceImage(stack.bands[b], stack.level);
+                if (image.getBounds().contains(stack.pixelX, stack.pixelY)) {
+                    final TileKey key = new TileKey(stack.bands[b], stack.level,
+                                                    image.XToTileX(stack.pixelX), image.YToTileY(stack.pixelY));
+                    groups.computeIfAbsent(key, k -> new ArrayList<>()).add(new long[]{s, b});
+                }
+            }
+        }
+        if (groups.isEmpty()) {
+            return values;
+        }
+
+        final List<Future<?>> futures = new ArrayList<>(groups.size());
+        for (Map.Entry<TileKey, List<long[]>> group : groups.entrySet()) {
+            futures.add(READER.submit((Callable<Void>) () -> {
+                readGroup(group.getKey(), group.getValue(), stacks, values);
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        synchronized (this) {
+            for (int s = 0; s < values.length; s++) {
+                cache.put(stacks.get(s).key, values[s]);
+            }
+        }
+        return values;
+    }
+
+    private static void readGroup(TileKey key, List<long[]> members, List<Stack> stacks, double[][] values) {
+        final Band band = key.band;
+        Rectangle union = null;
+        for (long[] member : members) {
+            final Stack stack = stacks.get((int) member[0]);
+            final Rectangle pixel = new Rectangle(stack.pixelX, stack.pixelY, 1, 1);
+            union = union == null ? pixel : union.union(pixel);
+        }
+        final Raster data = ImageManager.getInstance().getSourceImage(band, key.level).getData(union);
+        final MultiLevelImage validMaskImage = band.getValidMaskImage();
+        final Raster valid = validMaskImage != null ? validMaskImage.getImage(key.level).getData(union) : null;
+        for (long[] member : members) {
+            final Stack stack = stacks.get((int) member[0]);
+            final int x = stack.pixelX;
+            final int y = stack.pixelY;
+            final double value;
+            if (valid != null && valid.getSample(x, y, 0) == 0) {
+                value = band.getNoDataValue();
+            } else {
+                // same as ProductUtils.getGeophysicalSampleDouble
+                double sample;
+                if (band.getDataType() == ProductData.TYPE_INT8) {
+                    sample = (byte) data.getSample(x, y, 0);
+                } else if (band.getDataType() == ProductData.TYPE_UINT32) {
+                    sample = data.getSample(x, y, 0) & 0xFFFFFFFFL;
+                } else {
+                    sample = data.getSampleDouble(x, y, 0);
+                }
+                value = band.isScalingApplied() ? band.scale(sample) : sample;
+            }
+            values[(int) member[0]][(int) member[1]] = value;
+        }
+    }
+
+    /**
+     * The bands of a pixel stack and the pixel position at a given resolution level.
+     */
+    static final class Stack {
+
+        private final Band[] bands;
+        private final int pixelX;
+        private final int pixelY;
+        private final int level;
+        private final StackKey key;
+
+        Stack(List<Band> bands, int pixelX, int pixelY, int level) {
+            this.bands = bands.toArray(new Band[bands.size()]);
+            this.pixelX = pixelX;
+            this.pixelY = pixelY;
+            this.level = level;
+            key = new StackKey(this.bands, pixelX, pixelY, level);
+        }
+    }
+
+    private static final class StackKey {
+
+        private final Band[] bands;
+        private final int pixelX;
+        private final int pixelY;
+        private final int level;
+
+        private StackKey(Band[] bands, int pixelX, int pixelY, int level) {
+            this.bands = bands;
+            this.pixelX = pixelX;
+            this.pixelY = pixelY;
+            this.level = level;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof StackKey)) {
+                return false;
+            }
+            final StackKey other = (StackKey) o;
+            return pixelX == other.pixelX && pixelY == other.pixelY && level == other.level
+                   && Arrays.equals(bands, other.bands);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * (31 * Arrays.hashCode(bands) + pixelX) + pixelY) + level;
+        }
+    }
+
+    private static final class TileKey {
+
+        private final Band band;
+        private final int level;
+        private final int tileX;
+        private final int tileY;
+
+        private TileKey(Band band, int level, int tileX, int tileY) {
+            this.band = band;
+            this.level = level;
+            this.tileX = tileX;
+            this.tileY = tileY;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof TileKey)) {
+                return false;
+            }
+            final TileKey other = (TileKey) o;
+            return band == other.band && level == other.level && tileX == other.tileX && tileY == other.tileY;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * (31 * System.identityHashCode(band) + level) + tileX) + tileY;
+        }
+    }
+}
@@ -87,6 +87,7 @@ class TimeSeriesGraphModel implements TimeSeriesGraphUpdater.TimeSeriesDataHandl
     private final TimeSeriesGraphUpdater.WorkerChainSupport workerChainSupport;
     private final Validation validation;
     private final WorkerChain workerChain;
+    private final PixelStackReader pixelStackReader;
     private final Map<String, Paint> paintMap = new HashMap<>();
 
     private TimeSeriesGraphDisplayController displayController;
@@ -106,12 +107,14 @@ class TimeSeriesGraphModel implements TimeSeriesGraphUpdater.TimeSeriesDataHandl
         displayControllerMap = new WeakHashMap<>();
         workerChainSupport = createWorkerChainSupport();
         workerChain = new WorkerChain();
+        pixelStackReader = new PixelStackReader();
         initPlot();
     }
 
     void adaptToTimeSeries(AbstractTimeSeries timeSeries) {
         version.incrementAndGet();
         eoVariableBands.clear();
+        pixelStackReader.clear();
 
         final boolean hasData = timeSeries != null;
         if (hasData) {
@@ -131,6 +134,10 @@ class TimeSeriesGraphModel implements TimeSeriesGraphUpdater.TimeSeriesDataHandl
         updatePlot(hasData);
     }
 
+    void clearPixelStacks() {
+        pixelStackReader.clear();
+    }
+
     AtomicInteger getVersion() {
         return version;
     }
@@ -191,7 +198,7 @@ class TimeSeriesGraphModel implements TimeSeriesGraphUpdater.TimeSeriesDataHandl
         }
         final TimeSeriesGraphUpdater.PositionSupport positionSupport = createPositionSupport();
         final TimeSeriesGraphUpdater w = new TimeSeriesGraphUpdater(getTimeSeries(), createVersionSafeDataSources(),
-                this, displayAxisMapping, workerChainSupport, cursorPosition, positionSupport, type,
+                this, displayAxisMapping, pixelStackReader, workerChainSupport, cursorPosition, positionSupport, type,
                 showCursorTimeSeries, version.get());
         final boolean chained = type != TimeSeriesType.CURSOR;
         workerChain.setOrExecuteNextWorker(w, chained);
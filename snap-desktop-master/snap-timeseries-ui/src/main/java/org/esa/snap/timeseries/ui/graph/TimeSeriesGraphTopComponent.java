@@ -258,6 +258,11 @@ public class TimeSeriesGraphTopComponent extends TopComponent {
         @Override
         public void nodeChanged(ProductNodeEvent event) {
             String propertyName = event.getPropertyName();
+            if (event.getSourceNode() instanceof RasterDataNode
+                && !propertyName.equals(RasterDataNode.PROPERTY_NAME_IMAGE_INFO)
+                && !propertyName.equals(RasterDataNode.PROPERTY_NAME_STX)) {
+                graphModel.clearPixelStacks();
+            }
             if (propertyName.equals(Placemark.PROPERTY_NAME_PIXELPOS)
                         || propertyName.equals(Placemark.PROPERTY_NAME_LABEL)) {
                 graphModel.updateTimeSeries(null, TimeSeriesType.PIN);
@@ -265,6 +270,14 @@ public class TimeSeriesGraphTopComponent extends TopComponent {
             }
         }
 
+        @Override
+        public void nodeDataChanged(ProductNodeEvent event) {
+            if (event.getSourceNode() instanceof RasterDataNode) {
+                graphModel.clearPixelStacks();
+                graphModel.updateTimeSeries(null, TimeSeriesType.PIN);
+            }
+        }
+
         @Override
         public void nodeAdded(ProductNodeEvent event) {
             final ProductNode node = event.getSourceNode();
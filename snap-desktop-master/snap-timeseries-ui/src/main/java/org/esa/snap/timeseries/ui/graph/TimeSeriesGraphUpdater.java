@@ -9,15 +9,11 @@ import org.esa.snap.timeseries.core.insitu.csv.InsituRecord;
 import org.esa.snap.timeseries.core.timeseries.datamodel.AbstractTimeSeries;
 import org.esa.snap.timeseries.core.timeseries.datamodel.AxisMapping;
 import org.esa.snap.timeseries.core.timeseries.datamodel.TimeCoding;
-import org.esa.snap.util.ProductUtils;
 import org.jfree.data.time.Millisecond;
 import org.jfree.data.time.TimeSeries;
 import org.jfree.data.time.TimeSeriesDataItem;
 
 import javax.swing.SwingWorker;
-import java.awt.Rectangle;
-import java.awt.image.Raster;
-import java.awt.image.RenderedImage;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -37,10 +33,11 @@ class TimeSeriesGraphUpdater extends SwingWorker<List<TimeSeries>, Void> {
     private final TimeSeriesDataHandler dataHandler;
     private final VersionSafeDataSources dataSources;
     private final AxisMapping displayAxisMapping;
+    private final PixelStackReader pixelStackReader;
 
     TimeSeriesGraphUpdater(AbstractTimeSeries timeSeries, VersionSafeDataSources dataSources,
                            TimeSeriesDataHandler dataHandler, AxisMapping displayAxisMapping,
-                           WorkerChainSupport workerChainSupport, Position cursorPosition,
+                           PixelStackReader pixelStackReader, WorkerChainSupport workerChainSupport, Position cursorPosition,
                            PositionSupport positionSupport, TimeSeriesType type, boolean showCursorTimeSeries,
                            int version) {
         super();
@@ -48,6 +45,7 @@ class TimeSeriesGraphUpdater extends SwingWorker<List<TimeSeries>, Void> {
         this.dataHandler = dataHandler;
         this.dataSources = dataSources;
         this.displayAxisMapping = displayAxisMapping;
+        this.pixelStackReader = pixelStackReader;
         this.workerChainSupport = workerChainSupport;
         this.cursorPosition = cursorPosition;
         this.positionSupport = positionSupport;
@@ -82,7 +80,7 @@ class TimeSeriesGraphUpdater extends SwingWorker<List<TimeSeries>, Void> {
         }
     }
 
-    private List<TimeSeries> computeRasterTimeSeries() {
+    private List<TimeSeries> computeRasterTimeSeries() throws InterruptedException, ExecutionException {
         final List<Position> positionsToDisplay = new ArrayList<>();
         final ArrayList<String> positionNames = new ArrayList<>();
         if (type.equals(TimeSeriesType.PIN)) {
@@ -97,7 +95,10 @@ class TimeSeriesGraphUpdater extends SwingWorker<List<TimeSeries>, Void> {
         }
 
         final Set<String> aliasNames = displayAxisMapping.getAliasNames();
-        final List<TimeSeries> rasterTimeSeries = new ArrayList<>();
+        final List<PixelStackReader.Stack> stacks = new ArrayList<>();
+        final List<List<Band>> stackBands = new ArrayList<>();
+        final List<String> stackRasterNames = new ArrayList<>();
+        final List<String> stackPositionNames = new ArrayList<>();
 
         for (int i = 0, positionsToDisplaySize = positionsToDisplay.size(); i < positionsToDisplaySize; i++) {
             final Position position = positionsToDisplay.get(i);
@@ -106,11 +107,20 @@ class TimeSeriesGraphUpdater extends SwingWorker<List<TimeSeries>, Void> {
                 final List<String> rasterNames = displayAxisMapping.getRasterNames(aliasName);
                 for (String rasterName : rasterNames) {
                     final List<Band> bandsForVariable = timeSeries.getBandsForVariable(rasterName);
-                    final TimeSeries timeSeries = computeSingleTimeSeries(bandsForVariable, position.pixelX, position.pixelY, position.currentLevel, positionName);
-                    rasterTimeSeries.add(dataHandler.getValidatedTimeSeries(timeSeries, rasterName, type));
+                    stacks.add(new PixelStackReader.Stack(bandsForVariable, position.pixelX, position.pixelY, position.currentLevel));
+                    stackBands.add(bandsForVariable);
+                    stackRasterNames.add(rasterName);
+                    stackPositionNames.add(positionName);
                 }
             }
         }
+
+        final double[][] values = pixelStackReader.read(stacks);
+        final List<TimeSeries> rasterTimeSeries = new ArrayList<>();
+        for (int i = 0; i < stacks.size(); i++) {
+            final TimeSeries timeSeries = computeSingleTimeSeries(stackBands.get(i), values[i], stackPositionNames.get(i));
+            rasterTimeSeries.add(dataHandler.getValidatedTimeSeries(timeSeries, stackRasterNames.get(i), type));
+        }
         return rasterTimeSeries;
     }
 
@@ -150,42 +160,26 @@ class TimeSeriesGraphUpdater extends SwingWorker<List<TimeSeries>, Void> {
         return timeSeries;
     }
 
-    private TimeSeries computeSingleTimeSeries(final List<Band> bandList, int pixelX, int pixelY, int currentLevel, String positionName) {
+    private TimeSeries computeSingleTimeSeries(final List<Band> bandList, double[] values, String positionName) {
         final Band firstBand = bandList.get(0);
         final String firstBandName = firstBand.getName();
         final int lastUnderscore = firstBandName.lastIndexOf("_");
         final String suffix = positionName.isEmpty()?positionName: "_" + positionName;
         final String timeSeriesName = firstBandName.substring(0, lastUnderscore);
         final TimeSeries timeSeries = new TimeSeries(timeSeriesName + suffix);
-        for (Band band : bandList) {
-            final TimeCoding timeCoding = this.timeSeries.getRasterTimeMap().get(band);
+        for (int i = 0; i < bandList.size(); i++) {
+            final TimeCoding timeCoding = this.timeSeries.getRasterTimeMap().get(bandList.get(i));
             if (timeCoding != null) {
                 final ProductData.UTC startTime = timeCoding.getStartTime();
                 final Millisecond timePeriod = new Millisecond(startTime.getAsDate(),
                                                                ProductData.UTC.UTC_TIME_ZONE,
                                                                Locale.getDefault());
-                final double value = getValue(band, pixelX, pixelY, currentLevel);
-                timeSeries.add(new TimeSeriesDataItem(timePeriod, value));
+                timeSeries.add(new TimeSeriesDataItem(timePeriod, values[i]));
             }
         }
         return timeSeries;
     }
 
-    private static double getValue(Band band, int pixelX, int pixelY, int currentLevel) {
-        final Rectangle pixelRect = new Rectangle(pixelX, pixelY, 1, 1);
-        if (band.getValidMaskImage() != null) {
-            final RenderedImage validMask = band.getValidMaskImage().getImage(currentLevel);
-            final Raster validMaskData = validMask.getData(pixelRect);
-            if (validMaskData.getSample(pixelX, pixelY, 0) > 0) {
-                return ProductUtils.getGeophysicalSampleDouble(band, pixelX, pixelY, currentLevel);
-            } else {
-                return band.getNoDataValue();
-            }
-        } else {
-            return ProductUtils.getGeophysicalSampleDouble(band, pixelX, pixelY, currentLevel);
-        }
-    }
-
     static class Position {
 
         private final int pixelX;
@@ -26,6 +26,7 @@ import org.junit.Test;
 import java.io.StringReader;
 import java.text.DateFormat;
 import java.text.ParseException;
+import java.util.Collection;
 import java.util.Date;
 
 import static org.junit.Assert.*;
@@ -126,6 +127,31 @@ public class InsituSourceTest {
         assertArrayEquals(new String[]{"CHL", "ys"}, parameterNames);
     }
 
+    @Test
+    public void testGetValuesForUnknownPositionAndParameter() throws Exception {
+        assertEquals(0, insituSource.getValuesFor("ys", new GeoPos(15, 35)).length);
+        assertEquals(0, insituSource.getValuesFor("unknown", null).length);
+    }
+
+    @Test
+    public void testGetInsituPositionsFor() throws Exception {
+        // execution
+        final Collection<GeoPos> positions = insituSource.getInsituPositionsFor("CHL");
+
+        // verification
+        assertEquals(3, positions.size());
+        assertTrue(positions.contains(new GeoPos(10, 30)));
+        assertTrue(positions.contains(new GeoPos(20, 40)));
+        assertTrue(positions.contains(new GeoPos(20, 50)));
+    }
+
+    @Test
+    public void testGetNameFor() throws Exception {
+        assertEquals("Name 2", insituSource.getNameFor(new GeoPos(20, 40)));
+        assertEquals("Name 3", insituSource.getNameFor(new GeoPos(20, 50)));
+        assertEquals("", insituSource.getNameFor(new GeoPos(15, 35)));
+    }
+
     private Date getDate(String dateString) throws ParseException {
         return dateFormat.parse(dateString);
     }
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.timeseries.export.animations;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+
+import static org.junit.Assert.*;
+
+public class GifFrameRendererTest {
+
+    @Test
+    public void testToIndexedImageKeepsPaletteColours() {
+        final BufferedImage argbImage = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 16; x++) {
+                // 255 grey levels plus a transparent no-data pixel
+                final int grey = 16 * y + x - 1;
+                argbImage.setRGB(x, y, x == 0 && y == 0 ? 0 : 0xFF000000 | grey << 16 | grey << 8 | grey);
+            }
+        }
+
+        final BufferedImage indexedImage = GifFrameRenderer.toIndexedImage(argbImage);
+
+        final IndexColorModel colorModel = (IndexColorModel) indexedImage.getColorModel();
+        assertEquals(256, colorModel.getMapSize());
+        assertEquals(0, colorModel.getTransparentPixel());
+        assertEquals(0, indexedImage.getRGB(0, 0) >>> 24);
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 16; x++) {
+                if (x != 0 || y != 0) {
+                    assertEquals(argbImage.getRGB(x, y), indexedImage.getRGB(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testToIndexedImageWithTooManyColours() {
+        final BufferedImage argbImage = new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < 32; y++) {
+            for (int x = 0; x < 32; x++) {
+                argbImage.setRGB(x, y, 0xFF000000 | (8 * x) << 16 | (8 * y) << 8 | 128);
+            }
+        }
+
+        final BufferedImage indexedImage = GifFrameRenderer.toIndexedImage(argbImage);
+
+        assertEquals(-1, ((IndexColorModel) indexedImage.getColorModel()).getTransparentPixel());
+        for (int y = 0; y < 32; y++) {
+            for (int x = 0; x < 32; x++) {
+                final int expected = argbImage.getRGB(x, y);
+                final int actual = indexedImage.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    assertEquals(expected >> shift & 0xFF, actual >> shift & 0xFF, 26);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.timeseries.ui.graph;
+
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PixelStackReaderTest {
+
+    private List<Band> bands;
+
+    @Before
+    public void setUp() throws Exception {
+        final Product product = new Product("P", "T", 6, 4);
+        final Band[] bandArray = new Band[3];
+        for (int b = 0; b < bandArray.length; b++) {
+            bandArray[b] = product.addBand("chl_2003040" + (b + 1), ProductData.TYPE_INT16);
+            final short[] data = new short[6 * 4];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (short) (100 * b + i);
+            }
+            bandArray[b].setData(ProductData.createInstance(data));
+        }
+        bandArray[0].setScalingFactor(0.5);
+        bandArray[2].setNoDataValue(-1);
+        bandArray[2].setValidPixelExpression("X < 5");
+        bands = Arrays.asList(bandArray);
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        final PixelStackReader reader = new PixelStackReader();
+        final double[][] values = reader.read(Arrays.asList(new PixelStackReader.Stack(bands, 2, 1, 0),
+                                                            new PixelStackReader.Stack(bands, 5, 3, 0),
+                                                            new PixelStackReader.Stack(bands, 6, 0, 0)));
+
+        assertArrayEquals(new double[]{4, 108, 208}, values[0], 1.0e-6);
+        // excluded by the valid-pixel expression of the third band
+        assertArrayEquals(new double[]{11.5, 123, -1}, values[1], 1.0e-6);
+        // outside of the bands
+        assertArrayEquals(new double[]{Double.NaN, Double.NaN, Double.NaN}, values[2], 1.0e-6);
+    }
+
+    @Test
+    public void testStacksAreCached() throws Exception {
+        final PixelStackReader reader = new PixelStackReader();
+        final double[] values = reader.read(Arrays.asList(new PixelStackReader.Stack(bands, 3, 0, 0)))[0];
+        assertSame(values, reader.read(Arrays.asList(new PixelStackReader.Stack(bands, 3, 0, 0)))[0]);
+        assertNotSame(values, reader.read(Arrays.asList(new PixelStackReader.Stack(bands.subList(0, 2), 3, 0, 0)))[0]);
+
+        reader.clear();
+        assertNotSame(values, reader.read(Arrays.asList(new PixelStackReader.Stack(bands, 3, 0, 0)))[0]);
+    }
+}
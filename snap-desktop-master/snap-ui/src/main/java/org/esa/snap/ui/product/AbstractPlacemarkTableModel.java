@@ -25,9 +25,11 @@ import org.esa.snap.core.datamodel.PlacemarkDescriptor;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.datamodel.ProductNodeEvent;
 import org.esa.snap.core.datamodel.ProductNodeListenerAdapter;
+import org.esa.snap.core.datamodel.RasterDataNode;
 import org.esa.snap.core.datamodel.TiePointGrid;
 import org.esa.snap.core.util.math.MathUtils;
 
+import javax.swing.event.TableModelEvent;
 import javax.swing.table.DefaultTableModel;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -44,6 +46,7 @@ public abstract class AbstractPlacemarkTableModel extends DefaultTableModel {
 
     private final PlacemarkListener placemarkListener;
     private final ArrayList<Placemark> placemarkList = new ArrayList<>(10);
+    private final PlacemarkValueCache valueCache;
 
     protected AbstractPlacemarkTableModel(PlacemarkDescriptor placemarkDescriptor, Product product, Band[] selectedBands,
                                           TiePointGrid[] selectedGrids) {
@@ -52,10 +55,15 @@ public abstract class AbstractPlacemarkTableModel extends DefaultTableModel {
         initSelectedBands(selectedBands);
         initSelectedGrids(selectedGrids);
         placemarkListener = new PlacemarkListener();
+        valueCache = new PlacemarkValueCache((rasterIndex, firstRow, lastRow) -> {
+            final int column = getStandardColumnNames().length + rasterIndex;
+            fireTableChanged(new TableModelEvent(this, firstRow, lastRow, column));
+        });
         if (product != null) {
             product.addProductNodeListener(placemarkListener);
         }
         initPlacemarkList(product);
+        resetValueCache();
     }
 
     public Placemark[] getPlacemarks() {
@@ -90,6 +98,7 @@ public abstract class AbstractPlacemarkTableModel extends DefaultTableModel {
         initPlacemarkList(this.product);
         selectedBands = new Band[0];
         selectedGrids = new TiePointGrid[0];
+        resetValueCache();
         fireTableStructureChanged();
     }
 
@@ -99,6 +108,7 @@ public abstract class AbstractPlacemarkTableModel extends DefaultTableModel {
 
     public void setSelectedBands(Band[] selectedBands) {
         this.selectedBands = selectedBands != null ? selectedBands : new Band[0];
+        resetValueCache();
         fireTableStructureChanged();
     }
 
@@ -108,12 +118,14 @@ public abstract class AbstractPlacemarkTableModel extends DefaultTableModel {
 
     public void setSelectedGrids(TiePointGrid[] selectedGrids) {
         this.selectedGrids = selectedGrids != null ? selectedGrids : new TiePointGrid[0];
+        resetValueCache();
         fireTableStructureChanged();
     }
 
     public boolean addPlacemark(Placemark placemark) {
         if (placemarkList.add(placemark)) {
             final int insertedRowIndex = placemarkList.indexOf(placemark);
+            resetValueCache();
             fireTableRowsInserted(insertedRowIndex, insertedRowIndex);
             return true;
         }
@@ -124,6 +136,7 @@ public abstract class AbstractPlacemarkTableModel extends DefaultTableModel {
         final int index = placemarkList.indexOf(placemark);
         if (index != -1) {
             placemarkList.remove(placemark);
+            resetValueCache();
             fireTableRowsDeleted(index, index);
             return true;
         }
@@ -188,19 +201,38 @@ public abstract class AbstractPlacemarkTableModel extends DefaultTableModel {
         return Object.class;
     }
 
+    /**
+     * Returns the value of a cell. The values of the band and tie-point grid columns are loaded in the background,
+     * a placeholder is returned until they are available.
+     */
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
         if (columnIndex < getStandardColumnNames().length) {
             return getStandardColumnValueAt(rowIndex, columnIndex);
         }
+        final int index = columnIndex - getStandardColumnNames().length;
+        if (index < getNumSelectedBands() + selectedGrids.length) {
+            return valueCache.getValue(rowIndex, index);
+        }
+        return "";
+    }
 
-        final Placemark placemark = placemarkList.get(rowIndex);
-        int index = columnIndex - getStandardColumnNames().length;
-        PixelPos pixelPos = placemark.getPixelPos();
+    /**
+     * Returns the value of a cell like {@link #getValueAt(int, int)}, but reads band and tie-point grid values
+     * which have not been loaded yet directly from the raster instead of returning a placeholder.
+     */
+    public Object readValueAt(int rowIndex, int columnIndex) {
+        final Object value = getValueAt(rowIndex, columnIndex);
+        if (value != PlacemarkValueCache.LOADING) {
+            return value;
+        }
+        final int index = columnIndex - getStandardColumnNames().length;
+        final RasterDataNode raster = index < getNumSelectedBands() ? selectedBands[index]
+                                                                    : selectedGrids[index - getNumSelectedBands()];
+        final PixelPos pixelPos = placemarkList.get(rowIndex).getPixelPos();
         if (pixelPos == null) {
-            return "No-data";
+            return PlacemarkValueCache.NO_DATA;
         }
-
         final int x = MathUtils.floorInt(pixelPos.getX());
         final int y = MathUtils.floorInt(pixelPos.getY());
         if (product != null) {
@@ -208,37 +240,19 @@ public abstract class AbstractPlacemarkTableModel extends DefaultTableModel {
             final int height = product.getSceneRasterHeight();
 
             if (x < 0 || x >= width || y < 0 || y >= height) {
-                return "No-data";
+                return PlacemarkValueCache.NO_DATA;
             }
         }
-
-        if (index < getNumSelectedBands()) {
-            final Band band = selectedBands[index];
-            if (band.isPixelValid(x, y)) {
-                try {
-                    float[] value = null;
-                    value = band.readPixels(x, y, 1, 1, value, ProgressMonitor.NULL);
-                    return value[0];
-                } catch (IOException ignored) {
-                    return "I/O-error";
-                }
-            } else {
-                return "NaN";
-            }
+        if (raster instanceof Band && !raster.isPixelValid(x, y)) {
+            return PlacemarkValueCache.INVALID;
         }
-        index -= getNumSelectedBands();
-        if (index < selectedGrids.length) {
-            final TiePointGrid grid = selectedGrids[index];
-            try {
-                float[] value = null;
-                value = grid.readPixels(x, y, 1, 1, value, ProgressMonitor.NULL);
-                return value[0];
-            } catch (IOException ignored) {
-                return "I/O-error";
-            }
+        try {
+            float[] value = null;
+            value = raster.readPixels(x, y, 1, 1, value, ProgressMonitor.NULL);
+            return value[0];
+        } catch (IOException ignored) {
+            return PlacemarkValueCache.IO_ERROR;
         }
-
-        return "";
     }
 
     @Override
@@ -273,6 +287,7 @@ public abstract class AbstractPlacemarkTableModel extends DefaultTableModel {
         selectedBands = null;
         selectedGrids = null;
         placemarkList.clear();
+        valueCache.reset(new Placemark[0], new RasterDataNode[0]);
     }
 
     protected void setGeoPosLat(Object lat, Placemark placemark) {
@@ -310,6 +325,13 @@ public abstract class AbstractPlacemarkTableModel extends DefaultTableModel {
         }
     }
 
+    private void resetValueCache() {
+        final RasterDataNode[] rasters = new RasterDataNode[getNumSelectedBands() + selectedGrids.length];
+        System.arraycopy(selectedBands, 0, rasters, 0, selectedBands.length);
+        System.arraycopy(selectedGrids, 0, rasters, selectedBands.length, selectedGrids.length);
+        valueCache.reset(getPlacemarks(), rasters);
+    }
+
     private int getNumSelectedBands() {
         return selectedBands != null ? selectedBands.length : 0;
     }
@@ -318,32 +340,19 @@ public abstract class AbstractPlacemarkTableModel extends DefaultTableModel {
 
         @Override
         public void nodeChanged(ProductNodeEvent event) {
+            if (event.getSourceNode() instanceof RasterDataNode && selectedBands != null
+                && !RasterDataNode.PROPERTY_NAME_IMAGE_INFO.equals(event.getPropertyName())
+                && !RasterDataNode.PROPERTY_NAME_STX.equals(event.getPropertyName())) {
+                // e.g. the valid-pixel expression or the scaling has changed
+                valueCache.rasterChanged((RasterDataNode) event.getSourceNode());
+            }
             fireTableDataChanged(event);
         }
 
         @Override
         public void nodeDataChanged(ProductNodeEvent event) {
-            if (event.getSourceNode() instanceof Band) {
-                Band sourceBand = (Band) event.getSourceNode();
-                if (selectedBands != null) {
-                    for (Band band : selectedBands) {
-                        if (band == sourceBand) {
-                            AbstractPlacemarkTableModel.this.fireTableDataChanged();
-                            return;
-                        }
-                    }
-                }
-            }
-            if (event.getSourceNode() instanceof TiePointGrid) {
-                TiePointGrid sourceTPG = (TiePointGrid) event.getSourceNode();
-                if (selectedGrids != null) {
-                    for (TiePointGrid tpg : selectedGrids) {
-                        if (tpg == sourceTPG) {
-                            AbstractPlacemarkTableModel.this.fireTableDataChanged();
-                            return;
-                        }
-                    }
-                }
+            if (event.getSourceNode() instanceof RasterDataNode && selectedBands != null) {
+                valueCache.rasterChanged((RasterDataNode) event.getSourceNode());
             }
         }
 
@@ -353,6 +362,7 @@ public abstract class AbstractPlacemarkTableModel extends DefaultTableModel {
                 // BEAM-1117: VISAT slows down using pins with GCP geo-coded images
                 final int index = placemarkList.indexOf(placemark);
                 if (index != -1) {
+                    valueCache.placemarkChanged(index);
                     AbstractPlacemarkTableModel.this.fireTableRowsUpdated(index, index);
                 }
             }
@@ -0,0 +1,394 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.ui.product;
+
+import com.bc.ceres.core.ProgressMonitor;
+import com.bc.ceres.glevel.MultiLevelImage;
+import com.bc.ceres.glevel.support.AbstractMultiLevelSource;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.ColorPaletteDef;
+import org.esa.snap.core.datamodel.ImageInfo;
+import org.esa.snap.core.datamodel.RasterDataNode;
+import org.esa.snap.core.datamodel.Stx;
+import org.esa.snap.core.image.BandImageMultiLevelSource;
+import org.esa.snap.core.image.ImageManager;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.JAI;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.PointOpImage;
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The multi-level source of the coloured image of a single raster, which separates the samples of the raster from
+ * their colours.
+ * <p>
+ * At each level the geophysical samples are binned once into 16-bit sample indexes spanning the value range of the
+ * raster and the display range of the image info, index 0 being reserved for invalid pixels. These sample images are
+ * kept across calls to {@link #reset()}, so that a change of the {@link ImageInfo} only recomputes a lookup table of
+ * 65536 colours, which is applied to the cached sample tiles when they are drawn. The samples are binned again if
+ * the display range is moved beyond the binned range, or if it is narrowed to so few bins that its colours would be
+ * lost, in which case the bins are spread around the display range. Images whose colours can't be expressed as such a lookup table,
+ * e.g. histogram matched or index coded ones, are taken from the given {@link BandImageMultiLevelSource}.
+ */
+public class ColorLookupMultiLevelSource extends AbstractMultiLevelSource {
+
+    private static final int NUM_BINS = 65535;
+    // the binned range is widened by this fraction beyond the display range, so that moving a slider past the
+    // range doesn't rebin the samples at every step
+    private static final double RANGE_MARGIN = 0.1;
+    // the minimum number of bins the display range is spread over, which resolves the colours of a palette
+    private static final int MIN_DISPLAY_BINS = 256;
+
+    private final RasterDataNode raster;
+    private final BandImageMultiLevelSource colorSource;
+    private final Map<Integer, PlanarImage> sampleImages = new HashMap<>();
+    private MultiLevelImage sampledImage;
+    private MultiLevelImage sampledValidMaskImage;
+    private Stx sampledStx;
+    private double min;
+    private double max;
+    private volatile int[] lookupTable;
+
+    /**
+     * @param raster      the raster
+     * @param colorSource the source of the coloured images of the raster, which also holds its image info
+     */
+    public ColorLookupMultiLevelSource(RasterDataNode raster, BandImageMultiLevelSource colorSource) {
+        super(colorSource.getModel());
+        this.raster = raster;
+        this.colorSource = colorSource;
+        invalidateSamples();
+        updateLookupTable();
+    }
+
+    public BandImageMultiLevelSource getColorSource() {
+        return colorSource;
+    }
+
+    public ImageInfo getImageInfo() {
+        return colorSource.getImageInfo();
+    }
+
+    /**
+     * Sets the image info and recomputes the colour lookup table. The images are recoloured after the
+     * next {@link #reset()}, which keeps the sampled tiles.
+     *
+     * @param imageInfo the image info
+     */
+    public void setImageInfo(ImageInfo imageInfo) {
+        colorSource.setImageInfo(imageInfo);
+        updateLookupTable();
+    }
+
+    /**
+     * Discards the sampled tiles, e.g. after the data of the raster has changed.
+     */
+    public void invalidateSamples() {
+        synchronized (sampleImages) {
+            sampleImages.values().forEach(PlanarImage::dispose);
+            sampleImages.clear();
+            updateSamples();
+        }
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        colorSource.reset();
+        if (isSamplingOutdated()) {
+            invalidateSamples();
+        }
+        updateLookupTable();
+    }
+
+    @Override
+    protected RenderedImage createImage(int level) {
+        final int[] lookupTable = this.lookupTable;
+        if (lookupTable == null) {
+            return colorSource.getImage(level);
+        }
+        final RenderingHints configuration = new RenderingHints(JAI.KEY_TILE_CACHE, null);
+        return new ColorLookupOpImage(getSampleImage(level), lookupTable, configuration);
+    }
+
+    private PlanarImage getSampleImage(int level) {
+        synchronized (sampleImages) {
+            PlanarImage sampleImage = sampleImages.get(level);
+            if (sampleImage == null) {
+                final RenderedImage image = sampledImage.getImage(level);
+                final RenderedImage validMaskImage = sampledValidMaskImage != null
+                                                     ? sampledValidMaskImage.getImage(level) : null;
+                sampleImage = validMaskImage != null ? new SampleBinOpImage(image, validMaskImage, min, max)
+                                                     : new SampleBinOpImage(image, min, max);
+                sampleImages.put(level, sampleImage);
+            }
+            return sampleImage;
+        }
+    }
+
+    // the raster replaces its images and statistics when its data or its valid pixels change
+    private boolean isSamplingOutdated() {
+        synchronized (sampleImages) {
+            return sampledImage != raster.getGeophysicalImage()
+                   || sampledValidMaskImage != raster.getValidMaskImage()
+                   || sampledStx != getStx()
+                   || !isDisplayRangeBinned(getImageInfo(), min, max)
+                   || !isDisplayRangeResolved(getImageInfo(), min, max);
+        }
+    }
+
+    private void updateSamples() {
+        synchronized (sampleImages) {
+            sampledImage = raster.getGeophysicalImage();
+            sampledValidMaskImage = raster.getValidMaskImage();
+            sampledStx = getStx();
+            final double[] range = getBinnedRange(sampledStx.getMinimum(), sampledStx.getMaximum(), getImageInfo());
+            min = range[0];
+            max = range[1];
+        }
+    }
+
+    /**
+     * The range of the samples to be binned. The statistics may be approximate and miss extreme values, which
+     * are clamped into the edge bins. This is only correct beyond the display range, so the binned range also
+     * covers the display range. If the display range would be spread over fewer than {@code MIN_DISPLAY_BINS}
+     * bins, only the display range and a margin around it are binned, the samples beyond being clamped.
+     *
+     * @return the minimum and the maximum of the binned range
+     */
+    static double[] getBinnedRange(double stxMin, double stxMax, ImageInfo imageInfo) {
+        double min = stxMin;
+        double max = stxMax;
+        if (imageInfo != null && !isDisplayRangeBinned(imageInfo, min, max)) {
+            final ColorPaletteDef paletteDef = imageInfo.getColorPaletteDef();
+            final double displayMin = paletteDef.getMinDisplaySample();
+            final double displayMax = paletteDef.getMaxDisplaySample();
+            final double margin = RANGE_MARGIN * (Math.max(max, displayMax) - Math.min(min, displayMin));
+            if (displayMin < min) {
+                min = displayMin - margin;
+            }
+            if (displayMax > max) {
+                max = displayMax + margin;
+            }
+        }
+        if (imageInfo != null && !isDisplayRangeResolved(imageInfo, min, max)) {
+            final ColorPaletteDef paletteDef = imageInfo.getColorPaletteDef();
+            final double displayMin = paletteDef.getMinDisplaySample();
+            final double displayMax = paletteDef.getMaxDisplaySample();
+            final double margin = RANGE_MARGIN * (displayMax - displayMin);
+            min = displayMin - margin;
+            max = displayMax + margin;
+        }
+        return new double[]{min, max};
+    }
+
+    static boolean isDisplayRangeBinned(ImageInfo imageInfo, double min, double max) {
+        if (imageInfo == null) {
+            return true;
+        }
+        final ColorPaletteDef paletteDef = imageInfo.getColorPaletteDef();
+        return !(paletteDef.getMinDisplaySample() < min) && !(paletteDef.getMaxDisplaySample() > max);
+    }
+
+    static boolean isDisplayRangeResolved(ImageInfo imageInfo, double min, double max) {
+        if (imageInfo == null || !(max > min)) {
+            return true;
+        }
+        final ColorPaletteDef paletteDef = imageInfo.getColorPaletteDef();
+        final double displayRange = paletteDef.getMaxDisplaySample() - paletteDef.getMinDisplaySample();
+        return !(displayRange > 0.0) || displayRange * NUM_BINS / (max - min) >= MIN_DISPLAY_BINS;
+    }
+
+    private Stx getStx() {
+        return raster.isStxSet() ? raster.getStx() : raster.getStx(false, ProgressMonitor.NULL);
+    }
+
+    private void updateLookupTable() {
+        final ImageInfo imageInfo = getImageInfo();
+        lookupTable = isLookupApplicable(imageInfo) ? createLookupTable(imageInfo, min, max) : null;
+    }
+
+    private boolean isLookupApplicable(ImageInfo imageInfo) {
+        if (imageInfo == null || !isFinite(min) || !isFinite(max)) {
+            return false;
+        }
+        final ImageInfo.HistogramMatching histogramMatching = imageInfo.getHistogramMatching();
+        if (histogramMatching != null && histogramMatching != ImageInfo.HistogramMatching.None) {
+            return false;
+        }
+        if (imageInfo.isLogScaled() && imageInfo.getColorPaletteDef().getMinDisplaySample() <= 0.0) {
+            return false;
+        }
+        if (raster instanceof Band && ((Band) raster).getIndexCoding() != null) {
+            return false;
+        }
+        // uncertainty visualisation blends the colours with another raster
+        final RasterDataNode uncertaintyBand = ImageManager.getUncertaintyBand(raster);
+        if (uncertaintyBand != null && uncertaintyBand.getImageInfo() != null) {
+            final ImageInfo.UncertaintyVisualisationMode mode =
+                    uncertaintyBand.getImageInfo().getUncertaintyVisualisationMode();
+            return mode == null || mode == ImageInfo.UncertaintyVisualisationMode.None;
+        }
+        return true;
+    }
+
+    private static boolean isFinite(double value) {
+        return !Double.isNaN(value) && !Double.isInfinite(value);
+    }
+
+    /**
+     * Creates the ARGB colours of the sample bins, index 0 being the colour of invalid pixels.
+     */
+    static int[] createLookupTable(ImageInfo imageInfo, double min, double max) {
+        final Color[] palette = ImageManager.createColorPalette(imageInfo);
+        final ColorPaletteDef paletteDef = imageInfo.getColorPaletteDef();
+        final boolean logScaled = imageInfo.isLogScaled();
+        final double s1 = logScaled ? Math.log10(paletteDef.getMinDisplaySample()) : paletteDef.getMinDisplaySample();
+        final double s2 = logScaled ? Math.log10(paletteDef.getMaxDisplaySample()) : paletteDef.getMaxDisplaySample();
+        final int[] colors = new int[palette.length];
+        for (int i = 0; i < palette.length; i++) {
+            colors[i] = palette[i].getRGB();
+        }
+
+        final int[] lookupTable = new int[NUM_BINS + 1];
+        lookupTable[0] = imageInfo.getNoDataColor().getRGB();
+        final double binWidth = (max - min) / NUM_BINS;
+        final double paletteScale = s2 > s1 ? (palette.length - 1) / (s2 - s1) : 0.0;
+        for (int bin = 1; bin <= NUM_BINS; bin++) {
+            double sample = min + (bin - 0.5) * binWidth;
+            if (logScaled) {
+                sample = sample > 0.0 ? Math.log10(sample) : Double.NEGATIVE_INFINITY;
+            }
+            final double index = (sample - s1) * paletteScale;
+            if (index <= 0.0) {
+                lookupTable[bin] = colors[0];
+            } else if (index >= palette.length - 1) {
+                lookupTable[bin] = colors[palette.length - 1];
+            } else {
+                lookupTable[bin] = colors[(int) Math.round(index)];
+            }
+        }
+        return lookupTable;
+    }
+
+    /**
+     * Bins the samples of the source, 0 for invalid pixels and 1 to {@code NUM_BINS} for the values
+     * between the minimum and the maximum.
+     */
+    static int getBin(double sample, double min, double scale) {
+        if (Double.isNaN(sample)) {
+            return 0;
+        }
+        final double bin = (sample - min) * scale;
+        if (bin <= 0.0) {
+            return 1;
+        }
+        return bin >= NUM_BINS ? NUM_BINS : 1 + (int) bin;
+    }
+
+    private static ImageLayout createLayout(RenderedImage source, SampleModel sampleModel, ColorModel colorModel) {
+        return new ImageLayout(source.getMinX(), source.getMinY(), source.getWidth(), source.getHeight(),
+                               source.getTileGridXOffset(), source.getTileGridYOffset(),
+                               source.getTileWidth(), source.getTileHeight(),
+                               sampleModel, colorModel);
+    }
+
+    private static class SampleBinOpImage extends PointOpImage {
+
+        private final boolean masked;
+        private final double min;
+        private final double scale;
+
+        private SampleBinOpImage(RenderedImage source, double min, double max) {
+            super(source, createSampleLayout(source), null, true);
+            this.masked = false;
+            this.min = min;
+            this.scale = getScale(min, max);
+        }
+
+        private SampleBinOpImage(RenderedImage source, RenderedImage validMaskImage, double min, double max) {
+            super(source, validMaskImage, createSampleLayout(source), null, true);
+            this.masked = true;
+            this.min = min;
+            this.scale = getScale(min, max);
+        }
+
+        private static ImageLayout createSampleLayout(RenderedImage source) {
+            final int tileWidth = source.getTileWidth();
+            return createLayout(source, new PixelInterleavedSampleModel(DataBuffer.TYPE_USHORT, tileWidth,
+                                                                        source.getTileHeight(), 1, tileWidth,
+                                                                        new int[]{0}), null);
+        }
+
+        private static double getScale(double min, double max) {
+            return max > min ? NUM_BINS / (max - min) : 0.0;
+        }
+
+        @Override
+        protected void computeRect(Raster[] sources, WritableRaster dest, Rectangle destRect) {
+            final int length = destRect.width * destRect.height;
+            final double[] samples = sources[0].getSamples(destRect.x, destRect.y, destRect.width, destRect.height,
+                                                           0, new double[length]);
+            final int[] valid = masked ? sources[1].getSamples(destRect.x, destRect.y, destRect.width,
+                                                               destRect.height, 0, new int[length]) : null;
+            final int[] bins = new int[length];
+            for (int i = 0; i < length; i++) {
+                bins[i] = valid != null && valid[i] == 0 ? 0 : getBin(samples[i], min, scale);
+            }
+            dest.setSamples(destRect.x, destRect.y, destRect.width, destRect.height, 0, bins);
+        }
+    }
+
+    private static class ColorLookupOpImage extends PointOpImage {
+
+        private final int[] lookupTable;
+
+        private ColorLookupOpImage(RenderedImage source, int[] lookupTable, Map configuration) {
+            super(source,
+                  createLayout(source, new SinglePixelPackedSampleModel(DataBuffer.TYPE_INT,
+                                                                        source.getTileWidth(), source.getTileHeight(),
+                                                                        new int[]{0xff0000, 0xff00, 0xff, 0xff000000}),
+                               ColorModel.getRGBdefault()),
+                  configuration, true);
+            this.lookupTable = lookupTable;
+        }
+
+        @Override
+        protected void computeRect(Raster[] sources, WritableRaster dest, Rectangle destRect) {
+            final int length = destRect.width * destRect.height;
+            final int[] bins = sources[0].getSamples(destRect.x, destRect.y, destRect.width, destRect.height,
+                                                     0, new int[length]);
+            for (int i = 0; i < length; i++) {
+                bins[i] = lookupTable[bins[i]];
+            }
+            dest.setDataElements(destRect.x, destRect.y, destRect.width, destRect.height, bins);
+        }
+    }
+}
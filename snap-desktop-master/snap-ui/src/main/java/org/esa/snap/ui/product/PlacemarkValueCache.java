@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.ui.product;
+
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.PixelPos;
+import org.esa.snap.core.datamodel.Placemark;
+import org.esa.snap.core.datamodel.RasterDataNode;
+import org.esa.snap.core.util.math.MathUtils;
+
+import javax.swing.SwingUtilities;
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Caches the raster values at the pixel positions of placemarks. The values are loaded on a background thread,
+ * grouped by the image tile containing the placemarks, so that every tile is fetched only once per raster.
+ * Loaded values are merged into the cache on the event dispatch thread and announced to the {@link Listener}.
+ * <p>
+ * Until a value has been loaded, {@link #getValue(int, int)} returns {@link #LOADING}.
+ */
+class PlacemarkValueCache {
+
+    static final String LOADING = "...";
+    static final String NO_DATA = "No-data";
+    static final String INVALID = "NaN";
+    static final String IO_ERROR = "I/O-error";
+
+    private static final byte STATE_UNKNOWN = 0;
+    private static final byte STATE_VALUE = 1;
+    private static final byte STATE_NO_DATA = 2;
+    private static final byte STATE_INVALID = 3;
+    private static final byte STATE_IO_ERROR = 4;
+
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "Placemark value loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Notified on the event dispatch thread whenever values have been loaded.
+     */
+    interface Listener {
+
+        void valuesLoaded(int rasterIndex, int firstRow, int lastRow);
+    }
+
+    private final Listener listener;
+
+    private Placemark[] placemarks;
+    private RasterDataNode[] rasters;
+    private int[] pixelX;
+    private int[] pixelY;
+    private float[][] values;
+    private byte[][] states;
+    private volatile int generation;
+
+    PlacemarkValueCache(Listener listener) {
+        this.listener = listener;
+        this.placemarks = new Placemark[0];
+        this.rasters = new RasterDataNode[0];
+        this.pixelX = new int[0];
+        this.pixelY = new int[0];
+        this.values = new float[0][];
+        this.states = new byte[0][];
+    }
+
+    /**
+     * Resets the cache to the given placemarks (the table rows) and rasters (the value columns). Values already
+     * loaded for placemarks and rasters which are kept are retained, all others are loaded.
+     */
+    synchronized void reset(Placemark[] newPlacemarks, RasterDataNode[] newRasters) {
+        final Map<Placemark, Integer> oldRows = new IdentityHashMap<>();
+        for (int i = 0; i < placemarks.length; i++) {
+            oldRows.put(placemarks[i], i);
+        }
+        final Map<RasterDataNode, Integer> oldColumns = new IdentityHashMap<>();
+        for (int i = 0; i < rasters.length; i++) {
+            oldColumns.put(rasters[i], i);
+        }
+
+        final int[] newPixelX = new int[newPlacemarks.length];
+        final int[] newPixelY = new int[newPlacemarks.length];
+        for (int row = 0; row < newPlacemarks.length; row++) {
+            setPixel(newPlacemarks[row], row, newPixelX, newPixelY);
+        }
+        final float[][] newValues = new float[newRasters.length][newPlacemarks.length];
+        final byte[][] newStates = new byte[newRasters.length][newPlacemarks.length];
+        for (int column = 0; column < newRasters.length; column++) {
+            final Integer oldColumn = oldColumns.get(newRasters[column]);
+            if (oldColumn == null) {
+                continue;
+            }
+            for (int row = 0; row < newPlacemarks.length; row++) {
+                final Integer oldRow = oldRows.get(newPlacemarks[row]);
+                if (oldRow != null && pixelX[oldRow] == newPixelX[row] && pixelY[oldRow] == newPixelY[row]) {
+                    newValues[column][row] = values[oldColumn][oldRow];
+                    newStates[column][row] = states[oldColumn][oldRow];
+                }
+            }
+        }
+
+        generation++;
+        placemarks = newPlacemarks;
+        rasters = newRasters;
+        pixelX = newPixelX;
+        pixelY = newPixelY;
+        values = newValues;
+        states = newStates;
+        for (int column = 0; column < rasters.length; column++) {
+            loadUnknown(column);
+        }
+    }
+
+    /**
+     * Reloads the values of a placemark if its pixel position has changed.
+     */
+    synchronized void placemarkChanged(int row) {
+        if (row < 0 || row >= placemarks.length) {
+            return;
+        }
+        final int oldX = pixelX[row];
+        final int oldY = pixelY[row];
+        setPixel(placemarks[row], row, pixelX, pixelY);
+        if (pixelX[row] == oldX && pixelY[row] == oldY) {
+            return;
+        }
+        for (int column = 0; column < rasters.length; column++) {
+            states[column][row] = STATE_UNKNOWN;
+            submit(column, new int[]{row});
+        }
+    }
+
+    /**
+     * Reloads all values of a raster, e.g. after its data or its valid-pixel expression has changed.
+     *
+     * @return {@code true} if the raster is one of the cached rasters
+     */
+    synchronized boolean rasterChanged(RasterDataNode raster) {
+        for (int column = 0; column < rasters.length; column++) {
+            if (rasters[column] == raster) {
+                Arrays.fill(states[column], STATE_UNKNOWN);
+                loadUnknown(column);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the loaded value as {@code Float}, a status text or {@link #LOADING} if the value is not available yet
+     */
+    synchronized Object getValue(int row, int rasterIndex) {
+        if (rasterIndex >= states.length || row >= states[rasterIndex].length) {
+            return LOADING;
+        }
+        switch (states[rasterIndex][row]) {
+            case STATE_VALUE:
+                return values[rasterIndex][row];
+            case STATE_NO_DATA:
+                return NO_DATA;
+            case STATE_INVALID:
+                return INVALID;
+            case STATE_IO_ERROR:
+                return IO_ERROR;
+            default:
+                return LOADING;
+        }
+    }
+
+    private void loadUnknown(int column) {
+        final byte[] columnStates = states[column];
+        int count = 0;
+        final int[] rows = new int[columnStates.length];
+        for (int row = 0; row < columnStates.length; row++) {
+            if (columnStates[row] == STATE_UNKNOWN) {
+                rows[count++] = row;
+            }
+        }
+        if (count > 0) {
+            submit(column, Arrays.copyOf(rows, count));
+        }
+    }
+
+    private void submit(int column, int[] rows) {
+        final int taskGeneration = generation;
+        final RasterDataNode raster = rasters[column];
+        final int[] x = new int[rows.length];
+        final int[] y = new int[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            x[i] = pixelX[rows[i]];
+            y[i] = pixelY[rows[i]];
+        }
+        LOADER.submit(() -> {
+            if (taskGeneration != generation) {
+                return;
+            }
+            final float[] loadedValues = new float[rows.length];
+            final byte[] loadedStates = new byte[rows.length];
+            load(raster, x, y, loadedValues, loadedStates);
+            SwingUtilities.invokeLater(() -> merge(taskGeneration, raster, column, rows, loadedValues, loadedStates));
+        });
+    }
+
+    private void merge(int taskGeneration, RasterDataNode raster, int column, int[] rows,
+                       float[] loadedValues, byte[] loadedStates) {
+        int firstRow = Integer.MAX_VALUE;
+        int lastRow = -1;
+        synchronized (this) {
+            if (taskGeneration != generation || rasters[column] != raster) {
+                return;
+            }
+            for (int i = 0; i < rows.length; i++) {
+                values[column][rows[i]] = loadedValues[i];
+                states[column][rows[i]] = loadedStates[i];
+                firstRow = Math.min(firstRow, rows[i]);
+                lastRow = Math.max(lastRow, rows[i]);
+            }
+        }
+        if (lastRow >= 0) {
+            listener.valuesLoaded(column, firstRow, lastRow);
+        }
+    }
+
+    static void load(RasterDataNode raster, int[] x, int[] y, float[] values, byte[] states) {
+        final RenderedImage image = raster.getGeophysicalImage();
+        // tie-point grids have always been shown without applying a valid mask
+        final RenderedImage validMaskImage = raster instanceof Band ? raster.getValidMaskImage() : null;
+        final Rectangle bounds = new Rectangle(image.getMinX(), image.getMinY(), image.getWidth(), image.getHeight());
+
+        // key = tile index in the upper, point index in the lower 32 bits
+        final long[] keys = new long[x.length];
+        int keyCount = 0;
+        for (int i = 0; i < x.length; i++) {
+            if (!bounds.contains(x[i], y[i])) {
+                states[i] = STATE_NO_DATA;
+                continue;
+            }
+            final int tileX = Math.floorDiv(x[i] - image.getTileGridXOffset(), image.getTileWidth());
+            final int tileY = Math.floorDiv(y[i] - image.getTileGridYOffset(), image.getTileHeight());
+            final long tileIndex = (long) tileY * image.getNumXTiles() + tileX;
+            keys[keyCount++] = (tileIndex << 32) | i;
+        }
+        Arrays.sort(keys, 0, keyCount);
+
+        int start = 0;
+        while (start < keyCount) {
+            int end = start + 1;
+            while (end < keyCount && (keys[end] >>> 32) == (keys[start] >>> 32)) {
+                end++;
+            }
+            final Rectangle region = new Rectangle(x[(int) keys[start]], y[(int) keys[start]], 1, 1);
+            for (int k = start + 1; k < end; k++) {
+                region.add(new Rectangle(x[(int) keys[k]], y[(int) keys[k]], 1, 1));
+            }
+            try {
+                final Raster data = image.getData(region);
+                final Raster validData = validMaskImage != null ? validMaskImage.getData(region) : null;
+                for (int k = start; k < end; k++) {
+                    final int i = (int) keys[k];
+                    if (validData != null && validData.getSample(x[i], y[i], 0) == 0) {
+                        states[i] = STATE_INVALID;
+                    } else {
+                        values[i] = data.getSampleFloat(x[i], y[i], 0);
+                        states[i] = STATE_VALUE;
+                    }
+                }
+            } catch (RuntimeException e) {
+                for (int k = start; k < end; k++) {
+                    states[(int) keys[k]] = STATE_IO_ERROR;
+                }
+            }
+            start = end;
+        }
+    }
+
+    private static void setPixel(Placemark placemark, int row, int[] pixelX, int[] pixelY) {
+        final PixelPos pixelPos = placemark.getPixelPos();
+        if (pixelPos == null || !pixelPos.isValid()) {
+            pixelX[row] = -1;
+            pixelY[row] = -1;
+        } else {
+            pixelX[row] = MathUtils.floorInt(pixelPos.getX());
+            pixelY[row] = MathUtils.floorInt(pixelPos.getY());
+        }
+    }
+}
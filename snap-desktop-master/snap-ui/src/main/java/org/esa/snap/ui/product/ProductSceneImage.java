@@ -54,6 +54,7 @@ public class ProductSceneImage implements ProductLayerContext {
     private RasterDataNode[] rasters;
     private Layer rootLayer;
     private BandImageMultiLevelSource bandImageMultiLevelSource;
+    private ColorLookupMultiLevelSource colorLookupMultiLevelSource;
 
     /**
      * Creates a color indexed product scene for the given product raster.
@@ -67,6 +68,7 @@ public class ProductSceneImage implements ProductLayerContext {
              new RasterDataNode[]{raster},
              configuration);
         bandImageMultiLevelSource = BandImageMultiLevelSource.create(raster, pm);
+        colorLookupMultiLevelSource = new ColorLookupMultiLevelSource(raster, bandImageMultiLevelSource);
         initRootLayer();
     }
 
@@ -81,6 +83,7 @@ public class ProductSceneImage implements ProductLayerContext {
              new RasterDataNode[]{raster},
              view.getSceneImage().getConfiguration());
         bandImageMultiLevelSource = view.getSceneImage().getBandImageMultiLevelSource();
+        colorLookupMultiLevelSource = view.getSceneImage().colorLookupMultiLevelSource;
         initRootLayer();
     }
 
@@ -123,7 +126,11 @@ public class ProductSceneImage implements ProductLayerContext {
     }
 
     public void setImageInfo(ImageInfo imageInfo) {
-        bandImageMultiLevelSource.setImageInfo(imageInfo);
+        if (colorLookupMultiLevelSource != null) {
+            colorLookupMultiLevelSource.setImageInfo(imageInfo);
+        } else {
+            bandImageMultiLevelSource.setImageInfo(imageInfo);
+        }
     }
 
     public RasterDataNode[] getRasters() {
@@ -261,7 +268,9 @@ public class ProductSceneImage implements ProductLayerContext {
         final Layer layer;
         if (getRasters().length == 1) {
             final RasterImageLayerType type = LayerTypeRegistry.getLayerType(RasterImageLayerType.class);
-            layer = type.createLayer(getRaster(), bandImageMultiLevelSource);
+            // single band images are recoloured without recomputing their samples
+            layer = type.createLayer(getRaster(), colorLookupMultiLevelSource != null
+                                                  ? colorLookupMultiLevelSource : bandImageMultiLevelSource);
         } else {
             final RgbImageLayerType type = LayerTypeRegistry.getLayerType(RgbImageLayerType.class);
             layer = type.createLayer(getRasters(), bandImageMultiLevelSource);
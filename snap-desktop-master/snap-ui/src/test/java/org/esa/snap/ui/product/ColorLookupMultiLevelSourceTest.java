@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.ui.product;
+
+import org.esa.snap.core.datamodel.ColorPaletteDef;
+import org.esa.snap.core.datamodel.ImageInfo;
+import org.esa.snap.core.image.ImageManager;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ColorLookupMultiLevelSourceTest {
+
+    private static final double SCALE = 65535 / 100.0;
+
+    @Test
+    public void testBins() throws Exception {
+        assertEquals(0, ColorLookupMultiLevelSource.getBin(Double.NaN, 0.0, SCALE));
+        assertEquals(1, ColorLookupMultiLevelSource.getBin(-5.0, 0.0, SCALE));
+        assertEquals(1, ColorLookupMultiLevelSource.getBin(0.0, 0.0, SCALE));
+        assertEquals(32768, ColorLookupMultiLevelSource.getBin(50.0, 0.0, SCALE));
+        assertEquals(65535, ColorLookupMultiLevelSource.getBin(100.0, 0.0, SCALE));
+        assertEquals(65535, ColorLookupMultiLevelSource.getBin(200.0, 0.0, SCALE));
+    }
+
+    @Test
+    public void testLookupTable() throws Exception {
+        ImageInfo imageInfo = new ImageInfo(new ColorPaletteDef(new ColorPaletteDef.Point[]{
+                new ColorPaletteDef.Point(25.0, Color.BLACK),
+                new ColorPaletteDef.Point(75.0, Color.WHITE)
+        }));
+        imageInfo.setNoDataColor(Color.RED);
+
+        int[] lookupTable = ColorLookupMultiLevelSource.createLookupTable(imageInfo, 0.0, 100.0);
+
+        assertEquals(65536, lookupTable.length);
+        assertEquals(Color.RED.getRGB(), lookupTable[0]);
+        // the palette is clamped below and above the display range
+        assertEquals(Color.BLACK.getRGB(), lookupTable[1]);
+        assertEquals(Color.BLACK.getRGB(), lookupTable[ColorLookupMultiLevelSource.getBin(20.0, 0.0, SCALE)]);
+        assertEquals(Color.WHITE.getRGB(), lookupTable[ColorLookupMultiLevelSource.getBin(80.0, 0.0, SCALE)]);
+        assertEquals(Color.WHITE.getRGB(), lookupTable[65535]);
+        Color middle = new Color(lookupTable[ColorLookupMultiLevelSource.getBin(50.0, 0.0, SCALE)], true);
+        assertEquals(128, middle.getRed(), 2);
+    }
+
+    @Test
+    public void testBinnedRangeCoversDisplayRange() throws Exception {
+        // within the range of the statistics
+        assertArrayEquals(new double[]{0.0, 100.0},
+                          ColorLookupMultiLevelSource.getBinnedRange(0.0, 100.0, createImageInfo(25.0, 75.0)), 0.0);
+        assertArrayEquals(new double[]{0.0, 100.0},
+                          ColorLookupMultiLevelSource.getBinnedRange(0.0, 100.0, null), 0.0);
+
+        // beyond the range of approximate statistics, widened by a margin
+        double[] range = ColorLookupMultiLevelSource.getBinnedRange(0.0, 100.0, createImageInfo(-20.0, 150.0));
+        assertEquals(-20.0 - 17.0, range[0], 1e-9);
+        assertEquals(150.0 + 17.0, range[1], 1e-9);
+        assertTrue(ColorLookupMultiLevelSource.isDisplayRangeBinned(createImageInfo(-20.0, 150.0), range[0], range[1]));
+
+        range = ColorLookupMultiLevelSource.getBinnedRange(0.0, 100.0, createImageInfo(50.0, 200.0));
+        assertEquals(0.0, range[0], 0.0);
+        assertEquals(220.0, range[1], 1e-9);
+    }
+
+    @Test
+    public void testDisplayRangeBeyondBinnedRangeIsDetected() throws Exception {
+        assertTrue(ColorLookupMultiLevelSource.isDisplayRangeBinned(createImageInfo(0.0, 100.0), 0.0, 100.0));
+        assertFalse(ColorLookupMultiLevelSource.isDisplayRangeBinned(createImageInfo(-1.0, 100.0), 0.0, 100.0));
+        assertFalse(ColorLookupMultiLevelSource.isDisplayRangeBinned(createImageInfo(0.0, 101.0), 0.0, 100.0));
+    }
+
+    @Test
+    public void testSamplesBeyondApproximateStatisticsGetDisplayColours() throws Exception {
+        // the statistics have missed the samples above 100
+        final ImageInfo imageInfo = createImageInfo(0.0, 200.0);
+        final double[] range = ColorLookupMultiLevelSource.getBinnedRange(0.0, 100.0, imageInfo);
+        final double scale = 65535 / (range[1] - range[0]);
+
+        final int[] lookupTable = ColorLookupMultiLevelSource.createLookupTable(imageInfo, range[0], range[1]);
+
+        final Color colour = new Color(lookupTable[ColorLookupMultiLevelSource.getBin(150.0, range[0], scale)]);
+        assertEquals(191, colour.getRed(), 2);
+        assertEquals(Color.WHITE.getRGB(),
+                     lookupTable[ColorLookupMultiLevelSource.getBin(250.0, range[0], scale)]);
+    }
+
+    @Test
+    public void testNarrowDisplayRangeIsBinnedAroundDisplayRange() throws Exception {
+        final ImageInfo imageInfo = createImageInfo(5000.0, 5010.0);
+        assertFalse(ColorLookupMultiLevelSource.isDisplayRangeResolved(imageInfo, 0.0, 10000.0));
+
+        final double[] range = ColorLookupMultiLevelSource.getBinnedRange(0.0, 10000.0, imageInfo);
+
+        assertEquals(4999.0, range[0], 1e-9);
+        assertEquals(5011.0, range[1], 1e-9);
+        assertTrue(ColorLookupMultiLevelSource.isDisplayRangeBinned(imageInfo, range[0], range[1]));
+        assertTrue(ColorLookupMultiLevelSource.isDisplayRangeResolved(imageInfo, range[0], range[1]));
+        // the samples beyond the binned range get the colours of the palette ends
+        final int[] lookupTable = ColorLookupMultiLevelSource.createLookupTable(imageInfo, range[0], range[1]);
+        final double scale = 65535 / (range[1] - range[0]);
+        assertEquals(Color.BLACK.getRGB(), lookupTable[ColorLookupMultiLevelSource.getBin(0.0, range[0], scale)]);
+        assertEquals(Color.WHITE.getRGB(), lookupTable[ColorLookupMultiLevelSource.getBin(1e4, range[0], scale)]);
+    }
+
+    @Test
+    public void testNarrowDisplayRangeKeepsColours() throws Exception {
+        final ImageInfo imageInfo = createImageInfo(5000.0, 5010.0);
+        final int paletteSize = ImageManager.createColorPalette(imageInfo).length;
+
+        // binned over the whole range of the statistics, the display range would only cover a few bins
+        assertTrue(countColours(ColorLookupMultiLevelSource.createLookupTable(imageInfo, 0.0, 10000.0)) < 100);
+
+        final double[] range = ColorLookupMultiLevelSource.getBinnedRange(0.0, 10000.0, imageInfo);
+        final int[] lookupTable = ColorLookupMultiLevelSource.createLookupTable(imageInfo, range[0], range[1]);
+        assertEquals(paletteSize, countColours(lookupTable));
+    }
+
+    private static int countColours(int[] lookupTable) {
+        final Set<Integer> colours = new HashSet<>();
+        for (int bin = 1; bin < lookupTable.length; bin++) {
+            colours.add(lookupTable[bin]);
+        }
+        return colours.size();
+    }
+
+    private static ImageInfo createImageInfo(double min, double max) {
+        return new ImageInfo(new ColorPaletteDef(new ColorPaletteDef.Point[]{
+                new ColorPaletteDef.Point(min, Color.BLACK),
+                new ColorPaletteDef.Point(max, Color.WHITE)
+        }));
+    }
+}
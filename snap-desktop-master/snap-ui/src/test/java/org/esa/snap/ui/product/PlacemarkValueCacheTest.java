@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.ui.product;
+
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.PinDescriptor;
+import org.esa.snap.core.datamodel.PixelPos;
+import org.esa.snap.core.datamodel.Placemark;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.RasterDataNode;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PlacemarkValueCacheTest {
+
+    private Product product;
+    private Band band;
+
+    @Before
+    public void setUp() {
+        product = new Product("p", "t", 300, 200);
+        band = product.addBand("b", "X + 1000 * Y");
+        band.setValidPixelExpression("X < 250");
+    }
+
+    @Test
+    public void testLoad() {
+        final int[] x = {10, 280, 299, 120, 11, -1, 300};
+        final int[] y = {20, 20, 199, 150, 21, -1, 5};
+        final float[] values = new float[x.length];
+        final byte[] states = new byte[x.length];
+
+        PlacemarkValueCache.load(band, x, y, values, states);
+
+        assertEquals(1, states[0]);
+        assertEquals(10.5f + 1000 * 20.5f, values[0], 1e-3f);
+        assertEquals(3, states[1]);
+        assertEquals(3, states[2]);
+        assertEquals(1, states[3]);
+        assertEquals(120.5f + 1000 * 150.5f, values[3], 1e-3f);
+        assertEquals(1, states[4]);
+        assertEquals(11.5f + 1000 * 21.5f, values[4], 1e-3f);
+        assertEquals(2, states[5]);
+        assertEquals(2, states[6]);
+    }
+
+    @Test
+    public void testGetValue() throws InterruptedException {
+        final Placemark inside = createPin("p1", 40.5, 60.5);
+        final Placemark invalid = createPin("p2", 260.5, 60.5);
+        final Placemark outside = createPin("p3", 400.5, 60.5);
+        final CountDownLatch loaded = new CountDownLatch(1);
+        final PlacemarkValueCache cache = new PlacemarkValueCache((rasterIndex, firstRow, lastRow) -> loaded.countDown());
+
+        cache.reset(new Placemark[]{inside, invalid, outside}, new RasterDataNode[]{band});
+        assertTrue(loaded.await(10, TimeUnit.SECONDS));
+
+        assertEquals(40.5f + 1000 * 60.5f, (Float) cache.getValue(0, 0), 1e-3f);
+        assertEquals(PlacemarkValueCache.INVALID, cache.getValue(1, 0));
+        assertEquals(PlacemarkValueCache.NO_DATA, cache.getValue(2, 0));
+    }
+
+    @Test
+    public void testResetRetainsLoadedValues() throws InterruptedException {
+        final Placemark pin1 = createPin("p1", 40.5, 60.5);
+        final Placemark pin2 = createPin("p2", 50.5, 70.5);
+        final CountDownLatch loaded = new CountDownLatch(1);
+        final PlacemarkValueCache cache = new PlacemarkValueCache((rasterIndex, firstRow, lastRow) -> loaded.countDown());
+        cache.reset(new Placemark[]{pin1, pin2}, new RasterDataNode[]{band});
+        assertTrue(loaded.await(10, TimeUnit.SECONDS));
+
+        final Placemark pin3 = createPin("p3", 60.5, 80.5);
+        cache.reset(new Placemark[]{pin2, pin3}, new RasterDataNode[]{band});
+
+        assertEquals(50.5f + 1000 * 70.5f, (Float) cache.getValue(0, 0), 1e-3f);
+    }
+
+    private Placemark createPin(String name, double x, double y) {
+        final Placemark pin = Placemark.createPointPlacemark(PinDescriptor.getInstance(), name, name, "",
+                                                             new PixelPos(x, y), null, null);
+        product.getPinGroup().add(pin);
+        return pin;
+    }
+}
@@ -21,26 +21,17 @@ import gov.nasa.worldwind.awt.WorldWindowGLCanvas;
 import gov.nasa.worldwind.event.SelectEvent;
 import gov.nasa.worldwind.geom.Angle;
 import gov.nasa.worldwind.geom.Position;
-import gov.nasa.worldwind.geom.Sector;
 import gov.nasa.worldwind.render.Offset;
 import gov.nasa.worldwind.render.PointPlacemark;
 import gov.nasa.worldwind.render.PointPlacemarkAttributes;
 import gov.nasa.worldwind.render.Polyline;
-import gov.nasa.worldwind.render.SurfaceImage;
-import org.esa.snap.core.dataio.ProductSubsetDef;
-import org.esa.snap.core.datamodel.Band;
 import org.esa.snap.core.datamodel.GeoCoding;
-import org.esa.snap.core.datamodel.GeoPos;
 import org.esa.snap.core.datamodel.MetadataElement;
-import org.esa.snap.core.datamodel.PixelPos;
 import org.esa.snap.core.datamodel.Product;
-import org.esa.snap.core.datamodel.RasterDataNode;
-import org.esa.snap.core.gpf.GPF;
 import org.esa.snap.core.util.ProductUtils;
 import org.esa.snap.engine_utilities.datamodel.AbstractMetadata;
 import org.esa.snap.engine_utilities.eo.Constants;
 import org.esa.snap.engine_utilities.eo.GeoUtils;
-import org.esa.snap.engine_utilities.gpf.InputProductValidator;
 import org.esa.snap.rcp.SnapDialogs;
 
 import javax.swing.JLabel;
@@ -53,11 +44,8 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.PathIterator;
-import java.awt.image.BufferedImage;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -70,7 +58,7 @@ public class DefaultProductLayer extends BaseLayer implements WWLayer {
     private boolean enableSurfaceImages;
 
     private final ConcurrentHashMap<String, Polyline[]> outlineTable = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, SurfaceImage> imageTable = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ProductTileSurface> imageTable = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, PointPlacemark> labelTable = new ConcurrentHashMap<>();
 
     public WorldWindowGLCanvas theWWD = null;
@@ -97,19 +85,19 @@ public class DefaultProductLayer extends BaseLayer implements WWLayer {
     public void setOpacity(double opacity) {
         super.setOpacity(opacity);
 
-        for (Map.Entry<String, SurfaceImage> entry : this.imageTable.entrySet()) {
+        for (Map.Entry<String, ProductTileSurface> entry : this.imageTable.entrySet()) {
             entry.getValue().setOpacity(opacity);
         }
     }
 
     public void setOpacity(String name, double opacity) {
-        final SurfaceImage img = imageTable.get(name);
+        final ProductTileSurface img = imageTable.get(name);
         if (img != null)
             img.setOpacity(opacity);
     }
 
     public double getOpacity(String name) {
-        final SurfaceImage img = imageTable.get(name);
+        final ProductTileSurface img = imageTable.get(name);
         if (img != null)
             return img.getOpacity();
         else {
@@ -165,31 +153,18 @@ public class DefaultProductLayer extends BaseLayer implements WWLayer {
     private void addSurfaceImage(final Product product) {
         final String name = getUniqueName(product);
 
-        final SwingWorker worker = new SwingWorker() {
+        final SwingWorker<ProductTileSurface, Object> worker = new SwingWorker<ProductTileSurface, Object>() {
 
             @Override
-            protected SurfaceImage doInBackground() throws Exception {
+            protected ProductTileSurface doInBackground() throws Exception {
                 try {
-                    final Product newProduct = createSubsampledProduct(product);
-                    final Band band = newProduct.getBandAt(0);
-                    final BufferedImage image = ProductUtils.createRgbImage(new RasterDataNode[]{band},
-                                                                            band.getImageInfo(com.bc.ceres.core.ProgressMonitor.NULL),
-                                                                            com.bc.ceres.core.ProgressMonitor.NULL);
-
-                    final GeoPos geoPos1 = product.getSceneGeoCoding().getGeoPos(new PixelPos(0, 0), null);
-                    final GeoPos geoPos2 = product.getSceneGeoCoding().getGeoPos(new PixelPos(product.getSceneRasterWidth() - 1,
-                                                                                         product.getSceneRasterHeight() - 1),
-                                                                            null
-                    );
-
-                    final Sector sector = new Sector(Angle.fromDegreesLatitude(geoPos1.getLat()),
-                                                     Angle.fromDegreesLatitude(geoPos2.getLat()),
-                                                     Angle.fromDegreesLongitude(geoPos1.getLon()),
-                                                     Angle.fromDegreesLongitude(geoPos2.getLon()));
-
-                    final SurfaceImage si = new SurfaceImage(image, sector);
-                    si.setOpacity(getOpacity());
-                    return si;
+                    // tiles are drawn from the product's image pyramid as the globe is zoomed
+                    final ProductTileSurface surface = ProductTileSurface.create(
+                            product, () -> firePropertyChange(AVKey.LAYER, null, DefaultProductLayer.this));
+                    if (surface != null) {
+                        surface.setOpacity(getOpacity());
+                    }
+                    return surface;
                 } catch (Exception e) {
                     //e.printStackTrace();
                 }
@@ -200,12 +175,12 @@ public class DefaultProductLayer extends BaseLayer implements WWLayer {
             public void done() {
 
                 try {
-                    if (imageTable.contains(name))
+                    if (imageTable.containsKey(name))
                         removeImage(name);
-                    final SurfaceImage si = (SurfaceImage) get();
-                    if (si != null) {
-                        addRenderable(si);
-                        imageTable.put(name, si);
+                    final ProductTileSurface surface = get();
+                    if (surface != null) {
+                        addRenderable(surface);
+                        imageTable.put(name, surface);
                     }
                 } catch (Exception e) {
                     SnapDialogs.showError(e.getMessage());
@@ -377,8 +352,9 @@ public class DefaultProductLayer extends BaseLayer implements WWLayer {
     }
 
     private void removeImage(String imagePath) {
-        final SurfaceImage si = this.imageTable.get(imagePath);
+        final ProductTileSurface si = this.imageTable.get(imagePath);
         if (si != null) {
+            si.dispose();
             this.removeRenderable(si);
             this.imageTable.remove(imagePath);
         }
@@ -392,35 +368,6 @@ public class DefaultProductLayer extends BaseLayer implements WWLayer {
         }
     }
 
-    private static Product createSubsampledProduct(final Product product) throws IOException {
-
-        final String quicklookBandName = ProductUtils.findSuitableQuicklookBandName(product);
-        final ProductSubsetDef productSubsetDef = new ProductSubsetDef("subset");
-        int scaleFactor = product.getSceneRasterWidth() / 1000;
-        if (scaleFactor < 1) {
-            scaleFactor = 1;
-        }
-        productSubsetDef.setSubSampling(scaleFactor, scaleFactor);
-        productSubsetDef.setTreatVirtualBandsAsRealBands(true);
-        productSubsetDef.setNodeNames(new String[]{quicklookBandName});
-        Product productSubset = product.createSubset(productSubsetDef, quicklookBandName, null);
-
-        final InputProductValidator validator = new InputProductValidator(product);
-        if (!validator.isMapProjected() && productSubset.getSceneGeoCoding() != null) {
-            try {
-                final Map<String, Object> projParameters = new HashMap<>();
-                Map<String, Product> projProducts = new HashMap<>();
-                projProducts.put("source", productSubset);
-                projParameters.put("crs", "WGS84(DD)");
-                productSubset = GPF.createProduct("Reproject", projParameters, projProducts);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-
-        return productSubset;
-    }
-
     public JPanel getControlPanel(final WorldWindowGLCanvas wwd) {
         final JSlider opacitySlider = new JSlider();
         opacitySlider.setMaximum(100);
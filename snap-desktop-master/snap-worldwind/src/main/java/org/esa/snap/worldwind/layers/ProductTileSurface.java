@@ -0,0 +1,454 @@
+/*
+ * Copyright (C) 2015 by Array Systems Computing Inc. http://www.array.ca
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.worldwind.layers;
+
+import com.bc.ceres.core.ProgressMonitor;
+import com.bc.ceres.glevel.MultiLevelModel;
+import gov.nasa.worldwind.geom.LatLon;
+import gov.nasa.worldwind.geom.Sector;
+import gov.nasa.worldwind.geom.Vec4;
+import gov.nasa.worldwind.globes.Earth;
+import gov.nasa.worldwind.render.DrawContext;
+import gov.nasa.worldwind.render.PreRenderable;
+import gov.nasa.worldwind.render.Renderable;
+import gov.nasa.worldwind.render.SurfaceImage;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.ColorPaletteDef;
+import org.esa.snap.core.datamodel.GeoCoding;
+import org.esa.snap.core.datamodel.GeoPos;
+import org.esa.snap.core.datamodel.ImageInfo;
+import org.esa.snap.core.datamodel.PixelPos;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.RasterDataNode;
+import org.esa.snap.core.image.ImageManager;
+import org.esa.snap.core.util.ProductUtils;
+import org.esa.snap.core.util.SystemUtils;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Draws the quick look band of a product on the globe as a level-of-detail pyramid of tiles. The tiles are taken
+ * from the levels of the product's multi-level image, choosing for every visible tile the coarsest level whose
+ * pixels are not larger than the pixels on the screen. Each tile is placed on the globe by the geo-positions of
+ * its corners, so that products which are not map projected are drawn in place. Tiles are rendered on a
+ * background pool and kept in the {@link TileImageCache}; while a tile is being rendered, the closest coarser
+ * tile which is ready is drawn instead.
+ */
+class ProductTileSurface implements PreRenderable, Renderable {
+
+    static final int TILE_SIZE = 256;
+
+    // a tile is refined when its pixels are larger than this many pixels on the screen
+    private static final double DETAIL_FACTOR = 1.5;
+    private static final int RENDERER_THREAD_COUNT = 2;
+
+    private static final ThreadPoolExecutor RENDERER =
+            new ThreadPoolExecutor(RENDERER_THREAD_COUNT, RENDERER_THREAD_COUNT, 0L, TimeUnit.MILLISECONDS,
+                                   // last in, first out, so the tiles requested by the latest frame come first
+                                   new LinkedBlockingDeque<Runnable>() {
+                                       @Override
+                                       public boolean offer(Runnable runnable) {
+                                           return offerFirst(runnable);
+                                       }
+                                   },
+                                   runnable -> {
+                                       final Thread thread = new Thread(runnable, "WorldWind product tile renderer");
+                                       thread.setDaemon(true);
+                                       thread.setPriority(Thread.MIN_PRIORITY);
+                                       return thread;
+                                   });
+
+    private final Band band;
+    private final ImageInfo imageInfo;
+    private final GeoCoding geoCoding;
+    private final String surfaceId;
+    private final boolean persistent;
+    private final int width;
+    private final int height;
+    private final MultiLevelModel model;
+    private final int levelCount;
+    private final double pixelSizeMeters;
+    private final Runnable onTileReady;
+    private final TileImageCache cache = TileImageCache.getInstance();
+    private final RenderedImage[] levelImages;
+    private final Map<Long, Tile> tiles = new HashMap<>();
+    private final Set<Long> pending = new HashSet<>();
+
+    private volatile Set<Long> wantedTiles = Collections.emptySet();
+    private volatile boolean disposed;
+    private volatile Map<Long, SurfaceImage> surfaces = new LinkedHashMap<>();
+    private double opacity = 1.0;
+
+    private ProductTileSurface(Band band, ImageInfo imageInfo, Runnable onTileReady) {
+        final Product product = band.getProduct();
+        this.band = band;
+        this.imageInfo = imageInfo;
+        this.onTileReady = onTileReady;
+        geoCoding = product.getSceneGeoCoding();
+        width = band.getRasterWidth();
+        height = band.getRasterHeight();
+        model = band.getSourceImage().getModel();
+        levelCount = model.getLevelCount();
+        levelImages = new RenderedImage[levelCount];
+        pixelSizeMeters = computePixelSizeMeters(geoCoding, width, height);
+        final File file = product.getFileLocation();
+        persistent = file != null && file.isFile();
+        final String identity;
+        if (persistent) {
+            identity = file.getAbsolutePath() + '|' + file.length() + '|' + file.lastModified();
+        } else {
+            identity = product.getProductRefString() + product.getName() + '|' + System.identityHashCode(product);
+        }
+        surfaceId = UUID.nameUUIDFromBytes((identity + '|' + band.getName() + '|' + TILE_SIZE + '|' +
+                                            getFingerprint(imageInfo)).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * Creates the surface of the quick look band of the product. The image info of the band is computed if
+     * necessary, so this should not be called on the EDT.
+     *
+     * @param onTileReady called on a renderer thread when a tile has been rendered
+     *
+     * @return the surface, or {@code null} if the product has no band to show
+     */
+    static ProductTileSurface create(Product product, Runnable onTileReady) {
+        final String bandName = ProductUtils.findSuitableQuicklookBandName(product);
+        final Band band = bandName != null ? product.getBand(bandName) : null;
+        if (band == null || product.getSceneGeoCoding() == null) {
+            return null;
+        }
+        final ImageInfo imageInfo = band.getImageInfo(ProgressMonitor.NULL);
+        return new ProductTileSurface(band, imageInfo, onTileReady);
+    }
+
+    void setOpacity(double opacity) {
+        this.opacity = opacity;
+        for (SurfaceImage surface : surfaces.values()) {
+            surface.setOpacity(opacity);
+        }
+    }
+
+    double getOpacity() {
+        return opacity;
+    }
+
+    /**
+     * Stops rendering tiles for this surface. Tiles which have been rendered remain in the cache.
+     */
+    void dispose() {
+        disposed = true;
+        wantedTiles = Collections.emptySet();
+        surfaces = new LinkedHashMap<>();
+    }
+
+    @Override
+    public void preRender(DrawContext dc) {
+        if (disposed) {
+            return;
+        }
+        final Sector visibleSector = dc.getVisibleSector();
+        final List<Tile> selected = new ArrayList<>();
+        final int topLevel = levelCount - 1;
+        for (int tileY = 0; tileY < getTileCount(height, topLevel); tileY++) {
+            for (int tileX = 0; tileX < getTileCount(width, topLevel); tileX++) {
+                selectTiles(dc, visibleSector, getTile(topLevel, tileX, tileY), selected);
+            }
+        }
+
+        // coarser tiles stand in for the tiles which are not ready yet and are drawn first, below the finer tiles
+        final Set<Long> wanted = new HashSet<>();
+        final List<Tile> drawn = new ArrayList<>();
+        final Set<Tile> standIns = new HashSet<>();
+        for (Tile tile : selected) {
+            wanted.add(tile.key);
+            if (cache.getFromMemory(surfaceId, tile.level, tile.tileX, tile.tileY) != null) {
+                drawn.add(tile);
+                continue;
+            }
+            requestTile(tile);
+            for (Tile parent = getParent(tile); parent != null; parent = getParent(parent)) {
+                if (parent.sector != null &&
+                        cache.getFromMemory(surfaceId, parent.level, parent.tileX, parent.tileY) != null) {
+                    standIns.add(parent);
+                    break;
+                }
+            }
+        }
+        wantedTiles = wanted;
+        final List<Tile> standInList = new ArrayList<>(standIns);
+        standInList.sort((tile1, tile2) -> Integer.compare(tile2.level, tile1.level));
+        standInList.addAll(drawn);
+
+        final Map<Long, SurfaceImage> previousSurfaces = surfaces;
+        final Map<Long, SurfaceImage> currentSurfaces = new LinkedHashMap<>();
+        for (Tile tile : standInList) {
+            SurfaceImage surface = previousSurfaces.get(tile.key);
+            if (surface == null) {
+                final BufferedImage image = cache.getFromMemory(surfaceId, tile.level, tile.tileX, tile.tileY);
+                if (image == null) {
+                    continue;
+                }
+                surface = new SurfaceImage(image, tile.corners);
+                surface.setOpacity(opacity);
+            }
+            currentSurfaces.put(tile.key, surface);
+            surface.preRender(dc);
+        }
+        surfaces = currentSurfaces;
+    }
+
+    @Override
+    public void render(DrawContext dc) {
+        if (disposed) {
+            return;
+        }
+        for (SurfaceImage surface : surfaces.values()) {
+            surface.render(dc);
+        }
+    }
+
+    private void selectTiles(DrawContext dc, Sector visibleSector, Tile tile, List<Tile> selected) {
+        if (tile == null || !isRenderable(tile) ||
+                tile.sector != null && visibleSector != null && !tile.sector.intersects(visibleSector)) {
+            return;
+        }
+        if (tile.level > 0 && (tile.sector == null || needsRefinement(dc, tile))) {
+            for (Tile child : getChildren(tile)) {
+                selectTiles(dc, visibleSector, child, selected);
+            }
+        } else {
+            selected.add(tile);
+        }
+    }
+
+    /**
+     * A tile is renderable if its corners can be geolocated, or if it has renderable children which stand in for
+     * it. This is determined once per tile, so areas which cannot be geolocated are not descended every frame.
+     */
+    private boolean isRenderable(Tile tile) {
+        if (tile.renderable == null) {
+            boolean renderable = tile.sector != null;
+            if (!renderable && tile.level > 0) {
+                for (Tile child : getChildren(tile)) {
+                    renderable |= isRenderable(child);
+                }
+            }
+            tile.renderable = renderable;
+        }
+        return tile.renderable;
+    }
+
+    private boolean needsRefinement(DrawContext dc, Tile tile) {
+        final Vec4 eyePoint = dc.getView().getEyePoint();
+        double distance = eyePoint.distanceTo3(dc.getGlobe().computePointFromLocation(tile.sector.getCentroid()));
+        for (LatLon corner : tile.corners) {
+            distance = Math.min(distance, eyePoint.distanceTo3(dc.getGlobe().computePointFromLocation(corner)));
+        }
+        final double screenPixelSize = dc.getView().computePixelSizeAtDistance(distance);
+        // the pixel size at the scene centre is unknown if the centre cannot be geolocated
+        final double tilePixelSize = pixelSizeMeters > 0.0 ? pixelSizeMeters * model.getScale(tile.level)
+                                                           : tile.pixelSizeMeters;
+        return tilePixelSize > DETAIL_FACTOR * screenPixelSize;
+    }
+
+    private void requestTile(final Tile tile) {
+        synchronized (pending) {
+            if (!pending.add(tile.key)) {
+                return;
+            }
+        }
+        RENDERER.execute(() -> {
+            try {
+                // tiles which have scrolled out of view before their turn are skipped
+                if (disposed || !wantedTiles.contains(tile.key)) {
+                    return;
+                }
+                if (cache.get(surfaceId, tile.level, tile.tileX, tile.tileY, persistent) == null) {
+                    cache.put(surfaceId, tile.level, tile.tileX, tile.tileY, renderTile(tile), persistent);
+                }
+                onTileReady.run();
+            } catch (Throwable e) {
+                SystemUtils.LOG.log(Level.WARNING, "Failed to render tile " + tile.level + '/' + tile.tileX + '/' +
+                                                   tile.tileY + " of " + band.getName(), e);
+            } finally {
+                synchronized (pending) {
+                    pending.remove(tile.key);
+                }
+            }
+        });
+    }
+
+    private BufferedImage renderTile(Tile tile) {
+        final RenderedImage levelImage = getLevelImage(tile.level);
+        final Rectangle imageBounds = new Rectangle(levelImage.getMinX(), levelImage.getMinY(),
+                                                    levelImage.getWidth(), levelImage.getHeight());
+        final Rectangle tileBounds = new Rectangle(tile.tileX * TILE_SIZE, tile.tileY * TILE_SIZE,
+                                                   TILE_SIZE, TILE_SIZE).intersection(imageBounds);
+        final BufferedImage image = new BufferedImage(Math.max(1, tileBounds.width), Math.max(1, tileBounds.height),
+                                                      BufferedImage.TYPE_INT_ARGB);
+        if (tileBounds.isEmpty()) {
+            return image;
+        }
+        final Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.drawRenderedImage(levelImage, AffineTransform.getTranslateInstance(-tileBounds.x, -tileBounds.y));
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    private synchronized RenderedImage getLevelImage(int level) {
+        if (levelImages[level] == null) {
+            levelImages[level] = ImageManager.getInstance().createColoredBandImage(new RasterDataNode[]{band},
+                                                                                   imageInfo, level);
+        }
+        return levelImages[level];
+    }
+
+    private Tile getTile(int level, int tileX, int tileY) {
+        if (tileX >= getTileCount(width, level) || tileY >= getTileCount(height, level)) {
+            return null;
+        }
+        final long key = getKey(level, tileX, tileY);
+        Tile tile = tiles.get(key);
+        if (tile == null) {
+            tile = new Tile(key, level, tileX, tileY);
+            final double scale = model.getScale(level);
+            final double x0 = tileX * TILE_SIZE * scale;
+            final double y0 = tileY * TILE_SIZE * scale;
+            final double x1 = Math.min(width, (tileX + 1) * TILE_SIZE * scale);
+            final double y1 = Math.min(height, (tileY + 1) * TILE_SIZE * scale);
+            // counter-clockwise, starting at the lower left corner of the image
+            final LatLon[] corners = {
+                    getLatLon(x0, y1), getLatLon(x1, y1), getLatLon(x1, y0), getLatLon(x0, y0)
+            };
+            boolean valid = true;
+            for (LatLon corner : corners) {
+                valid &= corner != null;
+            }
+            if (valid) {
+                tile.corners = new ArrayList<>(4);
+                Collections.addAll(tile.corners, corners);
+                tile.sector = Sector.boundingSector(tile.corners);
+                // the ground size of the tile's pixels, from its diagonal
+                tile.pixelSizeMeters = LatLon.greatCircleDistance(corners[0], corners[2]).radians *
+                                       Earth.WGS84_EQUATORIAL_RADIUS / Math.hypot((x1 - x0) / scale, (y1 - y0) / scale);
+            }
+            tiles.put(key, tile);
+        }
+        return tile;
+    }
+
+    private List<Tile> getChildren(Tile tile) {
+        final List<Tile> children = new ArrayList<>(4);
+        for (int tileY = 2 * tile.tileY; tileY <= 2 * tile.tileY + 1; tileY++) {
+            for (int tileX = 2 * tile.tileX; tileX <= 2 * tile.tileX + 1; tileX++) {
+                final Tile child = getTile(tile.level - 1, tileX, tileY);
+                if (child != null) {
+                    children.add(child);
+                }
+            }
+        }
+        return children;
+    }
+
+    private Tile getParent(Tile tile) {
+        return tile.level < levelCount - 1 ? getTile(tile.level + 1, tile.tileX / 2, tile.tileY / 2) : null;
+    }
+
+    private LatLon getLatLon(double x, double y) {
+        final GeoPos geoPos = geoCoding.getGeoPos(new PixelPos(x, y), null);
+        return geoPos != null && geoPos.isValid() ? LatLon.fromDegrees(geoPos.getLat(), geoPos.getLon()) : null;
+    }
+
+    private int getTileCount(int size, int level) {
+        return (int) Math.ceil(size / (TILE_SIZE * model.getScale(level)));
+    }
+
+    private static long getKey(int level, int tileX, int tileY) {
+        return ((long) level << 48) | ((long) tileX << 24) | tileY;
+    }
+
+    // the ground size of a pixel at the scene centre, from the distance to its neighbours
+    private static double computePixelSizeMeters(GeoCoding geoCoding, int width, int height) {
+        final double x = width / 2.0;
+        final double y = height / 2.0;
+        final GeoPos centre = geoCoding.getGeoPos(new PixelPos(x, y), null);
+        final GeoPos right = geoCoding.getGeoPos(new PixelPos(x + 1, y), null);
+        final GeoPos below = geoCoding.getGeoPos(new PixelPos(x, y + 1), null);
+        if (centre == null || right == null || below == null ||
+                !centre.isValid() || !right.isValid() || !below.isValid()) {
+            return 0.0;
+        }
+        final LatLon centreLatLon = LatLon.fromDegrees(centre.getLat(), centre.getLon());
+        final LatLon rightLatLon = LatLon.fromDegrees(right.getLat(), right.getLon());
+        final LatLon belowLatLon = LatLon.fromDegrees(below.getLat(), below.getLon());
+        final double distance = Math.max(LatLon.greatCircleDistance(centreLatLon, rightLatLon).radians,
+                                         LatLon.greatCircleDistance(centreLatLon, belowLatLon).radians);
+        return distance * Earth.WGS84_EQUATORIAL_RADIUS;
+    }
+
+    private static String getFingerprint(ImageInfo imageInfo) {
+        final StringBuilder sb = new StringBuilder();
+        final ColorPaletteDef paletteDef = imageInfo.getColorPaletteDef();
+        for (ColorPaletteDef.Point point : paletteDef.getPoints()) {
+            sb.append(point.getSample()).append(':').append(point.getColor().getRGB()).append(',');
+        }
+        sb.append(imageInfo.getNoDataColor().getRGB()).append(',');
+        sb.append(imageInfo.getHistogramMatching()).append(',');
+        sb.append(imageInfo.isLogScaled());
+        return sb.toString();
+    }
+
+    private static final class Tile {
+
+        private final long key;
+        private final int level;
+        private final int tileX;
+        private final int tileY;
+        private List<LatLon> corners;
+        private Sector sector;
+        private double pixelSizeMeters;
+        private Boolean renderable;
+
+        private Tile(long key, int level, int tileX, int tileY) {
+            this.key = key;
+            this.level = level;
+            this.tileX = tileX;
+            this.tileY = tileY;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2015 by Array Systems Computing Inc. http://www.array.ca
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.worldwind.layers;
+
+import org.esa.snap.core.util.SystemUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Keeps the rendered tiles of the product surfaces in a LRU cache in memory, bounded by the memory of the images,
+ * backed by a LRU cache of PNG files in the auxdata folder, bounded by the size of the files. Tiles are identified
+ * by the id of their surface and their level and index. The disk cache is only used for surfaces of products
+ * read from a file, whose id remains valid across sessions.
+ */
+class TileImageCache {
+
+    private static final long MAX_MEMORY_BYTES = 256L * 1024 * 1024;
+    private static final long MAX_DISK_BYTES = 1024L * 1024 * 1024;
+
+    private static final TileImageCache INSTANCE = new TileImageCache(
+            SystemUtils.getAuxDataPath().resolve("worldwind_tiles"), MAX_MEMORY_BYTES, MAX_DISK_BYTES);
+
+    private final Path cacheDir;
+    private final long maxMemoryBytes;
+    private final long maxDiskBytes;
+    private final Map<String, BufferedImage> images;
+    private final Map<Path, Long> files;
+    private long memoryBytes;
+    private long diskBytes;
+    private boolean filesIndexed;
+
+    TileImageCache(Path cacheDir, long maxMemoryBytes, long maxDiskBytes) {
+        this.cacheDir = cacheDir;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxDiskBytes = maxDiskBytes;
+        images = new LinkedHashMap<>(256, 0.75f, true);
+        files = new LinkedHashMap<>(256, 0.75f, true);
+    }
+
+    static TileImageCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the tile from memory, or {@code null}; the disk cache is not accessed
+     */
+    synchronized BufferedImage getFromMemory(String surfaceId, int level, int tileX, int tileY) {
+        return images.get(getKey(surfaceId, level, tileX, tileY));
+    }
+
+    /**
+     * @param persistent whether the tile may be looked up in the disk cache
+     *
+     * @return the tile from memory or disk, or {@code null}
+     */
+    BufferedImage get(String surfaceId, int level, int tileX, int tileY, boolean persistent) {
+        final BufferedImage image = getFromMemory(surfaceId, level, tileX, tileY);
+        if (image != null || !persistent) {
+            return image;
+        }
+        final Path file = getFile(surfaceId, level, tileX, tileY);
+        synchronized (this) {
+            indexFiles();
+            if (files.get(file) == null) {
+                return null;
+            }
+        }
+        try {
+            final BufferedImage diskImage = ImageIO.read(file.toFile());
+            if (diskImage != null) {
+                putInMemory(getKey(surfaceId, level, tileX, tileY), diskImage);
+                // the modification time orders the files by their last use in the next session
+                file.toFile().setLastModified(System.currentTimeMillis());
+            }
+            return diskImage;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param persistent whether the tile is also stored in the disk cache
+     */
+    void put(String surfaceId, int level, int tileX, int tileY, BufferedImage image, boolean persistent) {
+        putInMemory(getKey(surfaceId, level, tileX, tileY), image);
+        if (!persistent) {
+            return;
+        }
+        final Path file = getFile(surfaceId, level, tileX, tileY);
+        try {
+            Files.createDirectories(file.getParent());
+            final Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+            ImageIO.write(image, "PNG", tmpFile.toFile());
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+            addFile(file, Files.size(file));
+        } catch (IOException e) {
+            SystemUtils.LOG.log(Level.WARNING, "Unable to write tile cache " + file, e);
+        }
+    }
+
+    synchronized int getMemoryTileCount() {
+        return images.size();
+    }
+
+    synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    synchronized long getDiskBytes() {
+        return diskBytes;
+    }
+
+    private synchronized void putInMemory(String key, BufferedImage image) {
+        memoryBytes += getBytes(image);
+        final BufferedImage previous = images.put(key, image);
+        if (previous != null) {
+            memoryBytes -= getBytes(previous);
+        }
+        // a large tile may displace several small ones, the tile just put is always kept
+        final Iterator<BufferedImage> iterator = images.values().iterator();
+        while (memoryBytes > maxMemoryBytes && images.size() > 1) {
+            memoryBytes -= getBytes(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    private void addFile(Path file, long size) {
+        final List<Path> evicted = new ArrayList<>();
+        synchronized (this) {
+            indexFiles();
+            final Long previous = files.put(file, size);
+            diskBytes += size - (previous != null ? previous : 0);
+            final Iterator<Map.Entry<Path, Long>> iterator = files.entrySet().iterator();
+            while (diskBytes > maxDiskBytes && iterator.hasNext()) {
+                final Map.Entry<Path, Long> eldest = iterator.next();
+                if (eldest.getKey().equals(file)) {
+                    continue;
+                }
+                diskBytes -= eldest.getValue();
+                evicted.add(eldest.getKey());
+                iterator.remove();
+            }
+        }
+        for (Path evictedFile : evicted) {
+            try {
+                Files.deleteIfExists(evictedFile);
+            } catch (IOException e) {
+                SystemUtils.LOG.log(Level.WARNING, "Unable to delete tile cache " + evictedFile, e);
+            }
+        }
+    }
+
+    // the files of earlier sessions are indexed when the disk cache is used first, least recently used first
+    private void indexFiles() {
+        if (filesIndexed) {
+            return;
+        }
+        filesIndexed = true;
+        final File[] surfaceDirs = cacheDir.toFile().listFiles(File::isDirectory);
+        if (surfaceDirs == null) {
+            return;
+        }
+        final List<File> tileFiles = new ArrayList<>();
+        for (File surfaceDir : surfaceDirs) {
+            final File[] pngFiles = surfaceDir.listFiles((dir, name) -> name.endsWith(".png"));
+            if (pngFiles != null) {
+                Collections.addAll(tileFiles, pngFiles);
+            }
+        }
+        tileFiles.sort((file1, file2) -> Long.compare(file1.lastModified(), file2.lastModified()));
+        for (File tileFile : tileFiles) {
+            final long size = tileFile.length();
+            files.put(tileFile.toPath(), size);
+            diskBytes += size;
+        }
+    }
+
+    private Path getFile(String surfaceId, int level, int tileX, int tileY) {
+        return cacheDir.resolve(surfaceId).resolve(level + "_" + tileX + "_" + tileY + ".png");
+    }
+
+    private static String getKey(String surfaceId, int level, int tileX, int tileY) {
+        return surfaceId + '/' + level + '/' + tileX + '/' + tileY;
+    }
+
+    private static long getBytes(BufferedImage image) {
+        return 4L * image.getWidth() * image.getHeight();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 by Array Systems Computing Inc. http://www.array.ca
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.snap.worldwind.layers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class TileImageCacheTest {
+
+    private static final long UNLIMITED = Long.MAX_VALUE;
+
+    private Path cacheDir;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheDir = Files.createTempDirectory("TileImageCacheTest");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(cacheDir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedTilesAreEvictedFromMemory() throws Exception {
+        // room for three tiles of 10 x 10 pixels
+        final TileImageCache cache = new TileImageCache(cacheDir, 3 * 400, UNLIMITED);
+        cache.put("s", 0, 0, 0, createImage(10, 10, 1), false);
+        cache.put("s", 0, 1, 0, createImage(10, 10, 2), false);
+        cache.put("s", 0, 2, 0, createImage(10, 10, 3), false);
+        assertNotNull(cache.getFromMemory("s", 0, 0, 0));
+
+        cache.put("s", 0, 3, 0, createImage(10, 10, 4), false);
+
+        assertEquals(3, cache.getMemoryTileCount());
+        assertNull(cache.getFromMemory("s", 0, 1, 0));
+        assertNotNull(cache.getFromMemory("s", 0, 0, 0));
+        assertNotNull(cache.getFromMemory("s", 0, 3, 0));
+    }
+
+    @Test
+    public void testLargeTileEvictsSeveralTiles() throws Exception {
+        final TileImageCache cache = new TileImageCache(cacheDir, 3 * 400, UNLIMITED);
+        cache.put("s", 1, 0, 0, createImage(10, 10, 1), false);
+        cache.put("s", 1, 1, 0, createImage(10, 10, 2), false);
+        cache.put("s", 1, 2, 0, createImage(10, 10, 3), false);
+
+        cache.put("s", 0, 0, 0, createImage(10, 20, 4), false);
+
+        assertEquals(2, cache.getMemoryTileCount());
+        assertEquals(400 + 800, cache.getMemoryBytes());
+        assertNull(cache.getFromMemory("s", 1, 0, 0));
+        assertNull(cache.getFromMemory("s", 1, 1, 0));
+
+        // a tile exceeding the budget is kept on its own
+        cache.put("s", 0, 1, 0, createImage(40, 40, 5), false);
+        assertEquals(1, cache.getMemoryTileCount());
+        assertNotNull(cache.getFromMemory("s", 0, 1, 0));
+    }
+
+    @Test
+    public void testPersistentTilesAreReadFromDiskInTheNextSession() throws Exception {
+        final TileImageCache cache = new TileImageCache(cacheDir, UNLIMITED, UNLIMITED);
+        cache.put("persistent", 2, 1, 3, createImage(8, 4, 0xff00ff00), true);
+        cache.put("transient", 2, 1, 3, createImage(8, 4, 0xff0000ff), false);
+
+        final TileImageCache nextSession = new TileImageCache(cacheDir, UNLIMITED, UNLIMITED);
+        assertNull(nextSession.getFromMemory("persistent", 2, 1, 3));
+        final BufferedImage image = nextSession.get("persistent", 2, 1, 3, true);
+        assertNotNull(image);
+        assertEquals(8, image.getWidth());
+        assertEquals(4, image.getHeight());
+        assertEquals(0xff00ff00, image.getRGB(7, 3));
+        // the tile read from disk is kept in memory
+        assertSame(image, nextSession.getFromMemory("persistent", 2, 1, 3));
+
+        assertNull(nextSession.get("transient", 2, 1, 3, true));
+        assertSame(image, nextSession.get("persistent", 2, 1, 3, false));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedFilesAreEvictedFromDisk() throws Exception {
+        final TileImageCache probe = new TileImageCache(cacheDir.resolve("probe"), UNLIMITED, UNLIMITED);
+        probe.put("s", 0, 0, 0, createImage(16, 16, 1), true);
+        final long fileSize = probe.getDiskBytes();
+        assertTrue(fileSize > 0);
+
+        // room for two files
+        final TileImageCache cache = new TileImageCache(cacheDir, UNLIMITED, 2 * fileSize + fileSize / 2);
+        cache.put("s", 0, 0, 0, createImage(16, 16, 1), true);
+        cache.put("s", 0, 1, 0, createImage(16, 16, 1), true);
+        cache.put("s", 0, 2, 0, createImage(16, 16, 1), true);
+
+        assertEquals(2 * fileSize, cache.getDiskBytes());
+        assertFalse(Files.exists(cacheDir.resolve("s").resolve("0_0_0.png")));
+        assertTrue(Files.exists(cacheDir.resolve("s").resolve("0_1_0.png")));
+        assertTrue(Files.exists(cacheDir.resolve("s").resolve("0_2_0.png")));
+    }
+
+    private static BufferedImage createImage(int width, int height, int rgb) {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, rgb);
+            }
+        }
+        return image;
+    }
+}